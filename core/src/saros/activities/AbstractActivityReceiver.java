@@ -45,6 +45,11 @@ public abstract class AbstractActivityReceiver implements IActivityReceiver {
     // do nothing
   }
 
+  @Override
+  public void receive(FileDeltaActivity fileDeltaActivity) {
+    // do nothing
+  }
+
   @Override
   public void receive(FolderCreatedActivity folderCreatedActivity) {
     // do nothing
@@ -100,6 +105,11 @@ public abstract class AbstractActivityReceiver implements IActivityReceiver {
     // do nothing
   }
 
+  @Override
+  public void receive(TextRecoveryActivity textRecoveryActivity) {
+    // do nothing
+  }
+
   @Override
   public void receive(TextSelectionActivity textSelectionActivity) {
     // do nothing
@@ -24,6 +24,14 @@ public class ActivityOptimizer {
    *         exec(activity)
    * </pre>
    *
+   * The following optimizations are performed:
+   *
+   * <ul>
+   *   <li>only the latest selection and viewport activity per path is kept
+   *   <li>a file activity that creates or modifies a file is dropped if the same user creates,
+   *       modifies or removes the file again before any other activity refers to it
+   * </ul>
+   *
    * @param activities a collection containing the activities to optimize
    * @return a list which may contains a reduced amount of activities
    */
@@ -35,6 +43,7 @@ public class ActivityOptimizer {
 
     Map<SPath, Integer> selections = new HashMap<SPath, Integer>();
     Map<SPath, Integer> viewports = new HashMap<SPath, Integer>();
+    Map<SPath, Integer> fileChanges = new HashMap<SPath, Integer>();
 
     /*
      * keep only the latest selection/viewport activities per project and
@@ -43,7 +52,9 @@ public class ActivityOptimizer {
 
     int activityIdx = 0;
 
-    for (IActivity activity : activities) {
+    IActivity[] activityArray = activities.toArray(new IActivity[activities.size()]);
+
+    for (IActivity activity : activityArray) {
 
       if (activity instanceof TextSelectionActivity) {
         SPath path = ((TextSelectionActivity) activity).getPath();
@@ -63,13 +74,45 @@ public class ActivityOptimizer {
         viewports.put(path, activityIdx);
       }
 
+      if (isPlainFileChange(activity)) {
+        FileActivity fileActivity = (FileActivity) activity;
+        SPath path = fileActivity.getPath();
+
+        Integer idx = fileChanges.remove(path);
+
+        if (idx != null && activityArray[idx].getSource().equals(fileActivity.getSource()))
+          dropActivityIdx[idx] = true;
+
+        if (fileActivity.getType() == FileActivity.Type.CREATED) fileChanges.put(path, activityIdx);
+
+      } else if (activity instanceof IFileSystemModificationActivity) {
+        // moves, folder operations and recoveries may affect every pending file
+        fileChanges.clear();
+
+      } else if (activity instanceof IResourceActivity) {
+        fileChanges.remove(((IResourceActivity) activity).getPath());
+      }
+
       activityIdx++;
     }
 
     activityIdx = 0;
 
-    for (IActivity activity : activities) if (!dropActivityIdx[activityIdx++]) result.add(activity);
+    for (IActivity activity : activityArray)
+      if (!dropActivityIdx[activityIdx++]) result.add(activity);
 
     return result;
   }
+
+  /**
+   * Returns whether the activity is a regular (i.e non recovery, non targeted) file activity that
+   * creates, modifies or removes a file.
+   */
+  private static boolean isPlainFileChange(IActivity activity) {
+    if (activity == null || activity.getClass() != FileActivity.class) return false;
+
+    FileActivity fileActivity = (FileActivity) activity;
+
+    return !fileActivity.isRecovery() && fileActivity.getType() != FileActivity.Type.MOVED;
+  }
 }
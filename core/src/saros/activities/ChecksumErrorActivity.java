@@ -32,6 +32,10 @@ import saros.session.User;
  *
  * <p>The host will reply with a ChecksumError of the same recoveryID after having sent the last
  * FileActivity (with {@link FileActivity#isRecovery()} being set related to this checksum recovery.
+ *
+ * <p>The user may also send the segment checksums of its documents (see {@link
+ * saros.concurrent.watchdog.SegmentChecksums}). The host can then recover only the differing range
+ * of a document by sending a {@link TextRecoveryActivity} instead of the whole document.
  */
 @XStreamAlias("checksumErrorActivity")
 public class ChecksumErrorActivity extends AbstractActivity implements ITargetedActivity {
@@ -42,14 +46,39 @@ public class ChecksumErrorActivity extends AbstractActivity implements ITargeted
 
   @XStreamImplicit protected List<SPath> paths;
 
+  @XStreamImplicit(itemFieldName = "segments")
+  protected List<String> segmentChecksums;
+
   public ChecksumErrorActivity(User source, User target, List<SPath> paths, String recoveryID) {
+    this(source, target, paths, null, recoveryID);
+  }
+
+  /**
+   * @param source the user who is the source (originator) of this Activity
+   * @param target the target user to receive this Activity
+   * @param paths the paths of the inconsistent documents
+   * @param segmentChecksums the string representation of the segment checksums of the documents in
+   *     the same order as the paths, an empty string if they are not available for a document, or
+   *     <code>null</code>
+   * @param recoveryID the id of the recovery
+   */
+  public ChecksumErrorActivity(
+      User source,
+      User target,
+      List<SPath> paths,
+      List<String> segmentChecksums,
+      String recoveryID) {
 
     super(source);
 
+    if (segmentChecksums != null && (paths == null || segmentChecksums.size() != paths.size()))
+      throw new IllegalArgumentException("segment checksums do not match the paths");
+
     if (target == null) throw new IllegalArgumentException("target must not be null");
 
     this.target = target;
     this.paths = paths;
+    this.segmentChecksums = segmentChecksums;
     this.recoveryID = recoveryID;
   }
 
@@ -62,6 +91,17 @@ public class ChecksumErrorActivity extends AbstractActivity implements ITargeted
     return paths;
   }
 
+  /**
+   * Returns the string representation of the segment checksums of the documents in the same order
+   * as {@link #getPaths()}. An entry is empty if the segment checksums of the document are not
+   * available.
+   *
+   * @return the segment checksums or <code>null</code> if they were not sent
+   */
+  public List<String> getSegmentChecksums() {
+    return segmentChecksums;
+  }
+
   /** Each ChecksumError has a unique ID, which should be used to identify a recovery session */
   public String getRecoveryID() {
     return recoveryID;
@@ -77,6 +117,7 @@ public class ChecksumErrorActivity extends AbstractActivity implements ITargeted
     final int prime = 31;
     int result = super.hashCode();
     result = prime * result + ObjectUtils.hashCode(paths);
+    result = prime * result + ObjectUtils.hashCode(segmentChecksums);
     result = prime * result + ObjectUtils.hashCode(recoveryID);
     result = prime * result + ObjectUtils.hashCode(target);
     return result;
@@ -92,6 +133,7 @@ public class ChecksumErrorActivity extends AbstractActivity implements ITargeted
 
     if (!ObjectUtils.equals(this.recoveryID, other.recoveryID)) return false;
     if (!ObjectUtils.equals(this.paths, other.paths)) return false;
+    if (!ObjectUtils.equals(this.segmentChecksums, other.segmentChecksums)) return false;
     if (!ObjectUtils.equals(this.target, other.target)) return false;
 
     return true;
@@ -4,6 +4,7 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 import java.util.Arrays;
 import org.apache.commons.lang3.ObjectUtils;
+import saros.concurrent.jupiter.Timestamp;
 import saros.session.User;
 
 @XStreamAlias("fileActivity")
@@ -38,6 +39,10 @@ public class FileActivity extends AbstractResourceActivity
 
   protected final byte[] content;
 
+  @XStreamAsAttribute protected final Long checksum;
+
+  @XStreamAsAttribute protected final Timestamp jupiterTimestamp;
+
   /**
    * Generic constructor for {@link FileActivity}s
    *
@@ -59,6 +64,31 @@ public class FileActivity extends AbstractResourceActivity
       byte[] content,
       String encoding) {
 
+    this(source, type, purpose, newPath, oldPath, content, encoding, null, null);
+  }
+
+  /**
+   * Constructor for {@link FileActivity}s that move a file without transmitting its content. The
+   * checksum allows the receiver to verify that the moved file has the same content on both sides.
+   *
+   * @param checksum the {@linkplain saros.concurrent.watchdog.DocumentChecksum#calculate(String)
+   *     checksum} of the content of the moved file or <code>null</code>; only valid for {@link
+   *     Type#MOVED} without content
+   * @param jupiterTimestamp the Jupiter timestamp of the document at the old path the checksum
+   *     refers to, may be <code>null</code>
+   * @see #FileActivity(User, Type, Purpose, SPath, SPath, byte[], String)
+   */
+  public FileActivity(
+      User source,
+      Type type,
+      Purpose purpose,
+      SPath newPath,
+      SPath oldPath,
+      byte[] content,
+      String encoding,
+      Long checksum,
+      Timestamp jupiterTimestamp) {
+
     super(source, newPath);
 
     if (type == null) throw new IllegalArgumentException("type must not be null");
@@ -77,11 +107,33 @@ public class FileActivity extends AbstractResourceActivity
         break;
     }
 
+    if (checksum != null && (type != Type.MOVED || content != null))
+      throw new IllegalArgumentException("checksum is only valid for moves without content");
+
+    if (jupiterTimestamp != null && checksum == null)
+      throw new IllegalArgumentException("timestamp is only valid for moves with a checksum");
+
     this.type = type;
     this.oldPath = oldPath;
     this.content = content;
     this.encoding = encoding;
     this.purpose = purpose;
+    this.checksum = checksum;
+    this.jupiterTimestamp = jupiterTimestamp;
+  }
+
+  /** Returns a copy of the FileActivity with a new {@link Timestamp} for its checksum. */
+  public FileActivity withTimestamp(Timestamp jupiterTimestamp) {
+    return new FileActivity(
+        getSource(),
+        type,
+        purpose,
+        getPath(),
+        oldPath,
+        content,
+        encoding,
+        checksum,
+        jupiterTimestamp);
   }
 
   @Override
@@ -116,6 +168,25 @@ public class FileActivity extends AbstractResourceActivity
     return encoding;
   }
 
+  /**
+   * Returns the checksum of the content of the moved file.
+   *
+   * @return the checksum or <code>null</code> if not available
+   */
+  public Long getChecksum() {
+    return checksum;
+  }
+
+  /**
+   * Returns the Jupiter timestamp of the checksum. The checksum is only comparable if the receiver
+   * did not modify the document concurrently.
+   *
+   * @return the timestamp or <code>null</code> if not available
+   */
+  public Timestamp getTimestamp() {
+    return jupiterTimestamp;
+  }
+
   @Override
   public String toString() {
     return "FileActivity [dst:path="
@@ -128,7 +199,10 @@ public class FileActivity extends AbstractResourceActivity
         + (encoding == null ? "N/A" : encoding)
         + ", content="
         + (content == null ? "0" : content.length)
-        + " byte(s)]";
+        + " byte(s)"
+        + (checksum == null ? "" : ", checksum=" + Long.toHexString(checksum))
+        + (jupiterTimestamp == null ? "" : ", jupiterTimestamp=" + jupiterTimestamp)
+        + "]";
   }
 
   @Override
@@ -160,6 +234,10 @@ public class FileActivity extends AbstractResourceActivity
 
     if (!Arrays.equals(content, other.content)) return false;
 
+    if (!ObjectUtils.equals(checksum, other.checksum)) return false;
+
+    if (!ObjectUtils.equals(jupiterTimestamp, other.jupiterTimestamp)) return false;
+
     return ObjectUtils.equals(encoding, other.encoding);
   }
 
@@ -0,0 +1,157 @@
+package saros.activities;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+import java.util.Arrays;
+import org.apache.commons.lang3.ObjectUtils;
+import saros.activities.FileActivity.Purpose;
+import saros.session.User;
+
+/**
+ * A FileDeltaActivity replaces a {@link FileActivity} of type {@link FileActivity.Type#CREATED}
+ * during transmission. Instead of the whole content it only contains a {@linkplain
+ * saros.util.BinaryDelta delta} to the content of the same path that was transmitted before over
+ * the same connection.
+ *
+ * <p>It is never executed, the receiving {@link saros.session.internal.ActivitySequencer} converts
+ * it back into the original file activity before the activity is dispatched.
+ */
+@XStreamAlias("fileDeltaActivity")
+public class FileDeltaActivity extends AbstractResourceActivity {
+
+  @XStreamAsAttribute private final User target;
+
+  @XStreamAsAttribute private final Purpose purpose;
+
+  @XStreamAsAttribute private final String encoding;
+
+  @XStreamAlias("base")
+  @XStreamAsAttribute
+  private final long baseChecksum;
+
+  @XStreamAlias("checksum")
+  @XStreamAsAttribute
+  private final long checksum;
+
+  private final byte[] delta;
+
+  /**
+   * @param source the user who is the source (originator) of this Activity
+   * @param target the target user of the original activity or <code>null</code> if the original
+   *     activity is not targeted
+   * @param purpose the purpose of the original activity
+   * @param path the path of the file
+   * @param encoding the encoding the content is encoded with or <code>null</code>
+   * @param baseChecksum the CRC32 checksum of the content the delta was created for
+   * @param checksum the CRC32 checksum of the content of the original activity
+   * @param delta the delta that transforms the base content into the content of the original
+   *     activity
+   */
+  public FileDeltaActivity(
+      User source,
+      User target,
+      Purpose purpose,
+      SPath path,
+      String encoding,
+      long baseChecksum,
+      long checksum,
+      byte[] delta) {
+
+    super(source, path);
+
+    if (purpose == null) throw new IllegalArgumentException("purpose must not be null");
+    if (path == null) throw new IllegalArgumentException("path must not be null");
+    if (delta == null) throw new IllegalArgumentException("delta must not be null");
+
+    this.target = target;
+    this.purpose = purpose;
+    this.encoding = encoding;
+    this.baseChecksum = baseChecksum;
+    this.checksum = checksum;
+    this.delta = delta;
+  }
+
+  @Override
+  public boolean isValid() {
+    return super.isValid() && (getPath() != null) && (delta != null);
+  }
+
+  /** Returns the target of the original activity or <code>null</code> if it was not targeted. */
+  public User getTarget() {
+    return target;
+  }
+
+  public Purpose getPurpose() {
+    return purpose;
+  }
+
+  public String getEncoding() {
+    return encoding;
+  }
+
+  public long getBaseChecksum() {
+    return baseChecksum;
+  }
+
+  public long getChecksum() {
+    return checksum;
+  }
+
+  /**
+   * Returns the delta.
+   *
+   * <p><b>Important:</b> the content of the array must <b>not</b> be changed
+   */
+  public byte[] getDelta() {
+    return delta;
+  }
+
+  @Override
+  public void dispatch(IActivityReceiver receiver) {
+    receiver.receive(this);
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = super.hashCode();
+    result = prime * result + Arrays.hashCode(delta);
+    result = prime * result + (int) (checksum ^ (checksum >>> 32));
+    result = prime * result + (int) (baseChecksum ^ (baseChecksum >>> 32));
+    result = prime * result + ObjectUtils.hashCode(purpose);
+    result = prime * result + ObjectUtils.hashCode(target);
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) return true;
+    if (!super.equals(obj)) return false;
+    if (!(obj instanceof FileDeltaActivity)) return false;
+
+    FileDeltaActivity other = (FileDeltaActivity) obj;
+
+    if (this.baseChecksum != other.baseChecksum) return false;
+    if (this.checksum != other.checksum) return false;
+    if (this.purpose != other.purpose) return false;
+    if (!ObjectUtils.equals(this.target, other.target)) return false;
+    if (!ObjectUtils.equals(this.encoding, other.encoding)) return false;
+
+    return Arrays.equals(this.delta, other.delta);
+  }
+
+  @Override
+  public String toString() {
+    return "FileDeltaActivity [path="
+        + getPath()
+        + ", target="
+        + (target == null ? "N/A" : target)
+        + ", purpose="
+        + purpose
+        + ", encoding="
+        + (encoding == null ? "N/A" : encoding)
+        + ", delta="
+        + delta.length
+        + " byte(s)]";
+  }
+}
@@ -29,6 +29,8 @@ public interface IActivityReceiver {
 
   void receive(FileActivity fileActivity);
 
+  void receive(FileDeltaActivity fileDeltaActivity);
+
   void receive(FolderCreatedActivity folderCreatedActivity);
 
   void receive(FolderDeletedActivity folderDeletedActivity);
@@ -51,6 +53,8 @@ public interface IActivityReceiver {
 
   void receive(TextEditActivity textEditActivity);
 
+  void receive(TextRecoveryActivity textRecoveryActivity);
+
   void receive(TextSelectionActivity textSelectionActivity);
 
   void receive(ViewportActivity viewportActivity);
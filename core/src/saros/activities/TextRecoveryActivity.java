@@ -0,0 +1,142 @@
+package saros.activities;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.commons.lang3.StringUtils;
+import saros.session.User;
+
+/**
+ * A TextRecoveryActivity is sent by the host during a consistency recovery instead of a {@link
+ * FileActivity} with the whole document content if only a range of the target's document differs
+ * from the host's document.
+ *
+ * <p>It is not executed directly, instead the receiving {@link
+ * saros.concurrent.management.ConcurrentDocumentClient} resets its Jupiter document and converts it
+ * into a {@link TextEditActivity} that replaces the range.
+ */
+@XStreamAlias("textRecoveryActivity")
+public class TextRecoveryActivity extends AbstractResourceActivity implements ITargetedActivity {
+
+  @XStreamAsAttribute private final User target;
+
+  @XStreamAsAttribute private final int offset;
+
+  @XStreamAsAttribute private final int replacedLength;
+
+  @XStreamAsAttribute private final int documentLength;
+
+  private final String text;
+
+  /**
+   * @param source the user who is the source (originator) of this Activity
+   * @param target the target user to receive this Activity
+   * @param path path of the document to recover
+   * @param offset the offset of the range to replace
+   * @param replacedLength the length of the range to replace
+   * @param text the text that replaces the range
+   * @param documentLength the length the target's document is expected to have <b>before</b> the
+   *     range is replaced
+   */
+  public TextRecoveryActivity(
+      User source,
+      User target,
+      SPath path,
+      int offset,
+      int replacedLength,
+      String text,
+      int documentLength) {
+
+    super(source, path);
+
+    if (target == null) throw new IllegalArgumentException("target must not be null");
+    if (path == null) throw new IllegalArgumentException("path must not be null");
+    if (text == null) throw new IllegalArgumentException("text must not be null");
+
+    this.target = target;
+    this.offset = offset;
+    this.replacedLength = replacedLength;
+    this.text = text;
+    this.documentLength = documentLength;
+  }
+
+  @Override
+  public boolean isValid() {
+    return super.isValid() && (getPath() != null) && (target != null);
+  }
+
+  @Override
+  public User getTarget() {
+    return target;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  public int getReplacedLength() {
+    return replacedLength;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  public int getDocumentLength() {
+    return documentLength;
+  }
+
+  @Override
+  public void dispatch(IActivityReceiver receiver) {
+    receiver.receive(this);
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = super.hashCode();
+    result = prime * result + offset;
+    result = prime * result + replacedLength;
+    result = prime * result + documentLength;
+    result = prime * result + ObjectUtils.hashCode(text);
+    result = prime * result + ObjectUtils.hashCode(target);
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) return true;
+    if (!super.equals(obj)) return false;
+    if (!(obj instanceof TextRecoveryActivity)) return false;
+
+    TextRecoveryActivity other = (TextRecoveryActivity) obj;
+
+    if (this.offset != other.offset) return false;
+    if (this.replacedLength != other.replacedLength) return false;
+    if (this.documentLength != other.documentLength) return false;
+    if (!ObjectUtils.equals(this.text, other.text)) return false;
+    if (!ObjectUtils.equals(this.target, other.target)) return false;
+
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "TextRecoveryActivity(src: "
+        + getSource()
+        + ", target: "
+        + target
+        + ", path: "
+        + getPath()
+        + ", offset: "
+        + offset
+        + ", replaced: "
+        + replacedLength
+        + ", new: '"
+        + StringEscapeUtils.escapeJava(StringUtils.abbreviate(text, 150))
+        + "', document length: "
+        + documentLength
+        + ")";
+  }
+}
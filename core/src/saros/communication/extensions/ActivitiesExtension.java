@@ -22,13 +22,19 @@ package saros.communication.extensions;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 import com.thoughtworks.xstream.annotations.XStreamImplicit;
+import java.io.IOException;
 import java.util.List;
+import org.apache.log4j.Logger;
 import org.jivesoftware.smack.packet.PacketExtension;
+import org.jivesoftware.smack.provider.PacketExtensionProvider;
+import org.jivesoftware.smack.provider.ProviderManager;
+import org.xmlpull.v1.XmlPullParser;
 import saros.activities.ChangeColorActivity;
 import saros.activities.ChecksumActivity;
 import saros.activities.ChecksumErrorActivity;
 import saros.activities.EditorActivity;
 import saros.activities.FileActivity;
+import saros.activities.FileDeltaActivity;
 import saros.activities.FolderCreatedActivity;
 import saros.activities.FolderDeletedActivity;
 import saros.activities.FolderMovedActivity;
@@ -42,6 +48,7 @@ import saros.activities.StartFollowingActivity;
 import saros.activities.StopActivity;
 import saros.activities.StopFollowingActivity;
 import saros.activities.TargetedFileActivity;
+import saros.activities.TextRecoveryActivity;
 import saros.activities.TextSelectionActivity;
 import saros.activities.ViewportActivity;
 import saros.concurrent.jupiter.internal.JupiterVectorTime;
@@ -50,14 +57,20 @@ import saros.concurrent.jupiter.internal.text.InsertOperation;
 import saros.concurrent.jupiter.internal.text.NoOperation;
 import saros.concurrent.jupiter.internal.text.SplitOperation;
 import saros.concurrent.jupiter.internal.text.TimestampOperation;
+import saros.net.IBinaryPacketExtension;
+import saros.net.IBinaryPacketExtensionProvider;
 import saros.net.xmpp.JID;
 import saros.session.User;
 
 @XStreamAlias("ADOS")
 public class ActivitiesExtension extends SarosSessionPacketExtension {
 
+  private static final Logger LOG = Logger.getLogger(ActivitiesExtension.class);
+
   public static final Provider PROVIDER = new Provider();
 
+  public static final BinaryProvider BINARY_PROVIDER = new BinaryProvider();
+
   @XStreamImplicit private final List<IActivity> activities;
 
   @XStreamAlias("seq")
@@ -145,6 +158,7 @@ public class ActivitiesExtension extends SarosSessionPacketExtension {
           ChecksumErrorActivity.class,
           EditorActivity.class,
           FileActivity.class,
+          FileDeltaActivity.class,
           FolderCreatedActivity.class,
           FolderDeletedActivity.class,
           FolderMovedActivity.class,
@@ -156,8 +170,107 @@ public class ActivitiesExtension extends SarosSessionPacketExtension {
           StartFollowingActivity.class,
           StopActivity.class,
           StopFollowingActivity.class,
+          TextRecoveryActivity.class,
           TextSelectionActivity.class,
           ViewportActivity.class);
     }
   }
+
+  /**
+   * Provider for the compact binary representation of this extension. The binary representation is
+   * only available while an {@link ActivitiesExtensionCodec} is registered, i.e during a running
+   * session. Received binary extensions are converted back into the payload of the regular {@link
+   * #PROVIDER} so that they are accepted by its packet filters. XML input is delegated to the
+   * regular provider.
+   */
+  public static class BinaryProvider
+      implements IBinaryPacketExtensionProvider, PacketExtensionProvider {
+
+    /** The namespace that is used for binary encoded extensions. */
+    public static final String NAMESPACE = EXTENSION_NAMESPACE + ":bin";
+
+    private volatile ActivitiesExtensionCodec codec;
+
+    private BinaryProvider() {
+      ProviderManager.getInstance()
+          .addExtensionProvider(PROVIDER.getElementName(), NAMESPACE, this);
+    }
+
+    synchronized void registerCodec(ActivitiesExtensionCodec codec) {
+      this.codec = codec;
+    }
+
+    synchronized void unregisterCodec(ActivitiesExtensionCodec codec) {
+      if (this.codec == codec) this.codec = null;
+    }
+
+    /**
+     * Creates a packet extension for the given payload that will be transmitted in its binary
+     * representation. If there is currently no codec available or the payload cannot be encoded the
+     * regular XStream based extension is returned instead.
+     *
+     * @param extension the payload
+     * @return a packet extension containing the payload
+     */
+    public PacketExtension create(ActivitiesExtension extension) {
+      final ActivitiesExtensionCodec currentCodec = codec;
+
+      if (currentCodec != null) {
+        try {
+          return new BinaryPacketExtension(extension, currentCodec.encode(extension));
+        } catch (IOException e) {
+          LOG.warn("could not encode activities, falling back to XML: " + e.getMessage());
+        }
+      }
+
+      return PROVIDER.create(extension);
+    }
+
+    @Override
+    public PacketExtension parseBinaryExtension(byte[] data) throws IOException {
+      final ActivitiesExtensionCodec currentCodec = codec;
+
+      if (currentCodec == null)
+        throw new IOException("cannot decode activities, no session codec is registered");
+
+      return PROVIDER.create(currentCodec.decode(data));
+    }
+
+    @Override
+    public PacketExtension parseExtension(XmlPullParser parser) {
+      return PROVIDER.parseExtension(parser);
+    }
+  }
+
+  private static class BinaryPacketExtension implements IBinaryPacketExtension {
+
+    private final ActivitiesExtension payload;
+    private final byte[] data;
+
+    private BinaryPacketExtension(ActivitiesExtension payload, byte[] data) {
+      this.payload = payload;
+      this.data = data;
+    }
+
+    @Override
+    public String getElementName() {
+      return PROVIDER.getElementName();
+    }
+
+    @Override
+    public String getNamespace() {
+      return BinaryProvider.NAMESPACE;
+    }
+
+    /** Returns the XML representation of the payload in case it is not sent over a stream. */
+    @Override
+    public String toXML() {
+      return PROVIDER.create(payload).toXML();
+    }
+
+    @Override
+    public byte[] toBinary() {
+      return data;
+    }
+  }
 }
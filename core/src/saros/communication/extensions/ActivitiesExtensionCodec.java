@@ -0,0 +1,922 @@
+package saros.communication.extensions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import org.picocontainer.Startable;
+import saros.activities.ChangeColorActivity;
+import saros.activities.ChecksumActivity;
+import saros.activities.ChecksumErrorActivity;
+import saros.activities.EditorActivity;
+import saros.activities.FileActivity;
+import saros.activities.FileDeltaActivity;
+import saros.activities.FolderCreatedActivity;
+import saros.activities.FolderDeletedActivity;
+import saros.activities.FolderMovedActivity;
+import saros.activities.IActivity;
+import saros.activities.IActivityReceiver;
+import saros.activities.JupiterActivity;
+import saros.activities.NOPActivity;
+import saros.activities.PermissionActivity;
+import saros.activities.ProgressActivity;
+import saros.activities.SPath;
+import saros.activities.StartFollowingActivity;
+import saros.activities.StopActivity;
+import saros.activities.StopFollowingActivity;
+import saros.activities.TargetedFileActivity;
+import saros.activities.TextEditActivity;
+import saros.activities.TextRecoveryActivity;
+import saros.activities.TextSelectionActivity;
+import saros.activities.ViewportActivity;
+import saros.annotations.Component;
+import saros.concurrent.jupiter.Operation;
+import saros.concurrent.jupiter.Timestamp;
+import saros.concurrent.jupiter.internal.JupiterVectorTime;
+import saros.concurrent.jupiter.internal.text.DeleteOperation;
+import saros.concurrent.jupiter.internal.text.InsertOperation;
+import saros.concurrent.jupiter.internal.text.NoOperation;
+import saros.concurrent.jupiter.internal.text.SplitOperation;
+import saros.concurrent.jupiter.internal.text.TimestampOperation;
+import saros.filesystem.IPathFactory;
+import saros.filesystem.IProject;
+import saros.net.xmpp.JID;
+import saros.session.ISarosSession;
+import saros.session.User;
+import saros.session.User.Permission;
+
+/**
+ * Compact binary codec for {@link ActivitiesExtension activity extensions}. It is used instead of
+ * the XStream XML representation for peers that announced support for the same codec {@link
+ * #VERSION} during the version exchange. XStream remains the fallback in all other cases.
+ *
+ * <p>The wire format is schema driven: every activity and operation type has a fixed type id and
+ * its fields are written in a fixed order. Strings that are likely to be repeated inside one
+ * extension (JIDs, project ids and paths) are written only once and referenced afterwards.
+ *
+ * <p>Like the session-dependent XStream converters this codec needs a running session to convert
+ * {@link User users} and {@link SPath paths} and registers itself at {@link
+ * ActivitiesExtension#BINARY_PROVIDER} when the session starts.
+ */
+@Component
+public class ActivitiesExtensionCodec implements Startable {
+
+  private static final Logger LOG = Logger.getLogger(ActivitiesExtensionCodec.class);
+
+  /** Version of the wire format. Must be increased on every incompatible change. */
+  public static final int VERSION = 5;
+
+  /** Whether the codec is offered to remote peers at all. */
+  public static final boolean ENABLED =
+      Boolean.parseBoolean(
+          System.getProperty("saros.communication.BINARY_ACTIVITY_CODEC", Boolean.TRUE.toString()));
+
+  /*
+   * Type ids, do not change or reuse them without increasing the VERSION !
+   */
+
+  private static final int CHANGE_COLOR_ACTIVITY = 1;
+  private static final int CHECKSUM_ACTIVITY = 2;
+  private static final int CHECKSUM_ERROR_ACTIVITY = 3;
+  private static final int EDITOR_ACTIVITY = 4;
+  private static final int FILE_ACTIVITY = 5;
+  private static final int FOLDER_CREATED_ACTIVITY = 6;
+  private static final int FOLDER_DELETED_ACTIVITY = 7;
+  private static final int FOLDER_MOVED_ACTIVITY = 8;
+  private static final int JUPITER_ACTIVITY = 9;
+  private static final int NOP_ACTIVITY = 10;
+  private static final int PERMISSION_ACTIVITY = 11;
+  private static final int PROGRESS_ACTIVITY = 12;
+  private static final int START_FOLLOWING_ACTIVITY = 13;
+  private static final int STOP_ACTIVITY = 14;
+  private static final int STOP_FOLLOWING_ACTIVITY = 15;
+  private static final int TARGETED_FILE_ACTIVITY = 16;
+  private static final int TEXT_EDIT_ACTIVITY = 17;
+  private static final int TEXT_SELECTION_ACTIVITY = 18;
+  private static final int VIEWPORT_ACTIVITY = 19;
+  private static final int TEXT_RECOVERY_ACTIVITY = 20;
+  private static final int FILE_DELTA_ACTIVITY = 21;
+
+  private static final int NO_OPERATION = 0;
+  private static final int INSERT_OPERATION = 1;
+  private static final int DELETE_OPERATION = 2;
+  private static final int SPLIT_OPERATION = 3;
+  private static final int TIMESTAMP_OPERATION = 4;
+
+  private static final int NULL_TIMESTAMP = 0;
+  private static final int JUPITER_VECTOR_TIME = 1;
+
+  private static final int NULL_SYMBOL = 0;
+  private static final int NEW_SYMBOL = 1;
+
+  private static final Map<Class<? extends IActivity>, Integer> ACTIVITY_TYPES =
+      new HashMap<Class<? extends IActivity>, Integer>();
+
+  static {
+    ACTIVITY_TYPES.put(ChangeColorActivity.class, CHANGE_COLOR_ACTIVITY);
+    ACTIVITY_TYPES.put(ChecksumActivity.class, CHECKSUM_ACTIVITY);
+    ACTIVITY_TYPES.put(ChecksumErrorActivity.class, CHECKSUM_ERROR_ACTIVITY);
+    ACTIVITY_TYPES.put(EditorActivity.class, EDITOR_ACTIVITY);
+    ACTIVITY_TYPES.put(FileActivity.class, FILE_ACTIVITY);
+    ACTIVITY_TYPES.put(FileDeltaActivity.class, FILE_DELTA_ACTIVITY);
+    ACTIVITY_TYPES.put(FolderCreatedActivity.class, FOLDER_CREATED_ACTIVITY);
+    ACTIVITY_TYPES.put(FolderDeletedActivity.class, FOLDER_DELETED_ACTIVITY);
+    ACTIVITY_TYPES.put(FolderMovedActivity.class, FOLDER_MOVED_ACTIVITY);
+    ACTIVITY_TYPES.put(JupiterActivity.class, JUPITER_ACTIVITY);
+    ACTIVITY_TYPES.put(NOPActivity.class, NOP_ACTIVITY);
+    ACTIVITY_TYPES.put(PermissionActivity.class, PERMISSION_ACTIVITY);
+    ACTIVITY_TYPES.put(ProgressActivity.class, PROGRESS_ACTIVITY);
+    ACTIVITY_TYPES.put(StartFollowingActivity.class, START_FOLLOWING_ACTIVITY);
+    ACTIVITY_TYPES.put(StopActivity.class, STOP_ACTIVITY);
+    ACTIVITY_TYPES.put(StopFollowingActivity.class, STOP_FOLLOWING_ACTIVITY);
+    ACTIVITY_TYPES.put(TargetedFileActivity.class, TARGETED_FILE_ACTIVITY);
+    ACTIVITY_TYPES.put(TextEditActivity.class, TEXT_EDIT_ACTIVITY);
+    ACTIVITY_TYPES.put(TextRecoveryActivity.class, TEXT_RECOVERY_ACTIVITY);
+    ACTIVITY_TYPES.put(TextSelectionActivity.class, TEXT_SELECTION_ACTIVITY);
+    ACTIVITY_TYPES.put(ViewportActivity.class, VIEWPORT_ACTIVITY);
+  }
+
+  private final ISarosSession session;
+  private final IPathFactory pathFactory;
+
+  public ActivitiesExtensionCodec(ISarosSession session, IPathFactory pathFactory) {
+    this.session = session;
+    this.pathFactory = pathFactory;
+  }
+
+  @Override
+  public void start() {
+    ActivitiesExtension.BINARY_PROVIDER.registerCodec(this);
+  }
+
+  @Override
+  public void stop() {
+    ActivitiesExtension.BINARY_PROVIDER.unregisterCodec(this);
+  }
+
+  /**
+   * Encodes the given extension.
+   *
+   * @param extension the extension to encode
+   * @return the binary representation of the extension
+   * @throws IOException if the extension contains activities or operations that are not supported
+   *     by this codec
+   */
+  public byte[] encode(ActivitiesExtension extension) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+    final Encoder encoder = new Encoder(new DataOutputStream(out));
+
+    encoder.out.writeByte(VERSION);
+    encoder.writeString(extension.getSessionID());
+    encoder.out.writeInt(extension.getSequenceNumber());
+
+    final List<IActivity> activities = extension.getActivities();
+
+    writeVarInt(encoder.out, activities.size());
+
+    for (final IActivity activity : activities) encoder.writeActivity(activity);
+
+    encoder.out.flush();
+    return out.toByteArray();
+  }
+
+  /**
+   * Decodes an extension that was encoded with {@link #encode}.
+   *
+   * <p>Activities that cannot be restored in the current session state (e.g because the source user
+   * already left the session) are replaced by {@linkplain IActivity#isValid() invalid} placeholders
+   * so that the amount of activities, and thus the sequence numbering, is preserved.
+   *
+   * @param data the binary representation of the extension
+   * @return the decoded extension
+   * @throws IOException if the data is malformed or was encoded with a different codec version
+   */
+  public ActivitiesExtension decode(byte[] data) throws IOException {
+    final Decoder decoder = new Decoder(new DataInputStream(new ByteArrayInputStream(data)));
+
+    final int version = decoder.in.readUnsignedByte();
+
+    if (version != VERSION)
+      throw new IOException("unsupported codec version: " + version + ", expected: " + VERSION);
+
+    final String sessionID = decoder.readString();
+    final int sequenceNumber = decoder.in.readInt();
+    final int count = readVarInt(decoder.in);
+
+    final List<IActivity> activities = new ArrayList<IActivity>(count);
+
+    for (int i = 0; i < count; i++) activities.add(decoder.readActivity());
+
+    return new ActivitiesExtension(sessionID, activities, sequenceNumber);
+  }
+
+  private class Encoder {
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> symbols = new HashMap<String, Integer>();
+
+    private Encoder(DataOutputStream out) {
+      this.out = out;
+    }
+
+    private void writeActivity(IActivity activity) throws IOException {
+      final Integer type = ACTIVITY_TYPES.get(activity.getClass());
+
+      if (type == null)
+        throw new IOException("unsupported activity type: " + activity.getClass().getName());
+
+      out.writeByte(type);
+      writeUser(activity.getSource());
+
+      switch (type) {
+        case CHANGE_COLOR_ACTIVITY:
+          final ChangeColorActivity changeColor = (ChangeColorActivity) activity;
+          writeUser(changeColor.getTarget());
+          writeUser(changeColor.getAffected());
+          writeSignedVarInt(out, changeColor.getColorID());
+          break;
+
+        case CHECKSUM_ACTIVITY:
+          final ChecksumActivity checksum = (ChecksumActivity) activity;
+          writePath(checksum.getPath());
+          writeSignedVarLong(out, checksum.getHash());
+          writeSignedVarLong(out, checksum.getLength());
+          writeTimestamp(checksum.getTimestamp());
+          break;
+
+        case CHECKSUM_ERROR_ACTIVITY:
+          final ChecksumErrorActivity checksumError = (ChecksumErrorActivity) activity;
+          writeUser(checksumError.getTarget());
+          writeString(checksumError.getRecoveryID());
+
+          final List<SPath> paths = checksumError.getPaths();
+
+          if (paths == null) {
+            writeVarInt(out, 0);
+            break;
+          }
+
+          writeVarInt(out, paths.size() + 1);
+
+          for (final SPath path : paths) writePath(path);
+
+          final List<String> segmentChecksums = checksumError.getSegmentChecksums();
+
+          out.writeBoolean(segmentChecksums != null);
+
+          if (segmentChecksums == null) break;
+
+          for (final String segmentChecksum : segmentChecksums) writeString(segmentChecksum);
+
+          break;
+
+        case EDITOR_ACTIVITY:
+          final EditorActivity editor = (EditorActivity) activity;
+          writeEnum(editor.getType());
+          writePath(editor.getPath());
+          break;
+
+        case FILE_ACTIVITY:
+          final FileActivity file = (FileActivity) activity;
+          writeFileActivity(file);
+          writeChecksum(file.getChecksum());
+          writeTimestamp(file.getTimestamp());
+          break;
+
+        case TARGETED_FILE_ACTIVITY:
+          final TargetedFileActivity targetedFile = (TargetedFileActivity) activity;
+          writeUser(targetedFile.getTarget());
+          writeFileActivity(targetedFile);
+          break;
+
+        case FILE_DELTA_ACTIVITY:
+          final FileDeltaActivity fileDelta = (FileDeltaActivity) activity;
+          writeUser(fileDelta.getTarget());
+          writeEnum(fileDelta.getPurpose());
+          writePath(fileDelta.getPath());
+          writeSymbol(fileDelta.getEncoding());
+          out.writeInt((int) fileDelta.getBaseChecksum());
+          out.writeInt((int) fileDelta.getChecksum());
+          writeBytes(fileDelta.getDelta());
+          break;
+
+        case FOLDER_CREATED_ACTIVITY:
+          writePath(((FolderCreatedActivity) activity).getPath());
+          break;
+
+        case FOLDER_DELETED_ACTIVITY:
+          writePath(((FolderDeletedActivity) activity).getPath());
+          break;
+
+        case FOLDER_MOVED_ACTIVITY:
+          final FolderMovedActivity folderMoved = (FolderMovedActivity) activity;
+          writePath(folderMoved.getPath());
+          writePath(folderMoved.getDestination());
+          break;
+
+        case JUPITER_ACTIVITY:
+          final JupiterActivity jupiter = (JupiterActivity) activity;
+          writePath(jupiter.getPath());
+          writeTimestamp(jupiter.getTimestamp());
+          writeOperation(jupiter.getOperation());
+          break;
+
+        case NOP_ACTIVITY:
+          final NOPActivity nop = (NOPActivity) activity;
+          writeUser(nop.getTarget());
+          writeSignedVarInt(out, nop.getID());
+          break;
+
+        case PERMISSION_ACTIVITY:
+          final PermissionActivity permission = (PermissionActivity) activity;
+          writeUser(permission.getAffectedUser());
+          writeEnum(permission.getPermission());
+          break;
+
+        case PROGRESS_ACTIVITY:
+          final ProgressActivity progress = (ProgressActivity) activity;
+          writeUser(progress.getTarget());
+          writeSymbol(progress.getProgressID());
+          writeSignedVarInt(out, progress.getWorkCurrent());
+          writeSignedVarInt(out, progress.getWorkTotal());
+          writeString(progress.getTaskName());
+          writeEnum(progress.getAction());
+          break;
+
+        case START_FOLLOWING_ACTIVITY:
+          writeUser(((StartFollowingActivity) activity).getFollowedUser());
+          break;
+
+        case STOP_FOLLOWING_ACTIVITY:
+          break;
+
+        case STOP_ACTIVITY:
+          final StopActivity stop = (StopActivity) activity;
+          writeUser(stop.getInitiator());
+          writeUser(stop.getAffected());
+          writeEnum(stop.getType());
+          writeEnum(stop.getState());
+          writeString(stop.getActivityID());
+          break;
+
+        case TEXT_EDIT_ACTIVITY:
+          final TextEditActivity textEdit = (TextEditActivity) activity;
+          writePath(textEdit.getPath());
+          writeVarInt(out, textEdit.getOffset());
+          writeString(textEdit.getText());
+          writeString(textEdit.getReplacedText());
+          break;
+
+        case TEXT_RECOVERY_ACTIVITY:
+          final TextRecoveryActivity textRecovery = (TextRecoveryActivity) activity;
+          writeUser(textRecovery.getTarget());
+          writePath(textRecovery.getPath());
+          writeVarInt(out, textRecovery.getOffset());
+          writeVarInt(out, textRecovery.getReplacedLength());
+          writeVarInt(out, textRecovery.getDocumentLength());
+          writeString(textRecovery.getText());
+          break;
+
+        case TEXT_SELECTION_ACTIVITY:
+          final TextSelectionActivity selection = (TextSelectionActivity) activity;
+          writePath(selection.getPath());
+          writeSignedVarInt(out, selection.getOffset());
+          writeSignedVarInt(out, selection.getLength());
+          break;
+
+        case VIEWPORT_ACTIVITY:
+          final ViewportActivity viewport = (ViewportActivity) activity;
+          writePath(viewport.getPath());
+          writeSignedVarInt(out, viewport.getStartLine());
+          writeSignedVarInt(out, viewport.getNumberOfLines());
+          break;
+
+        default:
+          throw new IOException("unsupported activity type: " + type);
+      }
+    }
+
+    /** Writes the fields that are shared by file activities and targeted file activities. */
+    private void writeFileActivity(FileActivity file) throws IOException {
+      writeEnum(file.getType());
+      writeEnum(file.isRecovery() ? FileActivity.Purpose.RECOVERY : FileActivity.Purpose.ACTIVITY);
+      writePath(file.getPath());
+      writePath(file.getOldPath());
+      writeSymbol(file.getEncoding());
+      writeBytes(file.getContent());
+    }
+
+    private void writeOperation(Operation operation) throws IOException {
+      if (operation instanceof NoOperation) {
+        out.writeByte(NO_OPERATION);
+      } else if (operation instanceof InsertOperation) {
+        final InsertOperation insert = (InsertOperation) operation;
+        out.writeByte(INSERT_OPERATION);
+        writeVarInt(out, insert.getPosition());
+        writeVarInt(out, insert.getOrigin());
+        writeString(insert.getText());
+      } else if (operation instanceof DeleteOperation) {
+        final DeleteOperation delete = (DeleteOperation) operation;
+        out.writeByte(DELETE_OPERATION);
+        writeVarInt(out, delete.getPosition());
+        writeString(delete.getText());
+      } else if (operation instanceof SplitOperation) {
+        final SplitOperation split = (SplitOperation) operation;
+        out.writeByte(SPLIT_OPERATION);
+        writeOperation(split.getFirst());
+        writeOperation(split.getSecond());
+      } else if (operation instanceof TimestampOperation) {
+        out.writeByte(TIMESTAMP_OPERATION);
+      } else {
+        throw new IOException(
+            "unsupported operation type: "
+                + (operation == null ? null : operation.getClass().getName()));
+      }
+    }
+
+    private void writeTimestamp(Timestamp timestamp) throws IOException {
+      if (timestamp == null) {
+        out.writeByte(NULL_TIMESTAMP);
+        return;
+      }
+
+      if (!(timestamp instanceof JupiterVectorTime))
+        throw new IOException("unsupported timestamp type: " + timestamp.getClass().getName());
+
+      final JupiterVectorTime vectorTime = (JupiterVectorTime) timestamp;
+      out.writeByte(JUPITER_VECTOR_TIME);
+      writeVarInt(out, vectorTime.getLocalOperationCount());
+      writeVarInt(out, vectorTime.getRemoteOperationCount());
+    }
+
+    private void writeUser(User user) throws IOException {
+      writeSymbol(user == null ? null : user.getJID().toString());
+    }
+
+    private void writePath(SPath path) throws IOException {
+      if (path == null) {
+        writeSymbol(null);
+        return;
+      }
+
+      final String projectID = session.getProjectID(path.getProject());
+
+      if (projectID == null) {
+        LOG.error(
+            "Could not retrieve project id for project '"
+                + path.getProject().getName()
+                + "'. Make sure you don't create activities for non-shared projects");
+        writeSymbol(null);
+        return;
+      }
+
+      writeSymbol(projectID);
+      writeSymbol(pathFactory.fromPath(path.getProjectRelativePath()));
+    }
+
+    private void writeEnum(Enum<?> value) throws IOException {
+      writeVarInt(out, value == null ? 0 : value.ordinal() + 1);
+    }
+
+    private void writeSymbol(String symbol) throws IOException {
+      if (symbol == null) {
+        writeVarInt(out, NULL_SYMBOL);
+        return;
+      }
+
+      final Integer index = symbols.get(symbol);
+
+      if (index != null) {
+        writeVarInt(out, index + NEW_SYMBOL + 1);
+        return;
+      }
+
+      symbols.put(symbol, symbols.size());
+      writeVarInt(out, NEW_SYMBOL);
+      writeBytes(symbol.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeString(String value) throws IOException {
+      writeBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeChecksum(Long checksum) throws IOException {
+      out.writeBoolean(checksum != null);
+
+      if (checksum != null) out.writeLong(checksum);
+    }
+
+    private void writeBytes(byte[] value) throws IOException {
+      if (value == null) {
+        writeVarInt(out, 0);
+        return;
+      }
+
+      writeVarInt(out, value.length + 1);
+      out.write(value);
+    }
+  }
+
+  private class Decoder {
+
+    private final DataInputStream in;
+    private final List<String> symbols = new ArrayList<String>();
+
+    private Decoder(DataInputStream in) {
+      this.in = in;
+    }
+
+    private IActivity readActivity() throws IOException {
+      final int type = in.readUnsignedByte();
+      final User source = readUser();
+
+      try {
+        return readActivity(type, source);
+      } catch (IllegalArgumentException e) {
+        LOG.warn("could not restore activity of type " + type + ": " + e.getMessage());
+        return new UndecodableActivity(type);
+      }
+    }
+
+    private IActivity readActivity(int type, User source) throws IOException {
+      switch (type) {
+        case CHANGE_COLOR_ACTIVITY:
+          return new ChangeColorActivity(source, readUser(), readUser(), readSignedVarInt(in));
+
+        case CHECKSUM_ACTIVITY:
+          return new ChecksumActivity(
+              source, readPath(), readSignedVarLong(in), readSignedVarLong(in), readTimestamp());
+
+        case CHECKSUM_ERROR_ACTIVITY:
+          final User checksumErrorTarget = readUser();
+          final String recoveryID = readString();
+          final int pathCount = readVarInt(in);
+
+          List<SPath> paths = null;
+          List<String> segmentChecksums = null;
+
+          if (pathCount > 0) {
+            paths = new ArrayList<SPath>(pathCount - 1);
+
+            for (int i = 0; i < pathCount - 1; i++) paths.add(readPath());
+
+            if (in.readBoolean()) {
+              segmentChecksums = new ArrayList<String>(pathCount - 1);
+
+              for (int i = 0; i < pathCount - 1; i++) segmentChecksums.add(readString());
+            }
+          }
+
+          return new ChecksumErrorActivity(
+              source, checksumErrorTarget, paths, segmentChecksums, recoveryID);
+
+        case EDITOR_ACTIVITY:
+          final EditorActivity.Type editorType = readEnum(EditorActivity.Type.class);
+          return new EditorActivity(source, editorType, readPath());
+
+        case FILE_ACTIVITY:
+          final FileActivity.Type fileType = readEnum(FileActivity.Type.class);
+          final FileActivity.Purpose purpose = readEnum(FileActivity.Purpose.class);
+          final SPath newPath = readPath();
+          final SPath oldPath = readPath();
+          final String encoding = readSymbol();
+          final byte[] content = readBytes();
+          final Long contentChecksum = readChecksum();
+          return new FileActivity(
+              source,
+              fileType,
+              purpose,
+              newPath,
+              oldPath,
+              content,
+              encoding,
+              contentChecksum,
+              readTimestamp());
+
+        case TARGETED_FILE_ACTIVITY:
+          final User fileTarget = readUser();
+          final FileActivity.Type targetedFileType = readEnum(FileActivity.Type.class);
+          final FileActivity.Purpose targetedPurpose = readEnum(FileActivity.Purpose.class);
+          final SPath targetedNewPath = readPath();
+          final SPath targetedOldPath = readPath();
+          final String targetedEncoding = readSymbol();
+          return new TargetedFileActivity(
+              source,
+              fileTarget,
+              targetedFileType,
+              targetedNewPath,
+              targetedOldPath,
+              readBytes(),
+              targetedEncoding,
+              targetedPurpose);
+
+        case FILE_DELTA_ACTIVITY:
+          final User fileDeltaTarget = readUser();
+          final FileActivity.Purpose fileDeltaPurpose = readEnum(FileActivity.Purpose.class);
+          final SPath fileDeltaPath = readPath();
+          final String fileDeltaEncoding = readSymbol();
+          final long baseChecksum = in.readInt() & 0xFFFFFFFFL;
+          final long checksum = in.readInt() & 0xFFFFFFFFL;
+          return new FileDeltaActivity(
+              source,
+              fileDeltaTarget,
+              fileDeltaPurpose,
+              fileDeltaPath,
+              fileDeltaEncoding,
+              baseChecksum,
+              checksum,
+              readBytes());
+
+        case FOLDER_CREATED_ACTIVITY:
+          return new FolderCreatedActivity(source, readPath());
+
+        case FOLDER_DELETED_ACTIVITY:
+          return new FolderDeletedActivity(source, readPath());
+
+        case FOLDER_MOVED_ACTIVITY:
+          return new FolderMovedActivity(source, readPath(), readPath());
+
+        case JUPITER_ACTIVITY:
+          final SPath jupiterPath = readPath();
+          final Timestamp timestamp = readTimestamp();
+          return new JupiterActivity(timestamp, readOperation(), source, jupiterPath);
+
+        case NOP_ACTIVITY:
+          return new NOPActivity(source, readUser(), readSignedVarInt(in));
+
+        case PERMISSION_ACTIVITY:
+          return new PermissionActivity(source, readUser(), readEnum(Permission.class));
+
+        case PROGRESS_ACTIVITY:
+          return new ProgressActivity(
+              source,
+              readUser(),
+              readSymbol(),
+              readSignedVarInt(in),
+              readSignedVarInt(in),
+              readString(),
+              readEnum(ProgressActivity.ProgressAction.class));
+
+        case START_FOLLOWING_ACTIVITY:
+          return new StartFollowingActivity(source, readUser());
+
+        case STOP_ACTIVITY:
+          return new StopActivity(
+              source,
+              readUser(),
+              readUser(),
+              readEnum(StopActivity.Type.class),
+              readEnum(StopActivity.State.class),
+              readString());
+
+        case STOP_FOLLOWING_ACTIVITY:
+          return new StopFollowingActivity(source);
+
+        case TEXT_EDIT_ACTIVITY:
+          final SPath textEditPath = readPath();
+          return new TextEditActivity(
+              source, readVarInt(in), readString(), readString(), textEditPath);
+
+        case TEXT_RECOVERY_ACTIVITY:
+          final User textRecoveryTarget = readUser();
+          final SPath textRecoveryPath = readPath();
+          final int textRecoveryOffset = readVarInt(in);
+          final int replacedLength = readVarInt(in);
+          final int documentLength = readVarInt(in);
+          return new TextRecoveryActivity(
+              source,
+              textRecoveryTarget,
+              textRecoveryPath,
+              textRecoveryOffset,
+              replacedLength,
+              readString(),
+              documentLength);
+
+        case TEXT_SELECTION_ACTIVITY:
+          final SPath selectionPath = readPath();
+          return new TextSelectionActivity(
+              source, readSignedVarInt(in), readSignedVarInt(in), selectionPath);
+
+        case VIEWPORT_ACTIVITY:
+          final SPath viewportPath = readPath();
+          return new ViewportActivity(
+              source, readSignedVarInt(in), readSignedVarInt(in), viewportPath);
+
+        default:
+          throw new IOException("unknown activity type: " + type);
+      }
+    }
+
+    private Operation readOperation() throws IOException {
+      final int type = in.readUnsignedByte();
+
+      switch (type) {
+        case NO_OPERATION:
+          return new NoOperation();
+
+        case INSERT_OPERATION:
+          final int insertPosition = readVarInt(in);
+          final int origin = readVarInt(in);
+          return new InsertOperation(insertPosition, readString(), origin);
+
+        case DELETE_OPERATION:
+          final int deletePosition = readVarInt(in);
+          return new DeleteOperation(deletePosition, readString());
+
+        case SPLIT_OPERATION:
+          final Operation first = readOperation();
+          return new SplitOperation(first, readOperation());
+
+        case TIMESTAMP_OPERATION:
+          return new TimestampOperation();
+
+        default:
+          throw new IOException("unknown operation type: " + type);
+      }
+    }
+
+    private Timestamp readTimestamp() throws IOException {
+      final int type = in.readUnsignedByte();
+
+      switch (type) {
+        case NULL_TIMESTAMP:
+          return null;
+
+        case JUPITER_VECTOR_TIME:
+          final int local = readVarInt(in);
+          return new JupiterVectorTime(local, readVarInt(in));
+
+        default:
+          throw new IOException("unknown timestamp type: " + type);
+      }
+    }
+
+    private User readUser() throws IOException {
+      final String jid = readSymbol();
+      return jid == null ? null : session.getUser(new JID(jid));
+    }
+
+    private SPath readPath() throws IOException {
+      final String projectID = readSymbol();
+
+      if (projectID == null) return null;
+
+      final String path = readSymbol();
+
+      final IProject project = session.getProject(projectID);
+
+      if (project == null) {
+        LOG.error(
+            "Could not create SPath because there is no shared project for id '" + projectID + "'");
+        return null;
+      }
+
+      return new SPath(project, pathFactory.fromString(path));
+    }
+
+    private <E extends Enum<E>> E readEnum(Class<E> clazz) throws IOException {
+      final int value = readVarInt(in);
+
+      if (value == 0) return null;
+
+      final E[] constants = clazz.getEnumConstants();
+
+      if (value > constants.length)
+        throw new IOException("invalid ordinal for " + clazz.getSimpleName() + ": " + (value - 1));
+
+      return constants[value - 1];
+    }
+
+    private String readSymbol() throws IOException {
+      final int value = readVarInt(in);
+
+      if (value == NULL_SYMBOL) return null;
+
+      if (value == NEW_SYMBOL) {
+        final String symbol = new String(readBytes(), StandardCharsets.UTF_8);
+        symbols.add(symbol);
+        return symbol;
+      }
+
+      final int index = value - NEW_SYMBOL - 1;
+
+      if (index >= symbols.size()) throw new IOException("invalid symbol reference: " + index);
+
+      return symbols.get(index);
+    }
+
+    private String readString() throws IOException {
+      final byte[] value = readBytes();
+      return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private Long readChecksum() throws IOException {
+      return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private byte[] readBytes() throws IOException {
+      final int length = readVarInt(in);
+
+      if (length == 0) return null;
+
+      final byte[] value = new byte[length - 1];
+      in.readFully(value);
+      return value;
+    }
+  }
+
+  /**
+   * Placeholder for activities that were transmitted correctly but could not be restored in the
+   * current session state. The placeholder is never valid and will be discarded by the session.
+   */
+  private static final class UndecodableActivity implements IActivity {
+
+    private final int type;
+
+    private UndecodableActivity(int type) {
+      this.type = type;
+    }
+
+    @Override
+    public User getSource() {
+      return null;
+    }
+
+    @Override
+    public void dispatch(IActivityReceiver receiver) {
+      // NOP
+    }
+
+    @Override
+    public boolean isValid() {
+      return false;
+    }
+
+    @Override
+    public String toString() {
+      return "UndecodableActivity(type: " + type + ")";
+    }
+  }
+
+  private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(DataInputStream in) throws IOException {
+    int value = 0;
+
+    for (int shift = 0; shift < 35; shift += 7) {
+      final int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+
+      if ((b & 0x80) == 0) return value;
+    }
+
+    throw new IOException("malformed variable length integer");
+  }
+
+  private static void writeSignedVarInt(DataOutputStream out, int value) throws IOException {
+    writeVarInt(out, (value << 1) ^ (value >> 31));
+  }
+
+  private static int readSignedVarInt(DataInputStream in) throws IOException {
+    final int value = readVarInt(in);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeSignedVarLong(DataOutputStream out, long value) throws IOException {
+    long zigZag = (value << 1) ^ (value >> 63);
+
+    while ((zigZag & ~0x7FL) != 0) {
+      out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+      zigZag >>>= 7;
+    }
+
+    out.writeByte((int) zigZag);
+  }
+
+  private static long readSignedVarLong(DataInputStream in) throws IOException {
+    long value = 0;
+
+    for (int shift = 0; shift < 70; shift += 7) {
+      final int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+
+      if ((b & 0x80) == 0) return (value >>> 1) ^ -(value & 1);
+    }
+
+    throw new IOException("malformed variable length long");
+  }
+}
@@ -0,0 +1,76 @@
+package saros.communication.extensions;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+import com.thoughtworks.xstream.annotations.XStreamImplicit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import saros.misc.xstream.XStreamExtensionProvider;
+
+/**
+ * Used by the direct TCP transport to query the endpoints a peer accepts TCP connections on. A
+ * request only contains the request and connection id, the response additionally contains the
+ * endpoints and a one-time token that must be presented when connecting to one of them.
+ */
+@XStreamAlias(/* TCPEndpointExtension */ "TCPEP")
+public class TCPEndpointExtension {
+
+  public static final Provider PROVIDER = new Provider();
+
+  @XStreamAlias("id")
+  @XStreamAsAttribute
+  private final String requestID;
+
+  @XStreamAlias("cid")
+  @XStreamAsAttribute
+  private final String connectionID;
+
+  @XStreamAlias("token")
+  @XStreamAsAttribute
+  private final String token;
+
+  @XStreamImplicit(itemFieldName = "ep")
+  private final List<String> endpoints;
+
+  /**
+   * @param requestID id that is used to correlate the request and its response
+   * @param connectionID id of the connection that should be established
+   * @param token the token that must be presented when connecting or <code>null</code>
+   * @param endpoints the endpoints in the form <code>host:port</code> or <code>null</code>
+   */
+  public TCPEndpointExtension(
+      String requestID, String connectionID, String token, List<String> endpoints) {
+    this.requestID = requestID;
+    this.connectionID = connectionID;
+    this.token = token;
+    this.endpoints =
+        endpoints == null || endpoints.isEmpty() ? null : new ArrayList<String>(endpoints);
+  }
+
+  public String getRequestID() {
+    return requestID;
+  }
+
+  public String getConnectionID() {
+    return connectionID;
+  }
+
+  public String getToken() {
+    return token;
+  }
+
+  /** Returns the endpoints in the form <code>host:port</code>, never <code>null</code>. */
+  public List<String> getEndpoints() {
+    if (endpoints == null) return Collections.emptyList();
+
+    return Collections.unmodifiableList(endpoints);
+  }
+
+  public static class Provider extends XStreamExtensionProvider<TCPEndpointExtension> {
+
+    private Provider() {
+      super(SarosPacketExtension.EXTENSION_NAMESPACE, "tcpep", TCPEndpointExtension.class);
+    }
+  }
+}
@@ -34,6 +34,7 @@ import saros.concurrent.jupiter.InclusionTransformation;
 import saros.concurrent.jupiter.Operation;
 import saros.concurrent.jupiter.Timestamp;
 import saros.concurrent.jupiter.TransformationException;
+import saros.concurrent.jupiter.internal.text.CompositeOperation;
 import saros.concurrent.jupiter.internal.text.GOTOInclusionTransformation;
 import saros.concurrent.jupiter.internal.text.NoOperation;
 import saros.concurrent.jupiter.internal.text.TimestampOperation;
@@ -64,26 +65,57 @@ public class Jupiter implements Algorithm {
   protected final List<OperationWrapper> ackJupiterActivityList;
 
   /**
-   * Class constructor that creates a new Jupiter algorithm.
+   * Flag indicating whether received operations are transformed as {@link CompositeOperation}s.
+   * Composite operations order insertions of the same operation that end up at the same position
+   * differently than the {@link GOTOInclusionTransformation}, so the algorithms on both sides of a
+   * document must use the same setting.
+   */
+  protected final boolean compositeOperations;
+
+  /**
+   * Class constructor that creates a new Jupiter algorithm which does not use composite operations.
    *
    * @param isClientSide true if the algorithm resides on the client side
    */
   public Jupiter(boolean isClientSide) {
+    this(isClientSide, false);
+  }
+
+  /**
+   * Class constructor that creates a new Jupiter algorithm.
+   *
+   * @param isClientSide true if the algorithm resides on the client side
+   * @param compositeOperations true if received operations should be transformed as {@link
+   *     CompositeOperation}s
+   */
+  public Jupiter(boolean isClientSide, boolean compositeOperations) {
     this.inclusion = new GOTOInclusionTransformation();
     this.vectorTime = new JupiterVectorTime(0, 0);
     this.isClientSide = isClientSide;
+    this.compositeOperations = compositeOperations;
     this.ackJupiterActivityList = new ArrayList<OperationWrapper>();
   }
 
   @Override
   public JupiterActivity generateJupiterActivity(Operation op, User source, SPath editor) {
 
+    /*
+     * transformed operations are sent in the format all peers understand,
+     * the receiver converts them back
+     */
+    final Operation sentOp =
+        op instanceof CompositeOperation ? ((CompositeOperation) op).toOperation() : op;
+
     // send(op, myMsgs, otherMsgs);
-    JupiterActivity jupiterActivity = new JupiterActivity(this.vectorTime, op, source, editor);
+    JupiterActivity jupiterActivity = new JupiterActivity(this.vectorTime, sentOp, source, editor);
 
-    // add(op, myMsgs) to outgoing;
+    /*
+     * add(op, myMsgs) to outgoing; without composite operations the other
+     * site transforms against exactly the sent operation
+     */
     this.ackJupiterActivityList.add(
-        new OperationWrapper(op, this.vectorTime.getLocalOperationCount()));
+        new OperationWrapper(
+            compositeOperations ? op : sentOp, this.vectorTime.getLocalOperationCount()));
 
     // myMsgs = myMsgs + 1;
     this.vectorTime = this.vectorTime.incrementLocalOperationCount();
@@ -91,6 +123,19 @@ public class Jupiter implements Algorithm {
     return jupiterActivity;
   }
 
+  /**
+   * Generates a JupiterActivity that acknowledges all operations received so far. The activity
+   * contains a {@link TimestampOperation} and does not change the vector time, so it can be sent at
+   * any time to allow the other site to discard its acknowledged operations.
+   *
+   * @param source the user the activity originates from
+   * @param editor the document the activity refers to
+   * @return the acknowledging JupiterActivity
+   */
+  public JupiterActivity generateAcknowledgement(User source, SPath editor) {
+    return new JupiterActivity(this.vectorTime, new TimestampOperation(), source, editor);
+  }
+
   /**
    * Returns whether the local user represented by this Jupiter instance has not modified the
    * document locally.
@@ -142,15 +187,6 @@ public class Jupiter implements Algorithm {
   public Operation receiveJupiterActivity(JupiterActivity jupiterActivity)
       throws TransformationException {
 
-    if (jupiterActivity.getOperation() instanceof TimestampOperation) {
-
-      // TODO Use timestamps correctly!
-      log.warn("Timestamp operations are not tested at the moment");
-
-      updateVectorTime(jupiterActivity.getTimestamp());
-      return new NoOperation();
-    }
-
     Timestamp timestamp = jupiterActivity.getTimestamp();
     if (!(timestamp instanceof JupiterVectorTime)) {
       throw new IllegalArgumentException("Jupiter expects timestamps of type JupiterVectorTime");
@@ -158,6 +194,12 @@ public class Jupiter implements Algorithm {
     checkPreconditions((JupiterVectorTime) timestamp);
     discardAcknowledgedOperations((JupiterVectorTime) timestamp);
 
+    /*
+     * a timestamp operation only acknowledges the operations the other
+     * site has received so far, it is not counted as an operation
+     */
+    if (jupiterActivity.getOperation() instanceof TimestampOperation) return new NoOperation();
+
     Operation newOp = transform(jupiterActivity.getOperation());
     this.vectorTime = this.vectorTime.incrementRemoteOperationCount();
     return newOp;
@@ -226,6 +268,13 @@ public class Jupiter implements Algorithm {
    * @see #ackJupiterActivityList
    */
   protected Operation transform(Operation newOp) {
+    /*
+     * transforming a composite operation does not create nested operations
+     * that get more expensive to transform with each acknowledged operation
+     */
+    if (compositeOperations && !ackJupiterActivityList.isEmpty() && !(newOp instanceof NoOperation))
+      newOp = CompositeOperation.of(newOp);
+
     for (int ackJupiterActivityListCnt = 0;
         ackJupiterActivityListCnt < this.ackJupiterActivityList.size();
         ackJupiterActivityListCnt++) {
@@ -1,15 +1,19 @@
 package saros.concurrent.jupiter.internal;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import org.apache.log4j.Logger;
 import saros.activities.ChecksumActivity;
+import saros.activities.IActivity;
 import saros.activities.JupiterActivity;
 import saros.activities.SPath;
 import saros.concurrent.jupiter.Operation;
 import saros.concurrent.jupiter.Timestamp;
 import saros.concurrent.jupiter.TransformationException;
+import saros.concurrent.jupiter.internal.text.TimestampOperation;
 import saros.session.User;
 
 /**
@@ -35,34 +39,46 @@ public class JupiterDocumentServer {
   }
 
   public synchronized void addProxyClient(final User user) {
-    if (!proxies.containsKey(user)) proxies.put(user, new Jupiter(false));
+    addProxyClient(user, false);
+  }
+
+  /**
+   * Adds a proxy for the given user if there is none yet.
+   *
+   * @param compositeOperations whether the client of the user transforms operations as {@link
+   *     saros.concurrent.jupiter.internal.text.CompositeOperation}s
+   */
+  public synchronized void addProxyClient(final User user, final boolean compositeOperations) {
+    if (!proxies.containsKey(user)) proxies.put(user, new Jupiter(false, compositeOperations));
   }
 
   public synchronized boolean removeProxyClient(final User user) {
     return proxies.remove(user) != null;
   }
 
-  // FIXME why is this not synchronized ?!
-  public Map<User, JupiterActivity> transformJupiterActivity(final JupiterActivity activity)
-      throws TransformationException {
+  /**
+   * Returns the current vector time of the proxy of the given user.
+   *
+   * @return the vector time or <code>null</code> if there is no proxy for the given user
+   */
+  public synchronized Timestamp getTimestamp(final User user) {
+    final Jupiter proxy = proxies.get(user);
+
+    return proxy == null ? null : proxy.getTimestamp();
+  }
+
+  public synchronized Map<User, JupiterActivity> transformJupiterActivity(
+      final JupiterActivity activity) throws TransformationException {
 
     final Map<User, JupiterActivity> result = new HashMap<User, JupiterActivity>();
 
     final User source = activity.getSource();
 
     // 1. Use JupiterClient of sender to transform JupiterActivity
-    final Jupiter sourceProxy = proxies.get(source);
+    final Operation op = receive(activity);
 
-    /*
-     * TODO maybe just silently add a proxy ? currently the project is
-     * registered before decompression so it is possible to start working on
-     * the files during this phase and this is why this can return null
-     */
-
-    if (sourceProxy == null)
-      throw new IllegalStateException("no proxy client registered for user: " + source);
-
-    final Operation op = sourceProxy.receiveJupiterActivity(activity);
+    // acknowledgements are only relevant for the proxy of the sender
+    if (op == null) return result;
 
     // 2. Generate outgoing JupiterActivities for all other clients and the
     // host
@@ -83,6 +99,113 @@ public class JupiterDocumentServer {
     return result;
   }
 
+  /**
+   * Transforms the given JupiterActivities and ChecksumActivities of this document in one pass and
+   * in the given order. The resulting activities are appended to the list of their recipient in the
+   * given map, missing lists are created. Activities that cannot be transformed are logged and
+   * skipped.
+   *
+   * @param activities the activities to transform, other activities are ignored
+   * @param result map of the recipients to the activities they should receive
+   * @see #transformJupiterActivity(JupiterActivity)
+   * @see #withTimestamp(ChecksumActivity)
+   */
+  public synchronized void transform(
+      final List<IActivity> activities, final Map<User, List<IActivity>> result) {
+
+    for (final IActivity activity : activities) {
+      try {
+        if (activity instanceof JupiterActivity) transform((JupiterActivity) activity, result);
+        else if (activity instanceof ChecksumActivity)
+          withTimestamp((ChecksumActivity) activity, result);
+
+      } catch (TransformationException e) {
+        LOG.error("failed to transform activity: " + activity, e);
+      } catch (IllegalStateException e) {
+        LOG.error("failed to transform activity: " + activity, e);
+      }
+    }
+  }
+
+  private void transform(final JupiterActivity activity, final Map<User, List<IActivity>> result)
+      throws TransformationException {
+
+    final Operation op = receive(activity);
+
+    if (op == null) return;
+
+    final User source = activity.getSource();
+
+    for (final Entry<User, Jupiter> entry : proxies.entrySet()) {
+      final User user = entry.getKey();
+
+      if (user.equals(source)) continue;
+
+      getBuffer(result, user).add(entry.getValue().generateJupiterActivity(op, source, editor));
+    }
+  }
+
+  private void withTimestamp(
+      final ChecksumActivity activity, final Map<User, List<IActivity>> result)
+      throws TransformationException {
+
+    final User source = activity.getSource();
+
+    final Jupiter sourceProxy = proxies.get(source);
+
+    if (sourceProxy == null)
+      throw new IllegalStateException("no proxy client registered for user: " + source);
+
+    if (!sourceProxy.isCurrent(activity.getTimestamp())) return;
+
+    for (final Entry<User, Jupiter> entry : proxies.entrySet()) {
+      final User user = entry.getKey();
+
+      if (user.equals(source)) continue;
+
+      getBuffer(result, user).add(activity.withTimestamp(entry.getValue().getTimestamp()));
+    }
+  }
+
+  /**
+   * Uses the proxy of the sender to transform the operation of the given activity.
+   *
+   * @return the transformed operation or <code>null</code> if the activity only acknowledges
+   *     received operations
+   */
+  private Operation receive(final JupiterActivity activity) throws TransformationException {
+
+    final User source = activity.getSource();
+
+    final Jupiter sourceProxy = proxies.get(source);
+
+    /*
+     * TODO maybe just silently add a proxy ? currently the project is
+     * registered before decompression so it is possible to start working on
+     * the files during this phase and this is why this can return null
+     */
+
+    if (sourceProxy == null)
+      throw new IllegalStateException("no proxy client registered for user: " + source);
+
+    final Operation op = sourceProxy.receiveJupiterActivity(activity);
+
+    return activity.getOperation() instanceof TimestampOperation ? null : op;
+  }
+
+  private static List<IActivity> getBuffer(
+      final Map<User, List<IActivity>> result, final User user) {
+
+    List<IActivity> buffer = result.get(user);
+
+    if (buffer == null) {
+      buffer = new ArrayList<IActivity>();
+      result.put(user, buffer);
+    }
+
+    return buffer;
+  }
+
   public synchronized void updateVectorTime(final User source, final User dest) {
     final Jupiter proxy = proxies.get(source);
 
@@ -105,7 +228,7 @@ public class JupiterDocumentServer {
     if (removeProxyClient(user)) addProxyClient(user);
   }
 
-  public Map<User, ChecksumActivity> withTimestamp(final ChecksumActivity activity)
+  public synchronized Map<User, ChecksumActivity> withTimestamp(final ChecksumActivity activity)
       throws TransformationException {
 
     final Map<User, ChecksumActivity> result = new HashMap<User, ChecksumActivity>();
@@ -0,0 +1,614 @@
+package saros.concurrent.jupiter.internal.text;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.commons.lang3.StringUtils;
+import saros.activities.SPath;
+import saros.activities.TextEditActivity;
+import saros.concurrent.jupiter.Operation;
+import saros.session.User;
+
+/**
+ * An operation that consists of a flat list of changes ordered by their position in the document.
+ * Each change retains a number of unchanged characters and then deletes and inserts text at that
+ * position. All positions refer to the document the operation is applied to.
+ *
+ * <p>Unlike nested {@link SplitOperation}s such operations can be transformed against and composed
+ * with each other in a single pass over both change lists, so the costs only grow linearly with the
+ * number of changes.
+ *
+ * <p>Use {@link #of(Operation)} to convert any other operation into a composite operation and
+ * {@link #toOperation()} for the opposite direction. Instances of this class are immutable.
+ */
+public final class CompositeOperation implements Operation {
+
+  private static final CompositeOperation EMPTY =
+      new CompositeOperation(new int[0], new String[0], new String[0], new int[0]);
+
+  // component types of the Cursor
+  private static final int RETAIN = 0;
+  private static final int DELETE = 1;
+  private static final int INSERT = 2;
+  private static final int END = 3;
+
+  /** Number of unchanged characters in front of each change */
+  private final int[] retains;
+
+  /** Text deleted by each change, may be empty */
+  private final String[] deletions;
+
+  /** Text inserted by each change after the deletion, may be empty */
+  private final String[] insertions;
+
+  /** Origin of each insertion, see {@link InsertOperation#getOrigin()} */
+  private final int[] origins;
+
+  private CompositeOperation(
+      final int[] retains,
+      final String[] deletions,
+      final String[] insertions,
+      final int[] origins) {
+    this.retains = retains;
+    this.deletions = deletions;
+    this.insertions = insertions;
+    this.origins = origins;
+  }
+
+  /**
+   * Converts the given operation into a composite operation.
+   *
+   * @param operation the operation to convert
+   * @return a composite operation with the same effect as the given operation
+   */
+  public static CompositeOperation of(final Operation operation) {
+    if (operation instanceof CompositeOperation) return (CompositeOperation) operation;
+
+    final List<ITextOperation> operations = new ArrayList<ITextOperation>();
+
+    // nested split operations may be too deep for a recursive traversal
+    final Deque<Operation> pending = new ArrayDeque<Operation>();
+    pending.push(operation);
+
+    while (!pending.isEmpty()) {
+      final Operation current = pending.pop();
+
+      if (current instanceof SplitOperation) {
+        pending.push(((SplitOperation) current).getSecond());
+        pending.push(((SplitOperation) current).getFirst());
+      } else if (current instanceof ITextOperation) {
+        operations.add((ITextOperation) current);
+      } else {
+        operations.addAll(current.getTextOperations());
+      }
+    }
+
+    return compose(operations, 0, operations.size());
+  }
+
+  /** Returns the number of changes of this operation. */
+  public int size() {
+    return retains.length;
+  }
+
+  /**
+   * Returns an operation consisting only of {@link InsertOperation}s, {@link DeleteOperation}s and
+   * {@link SplitOperation}s that has the same effect as this operation. The split operations form a
+   * balanced tree.
+   */
+  public Operation toOperation() {
+    final List<ITextOperation> operations = getTextOperations();
+
+    if (operations.isEmpty()) return new NoOperation();
+
+    return toOperation(operations, 0, operations.size());
+  }
+
+  private static Operation toOperation(
+      final List<ITextOperation> operations, final int from, final int to) {
+
+    if (to - from == 1) return operations.get(from);
+
+    final int mid = (from + to) >>> 1;
+
+    return new SplitOperation(toOperation(operations, from, mid), toOperation(operations, mid, to));
+  }
+
+  /**
+   * Composes this operation with the given one.
+   *
+   * @param next the operation that is applied after this operation
+   * @return an operation that has the same effect as applying this and then the given operation
+   */
+  public CompositeOperation compose(final CompositeOperation next) {
+    final Builder result = new Builder();
+
+    final Cursor first = new Cursor(this);
+    final Cursor second = new Cursor(next);
+
+    while (true) {
+      final int firstType = first.type();
+      final int secondType = second.type();
+
+      if (firstType == DELETE) {
+        result.delete(first.take(first.length()));
+        continue;
+      }
+
+      if (secondType == INSERT) {
+        final int origin = second.origin();
+        result.insert(second.take(second.length()), origin);
+        continue;
+      }
+
+      if (firstType == END && secondType == END) break;
+
+      // the remaining document is retained by the ended operation
+
+      if (secondType == END) {
+        if (firstType == RETAIN) result.retain(first.skip(first.length()));
+        else result.insert(first.take(first.length()), first.origin());
+
+        continue;
+      }
+
+      if (firstType == END) {
+        if (secondType == RETAIN) result.retain(second.skip(second.length()));
+        else result.delete(second.take(second.length()));
+
+        continue;
+      }
+
+      final int length = Math.min(first.length(), second.length());
+
+      if (firstType == RETAIN && secondType == RETAIN) {
+        result.retain(length);
+      } else if (firstType == RETAIN && secondType == DELETE) {
+        result.delete(second.text(length));
+      } else if (firstType == INSERT && secondType == RETAIN) {
+        result.insert(first.text(length), first.origin());
+      }
+
+      // an insertion that is deleted again by the second operation vanishes
+
+      first.skip(length);
+      second.skip(length);
+    }
+
+    return result.build();
+  }
+
+  /**
+   * Transforms this operation in the context of the given operation, i.e the returned operation has
+   * the same intention as this operation but can be applied after the given operation.
+   *
+   * <p>All insertions of both operations that end up at the same position, either because they are
+   * inserted at the same position or because the text between them is deleted, are ordered like
+   * {@link GOTOInclusionTransformation} orders two insertions at the same position: by their origin
+   * and if the origins are equal by the privileged flag. Adjacent insertions of one operation are
+   * merged and ordered by the origin of the first one, so the result can differ from transforming
+   * the original operations with {@link GOTOInclusionTransformation}. Both sides of a document must
+   * therefore use the same transformation.
+   *
+   * @param other the operation which is the context for this operation
+   * @param privileged <code>true</code> if an insertion of this operation should be placed in front
+   *     of an insertion of the other operation with the same origin
+   * @return the transformed operation
+   */
+  public CompositeOperation transform(final CompositeOperation other, final boolean privileged) {
+    final Builder result = new Builder();
+
+    final Cursor own = new Cursor(this);
+    final Cursor context = new Cursor(other);
+
+    while (true) {
+      final int ownType = own.type();
+      final int contextType = context.type();
+
+      if (ownType == END) break;
+
+      if (ownType == RETAIN && (contextType == RETAIN || contextType == END)) {
+        final int length =
+            contextType == END ? own.length() : Math.min(own.length(), context.length());
+
+        result.retain(length);
+        own.skip(length);
+
+        if (contextType != END) context.skip(length);
+
+        continue;
+      }
+
+      transformRegion(own, context, privileged, result);
+    }
+
+    return result.build();
+  }
+
+  /**
+   * Transforms the region starting at the current position of both cursors in which every character
+   * is deleted by at least one of both operations. The insertions of both operations in this region
+   * all end up at the same position and are merged by their origin.
+   */
+  private static void transformRegion(
+      final Cursor own, final Cursor context, final boolean privileged, final Builder result) {
+
+    final List<String> ownInsertions = new ArrayList<String>();
+    final List<Integer> ownOrigins = new ArrayList<Integer>();
+
+    /*
+     * the content of the region in the document the transformed operation
+     * is applied to: text of this operation that must still be deleted and
+     * the insertions of the other operation (the text is null for them)
+     */
+    final List<String> deletions = new ArrayList<String>();
+    final List<Integer> contextInsertions = new ArrayList<Integer>();
+    final List<Integer> contextOrigins = new ArrayList<Integer>();
+
+    while (true) {
+      final int ownType = own.type();
+      final int contextType = context.type();
+
+      if (ownType == INSERT) {
+        ownOrigins.add(own.origin());
+        ownInsertions.add(own.take(own.length()));
+        continue;
+      }
+
+      if (contextType == INSERT) {
+        deletions.add(null);
+        contextOrigins.add(context.origin());
+        contextInsertions.add(context.skip(context.length()));
+        continue;
+      }
+
+      if (ownType != DELETE && contextType != DELETE) break;
+
+      // the operation that ended retains the rest of the document
+      final int length;
+
+      if (ownType == END) length = context.length();
+      else if (contextType == END) length = own.length();
+      else length = Math.min(own.length(), context.length());
+
+      // text deleted by the other operation is already gone
+      if (ownType == DELETE && contextType != DELETE) deletions.add(own.text(length));
+
+      if (ownType != END) own.skip(length);
+
+      if (contextType != END) context.skip(length);
+    }
+
+    int next = 0;
+    int contextIndex = 0;
+
+    for (final String deletion : deletions) {
+      if (deletion != null) {
+        result.delete(deletion);
+        continue;
+      }
+
+      final int contextOrigin = contextOrigins.get(contextIndex);
+
+      while (next < ownInsertions.size()
+          && (ownOrigins.get(next) < contextOrigin
+              || (ownOrigins.get(next) == contextOrigin && privileged))) {
+        result.insert(ownInsertions.get(next), ownOrigins.get(next));
+        next++;
+      }
+
+      result.retain(contextInsertions.get(contextIndex++));
+    }
+
+    for (; next < ownInsertions.size(); next++)
+      result.insert(ownInsertions.get(next), ownOrigins.get(next));
+  }
+
+  /**
+   * Transforms the given index in the context of this operation. An index at the position of an
+   * insertion is moved behind the inserted text, an index inside of a deleted range is moved to the
+   * start of that range.
+   *
+   * @param index the index to transform
+   * @return the transformed index
+   */
+  public int transformIndex(final int index) {
+    int result = index;
+    int position = 0;
+
+    for (int i = 0; i < retains.length; i++) {
+      position += retains[i];
+
+      if (index < position) break;
+
+      final int insertionLength = insertions[i].length();
+
+      if (index == position) {
+        result += insertionLength;
+        break;
+      }
+
+      final int deletionLength = deletions[i].length();
+
+      result += insertionLength - Math.min(deletionLength, index - position);
+      position += deletionLength;
+    }
+
+    return result;
+  }
+
+  @Override
+  public List<TextEditActivity> toTextEdit(final SPath path, final User source) {
+    final List<TextEditActivity> result = new ArrayList<TextEditActivity>(retains.length);
+
+    int position = 0;
+
+    for (int i = 0; i < retains.length; i++) {
+      position += retains[i];
+
+      result.add(new TextEditActivity(source, position, insertions[i], deletions[i], path));
+
+      position += insertions[i].length();
+    }
+
+    return result;
+  }
+
+  @Override
+  public List<ITextOperation> getTextOperations() {
+    final List<ITextOperation> result = new ArrayList<ITextOperation>(retains.length * 2);
+
+    int position = 0;
+
+    for (int i = 0; i < retains.length; i++) {
+      position += retains[i];
+
+      if (!deletions[i].isEmpty()) result.add(new DeleteOperation(position, deletions[i]));
+
+      if (!insertions[i].isEmpty())
+        result.add(new InsertOperation(position, insertions[i], origins[i]));
+
+      position += insertions[i].length();
+    }
+
+    return result;
+  }
+
+  @Override
+  public CompositeOperation invert() {
+    final int[] invertedOrigins = new int[retains.length];
+
+    int position = 0;
+
+    for (int i = 0; i < retains.length; i++) {
+      position += retains[i];
+      invertedOrigins[i] = position;
+      position += insertions[i].length();
+    }
+
+    return new CompositeOperation(retains, insertions, deletions, invertedOrigins);
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder("Composite(");
+
+    for (int i = 0; i < retains.length; i++) {
+      if (i > 0) builder.append(", ");
+
+      builder
+          .append(retains[i])
+          .append(",'")
+          .append(StringEscapeUtils.escapeJava(StringUtils.abbreviate(deletions[i], 150)))
+          .append("','")
+          .append(StringEscapeUtils.escapeJava(StringUtils.abbreviate(insertions[i], 150)))
+          .append("',")
+          .append(origins[i]);
+    }
+
+    return builder.append(")").toString();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) return true;
+    if (obj == null) return false;
+    if (getClass() != obj.getClass()) return false;
+    CompositeOperation other = (CompositeOperation) obj;
+    return Arrays.equals(retains, other.retains)
+        && Arrays.equals(deletions, other.deletions)
+        && Arrays.equals(insertions, other.insertions)
+        && Arrays.equals(origins, other.origins);
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + Arrays.hashCode(retains);
+    result = prime * result + Arrays.hashCode(deletions);
+    result = prime * result + Arrays.hashCode(insertions);
+    result = prime * result + Arrays.hashCode(origins);
+    return result;
+  }
+
+  /** Composes the given sequence of operations pairwise so that no change is copied too often. */
+  private static CompositeOperation compose(
+      final List<ITextOperation> operations, final int from, final int to) {
+
+    if (to == from) return EMPTY;
+
+    if (to - from == 1) return of(operations.get(from));
+
+    final int mid = (from + to) >>> 1;
+
+    return compose(operations, from, mid).compose(compose(operations, mid, to));
+  }
+
+  private static CompositeOperation of(final ITextOperation operation) {
+    final Builder builder = new Builder().retain(operation.getPosition());
+
+    if (operation instanceof InsertOperation)
+      builder.insert(operation.getText(), ((InsertOperation) operation).getOrigin());
+    else if (operation instanceof DeleteOperation) builder.delete(operation.getText());
+    else throw new IllegalArgumentException("unsupported operation type: " + operation);
+
+    return builder.build();
+  }
+
+  /**
+   * Collects the components of a composite operation. Consecutive components of the same type are
+   * merged and all deletions and insertions between two retained ranges form a single change.
+   * Merged insertions keep the origin of the first insertion.
+   */
+  private static final class Builder {
+
+    private int[] retains = new int[8];
+    private String[] deletions = new String[8];
+    private String[] insertions = new String[8];
+    private int[] origins = new int[8];
+
+    private int size;
+
+    private int retain;
+    private final StringBuilder deletion = new StringBuilder();
+    private final StringBuilder insertion = new StringBuilder();
+    private int origin;
+
+    private Builder retain(final int length) {
+      if (length == 0) return this;
+
+      flush();
+      retain += length;
+      return this;
+    }
+
+    private Builder delete(final String text) {
+      deletion.append(text);
+      return this;
+    }
+
+    private Builder insert(final String text, final int origin) {
+      if (text.isEmpty()) return this;
+
+      if (insertion.length() == 0) this.origin = origin;
+
+      insertion.append(text);
+      return this;
+    }
+
+    private void flush() {
+      if (deletion.length() == 0 && insertion.length() == 0) return;
+
+      if (size == retains.length) {
+        retains = Arrays.copyOf(retains, size * 2);
+        deletions = Arrays.copyOf(deletions, size * 2);
+        insertions = Arrays.copyOf(insertions, size * 2);
+        origins = Arrays.copyOf(origins, size * 2);
+      }
+
+      retains[size] = retain;
+      deletions[size] = deletion.toString();
+      insertions[size] = insertion.toString();
+      origins[size] = origin;
+      size++;
+
+      retain = 0;
+      deletion.setLength(0);
+      insertion.setLength(0);
+    }
+
+    private CompositeOperation build() {
+      // a trailing retain is implicit
+      flush();
+
+      if (size == 0) return EMPTY;
+
+      return new CompositeOperation(
+          Arrays.copyOf(retains, size),
+          Arrays.copyOf(deletions, size),
+          Arrays.copyOf(insertions, size),
+          Arrays.copyOf(origins, size));
+    }
+  }
+
+  /**
+   * Iterates over the components of a composite operation. After the last change the operation
+   * retains the rest of the document which is reported as {@link #END}.
+   */
+  private static final class Cursor {
+
+    private final CompositeOperation operation;
+
+    private int index;
+    private int type = RETAIN;
+    private int offset;
+
+    private Cursor(final CompositeOperation operation) {
+      this.operation = operation;
+    }
+
+    /** Returns the type of the current component, empty components are skipped. */
+    private int type() {
+      while (type != END && offset == partLength()) {
+        offset = 0;
+
+        if (type == INSERT) {
+          index++;
+          type = index < operation.retains.length ? RETAIN : END;
+        } else {
+          type++;
+        }
+      }
+
+      return type;
+    }
+
+    /** Returns the remaining length of the current component. */
+    private int length() {
+      return partLength() - offset;
+    }
+
+    private int origin() {
+      return operation.origins[index];
+    }
+
+    /** Returns the next characters of the current deletion or insertion without consuming them. */
+    private String text(final int length) {
+      final String text = type == DELETE ? operation.deletions[index] : operation.insertions[index];
+
+      return text.substring(offset, offset + length);
+    }
+
+    /** Returns and consumes the next characters of the current deletion or insertion. */
+    private String take(final int length) {
+      final String text = text(length);
+      offset += length;
+      return text;
+    }
+
+    /** Consumes the given number of characters of the current component. */
+    private int skip(final int length) {
+      offset += length;
+      return length;
+    }
+
+    private int partLength() {
+      if (index >= operation.retains.length) return 0;
+
+      switch (type) {
+        case RETAIN:
+          return operation.retains[index];
+        case DELETE:
+          return operation.deletions[index].length();
+        case INSERT:
+          return operation.insertions[index].length();
+        default:
+          return 0;
+      }
+    }
+  }
+}
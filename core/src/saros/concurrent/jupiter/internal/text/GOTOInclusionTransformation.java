@@ -63,6 +63,16 @@ public class GOTOInclusionTransformation implements InclusionTransformation {
       return op1;
     }
 
+    /*
+     * Composite operations are transformed in a single pass, the other
+     * operation is converted as well so that the result does not depend on
+     * which of both operations is the composite one. Composite operations
+     * are only created by Jupiter instances that use them on both sides.
+     */
+    if (op1 instanceof CompositeOperation || op2 instanceof CompositeOperation) {
+      return CompositeOperation.of(op1).transform(CompositeOperation.of(op2), privileged);
+    }
+
     if (op1 instanceof SplitOperation) {
       /**
        * Given two operations s1 and s2 to be transformed in the context of op2, we need to
@@ -124,6 +134,8 @@ public class GOTOInclusionTransformation implements InclusionTransformation {
       index = transformIndex(index, s.getSecond(), param);
       index = transformIndex(index, s.getFirst(), param);
       return index;
+    } else if (op instanceof CompositeOperation) {
+      return ((CompositeOperation) op).transformIndex(index);
     } else if (op instanceof NoOperation) {
       return index;
     } else if (op instanceof InsertOperation) {
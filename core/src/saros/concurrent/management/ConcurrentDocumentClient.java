@@ -2,6 +2,7 @@ package saros.concurrent.management;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import org.apache.log4j.Logger;
 import saros.activities.AbstractActivityReceiver;
 import saros.activities.ChecksumActivity;
@@ -11,9 +12,14 @@ import saros.activities.IActivityReceiver;
 import saros.activities.JupiterActivity;
 import saros.activities.SPath;
 import saros.activities.TextEditActivity;
+import saros.activities.TextRecoveryActivity;
 import saros.concurrent.jupiter.Operation;
 import saros.concurrent.jupiter.TransformationException;
+import saros.concurrent.watchdog.DocumentChecksum;
+import saros.editor.IEditorManager;
 import saros.session.ISarosSession;
+import saros.versioning.Feature;
+import saros.versioning.VersionManager;
 
 /**
  * ConcurrentDocumentClient is responsible for managing the Jupiter interaction on the local side of
@@ -24,19 +30,39 @@ import saros.session.ISarosSession;
  *
  * <p>When JupiterActivities are received from the server they are transformed by the
  * ConcurrentDocumentClient to TextEditActivities which can then be executed locally.
+ *
+ * <p>The same applies to {@link TextRecoveryActivity TextRecoveryActivities} the host sends during
+ * a consistency recovery. They reset the Jupiter document of the recovered file and are converted
+ * to a TextEditActivity that replaces the inconsistent range.
  */
 public class ConcurrentDocumentClient {
 
   private static Logger log = Logger.getLogger(ConcurrentDocumentClient.class);
 
+  /**
+   * Number of operations a document must receive before their receipt is explicitly acknowledged to
+   * the host. Without acknowledgements the host must keep all operations a user has not
+   * acknowledged by an own operation. A value less than <code>1</code> disables the
+   * acknowledgements.
+   */
+  private static final int ACKNOWLEDGE_INTERVAL =
+      Integer.getInteger("saros.concurrent.ACKNOWLEDGE_INTERVAL", 32);
+
   private final ISarosSession sarosSession;
 
+  private final IEditorManager editorManager;
+
   private final JupiterClient jupiterClient;
 
-  public ConcurrentDocumentClient(ISarosSession sarosSession) {
+  private final VersionManager versionManager;
+
+  public ConcurrentDocumentClient(
+      ISarosSession sarosSession, IEditorManager editorManager, VersionManager versionManager) {
 
     this.sarosSession = sarosSession;
-    this.jupiterClient = new JupiterClient(sarosSession);
+    this.editorManager = editorManager;
+    this.jupiterClient = new JupiterClient(sarosSession, versionManager);
+    this.versionManager = versionManager;
   }
 
   /**
@@ -68,16 +94,69 @@ public class ConcurrentDocumentClient {
       // Create Jupiter specific checksum
       return jupiterClient.withTimestamp(checksumActivity);
 
+    } else if (activity instanceof FileActivity) {
+      return withChecksum((FileActivity) activity);
+
     } else {
       return activity;
     }
   }
 
+  /**
+   * Adds the checksum of the file content to a move that does not contain the content, so the
+   * receivers can verify that they move the same content. Like checksums in general this is only
+   * done by the host, whose content is authoritative and who timestamps the checksum for each
+   * receiver. To avoid reading whole files the checksum is only added for files that are open in an
+   * editor.
+   *
+   * @see ConcurrentDocumentServer#withTimestamp(FileActivity, saros.session.User)
+   * @see saros.concurrent.watchdog.ConsistencyWatchdogClient
+   */
+  private FileActivity withChecksum(FileActivity activity) {
+    if (!sarosSession.isHost()
+        || activity.getType() != FileActivity.Type.MOVED
+        || activity.getContent() != null
+        || activity.getChecksum() != null) return activity;
+
+    final Set<SPath> openEditors = editorManager.getOpenEditors();
+
+    if (!openEditors.contains(activity.getPath()) && !openEditors.contains(activity.getOldPath()))
+      return activity;
+
+    final String content = editorManager.getContent(getMovedPath(activity));
+
+    if (content == null) return activity;
+
+    return new FileActivity(
+        activity.getSource(),
+        activity.getType(),
+        activity.isRecovery() ? FileActivity.Purpose.RECOVERY : FileActivity.Purpose.ACTIVITY,
+        activity.getPath(),
+        activity.getOldPath(),
+        null,
+        activity.getEncoding(),
+        DocumentChecksum.calculate(content),
+        null);
+  }
+
+  /**
+   * Returns the path the file of the given move activity is currently located at. Depending on the
+   * IDE the move is reported before or after it was performed. The same applies to the execution of
+   * a received move in relation to the other activity consumers.
+   *
+   * @param activity a move activity
+   * @return the new path if the file already exists there, the old path otherwise
+   */
+  public static SPath getMovedPath(FileActivity activity) {
+    return activity.getPath().getFile().exists() ? activity.getPath() : activity.getOldPath();
+  }
+
   /**
    * This method is called when activities received over the network should be executed locally.
    *
    * <p>This method will transform them back from Jupiter-specific activities to locally executable
-   * activities. @GUI Must be called on the GUI Thread to ensure proper synchronization
+   * activities. JupiterActivities that were already transformed by {@link #prepareIncoming(List)}
+   * are only converted. @GUI Must be called on the GUI Thread to ensure proper synchronization
    *
    * @host and @client This is called whenever activities are received from REMOTELY both on the
    *     client and on the host
@@ -99,6 +178,8 @@ public class ConcurrentDocumentClient {
 
       } else if (activity instanceof ChecksumActivity) {
         activities.add(receiveChecksum((ChecksumActivity) activity));
+      } else if (activity instanceof TextRecoveryActivity) {
+        activities.addAll(receiveRecovery((TextRecoveryActivity) activity));
       } else {
         activities.add(activity);
       }
@@ -109,6 +190,32 @@ public class ConcurrentDocumentClient {
     return activities;
   }
 
+  /**
+   * Performs the Jupiter transformation of the received JupiterActivities ahead of their execution,
+   * so {@link #transformFromJupiter(IActivity)} only has to convert the already transformed
+   * operations into locally executable activities. Other activities are ignored.
+   *
+   * <p>Unlike {@link #transformFromJupiter(IActivity)} this method does not need to be called on
+   * the GUI thread. All given activities must be passed to {@link #transformFromJupiter(IActivity)}
+   * afterwards, in the same order and before any other activity is prepared.
+   *
+   * @host and @client This is called whenever activities are received from REMOTELY both on the
+   *     client and on the host
+   * @param activities the activities that are going to be executed
+   */
+  public synchronized void prepareIncoming(List<IActivity> activities) {
+    for (IActivity activity : activities) {
+      if (!(activity instanceof JupiterActivity)) continue;
+
+      try {
+        jupiterClient.prepare((JupiterActivity) activity);
+      } catch (TransformationException e) {
+        log.error("Error during transformation of: " + activity, e);
+        // TODO this should trigger a consistency check
+      }
+    }
+  }
+
   /**
    * Will receive an incoming ChecksumActivity and discard it if it is not valid within the current
    * local Jupiter timestamp
@@ -124,6 +231,48 @@ public class ConcurrentDocumentClient {
     return activity;
   }
 
+  /**
+   * Resets the Jupiter document of the recovered file and converts the recovery to a
+   * TextEditActivity. The recovery is discarded if the local document does not have the length the
+   * host expects, the following checksum will then reveal the remaining inconsistency.
+   *
+   * @client
+   */
+  private List<IActivity> receiveRecovery(TextRecoveryActivity recovery) {
+
+    List<IActivity> activities = new ArrayList<IActivity>();
+
+    SPath path = recovery.getPath();
+
+    // the host already reset its JupiterServer document for this path
+    reset(path);
+
+    String content = editorManager.getContent(path);
+
+    if (content == null || content.length() != recovery.getDocumentLength()) {
+      log.error(
+          "cannot apply recovery, expected document length "
+              + recovery.getDocumentLength()
+              + " but found "
+              + (content == null ? "no content" : content.length())
+              + ": "
+              + recovery);
+      return activities;
+    }
+
+    int offset = recovery.getOffset();
+
+    activities.add(
+        new TextEditActivity(
+            recovery.getSource(),
+            offset,
+            recovery.getText(),
+            content.substring(offset, offset + recovery.getReplacedLength()),
+            path));
+
+    return activities;
+  }
+
   /** Used to remove JupiterClientDocuments for deleted files */
   private final IActivityReceiver clientReceiver =
       new AbstractActivityReceiver() {
@@ -163,6 +312,30 @@ public class ConcurrentDocumentClient {
     return activities;
   }
 
+  /**
+   * Returns acknowledgements for all documents that received enough operations from the host since
+   * the local user last sent an operation or acknowledgement for them. The acknowledgements must be
+   * sent to the host. No acknowledgements are generated if the host did not announce support for
+   * them. @GUI Must be called on the GUI Thread to ensure that the acknowledgements are sent in
+   * order with the activities returned by {@link #transformToJupiter(IActivity)}
+   *
+   * @host and @client
+   * @return a list of JupiterActivities, may be empty
+   */
+  public List<IActivity> getAcknowledgements() {
+    List<IActivity> activities = new ArrayList<IActivity>();
+
+    if (ACKNOWLEDGE_INTERVAL < 1) return activities;
+
+    if (!sarosSession.isHost()
+        && !versionManager.isFeatureSupported(
+            sarosSession.getHost().getJID(), Feature.JUPITER_ACKNOWLEDGEMENT)) return activities;
+
+    activities.addAll(jupiterClient.generateAcknowledgements(ACKNOWLEDGE_INTERVAL));
+
+    return activities;
+  }
+
   /**
    * Resets the JupiterClient for the given path.
    *
@@ -188,4 +361,17 @@ public class ConcurrentDocumentClient {
       return false;
     }
   }
+
+  /**
+   * Returns whether the checksum of the given move refers to the current local state of the moved
+   * document, i.e the local user did not modify the document concurrently.
+   */
+  public boolean isCurrent(FileActivity fileActivity) {
+    try {
+      return jupiterClient.isCurrent(fileActivity);
+    } catch (TransformationException e) {
+      log.error("Error during transformation of: " + fileActivity, e);
+      return false;
+    }
+  }
 }
@@ -1,23 +1,18 @@
 package saros.concurrent.management;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import org.apache.log4j.Logger;
 import org.picocontainer.Startable;
 import saros.activities.AbstractActivityReceiver;
-import saros.activities.ChecksumActivity;
 import saros.activities.FileActivity;
 import saros.activities.IActivity;
 import saros.activities.IActivityReceiver;
-import saros.activities.JupiterActivity;
-import saros.activities.QueueItem;
 import saros.activities.SPath;
-import saros.concurrent.jupiter.TransformationException;
 import saros.session.ISarosSession;
 import saros.session.ISessionListener;
 import saros.session.User;
+import saros.versioning.VersionManager;
 
 /**
  * The ConcurrentDocumentServer is responsible for coordinating all JupiterActivities.
@@ -51,9 +46,10 @@ public class ConcurrentDocumentServer implements Startable {
         }
       };
 
-  public ConcurrentDocumentServer(final ISarosSession sarosSession) {
+  public ConcurrentDocumentServer(
+      final ISarosSession sarosSession, final VersionManager versionManager) {
     this.sarosSession = sarosSession;
-    this.server = new JupiterServer(sarosSession);
+    this.server = new JupiterServer(sarosSession, versionManager);
   }
 
   @Override
@@ -87,66 +83,33 @@ public class ConcurrentDocumentServer implements Startable {
       };
 
   /**
-   * Transforms the given activities on the server side and returns a list of QueueItems containing
-   * the transformed activities and there receivers.
+   * Transforms the given activities on the server side. The activities of each document are
+   * transformed in one pass. The transformed activities are appended to the list of their recipient
+   * in the given map, missing lists are created. Existing lists are reused, so the caller can clear
+   * and pass the same map for the next activities.
+   *
+   * <p>Activities for different paths may be transformed concurrently. The caller is responsible
+   * for transforming the activities of the same path in the order they were received.
    *
    * @host
-   * @sarosThread Must be executed in the Saros dispatch thread.
    * @notGUI This method may not be called from SWT, otherwise a deadlock might occur!!
-   * @param activity Activity to be transformed
-   * @return A list of QueueItems containing the activities and receivers
+   * @param activities JupiterActivities and ChecksumActivities to be transformed, other activities
+   *     are ignored
+   * @param result map of the recipients to the activities they should receive
    */
-  public List<QueueItem> transformIncoming(final IActivity activity) {
+  public void transformIncoming(
+      final List<IActivity> activities, final Map<User, List<IActivity>> result) {
 
     assert sarosSession.isHost() : "CDS.transformIncoming must not be called on the client";
 
     // assert !isGUI() :
     // "CDS.transformIncoming must not be called from SWT";
 
-    final List<QueueItem> result = new ArrayList<QueueItem>();
-
-    try {
-      activity.dispatch(hostReceiver);
-
-      if (activity instanceof JupiterActivity) {
-        result.addAll(receive((JupiterActivity) activity));
-
-      } else if (activity instanceof ChecksumActivity) {
-        result.addAll(withTimestamp((ChecksumActivity) activity));
-      }
-    } catch (Exception e) {
-      LOG.error("failed to transform jupiter activity: " + activity, e);
-    }
-
-    return result;
-  }
-
-  /**
-   * Does the actual work of transforming a clients JupiterActivity into specific JupiterActivities
-   * for every client.
-   */
-  private List<QueueItem> receive(final JupiterActivity activity) {
-
-    final List<QueueItem> result = new ArrayList<QueueItem>();
-
-    // Sync jupiterActivity with jupiter document server
-    final Map<User, JupiterActivity> outgoing;
-
     try {
-      outgoing = server.transform(activity);
-    } catch (TransformationException e) {
-      LOG.error("failed to transform jupiter activity: " + activity, e);
-      // TODO this should trigger a consistency check
-      return result;
+      server.transform(activities, result);
+    } catch (RuntimeException e) {
+      LOG.error("failed to transform jupiter activities: " + activities, e);
     }
-
-    for (final Entry<User, JupiterActivity> entry : outgoing.entrySet()) {
-      final User user = entry.getKey();
-      final JupiterActivity transformed = entry.getValue();
-
-      result.add(new QueueItem(user, transformed));
-    }
-    return result;
   }
 
   /**
@@ -157,7 +120,7 @@ public class ConcurrentDocumentServer implements Startable {
    *
    * @host
    */
-  public synchronized void reset(final User user, final SPath path) {
+  public void reset(final User user, final SPath path) {
 
     assert sarosSession.isHost();
 
@@ -166,28 +129,20 @@ public class ConcurrentDocumentServer implements Startable {
     server.reset(path, user);
   }
 
-  /** Does the actual work of transforming a ChecksumActivity. */
-  private List<QueueItem> withTimestamp(final ChecksumActivity activity) {
-
-    final List<QueueItem> result = new ArrayList<QueueItem>();
-
-    // Timestamp checksumActivity with jupiter document server
-    final Map<User, ChecksumActivity> outgoing;
-
-    try {
-      outgoing = server.withTimestamp(activity);
-    } catch (TransformationException e) {
-      LOG.error("failed to transform checksum activity: " + activity, e);
-      // TODO this should trigger a consistency check
-      return result;
-    }
+  /**
+   * Returns a copy of the given move whose checksum is timestamped with the vector time of the
+   * Jupiter document at the old path from the perspective of the given user. Like for {@linkplain
+   * saros.activities.ChecksumActivity checksums} this allows the user to ignore the checksum if the
+   * document was modified concurrently.
+   *
+   * @host
+   * @param activity a move that carries a checksum
+   * @param user the user the move is sent to
+   */
+  public FileActivity withTimestamp(final FileActivity activity, final User user) {
 
-    for (Entry<User, ChecksumActivity> entry : outgoing.entrySet()) {
-      final User user = entry.getKey();
-      final ChecksumActivity transformed = entry.getValue();
+    assert sarosSession.isHost();
 
-      result.add(new QueueItem(user, transformed));
-    }
-    return result;
+    return activity.withTimestamp(server.getTimestamp(activity.getOldPath(), user));
   }
 }
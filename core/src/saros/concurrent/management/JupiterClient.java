@@ -1,22 +1,36 @@
 package saros.concurrent.management;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map.Entry;
 import saros.activities.ChecksumActivity;
+import saros.activities.FileActivity;
 import saros.activities.JupiterActivity;
 import saros.activities.SPath;
 import saros.activities.TextEditActivity;
+import saros.concurrent.jupiter.InclusionTransformation;
 import saros.concurrent.jupiter.Operation;
 import saros.concurrent.jupiter.TransformationException;
 import saros.concurrent.jupiter.internal.Jupiter;
+import saros.concurrent.jupiter.internal.text.GOTOInclusionTransformation;
+import saros.concurrent.jupiter.internal.text.NoOperation;
 import saros.session.ISarosSession;
+import saros.versioning.Feature;
+import saros.versioning.VersionManager;
 
 /** A JupiterClient manages Jupiter client docs for a single user with several paths */
 public class JupiterClient {
 
   protected ISarosSession sarosSession;
 
-  public JupiterClient(ISarosSession sarosSession) {
+  protected final VersionManager versionManager;
+
+  public JupiterClient(ISarosSession sarosSession, VersionManager versionManager) {
     this.sarosSession = sarosSession;
+    this.versionManager = versionManager;
   }
 
   /**
@@ -26,20 +40,138 @@ public class JupiterClient {
    */
   protected final HashMap<SPath, Jupiter> clientDocs = new HashMap<SPath, Jupiter>();
 
+  /**
+   * Number of operations received for each local editor since the last operation or acknowledgement
+   * was generated for it.
+   *
+   * @host and @client
+   */
+  protected final HashMap<SPath, Integer> unacknowledgedOperations = new HashMap<SPath, Integer>();
+
+  /**
+   * Received operations for each local editor that were already transformed but not yet executed,
+   * in the order they were received.
+   *
+   * @host and @client
+   */
+  protected final HashMap<SPath, LinkedList<PendingOperation>> pendingOperations =
+      new HashMap<SPath, LinkedList<PendingOperation>>();
+
+  /** Used to transform local operations against the pending operations. */
+  protected final InclusionTransformation inclusion = new GOTOInclusionTransformation();
+
   /** @host and @client */
   protected synchronized Jupiter get(SPath path) {
 
     Jupiter clientDoc = this.clientDocs.get(path);
     if (clientDoc == null) {
-      clientDoc = new Jupiter(true);
+      clientDoc = new Jupiter(true, useCompositeOperations());
       this.clientDocs.put(path, clientDoc);
     }
     return clientDoc;
   }
 
+  /**
+   * Returns whether the Jupiter instances transform received operations as composite operations.
+   * The proxies on the host do the same if the host supports them.
+   *
+   * @see JupiterServer
+   */
+  private boolean useCompositeOperations() {
+    return sarosSession.isHost()
+        || versionManager.isFeatureSupported(
+            sarosSession.getHost().getJID(), Feature.COMPOSITE_OPERATION);
+  }
+
+  /**
+   * Returns the transformed operation of the given activity. If the activity was already
+   * {@linkplain #prepare(JupiterActivity) prepared} the pending operation is returned, otherwise
+   * the activity is transformed now.
+   */
   public synchronized Operation receive(JupiterActivity jupiterActivity)
       throws TransformationException {
-    return get(jupiterActivity.getPath()).receiveJupiterActivity(jupiterActivity);
+
+    final SPath path = jupiterActivity.getPath();
+    final LinkedList<PendingOperation> pending = pendingOperations.get(path);
+
+    if (pending == null) return transform(jupiterActivity);
+
+    final PendingOperation pendingOperation = pending.removeFirst();
+
+    if (pending.isEmpty()) pendingOperations.remove(path);
+
+    if (pendingOperation.activity != jupiterActivity) {
+      pendingOperations.remove(path);
+      throw new TransformationException(
+          "activity was not prepared in the order of execution: " + jupiterActivity);
+    }
+
+    return pendingOperation.operation;
+  }
+
+  /**
+   * Transforms the given activity ahead of its execution. The transformed operation is pending
+   * until the activity is passed to {@link #receive(JupiterActivity)}, which must happen in the
+   * same order the activities were prepared. Local operations that are generated in the meantime
+   * are transformed against the pending operations, as the local document does not contain them
+   * yet.
+   *
+   * @throws TransformationException if the activity cannot be transformed, it is pending without an
+   *     operation then
+   */
+  public synchronized void prepare(JupiterActivity jupiterActivity) throws TransformationException {
+
+    final SPath path = jupiterActivity.getPath();
+
+    LinkedList<PendingOperation> pending = pendingOperations.get(path);
+
+    if (pending == null) {
+      pending = new LinkedList<PendingOperation>();
+      pendingOperations.put(path, pending);
+    }
+
+    final PendingOperation pendingOperation =
+        new PendingOperation(jupiterActivity, new NoOperation());
+
+    pending.add(pendingOperation);
+
+    pendingOperation.operation = transform(jupiterActivity);
+  }
+
+  private Operation transform(JupiterActivity jupiterActivity) throws TransformationException {
+    final SPath path = jupiterActivity.getPath();
+    final Operation op = get(path).receiveJupiterActivity(jupiterActivity);
+
+    final Integer count = unacknowledgedOperations.get(path);
+    unacknowledgedOperations.put(path, count == null ? 1 : count + 1);
+
+    return op;
+  }
+
+  /**
+   * Generates acknowledgements for all documents which received at least the given number of
+   * operations since the last operation or acknowledgement was generated for them.
+   *
+   * @param threshold the minimum number of unacknowledged operations
+   * @return the acknowledging JupiterActivities
+   */
+  public synchronized List<JupiterActivity> generateAcknowledgements(int threshold) {
+    final List<JupiterActivity> acknowledgements = new ArrayList<JupiterActivity>();
+
+    final Iterator<Entry<SPath, Integer>> it = unacknowledgedOperations.entrySet().iterator();
+
+    while (it.hasNext()) {
+      final Entry<SPath, Integer> entry = it.next();
+
+      if (entry.getValue() < threshold) continue;
+
+      final SPath path = entry.getKey();
+
+      acknowledgements.add(get(path).generateAcknowledgement(sarosSession.getLocalUser(), path));
+      it.remove();
+    }
+
+    return acknowledgements;
   }
 
   public synchronized boolean isCurrent(ChecksumActivity checksumActivity)
@@ -48,19 +180,55 @@ public class JupiterClient {
     return get(checksumActivity.getPath()).isCurrent(checksumActivity.getTimestamp());
   }
 
+  /**
+   * Returns whether the checksum of the given move refers to the current state of the document at
+   * the old path of the move.
+   */
+  public synchronized boolean isCurrent(FileActivity fileActivity) throws TransformationException {
+
+    return get(fileActivity.getOldPath()).isCurrent(fileActivity.getTimestamp());
+  }
+
   public synchronized void reset(SPath path) {
     this.clientDocs.remove(path);
+    this.unacknowledgedOperations.remove(path);
+    this.pendingOperations.remove(path);
   }
 
   public synchronized void reset() {
     this.clientDocs.clear();
+    this.unacknowledgedOperations.clear();
+    this.pendingOperations.clear();
   }
 
   public synchronized JupiterActivity generate(TextEditActivity textEdit) {
 
     SPath path = textEdit.getPath();
-    return get(path)
-        .generateJupiterActivity(textEdit.toOperation(), sarosSession.getLocalUser(), path);
+
+    // the generated activity acknowledges all operations received so far
+    unacknowledgedOperations.remove(path);
+
+    Operation op = textEdit.toOperation();
+
+    /*
+     * the edit was made on a document that does not contain the pending
+     * operations yet, the Jupiter algorithm already includes them
+     */
+    final LinkedList<PendingOperation> pending = pendingOperations.get(path);
+
+    if (pending != null) {
+      for (final PendingOperation pendingOperation : pending) {
+        final Operation transformedOp =
+            inclusion.transform(op, pendingOperation.operation, Boolean.FALSE);
+
+        pendingOperation.operation =
+            inclusion.transform(pendingOperation.operation, op, Boolean.TRUE);
+
+        op = transformedOp;
+      }
+    }
+
+    return get(path).generateJupiterActivity(op, sarosSession.getLocalUser(), path);
   }
 
   /**
@@ -71,4 +239,17 @@ public class JupiterClient {
 
     return get(checksumActivity.getPath()).withTimestamp(checksumActivity);
   }
+
+  /** A received operation that was transformed but not yet executed. */
+  private static class PendingOperation {
+
+    private final JupiterActivity activity;
+
+    private Operation operation;
+
+    private PendingOperation(JupiterActivity activity, Operation operation) {
+      this.activity = activity;
+      this.operation = operation;
+    }
+  }
 }
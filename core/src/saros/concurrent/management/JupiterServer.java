@@ -1,21 +1,36 @@
 package saros.concurrent.management;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import saros.activities.ChecksumActivity;
+import saros.activities.IActivity;
+import saros.activities.IResourceActivity;
 import saros.activities.JupiterActivity;
 import saros.activities.SPath;
-import saros.concurrent.jupiter.TransformationException;
+import saros.concurrent.jupiter.Timestamp;
 import saros.concurrent.jupiter.internal.JupiterDocumentServer;
 import saros.session.ISarosSession;
 import saros.session.User;
+import saros.versioning.Feature;
+import saros.versioning.VersionManager;
 
 /**
  * A JupiterServer manages Jupiter server instances for a number of users AND number of paths.
  *
  * <p>(in contrast to a JupiterDocumentServer which only handles a single path)
+ *
+ * <p>Transformations of different paths are independent of each other and may be performed
+ * concurrently. Transformations of the same path are serialized by the corresponding {@link
+ * JupiterDocumentServer}. Only changes to the set of participating users or paths are exclusive.
  */
 public class JupiterServer {
 
@@ -24,33 +39,57 @@ public class JupiterServer {
    *
    * @host
    */
-  private final HashMap<SPath, JupiterDocumentServer> concurrentDocuments =
-      new HashMap<SPath, JupiterDocumentServer>();
+  private final ConcurrentMap<SPath, JupiterDocumentServer> concurrentDocuments =
+      new ConcurrentHashMap<SPath, JupiterDocumentServer>();
 
+  /** Guarded by {@link #lock}. */
   private final Set<User> currentClients = new HashSet<User>();
 
+  /**
+   * Read lock for accessing document servers, write lock for changing the users or removing paths
+   */
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
   private final ISarosSession sarosSession;
 
-  public JupiterServer(final ISarosSession sarosSession) {
+  private final VersionManager versionManager;
+
+  public JupiterServer(final ISarosSession sarosSession, final VersionManager versionManager) {
     this.sarosSession = sarosSession;
+    this.versionManager = versionManager;
   }
 
-  public synchronized void removePath(final SPath path) {
-    concurrentDocuments.remove(path);
+  public void removePath(final SPath path) {
+    lock.writeLock().lock();
+    try {
+      concurrentDocuments.remove(path);
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
-  public synchronized void addUser(final User user) {
-    currentClients.add(user);
+  public void addUser(final User user) {
+    lock.writeLock().lock();
+    try {
+      currentClients.add(user);
 
-    for (final JupiterDocumentServer server : concurrentDocuments.values())
-      server.addProxyClient(user);
+      for (final JupiterDocumentServer server : concurrentDocuments.values())
+        addProxyClient(server, user);
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
-  public synchronized void removeUser(final User user) {
-    currentClients.remove(user);
+  public void removeUser(final User user) {
+    lock.writeLock().lock();
+    try {
+      currentClients.remove(user);
 
-    for (final JupiterDocumentServer server : concurrentDocuments.values()) {
-      server.removeProxyClient(user);
+      for (final JupiterDocumentServer server : concurrentDocuments.values()) {
+        server.removeProxyClient(user);
+      }
+    } finally {
+      lock.writeLock().unlock();
     }
   }
 
@@ -58,6 +97,8 @@ public class JupiterServer {
    * Retrieves the JupiterDocumentServer for a given path. If no JupiterDocumentServer exists for
    * this path, a new one is created and returned afterwards.
    *
+   * <p><b>Note:</b> The caller must hold the read lock.
+   *
    * @host
    */
   /*
@@ -66,7 +107,7 @@ public class JupiterServer {
    * SarosSessionMapper to also track the resources and not just the projects
    * that are already shared for every user individually.
    */
-  private synchronized JupiterDocumentServer getServer(final SPath path) {
+  private JupiterDocumentServer getServer(final SPath path) {
 
     JupiterDocumentServer docServer = concurrentDocuments.get(path);
 
@@ -81,34 +122,95 @@ public class JupiterServer {
          * the Project yet will be added later.
          */
         if (sarosSession.userHasProject(client, path.getProject())) {
-          docServer.addProxyClient(client);
+          addProxyClient(docServer, client);
         }
       }
 
-      docServer.addProxyClient(sarosSession.getHost());
+      addProxyClient(docServer, sarosSession.getHost());
+
+      /*
+       * the read lock is shared, so another thread may have created a
+       * server for the same path in the meantime
+       */
+      final JupiterDocumentServer current = concurrentDocuments.putIfAbsent(path, docServer);
 
-      concurrentDocuments.put(path, docServer);
+      if (current != null) docServer = current;
     }
     return docServer;
   }
 
-  public synchronized void reset(final SPath path, final User user) {
-    getServer(path).reset(user);
-  }
+  /**
+   * Adds a proxy for the given user to the given document server. Composite operations are only
+   * used if the client of the user announced support for them.
+   */
+  private void addProxyClient(final JupiterDocumentServer docServer, final User user) {
+    final boolean compositeOperations =
+        user.isLocal()
+            || versionManager.isFeatureSupported(user.getJID(), Feature.COMPOSITE_OPERATION);
 
-  public synchronized Map<User, JupiterActivity> transform(final JupiterActivity activity)
-      throws TransformationException {
+    docServer.addProxyClient(user, compositeOperations);
+  }
 
-    final JupiterDocumentServer docServer = getServer(activity.getPath());
+  /**
+   * Returns the current vector time of the document with the given path from the perspective of the
+   * given user.
+   *
+   * @return the vector time or <code>null</code> if the user has no proxy for the document
+   */
+  public Timestamp getTimestamp(final SPath path, final User user) {
+    lock.readLock().lock();
+    try {
+      return getServer(path).getTimestamp(user);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
 
-    return docServer.transformJupiterActivity(activity);
+  public void reset(final SPath path, final User user) {
+    lock.readLock().lock();
+    try {
+      getServer(path).reset(user);
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
-  public synchronized Map<User, ChecksumActivity> withTimestamp(final ChecksumActivity activity)
-      throws TransformationException {
+  /**
+   * Transforms the given JupiterActivities and ChecksumActivities. The activities are grouped by
+   * their document and each document transforms its activities in one pass.
+   *
+   * @param activities the activities to transform, other activities are ignored
+   * @param result map of the recipients to the activities they should receive
+   * @see JupiterDocumentServer#transform(List, Map)
+   */
+  public void transform(final List<IActivity> activities, final Map<User, List<IActivity>> result) {
+
+    // keeps the order of the activities of each document
+    final Map<SPath, List<IActivity>> documents = new LinkedHashMap<SPath, List<IActivity>>();
 
-    final JupiterDocumentServer docServer = getServer(activity.getPath());
+    for (final IActivity activity : activities) {
+      if (!(activity instanceof JupiterActivity) && !(activity instanceof ChecksumActivity))
+        continue;
 
-    return docServer.withTimestamp(activity);
+      final SPath path = ((IResourceActivity) activity).getPath();
+
+      List<IActivity> documentActivities = documents.get(path);
+
+      if (documentActivities == null) {
+        documentActivities = new ArrayList<IActivity>();
+        documents.put(path, documentActivities);
+      }
+
+      documentActivities.add(activity);
+    }
+
+    lock.readLock().lock();
+    try {
+      for (final Entry<SPath, List<IActivity>> entry : documents.entrySet())
+        getServer(entry.getKey()).transform(entry.getValue(), result);
+
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 }
@@ -18,6 +18,7 @@ import saros.activities.ChecksumErrorActivity;
 import saros.activities.FileActivity;
 import saros.activities.SPath;
 import saros.annotations.Component;
+import saros.concurrent.management.ConcurrentDocumentClient;
 import saros.editor.IEditorManager;
 import saros.monitoring.IProgressMonitor;
 import saros.monitoring.NullProgressMonitor;
@@ -108,6 +109,8 @@ public class ConsistencyWatchdogClient extends AbstractActivityProducer implemen
 
         @Override
         public void receive(FileActivity fileActivity) {
+          if (fileActivity.getChecksum() != null) verifyMovedFile(fileActivity);
+
           if (!fileActivity.isRecovery()) return;
 
           int currentValue;
@@ -212,6 +215,7 @@ public class ConsistencyWatchdogClient extends AbstractActivityProducer implemen
               currentSession.getLocalUser(),
               currentSession.getHost(),
               pathsOfHandledFiles,
+              getSegmentChecksums(pathsOfHandledFiles),
               recoveryID));
 
       try {
@@ -248,6 +252,25 @@ public class ConsistencyWatchdogClient extends AbstractActivityProducer implemen
     }
   }
 
+  /**
+   * Calculates the segment checksums of the local documents so that the host only has to send the
+   * inconsistent ranges. An empty string is used for documents whose content is not available.
+   */
+  private List<String> getSegmentChecksums(List<SPath> paths) {
+    final List<String> segmentChecksums = new ArrayList<String>(paths.size());
+
+    for (final SPath path : paths) {
+      final String content = path.getFile().exists() ? editorManager.getContent(path) : null;
+
+      segmentChecksums.add(
+          content == null || content.isEmpty()
+              ? ""
+              : SegmentChecksums.calculate(content).toString());
+    }
+
+    return segmentChecksums;
+  }
+
   private String getNextRecoveryID() {
     return Long.toHexString(RANDOM.nextLong());
   }
@@ -315,6 +338,35 @@ public class ConsistencyWatchdogClient extends AbstractActivityProducer implemen
     return false;
   }
 
+  /**
+   * Verifies that the local content of a file that was moved without transmitting its content
+   * matches the content of the host. If not, the file is marked as inconsistent so that the user
+   * can start a recovery. Like for checksums, the check is skipped if the local user modified the
+   * document concurrently.
+   */
+  private void verifyMovedFile(final FileActivity fileActivity) {
+
+    final ISarosSession currentSession = session;
+
+    if (currentSession.hasWriteAccess()
+        && !currentSession.getConcurrentDocumentClient().isCurrent(fileActivity)) return;
+
+    final SPath path = ConcurrentDocumentClient.getMovedPath(fileActivity);
+
+    final String content = path.getFile().exists() ? editorManager.getContent(path) : null;
+
+    if (content != null && DocumentChecksum.calculate(content) == fileActivity.getChecksum())
+      return;
+
+    LOG.warn("content of moved file does not match the content of the host: " + fileActivity);
+
+    if (!pathsWithWrongChecksums.add(fileActivity.getPath())) return;
+
+    if (!inconsistencyToResolve.getValue()) LOG.info("Inconsistencies have been detected");
+
+    inconsistencyToResolve.setValue(true);
+  }
+
   private void performCheck(ChecksumActivity checksumActivity) {
 
     final ISarosSession currentSession = session;
@@ -12,6 +12,7 @@ import saros.activities.FileActivity.Purpose;
 import saros.activities.FileActivity.Type;
 import saros.activities.SPath;
 import saros.activities.TargetedFileActivity;
+import saros.activities.TextRecoveryActivity;
 import saros.annotations.Component;
 import saros.editor.IEditorManager;
 import saros.filesystem.IFile;
@@ -138,9 +139,15 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
           @Override
           public void run() {
 
-            for (final SPath path : checksumError.getPaths()) {
+            final List<SPath> paths = checksumError.getPaths();
+            final List<String> segmentChecksums = checksumError.getSegmentChecksums();
 
-              recoverFile(checksumError.getSource(), path);
+            for (int i = 0; i < paths.size(); i++) {
+
+              recoverFile(
+                  checksumError.getSource(),
+                  paths.get(i),
+                  segmentChecksums == null ? null : segmentChecksums.get(i));
 
               // Tell the user that we sent all files
               fireActivity(
@@ -155,10 +162,13 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
   }
 
   /**
-   * Recover a single file for the given user (that is either send the file or tell the user to
-   * remove it).
+   * Recover a single file for the given user (that is either send the file, send the inconsistent
+   * range of the file, or tell the user to remove it).
+   *
+   * @param segmentChecksums the string representation of the segment checksums of the user's
+   *     document or <code>null</code>
    */
-  private void recoverFile(final User from, final SPath path) {
+  private void recoverFile(final User from, final SPath path, final String segmentChecksums) {
 
     final IFile file = path.getFile();
 
@@ -194,14 +204,23 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
     byte[] content;
     String text;
 
-    try {
-      text = editorManager.getContent(path);
+    text = editorManager.getContent(path);
 
-      if (text == null) {
-        LOG.error("could retrieve content of file: " + file);
-        return;
-      }
+    if (text == null) {
+      LOG.error("could retrieve content of file: " + file);
+      return;
+    }
 
+    final TextRecoveryActivity textRecovery =
+        createTextRecovery(from, path, text, SegmentChecksums.parse(segmentChecksums));
+
+    if (textRecovery != null) {
+      fireActivity(textRecovery);
+      fireChecksum(path, text);
+      return;
+    }
+
+    try {
       content = text.getBytes(charset);
     } catch (UnsupportedEncodingException e) {
       LOG.error("could not decode file: " + file, e);
@@ -212,14 +231,58 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
         new TargetedFileActivity(
             user, from, Type.CREATED, path, null, content, charset, Purpose.RECOVERY));
 
-    /*
-     * Immediately follow up with a new checksum activity so that the remote
-     * side can verify the recovered file.
-     */
+    fireChecksum(path, text);
+  }
 
+  /**
+   * Immediately follow up with a new checksum activity so that the remote side can verify the
+   * recovered file.
+   */
+  private void fireChecksum(final SPath path, final String text) {
     DocumentChecksum checksum = new DocumentChecksum(path);
     checksum.update(text);
 
-    fireActivity(new ChecksumActivity(user, path, checksum.getHash(), checksum.getLength(), null));
+    fireActivity(
+        new ChecksumActivity(
+            session.getLocalUser(), path, checksum.getHash(), checksum.getLength(), null));
+  }
+
+  /**
+   * Creates an activity that only replaces the inconsistent range of the remote document. Returns
+   * <code>null</code> if the whole document should be sent instead, i.e if no segment checksums are
+   * available or the inconsistent range is not significantly smaller than the document.
+   */
+  private TextRecoveryActivity createTextRecovery(
+      final User from,
+      final SPath path,
+      final String text,
+      final SegmentChecksums remoteSegmentChecksums) {
+
+    if (remoteSegmentChecksums == null || remoteSegmentChecksums.getSegmentCount() == 0)
+      return null;
+
+    final SegmentChecksums.Range range =
+        SegmentChecksums.calculate(text).getDifference(text, remoteSegmentChecksums);
+
+    if (range == null || range.getText().length() > text.length() / 2) return null;
+
+    LOG.debug(
+        "recovering range ["
+            + range.getOffset()
+            + ", "
+            + (range.getOffset() + range.getLength())
+            + ") of "
+            + path
+            + " for user "
+            + from);
+
+    return new TextRecoveryActivity(
+        session.getLocalUser(),
+        from,
+        path,
+        range.getOffset(),
+        range.getLength(),
+        range.getText(),
+        remoteSegmentChecksums.getLength());
   }
 }
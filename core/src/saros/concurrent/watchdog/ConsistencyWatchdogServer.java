@@ -83,15 +83,15 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
   private ISharedEditorListener sharedEditorListener =
       new ISharedEditorListener() {
         /**
-         * Marks checksums as dirty as soon as their associated documents are modified. With this
-         * information, checksum calculation can be avoided when the document hasn't changed between
-         * checksum iterations.
+         * Updates the checksums incrementally as soon as their associated documents are modified.
+         * With this information, the document content has only to be fetched and hashed again if
+         * the incremental update fails.
          */
         @Override
         public void textEdited(TextEditActivity textEdit) {
           DocumentChecksum checksum = documentChecksums.get(textEdit.getPath());
 
-          if (checksum != null) checksum.markDirty();
+          if (checksum != null) checksum.applyTextEdit(textEdit);
         }
       };
 
@@ -238,7 +238,7 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
 
     DocumentChecksum checksum = documentChecksums.get(docPath);
     if (checksum == null) {
-      checksum = new DocumentChecksum(docPath);
+      checksum = new DocumentChecksum(docPath, true);
       documentChecksums.put(docPath, checksum);
     }
 
@@ -1,10 +1,16 @@
 package saros.concurrent.watchdog;
 
 import saros.activities.SPath;
+import saros.activities.TextEditActivity;
+import saros.editor.text.TextBuffer;
 
 /**
  * Represents a checksum of a document in the workspace. It consists of the document's
  * project-relative path, the content length and the content's string hash code.
+ *
+ * <p>An incremental checksum keeps a copy of the content it was calculated for. It can then be
+ * updated by {@link #applyTextEdit(TextEditActivity)} in <code>O(log n)</code> instead of rehashing
+ * the whole document.
  */
 public class DocumentChecksum {
 
@@ -19,13 +25,32 @@ public class DocumentChecksum {
   private int hash;
   private boolean dirty;
 
+  private final boolean incremental;
+
+  /**
+   * Copy of the content the checksum was calculated for, only used if the checksum is incremental
+   */
+  private TextBuffer content;
+
   /**
    * Creates a new DocumentChecksum.
    *
    * @param path the document's project-relative path
    */
   public DocumentChecksum(SPath path) {
+    this(path, false);
+  }
+
+  /**
+   * Creates a new DocumentChecksum.
+   *
+   * @param path the document's project-relative path
+   * @param incremental if <code>true</code> the checksum can be updated by {@link
+   *     #applyTextEdit(TextEditActivity)}
+   */
+  public DocumentChecksum(SPath path, boolean incremental) {
     this.path = path;
+    this.incremental = incremental;
     this.dirty = true;
   }
 
@@ -87,6 +112,7 @@ public class DocumentChecksum {
    */
   public void markDirty() {
     dirty = true;
+    content = null;
   }
 
   /**
@@ -103,6 +129,10 @@ public class DocumentChecksum {
 
     if (documentContent == null) {
       length = hash = NOT_AVAILABLE;
+    } else if (incremental) {
+      content = new TextBuffer(documentContent);
+      length = content.length();
+      hash = content.getHash();
     } else {
       length = documentContent.length();
       hash = documentContent.hashCode();
@@ -111,6 +141,52 @@ public class DocumentChecksum {
     dirty = false;
   }
 
+  /**
+   * Updates the checksum by applying the given text edit to the content the checksum was calculated
+   * for. If the checksum is not incremental, is dirty, or the text edit does not match the content
+   * (i.e the replaced text differs) the checksum is {@linkplain #markDirty() marked as dirty}
+   * instead.
+   *
+   * @param edit the text edit that was applied to the document
+   * @return <code>true</code> if the checksum was updated, <code>false</code> if it is dirty
+   */
+  public boolean applyTextEdit(TextEditActivity edit) {
+    if (dirty || content == null) {
+      markDirty();
+      return false;
+    }
+
+    final int offset = edit.getOffset();
+    final String replacedText = edit.getReplacedText();
+
+    if (offset < 0
+        || offset + replacedText.length() > content.length()
+        || !content.getText(offset, replacedText.length()).equals(replacedText)) {
+      markDirty();
+      return false;
+    }
+
+    content.delete(offset, replacedText.length());
+    content.insert(offset, edit.getText());
+
+    length = content.length();
+    hash = content.getHash();
+
+    return true;
+  }
+
+  /**
+   * Calculates a checksum of the given content that combines the content length and hash code used
+   * by this class. Both values can be compared without transmitting the content itself, e.g to
+   * verify that a file that was moved without its content is equal on both sides.
+   *
+   * @param documentContent the content of the document
+   * @return the checksum
+   */
+  public static long calculate(String documentContent) {
+    return ((long) documentContent.length() << 32) | (documentContent.hashCode() & 0xFFFFFFFFL);
+  }
+
   @Override
   public String toString() {
     return path.toString() + " [" + this.length + "," + this.hash + "]";
@@ -0,0 +1,251 @@
+package saros.concurrent.watchdog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checksums of the consecutive segments of a document. They are used during a consistency recovery
+ * to determine the range of a document that differs between the host and an inconsistent client so
+ * that only this range has to be transferred instead of the whole document.
+ *
+ * <p>A segment consists of whole lines. Its boundaries are chosen by the content of the lines and
+ * not by their position, i.e a segment ends after a line whose hash matches a fixed pattern. This
+ * way an inserted or deleted line only affects the segment it belongs to and all following segments
+ * stay aligned.
+ *
+ * <p>The checksum of a segment consists of its length and the string hash code of its content.
+ */
+public final class SegmentChecksums {
+
+  /** Minimum number of lines of a segment, except for the last one */
+  private static final int MIN_SEGMENT_LINES = 8;
+
+  /** Maximum number of lines of a segment */
+  private static final int MAX_SEGMENT_LINES = 256;
+
+  /** Average number of lines after which a segment boundary is chosen, must be a power of two */
+  private static final int BOUNDARY_MASK = 32 - 1;
+
+  private static final char SEGMENT_SEPARATOR = ',';
+
+  private static final char FIELD_SEPARATOR = ':';
+
+  private final int[] lengths;
+  private final int[] hashes;
+
+  private SegmentChecksums(int[] lengths, int[] hashes) {
+    this.lengths = lengths;
+    this.hashes = hashes;
+  }
+
+  /**
+   * Calculates the segment checksums of the given content.
+   *
+   * @param content the content of a document
+   * @return the segment checksums of the content
+   */
+  public static SegmentChecksums calculate(String content) {
+    List<int[]> segments = new ArrayList<int[]>();
+
+    int segmentStart = 0;
+    int segmentHash = 0;
+    int lineHash = 0;
+    int lines = 0;
+
+    final int length = content.length();
+
+    for (int i = 0; i < length; i++) {
+      final char c = content.charAt(i);
+
+      segmentHash = 31 * segmentHash + c;
+      lineHash = 31 * lineHash + c;
+
+      if (c != '\n') continue;
+
+      lines++;
+
+      if (lines >= MAX_SEGMENT_LINES
+          || (lines >= MIN_SEGMENT_LINES && (mix(lineHash) & BOUNDARY_MASK) == 0)) {
+        segments.add(new int[] {i + 1 - segmentStart, segmentHash});
+        segmentStart = i + 1;
+        segmentHash = 0;
+        lines = 0;
+      }
+
+      lineHash = 0;
+    }
+
+    if (segmentStart < length) segments.add(new int[] {length - segmentStart, segmentHash});
+
+    final int[] lengths = new int[segments.size()];
+    final int[] hashes = new int[segments.size()];
+
+    for (int i = 0; i < lengths.length; i++) {
+      lengths[i] = segments.get(i)[0];
+      hashes[i] = segments.get(i)[1];
+    }
+
+    return new SegmentChecksums(lengths, hashes);
+  }
+
+  /**
+   * Restores segment checksums from their string representation as returned by {@link #toString()}.
+   *
+   * @param value the string representation of segment checksums
+   * @return the segment checksums or <code>null</code> if the value is <code>null</code> or
+   *     malformed
+   */
+  public static SegmentChecksums parse(String value) {
+    if (value == null) return null;
+
+    if (value.isEmpty()) return new SegmentChecksums(new int[0], new int[0]);
+
+    final String[] segments = value.split(String.valueOf(SEGMENT_SEPARATOR));
+
+    final int[] lengths = new int[segments.length];
+    final int[] hashes = new int[segments.length];
+
+    try {
+      for (int i = 0; i < segments.length; i++) {
+        final int index = segments[i].indexOf(FIELD_SEPARATOR);
+
+        if (index == -1) return null;
+
+        lengths[i] = Integer.parseInt(segments[i].substring(0, index), Character.MAX_RADIX);
+        hashes[i] = Integer.parseInt(segments[i].substring(index + 1), Character.MAX_RADIX);
+
+        if (lengths[i] <= 0) return null;
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+
+    return new SegmentChecksums(lengths, hashes);
+  }
+
+  /**
+   * Returns the length of the document these checksums were calculated for.
+   *
+   * @return the document length
+   */
+  public int getLength() {
+    int length = 0;
+
+    for (int segmentLength : lengths) length += segmentLength;
+
+    return length;
+  }
+
+  /**
+   * Returns the number of segments.
+   *
+   * @return the number of segments
+   */
+  public int getSegmentCount() {
+    return lengths.length;
+  }
+
+  /**
+   * Determines the range of a remote document that differs from the local document. The range
+   * covers everything between the first and the last segment that differs.
+   *
+   * @param content the content of the local document, these checksums must have been calculated for
+   *     it
+   * @param remote the segment checksums of the remote document
+   * @return the range of the remote document that must be replaced to obtain the local document, or
+   *     <code>null</code> if no differing segments were found
+   */
+  public Range getDifference(String content, SegmentChecksums remote) {
+    final int segments = Math.min(getSegmentCount(), remote.getSegmentCount());
+
+    int prefix = 0;
+    int prefixLength = 0;
+
+    while (prefix < segments && isEqualSegment(prefix, remote, prefix)) {
+      prefixLength += lengths[prefix];
+      prefix++;
+    }
+
+    int suffix = 0;
+    int suffixLength = 0;
+
+    while (prefix + suffix < segments
+        && isEqualSegment(
+            lengths.length - suffix - 1, remote, remote.lengths.length - suffix - 1)) {
+      suffixLength += lengths[lengths.length - suffix - 1];
+      suffix++;
+    }
+
+    final int remoteLength = remote.getLength();
+
+    if (prefix + suffix == lengths.length && prefix + suffix == remote.lengths.length) return null;
+
+    return new Range(
+        prefixLength,
+        remoteLength - prefixLength - suffixLength,
+        content.substring(prefixLength, content.length() - suffixLength));
+  }
+
+  private boolean isEqualSegment(int index, SegmentChecksums other, int otherIndex) {
+    return lengths[index] == other.lengths[otherIndex] && hashes[index] == other.hashes[otherIndex];
+  }
+
+  /**
+   * Returns a compact string representation of these checksums that can be restored by {@link
+   * #parse(String)}.
+   */
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder(lengths.length * 12);
+
+    for (int i = 0; i < lengths.length; i++) {
+      if (i > 0) builder.append(SEGMENT_SEPARATOR);
+
+      builder.append(Integer.toString(lengths[i], Character.MAX_RADIX));
+      builder.append(FIELD_SEPARATOR);
+      builder.append(Integer.toString(hashes[i], Character.MAX_RADIX));
+    }
+
+    return builder.toString();
+  }
+
+  /*
+   * the low bits of the string hash code of short lines are mostly determined
+   * by their last characters, so spread the higher bits first
+   */
+  private static int mix(int hash) {
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    return hash;
+  }
+
+  /** A range of a remote document and the text that should replace it. */
+  public static final class Range {
+
+    private final int offset;
+    private final int length;
+    private final String text;
+
+    private Range(int offset, int length, String text) {
+      this.offset = offset;
+      this.length = length;
+      this.text = text;
+    }
+
+    /** Returns the offset of the range in the remote document. */
+    public int getOffset() {
+      return offset;
+    }
+
+    /** Returns the length of the range in the remote document. */
+    public int getLength() {
+      return length;
+    }
+
+    /** Returns the local text that replaces the range. */
+    public String getText() {
+      return text;
+    }
+  }
+}
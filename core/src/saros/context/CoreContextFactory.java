@@ -24,6 +24,7 @@ import saros.net.mdns.MDNSService;
 import saros.net.stream.IBBStreamService;
 import saros.net.stream.IStreamService;
 import saros.net.stream.Socks5StreamService;
+import saros.net.stream.TCPTransport;
 import saros.net.stun.IStunService;
 import saros.net.stun.internal.StunServiceImpl;
 import saros.net.upnp.IUPnPAccess;
@@ -85,6 +86,9 @@ public class CoreContextFactory extends AbstractContextFactory {
       Component.create(
           BindKey.bindKey(IStreamService.class, IContextKeyBindings.Socks5StreamService.class),
           Socks5StreamService.class),
+      Component.create(
+          BindKey.bindKey(IStreamService.class, IContextKeyBindings.TCPStreamService.class),
+          TCPTransport.class),
       Component.create(RosterTracker.class),
       Component.create(XMPPConnectionService.class),
       Component.create(MDNSService.class),
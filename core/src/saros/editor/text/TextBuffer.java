@@ -0,0 +1,446 @@
+package saros.editor.text;
+
+import java.util.Random;
+
+/**
+ * Text buffer for performant text edits and content hashing on large documents.
+ *
+ * <p>The text is stored as a rope: a balanced tree (treap) whose nodes hold chunks of at most
+ * {@link #MAX_CHUNK_LENGTH} characters. Every node keeps the length, the number of line breaks and
+ * the hash of its subtree, so edits, offset/line conversions and range extraction are performed in
+ * <code>O(log n)</code> (plus the size of the affected chunk or range) without copying the whole
+ * text. The hash is maintained incrementally and is always equal to <code>toString().hashCode()
+ * </code>.
+ *
+ * <p>Lines are separated by <code>'\n'</code>, so a <code>"\r\n"</code> sequence counts as one line
+ * break. A single <code>'\r'</code> is not considered a line break.
+ *
+ * <p>This class is <b>not</b> thread safe.
+ */
+public class TextBuffer {
+
+  /** Maximum number of characters stored in a single chunk. */
+  static final int MAX_CHUNK_LENGTH = 2048;
+
+  /** Chunks are only filled up to this length on creation to leave room for subsequent inserts. */
+  private static final int INITIAL_CHUNK_LENGTH = MAX_CHUNK_LENGTH / 2;
+
+  private static final int HASH_MULTIPLIER = 31;
+
+  private static final class Node {
+    private final StringBuilder chunk;
+    private final int priority;
+
+    private Node left;
+    private Node right;
+
+    // chunk values
+    private int chunkLineBreaks;
+    private int chunkHash;
+    private int chunkPower;
+
+    // subtree values
+    private int length;
+    private int lineBreaks;
+    private int hash;
+    private int power;
+
+    private Node(CharSequence text, int priority) {
+      this.chunk = new StringBuilder(text);
+      this.priority = priority;
+      updateChunk();
+      update();
+    }
+
+    /** Recalculates the values of the chunk. Must be called after the chunk was modified. */
+    private void updateChunk() {
+      int h = 0;
+      int p = 1;
+      int breaks = 0;
+
+      for (int i = 0, len = chunk.length(); i < len; i++) {
+        final char c = chunk.charAt(i);
+        h = HASH_MULTIPLIER * h + c;
+        p *= HASH_MULTIPLIER;
+
+        if (c == '\n') breaks++;
+      }
+
+      chunkHash = h;
+      chunkPower = p;
+      chunkLineBreaks = breaks;
+    }
+
+    /** Recalculates the subtree values. Must be called after a child or the chunk changed. */
+    private void update() {
+      /*
+       * hash(a + b) = hash(a) * 31^|b| + hash(b) which also holds with the
+       * int overflow semantic of String#hashCode()
+       */
+      int h = 0;
+      int p = 1;
+
+      length = chunk.length();
+      lineBreaks = chunkLineBreaks;
+
+      if (left != null) {
+        h = left.hash;
+        p = left.power;
+        length += left.length;
+        lineBreaks += left.lineBreaks;
+      }
+
+      h = h * chunkPower + chunkHash;
+      p *= chunkPower;
+
+      if (right != null) {
+        h = h * right.power + right.hash;
+        p *= right.power;
+        length += right.length;
+        lineBreaks += right.lineBreaks;
+      }
+
+      hash = h;
+      power = p;
+    }
+  }
+
+  private final Random random = new Random();
+
+  private Node root;
+
+  /**
+   * Creates a new buffer containing the given text.
+   *
+   * @param content the initial content of the buffer
+   */
+  public TextBuffer(String content) {
+    root = create(content);
+  }
+
+  /**
+   * Inserts the given text at the given offset.
+   *
+   * @param offset the offset to insert the text at
+   * @param text the text to insert
+   * @throws IndexOutOfBoundsException if the offset is not within the bounds of the buffer
+   */
+  public void insert(int offset, String text) {
+    checkRange(offset, 0);
+
+    if (text.isEmpty()) return;
+
+    if (root != null && insertIntoChunk(root, offset, text)) return;
+
+    final Node[] parts = split(root, offset);
+    root = merge(merge(parts[0], create(text)), parts[1]);
+  }
+
+  /**
+   * Deletes the given range of text.
+   *
+   * @param offset the offset of the first character to delete
+   * @param length the number of characters to delete
+   * @throws IndexOutOfBoundsException if the range is not within the bounds of the buffer
+   */
+  public void delete(int offset, int length) {
+    checkRange(offset, length);
+
+    if (length == 0) return;
+
+    if (deleteFromChunk(root, offset, length)) return;
+
+    final Node[] head = split(root, offset);
+    final Node[] tail = split(head[1], length);
+    root = merge(head[0], tail[1]);
+  }
+
+  /**
+   * Returns the number of characters in the buffer.
+   *
+   * @return the length of the buffer
+   */
+  public int length() {
+    return root == null ? 0 : root.length;
+  }
+
+  /**
+   * Returns the hash code of the buffer's content, i.e the same value as <code>
+   * toString().hashCode()</code>.
+   *
+   * @return the hash code of the content
+   */
+  public int getHash() {
+    return root == null ? 0 : root.hash;
+  }
+
+  /**
+   * Returns the number of lines in the buffer. An empty buffer has one line.
+   *
+   * @return the number of lines
+   */
+  public int getLineCount() {
+    return (root == null ? 0 : root.lineBreaks) + 1;
+  }
+
+  /**
+   * Returns the offset of the first character of the given line.
+   *
+   * @param line the zero based line number
+   * @return the offset of the line
+   * @throws IndexOutOfBoundsException if the line does not exist
+   */
+  public int getLineOffset(int line) {
+    if (line < 0 || line >= getLineCount())
+      throw new IndexOutOfBoundsException("line: " + line + ", line count: " + getLineCount());
+
+    if (line == 0) return 0;
+
+    // the line starts after the line-th line break
+    int breaksToSkip = line;
+    int offset = 0;
+    Node node = root;
+
+    while (true) {
+      final int leftBreaks = node.left == null ? 0 : node.left.lineBreaks;
+
+      if (breaksToSkip <= leftBreaks) {
+        node = node.left;
+        continue;
+      }
+
+      breaksToSkip -= leftBreaks;
+      offset += node.left == null ? 0 : node.left.length;
+
+      if (breaksToSkip <= node.chunkLineBreaks) {
+        for (int i = 0; ; i++) {
+          if (node.chunk.charAt(i) == '\n' && --breaksToSkip == 0) return offset + i + 1;
+        }
+      }
+
+      breaksToSkip -= node.chunkLineBreaks;
+      offset += node.chunk.length();
+      node = node.right;
+    }
+  }
+
+  /**
+   * Returns the line that contains the given offset.
+   *
+   * @param offset the offset
+   * @return the zero based line number
+   * @throws IndexOutOfBoundsException if the offset is not within the bounds of the buffer
+   */
+  public int getLineOfOffset(int offset) {
+    checkRange(offset, 0);
+
+    int line = 0;
+    Node node = root;
+
+    while (node != null) {
+      final int leftLength = node.left == null ? 0 : node.left.length;
+
+      if (offset < leftLength) {
+        node = node.left;
+        continue;
+      }
+
+      offset -= leftLength;
+      line += node.left == null ? 0 : node.left.lineBreaks;
+
+      if (offset < node.chunk.length()) {
+        for (int i = 0; i < offset; i++) if (node.chunk.charAt(i) == '\n') line++;
+
+        return line;
+      }
+
+      offset -= node.chunk.length();
+      line += node.chunkLineBreaks;
+      node = node.right;
+    }
+
+    return line;
+  }
+
+  /**
+   * Returns the given range of text.
+   *
+   * @param offset the offset of the first character
+   * @param length the number of characters
+   * @return the text of the range
+   * @throws IndexOutOfBoundsException if the range is not within the bounds of the buffer
+   */
+  public String getText(int offset, int length) {
+    checkRange(offset, length);
+
+    final StringBuilder builder = new StringBuilder(length);
+    append(root, offset, offset + length, builder);
+    return builder.toString();
+  }
+
+  @Override
+  public String toString() {
+    return getText(0, length());
+  }
+
+  private void checkRange(int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > length() || offset + length < 0)
+      throw new IndexOutOfBoundsException(
+          "offset: " + offset + ", length: " + length + ", buffer length: " + length());
+  }
+
+  /** Appends the characters in the range [start, end) of the given subtree to the builder. */
+  private static void append(Node node, int start, int end, StringBuilder builder) {
+    while (node != null && start < end) {
+      final int leftLength = node.left == null ? 0 : node.left.length;
+
+      if (start < leftLength) append(node.left, start, Math.min(end, leftLength), builder);
+
+      final int chunkLength = node.chunk.length();
+      final int chunkStart = Math.max(start - leftLength, 0);
+      final int chunkEnd = Math.min(end - leftLength, chunkLength);
+
+      if (chunkStart < chunkEnd) builder.append(node.chunk, chunkStart, chunkEnd);
+
+      // continue with the right subtree
+      final int rightStart = leftLength + chunkLength;
+      start = Math.max(start - rightStart, 0);
+      end -= rightStart;
+      node = node.right;
+    }
+  }
+
+  /**
+   * Inserts the text into the chunk containing the offset if the chunk is large enough.
+   *
+   * @return <code>true</code> if the text was inserted, <code>false</code> otherwise
+   */
+  private static boolean insertIntoChunk(Node node, int offset, String text) {
+    final int leftLength = node.left == null ? 0 : node.left.length;
+
+    final boolean inserted;
+
+    if (offset < leftLength) {
+      inserted = insertIntoChunk(node.left, offset, text);
+    } else if (offset <= leftLength + node.chunk.length()) {
+      inserted = node.chunk.length() + text.length() <= MAX_CHUNK_LENGTH;
+
+      if (inserted) {
+        node.chunk.insert(offset - leftLength, text);
+        node.updateChunk();
+      }
+    } else {
+      inserted =
+          node.right != null
+              && insertIntoChunk(node.right, offset - leftLength - node.chunk.length(), text);
+    }
+
+    if (inserted) node.update();
+
+    return inserted;
+  }
+
+  /**
+   * Deletes the range from the chunk if the range is completely contained in one chunk and the
+   * chunk does not become empty.
+   *
+   * @return <code>true</code> if the range was deleted, <code>false</code> otherwise
+   */
+  private static boolean deleteFromChunk(Node node, int offset, int length) {
+    if (node == null) return false;
+
+    final int leftLength = node.left == null ? 0 : node.left.length;
+    final int chunkLength = node.chunk.length();
+
+    final boolean deleted;
+
+    if (offset < leftLength) {
+      deleted = deleteFromChunk(node.left, offset, length);
+    } else if (offset < leftLength + chunkLength) {
+      final int start = offset - leftLength;
+      deleted = start + length <= chunkLength && length < chunkLength;
+
+      if (deleted) {
+        node.chunk.delete(start, start + length);
+        node.updateChunk();
+      }
+    } else {
+      deleted = deleteFromChunk(node.right, offset - leftLength - chunkLength, length);
+    }
+
+    if (deleted) node.update();
+
+    return deleted;
+  }
+
+  /**
+   * Splits the tree into two trees, the first containing the first <code>offset</code> characters
+   * and the second containing the remaining characters. A chunk is split if necessary.
+   */
+  private static Node[] split(Node node, int offset) {
+    if (node == null) return new Node[] {null, null};
+
+    final int leftLength = node.left == null ? 0 : node.left.length;
+
+    if (offset <= leftLength) {
+      final Node[] parts = split(node.left, offset);
+      node.left = parts[1];
+      node.update();
+      return new Node[] {parts[0], node};
+    }
+
+    final int chunkOffset = offset - leftLength;
+    final int chunkLength = node.chunk.length();
+
+    if (chunkOffset >= chunkLength) {
+      final Node[] parts = split(node.right, chunkOffset - chunkLength);
+      node.right = parts[0];
+      node.update();
+      return new Node[] {node, parts[1]};
+    }
+
+    /*
+     * the tail inherits the priority, so it can adopt the right subtree
+     * without violating the heap order
+     */
+    final Node tail = new Node(node.chunk.subSequence(chunkOffset, chunkLength), node.priority);
+    tail.right = node.right;
+    tail.update();
+
+    node.chunk.setLength(chunkOffset);
+    node.right = null;
+    node.updateChunk();
+    node.update();
+
+    return new Node[] {node, tail};
+  }
+
+  /** Merges the two trees, all characters of the first tree precede the second tree. */
+  private static Node merge(Node first, Node second) {
+    if (first == null) return second;
+
+    if (second == null) return first;
+
+    if (first.priority >= second.priority) {
+      first.right = merge(first.right, second);
+      first.update();
+      return first;
+    }
+
+    second.left = merge(first, second.left);
+    second.update();
+    return second;
+  }
+
+  /** Creates a tree containing the given text. */
+  private Node create(String text) {
+    Node result = null;
+
+    for (int start = 0; start < text.length(); start += INITIAL_CHUNK_LENGTH) {
+      final int end = Math.min(text.length(), start + INITIAL_CHUNK_LENGTH);
+      result = merge(result, new Node(text.subSequence(start, end), random.nextInt()));
+    }
+
+    return result;
+  }
+}
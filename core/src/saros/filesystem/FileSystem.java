@@ -28,6 +28,18 @@ public class FileSystem {
    * @throws IOException if an I/O error occurred
    */
   public static long checksum(IFile file) throws IOException {
+    return checksum(file, new byte[BUFFER_SIZE]);
+  }
+
+  /**
+   * Calculate Adler32 checksum for given file using the given buffer to read the file. This avoids
+   * allocating a new buffer for every file when calculating the checksums of many files.
+   *
+   * @param buffer the buffer to use, must not be accessed concurrently
+   * @return checksum of file
+   * @throws IOException if an I/O error occurred
+   */
+  public static long checksum(IFile file, byte[] buffer) throws IOException {
 
     InputStream in;
 
@@ -37,8 +49,6 @@ public class FileSystem {
       throw new IOException("failed to calculate checksum", e);
     }
 
-    byte[] buffer = new byte[BUFFER_SIZE];
-
     Adler32 adler = new Adler32();
 
     int read;
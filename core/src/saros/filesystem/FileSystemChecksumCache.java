@@ -1,12 +1,24 @@
 package saros.filesystem;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
+import org.picocontainer.Startable;
 
 /**
  * Default implementation of the checksum cache {@link IChecksumCache interface} .
@@ -18,24 +30,47 @@ import org.apache.log4j.Logger;
  * <p>In order to use this implementation a concrete file change {@link IFileContentChangedNotifier
  * notifier} has to be provided that tracks file changes in the currently used file system.
  *
+ * <p>If a storage file is provided, the cache is loaded when it is started and saved when it is
+ * stopped so that checksums survive restarts. As file changes that happen while the cache is not
+ * running cannot be tracked, a restored checksum is only used if the size and the modification time
+ * of the file still match the values recorded when the checksum was added.
+ *
  * <p><b>Note:</b> This implementation is <b>NOT</b> capable of handling hash collisions.
  *
  * @author Stefan Rossbach
  */
 // TODO add probability of hash collisions, lower bound should be 1 / (2^32 *
 // 2^128)
-public final class FileSystemChecksumCache implements IChecksumCache {
+public final class FileSystemChecksumCache implements IChecksumCache, Startable {
 
   private static final Logger LOG = Logger.getLogger(FileSystemChecksumCache.class);
 
   private static final int SEED = 0xDEADBEEF;
 
+  /** Version of the storage file format. Must be increased on every incompatible change. */
+  private static final int STORAGE_VERSION = 1;
+
+  private static final long UNKNOWN = -1;
+
   private static class Murmur3Hash<T> {
 
     long h1;
     long h2;
     T object;
 
+    /*
+     * state of the file the object was added for, only recorded if the
+     * cache is persistent
+     */
+    long size = UNKNOWN;
+    long lastModified = UNKNOWN;
+
+    /*
+     * the object was loaded from the storage file and the file state was not
+     * verified yet
+     */
+    boolean restored;
+
     public Murmur3Hash(long h1, long h2) {
       this.h1 = h1;
       this.h2 = h2;
@@ -99,10 +134,47 @@ public final class FileSystemChecksumCache implements IChecksumCache {
 
   private Map<Integer, Object> cache = new HashMap<Integer, Object>();
 
+  private final File storage;
+
   public FileSystemChecksumCache(IFileContentChangedNotifier fileContentChangedNotifier) {
+    this(fileContentChangedNotifier, null);
+  }
+
+  /**
+   * Creates a checksum cache that is persisted in the given storage file.
+   *
+   * @param fileContentChangedNotifier the notifier that tracks file changes
+   * @param storage the file to load the checksums from and to save them to, or <code>null</code> if
+   *     the cache should not be persisted
+   */
+  public FileSystemChecksumCache(
+      IFileContentChangedNotifier fileContentChangedNotifier, File storage) {
+    this.storage = storage;
     fileContentChangedNotifier.addFileContentChangedListener(fileContentChangedListener);
   }
 
+  @Override
+  public void start() {
+    if (storage == null || !storage.isFile()) return;
+
+    try {
+      load();
+    } catch (IOException e) {
+      LOG.warn("could not load checksums from " + storage + ": " + e.getMessage());
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (storage == null) return;
+
+    try {
+      save();
+    } catch (IOException e) {
+      LOG.warn("could not save checksums to " + storage + ": " + e.getMessage());
+    }
+  }
+
   @Override
   @SuppressWarnings({"unchecked"})
   public synchronized Long getChecksum(IFile file) {
@@ -121,6 +193,7 @@ public final class FileSystemChecksumCache implements IChecksumCache {
     if (object instanceof Murmur3Hash) {
       if (hash.equals(object)) {
         Murmur3Hash<Long> currentHash = (Murmur3Hash<Long>) object;
+        verifyRestoredHash(file, currentHash);
         logValidChecksum(path, currentHash);
         return currentHash.getObject();
       } else {
@@ -138,6 +211,7 @@ public final class FileSystemChecksumCache implements IChecksumCache {
     }
 
     Murmur3Hash<Long> currentHash = hashes.get(index);
+    verifyRestoredHash(file, currentHash);
     logValidChecksum(path, currentHash);
     return currentHash.getObject();
   }
@@ -151,6 +225,8 @@ public final class FileSystemChecksumCache implements IChecksumCache {
     Murmur3Hash<Long> hash = create128BitMurmur3Hash(path);
     hash.setObject(checksum);
 
+    if (storage != null) recordFileState(file, hash);
+
     Object object = cache.get(path.hashCode());
 
     if (object == null) {
@@ -161,13 +237,14 @@ public final class FileSystemChecksumCache implements IChecksumCache {
     Murmur3Hash<Long> currentHash = getHash(path, hash);
 
     if (currentHash != null) {
-      if (currentHash.getObject() == null) {
-        currentHash.setObject(checksum);
-        return true;
-      }
+      final boolean isInvalid = currentHash.getObject() == null;
 
       currentHash.setObject(checksum);
-      return false;
+      currentHash.size = hash.size;
+      currentHash.lastModified = hash.lastModified;
+      currentHash.restored = false;
+
+      return isInvalid;
     }
 
     List<Murmur3Hash<Long>> list;
@@ -204,6 +281,175 @@ public final class FileSystemChecksumCache implements IChecksumCache {
     return list.get(index);
   }
 
+  /**
+   * Invalidates a checksum that was loaded from the storage file if the file was modified since the
+   * checksum was added.
+   */
+  private void verifyRestoredHash(IFile file, Murmur3Hash<Long> hash) {
+    if (!hash.restored) return;
+
+    hash.restored = false;
+
+    if (hash.getObject() == null) return;
+
+    final long size = hash.size;
+    final long lastModified = hash.lastModified;
+
+    recordFileState(file, hash);
+
+    if (size == hash.size && lastModified == hash.lastModified && size != UNKNOWN) return;
+
+    if (LOG.isTraceEnabled())
+      LOG.trace("invalidating restored checksum for modified file: " + file.getFullPath());
+
+    hash.setObject(null);
+  }
+
+  private static void recordFileState(IFile file, Murmur3Hash<Long> hash) {
+    hash.size = UNKNOWN;
+    hash.lastModified = UNKNOWN;
+
+    final IPath location = file.getLocation();
+
+    if (location == null) return;
+
+    final File localFile = new File(location.toOSString());
+
+    final long lastModified = localFile.lastModified();
+
+    // 0 if the file does not exist or an I/O error occurred
+    if (lastModified == 0) return;
+
+    hash.size = localFile.length();
+    hash.lastModified = lastModified;
+  }
+
+  private synchronized void load() throws IOException {
+    DataInputStream in = null;
+
+    int count = 0;
+
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(storage)));
+
+      final int version = in.readInt();
+
+      if (version != STORAGE_VERSION)
+        throw new IOException("unsupported storage version: " + version);
+
+      final int entries = in.readInt();
+
+      for (int i = 0; i < entries; i++) {
+        final Murmur3Hash<Long> hash = new Murmur3Hash<Long>(in.readLong(), in.readLong());
+
+        hash.setObject(in.readLong());
+        hash.size = in.readLong();
+        hash.lastModified = in.readLong();
+        hash.restored = true;
+
+        if (putRestoredHash(in.readInt(), hash)) count++;
+      }
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+
+    LOG.debug("loaded " + count + " checksums from " + storage);
+  }
+
+  /**
+   * Adds a hash that was loaded from the storage file unless the cache already contains a hash for
+   * the same path.
+   */
+  @SuppressWarnings("unchecked")
+  private boolean putRestoredHash(int key, Murmur3Hash<Long> hash) {
+    final Object object = cache.get(key);
+
+    if (object == null) {
+      cache.put(key, hash);
+      return true;
+    }
+
+    if (hash.equals(object)) return false;
+
+    List<Murmur3Hash<Long>> list;
+
+    if (object instanceof Murmur3Hash) {
+      list = new ArrayList<Murmur3Hash<Long>>(2);
+      list.add((Murmur3Hash<Long>) object);
+      cache.put(key, list);
+    } else {
+      list = (List<Murmur3Hash<Long>>) object;
+
+      if (list.contains(hash)) return false;
+    }
+
+    list.add(hash);
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  private synchronized void save() throws IOException {
+    final List<Integer> keys = new ArrayList<Integer>();
+    final List<Murmur3Hash<Long>> hashes = new ArrayList<Murmur3Hash<Long>>();
+
+    for (Map.Entry<Integer, Object> entry : cache.entrySet()) {
+      final Object object = entry.getValue();
+
+      if (object instanceof Murmur3Hash) {
+        addPersistableHash(entry.getKey(), (Murmur3Hash<Long>) object, keys, hashes);
+        continue;
+      }
+
+      for (Murmur3Hash<Long> hash : (List<Murmur3Hash<Long>>) object)
+        addPersistableHash(entry.getKey(), hash, keys, hashes);
+    }
+
+    final File parent = storage.getAbsoluteFile().getParentFile();
+
+    if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+      throw new IOException("could not create directory " + parent);
+
+    final File tmp = new File(storage.getPath() + ".tmp");
+
+    DataOutputStream out = null;
+
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+
+      out.writeInt(STORAGE_VERSION);
+      out.writeInt(hashes.size());
+
+      for (int i = 0; i < hashes.size(); i++) {
+        final Murmur3Hash<Long> hash = hashes.get(i);
+
+        out.writeLong(hash.h1);
+        out.writeLong(hash.h2);
+        out.writeLong(hash.getObject());
+        out.writeLong(hash.size);
+        out.writeLong(hash.lastModified);
+        out.writeInt(keys.get(i));
+      }
+
+      out.close();
+      out = null;
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+
+    Files.move(tmp.toPath(), storage.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+    LOG.debug("saved " + hashes.size() + " checksums to " + storage);
+  }
+
+  private static void addPersistableHash(
+      Integer key, Murmur3Hash<Long> hash, List<Integer> keys, List<Murmur3Hash<Long>> hashes) {
+
+    if (hash.getObject() == null || hash.size == UNKNOWN) return;
+
+    keys.add(key);
+    hashes.add(hash);
+  }
+
   private Murmur3Hash<Long> create128BitMurmur3Hash(String path) {
     try {
       return create128BitMurmur3Hash(path.getBytes("UTF-8"), SEED);
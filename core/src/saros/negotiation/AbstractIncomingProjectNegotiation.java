@@ -180,6 +180,10 @@ public abstract class AbstractIncomingProjectNegotiation extends ProjectNegotiat
 
       checkCancellation(CancelOption.NOTIFY_PEER);
 
+      // fail instead of losing activities that were queued during the transfer
+      for (final IProject project : projectMapping.values())
+        session.restoreQueuedActivities(project);
+
       /*
        * We are finished with the negotiation. Add all projects resources
        * to the session.
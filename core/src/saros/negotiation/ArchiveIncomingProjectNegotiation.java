@@ -2,10 +2,12 @@ package saros.negotiation;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smackx.filetransfer.IncomingFileTransfer;
@@ -35,6 +37,15 @@ public class ArchiveIncomingProjectNegotiation extends AbstractIncomingProjectNe
 
   private static final Logger LOG = Logger.getLogger(ArchiveIncomingProjectNegotiation.class);
 
+  /**
+   * Number of threads that write the entries of a received archive file to the workspace. Values
+   * greater than <code>1</code> must only be used with workspace implementations that allow other
+   * threads to modify the resources locked by {@link IWorkspace#run}, e.g the Eclipse workspace
+   * binds these locks to the calling thread and would deadlock.
+   */
+  private static final int DECOMPRESS_THREADS =
+      Integer.getInteger("saros.negotiation.DECOMPRESS_THREADS", 1);
+
   public ArchiveIncomingProjectNegotiation(
       final JID peer, //
       final String negotiationID, //
@@ -67,13 +78,13 @@ public class ArchiveIncomingProjectNegotiation extends AbstractIncomingProjectNe
       IProgressMonitor monitor, Map<String, IProject> projectMapping, List<FileList> missingFiles)
       throws IOException, SarosCancellationException {
 
-    boolean filesMissing = false;
+    int missingFileCount = 0;
 
-    for (FileList list : missingFiles) filesMissing |= list.getPaths().size() > 0;
+    for (FileList list : missingFiles) missingFileCount += list.getPaths().size();
 
     // the host do not send an archive if we do not need any files
-    if (filesMissing) {
-      receiveAndUnpackArchive(projectMapping, transferListener, monitor);
+    if (missingFileCount > 0) {
+      receiveAndUnpackArchive(projectMapping, transferListener, missingFileCount, monitor);
     }
   }
 
@@ -81,6 +92,7 @@ public class ArchiveIncomingProjectNegotiation extends AbstractIncomingProjectNe
   private void receiveAndUnpackArchive(
       final Map<String, IProject> localProjectMapping,
       final TransferListener archiveTransferListener,
+      final int missingFileCount,
       final IProgressMonitor monitor)
       throws IOException, SarosCancellationException {
 
@@ -88,6 +100,20 @@ public class ArchiveIncomingProjectNegotiation extends AbstractIncomingProjectNe
 
     monitor.beginTask(null, 100);
 
+    monitor.subTask("Host is compressing project files. Waiting for the archive file...");
+
+    awaitTransferRequest();
+
+    final String fileName = archiveTransferListener.getRequest().getFileName();
+
+    if (fileName != null
+        && fileName.endsWith(ArchiveOutgoingProjectNegotiation.ARCHIVE_STREAM_SUFFIX)) {
+      receiveAndUnpackArchiveStream(
+          localProjectMapping, archiveTransferListener, missingFileCount, monitor);
+      monitor.done();
+      return;
+    }
+
     File archiveFile = receiveArchive(archiveTransferListener, new SubProgressMonitor(monitor, 50));
 
     /*
@@ -105,6 +131,47 @@ public class ArchiveIncomingProjectNegotiation extends AbstractIncomingProjectNe
     }
   }
 
+  /**
+   * Unpacks the archive while it is received. The host compresses the files while sending them, so
+   * there is no archive file on either side.
+   */
+  private void receiveAndUnpackArchiveStream(
+      final Map<String, IProject> localProjectMapping,
+      final TransferListener archiveTransferListener,
+      final int missingFileCount,
+      final IProgressMonitor monitor)
+      throws IOException, SarosCancellationException {
+
+    LOG.debug(this + " : receiving archive stream");
+
+    IncomingFileTransfer transfer = archiveTransferListener.getRequest().accept();
+
+    InputStream in = null;
+
+    try {
+      in = transfer.recieveFile();
+
+      unpackArchive(
+          localProjectMapping,
+          new DecompressArchiveTask(
+              in,
+              missingFileCount,
+              localProjectMapping,
+              PATH_DELIMITER,
+              new SubProgressMonitor(monitor, 100)));
+    } catch (XMPPException e) {
+      throw new IOException(e.getMessage(), e);
+    } catch (LocalCancellationException e) {
+      // the host is still sending, so it must be informed
+      transfer.cancel();
+      throw e;
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+
+    LOG.debug(this + " : archive stream received");
+  }
+
   private void unpackArchive(
       final Map<String, IProject> localProjectMapping,
       final File archiveFile,
@@ -116,8 +183,15 @@ public class ArchiveIncomingProjectNegotiation extends AbstractIncomingProjectNe
     for (Entry<String, IProject> entry : localProjectMapping.entrySet())
       projectMapping.put(entry.getKey(), entry.getValue());
 
-    final DecompressArchiveTask decompressTask =
-        new DecompressArchiveTask(archiveFile, projectMapping, PATH_DELIMITER, monitor);
+    unpackArchive(
+        projectMapping,
+        new DecompressArchiveTask(
+            archiveFile, projectMapping, PATH_DELIMITER, DECOMPRESS_THREADS, monitor));
+  }
+
+  private void unpackArchive(
+      final Map<String, IProject> projectMapping, final DecompressArchiveTask decompressTask)
+      throws LocalCancellationException, IOException {
 
     long startTime = System.currentTimeMillis();
 
@@ -150,11 +224,6 @@ public class ArchiveIncomingProjectNegotiation extends AbstractIncomingProjectNe
       throws IOException, SarosCancellationException {
 
     monitor.beginTask("Receiving archive file...", 100);
-    LOG.debug("waiting for incoming archive stream request");
-
-    monitor.subTask("Host is compressing project files. Waiting for the archive file...");
-
-    awaitTransferRequest();
 
     monitor.subTask("Receiving archive file...");
 
@@ -172,7 +241,7 @@ public class ArchiveIncomingProjectNegotiation extends AbstractIncomingProjectNe
       monitorFileTransfer(transfer, monitor);
       transferFailed = false;
     } catch (XMPPException e) {
-      throw new IOException(e.getMessage(), e.getCause());
+      throw new IOException(e.getMessage(), e);
     } finally {
       if (transferFailed && !archiveFile.delete()) {
         LOG.warn("Could not clean up archive file " + archiveFile.getAbsolutePath());
@@ -2,8 +2,10 @@ package saros.negotiation;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smackx.filetransfer.OutgoingFileTransfer;
@@ -26,16 +28,40 @@ import saros.session.ISarosSession;
 import saros.session.ISarosSessionManager;
 import saros.session.User;
 import saros.synchronize.StartHandle;
+import saros.versioning.Feature;
+import saros.versioning.VersionManager;
 
 /**
  * Implementation of {@link AbstractOutgoingProjectNegotiation} utilizing a transferred zip archive
  * to exchange differences in the project files.
+ *
+ * <p>If {@link #STREAMING_ARCHIVE} is enabled the archive is not written to a temporary file first.
+ * Instead it is compressed directly into the file transfer stream so that compression, transfer and
+ * decompression on the remote side overlap. As the files are read while the transfer is running the
+ * session users stay stopped until the transfer has finished. The archive is only streamed to peers
+ * that announced the {@linkplain Feature#ARCHIVE_STREAM support} for it.
  */
 public class ArchiveOutgoingProjectNegotiation extends AbstractOutgoingProjectNegotiation {
 
   private static final Logger LOG = Logger.getLogger(ArchiveOutgoingProjectNegotiation.class);
+
+  /**
+   * Suffix of the file name of a file transfer that contains the archive as a stream. Used by the
+   * receiving side to decompress the archive while it is received.
+   */
+  static final String ARCHIVE_STREAM_SUFFIX = ".zipstream";
+
+  private static final boolean STREAMING_ARCHIVE =
+      Boolean.parseBoolean(System.getProperty("saros.negotiation.STREAMING_ARCHIVE", "false"));
+
   private File zipArchive = null;
 
+  private ArchiveContent archiveContent = null;
+
+  private List<StartHandle> stoppedUsers = null;
+
+  private final VersionManager versionManager;
+
   public ArchiveOutgoingProjectNegotiation( //
       final JID peer, //
       final ProjectSharingData projects, //
@@ -46,7 +72,8 @@ public class ArchiveOutgoingProjectNegotiation extends AbstractOutgoingProjectNe
       final IChecksumCache checksumCache, //
       final XMPPConnectionService connectionService, //
       final ITransmitter transmitter, //
-      final IReceiver receiver //
+      final IReceiver receiver, //
+      final VersionManager versionManager //
       ) {
     super(
         peer,
@@ -59,6 +86,8 @@ public class ArchiveOutgoingProjectNegotiation extends AbstractOutgoingProjectNe
         connectionService,
         transmitter,
         receiver);
+
+    this.versionManager = versionManager;
   }
 
   @Override
@@ -72,7 +101,8 @@ public class ArchiveOutgoingProjectNegotiation extends AbstractOutgoingProjectNe
   protected void prepareTransfer(IProgressMonitor monitor, List<FileList> fileLists)
       throws IOException, SarosCancellationException {
 
-    List<StartHandle> stoppedUsers = null;
+    boolean restartUsers = true;
+
     try {
       stoppedUsers = stopUsers(monitor);
       monitor.subTask("");
@@ -95,10 +125,24 @@ public class ArchiveOutgoingProjectNegotiation extends AbstractOutgoingProjectNe
        */
       session.userStartedQueuing(user);
 
-      zipArchive = createProjectArchive(fileLists, monitor);
+      archiveContent = collectArchiveContent(fileLists);
+
+      if (STREAMING_ARCHIVE
+          && archiveContent != null
+          && versionManager.isFeatureSupported(getPeer(), Feature.ARCHIVE_STREAM)) {
+        // the files are read during the transfer, users are restarted in the cleanup
+        restartUsers = false;
+        return;
+      }
+
+      if (archiveContent != null) zipArchive = createProjectArchive(archiveContent, monitor);
+
       monitor.subTask("");
     } finally {
-      if (stoppedUsers != null) startUsers(stoppedUsers);
+      if (restartUsers && stoppedUsers != null) {
+        startUsers(stoppedUsers);
+        stoppedUsers = null;
+      }
     }
   }
 
@@ -107,10 +151,14 @@ public class ArchiveOutgoingProjectNegotiation extends AbstractOutgoingProjectNe
       throws SarosCancellationException, IOException {
     if (zipArchive != null)
       sendArchive(zipArchive, getPeer(), TRANSFER_ID_PREFIX + getID(), monitor);
+    else if (archiveContent != null)
+      sendArchiveStream(archiveContent, getPeer(), TRANSFER_ID_PREFIX + getID(), monitor);
   }
 
   @Override
   protected void cleanup(IProgressMonitor monitor) {
+    if (stoppedUsers != null) startUsers(stoppedUsers);
+
     if (zipArchive != null && !zipArchive.delete())
       LOG.warn("could not delete archive file: " + zipArchive.getAbsolutePath());
     super.cleanup(monitor);
@@ -118,11 +166,10 @@ public class ArchiveOutgoingProjectNegotiation extends AbstractOutgoingProjectNe
 
   /**
    * @param fileLists a list of file lists containing the files to archive
-   * @return zip file containing all files denoted by the file lists or <code>null</code> if the
-   *     file lists do not contain any files
+   * @return the files to archive or <code>null</code> if the file lists do not contain any files
    */
-  private File createProjectArchive(final List<FileList> fileLists, final IProgressMonitor monitor)
-      throws IOException, SarosCancellationException {
+  private ArchiveContent collectArchiveContent(final List<FileList> fileLists)
+      throws SarosCancellationException {
 
     boolean skip = true;
 
@@ -176,6 +223,13 @@ public class ArchiveOutgoingProjectNegotiation extends AbstractOutgoingProjectNe
       }
     }
 
+    return new ArchiveContent(filesToCompress, fileAlias, projectsToLock.toArray(new IResource[0]));
+  }
+
+  /** @return zip file containing all files of the given archive content */
+  private File createProjectArchive(final ArchiveContent content, final IProgressMonitor monitor)
+      throws IOException, SarosCancellationException {
+
     LOG.debug(this + " : creating archive");
 
     File tempArchive = null;
@@ -183,8 +237,8 @@ public class ArchiveOutgoingProjectNegotiation extends AbstractOutgoingProjectNe
     try {
       tempArchive = File.createTempFile("saros_" + getID(), ".zip");
       workspace.run(
-          new CreateArchiveTask(tempArchive, filesToCompress, fileAlias, monitor),
-          projectsToLock.toArray(new IResource[0]));
+          new CreateArchiveTask(tempArchive, content.files, content.alias, monitor),
+          content.resourcesToLock);
     } catch (OperationCanceledException e) {
       LocalCancellationException canceled = new LocalCancellationException();
       canceled.initCause(e);
@@ -219,4 +273,82 @@ public class ArchiveOutgoingProjectNegotiation extends AbstractOutgoingProjectNe
 
     LOG.debug(this + " : archive send");
   }
+
+  private void sendArchiveStream(
+      ArchiveContent content, JID remoteContact, String transferID, IProgressMonitor monitor)
+      throws SarosCancellationException, IOException {
+
+    LOG.debug(this + " : streaming archive");
+    monitor.subTask("waiting for client to accept file transfer");
+
+    assert fileTransferManager != null;
+
+    OutgoingFileTransfer transfer =
+        fileTransferManager.createOutgoingFileTransfer(remoteContact.toString());
+
+    OutputStream out = openArchiveStream(transfer, transferID);
+
+    try {
+      monitor.beginTask("Compressing and sending files...", 100);
+
+      // closes the stream when done, which finishes the transfer
+      workspace.run(
+          new CreateArchiveTask(out, content.files, content.alias, monitor),
+          content.resourcesToLock);
+    } catch (OperationCanceledException e) {
+      transfer.cancel();
+      LocalCancellationException canceled = new LocalCancellationException();
+      canceled.initCause(e);
+      throw canceled;
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+
+    monitor.done();
+
+    LOG.debug(this + " : archive streamed");
+  }
+
+  /**
+   * Negotiates the given transfer as archive stream and returns the stream to write the archive to.
+   * The size of the archive is not known in advance. Therefore the archive must not be sent via
+   * {@link OutgoingFileTransfer#sendStream}, which fails the transfer if the amount of written
+   * bytes differs from the announced size. The receiving side reads the archive via {@link
+   * org.jivesoftware.smackx.filetransfer.IncomingFileTransfer#recieveFile()} which does not check
+   * the size either.
+   *
+   * @blocking until the remote side accepted the transfer or the negotiation timed out
+   */
+  // package protected only for testing purposes !
+  static OutputStream openArchiveStream(OutgoingFileTransfer transfer, String transferID)
+      throws IOException {
+
+    final OutputStream out;
+
+    try {
+      out = transfer.sendFile(transferID + ARCHIVE_STREAM_SUFFIX, 0, transferID);
+    } catch (XMPPException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+
+    if (out == null)
+      throw new IOException(
+          "archive stream transfer was not accepted, status: " + transfer.getStatus(),
+          transfer.getException());
+
+    return out;
+  }
+
+  /** The files that are sent as archive together with their entry names. */
+  private static class ArchiveContent {
+    private final List<IFile> files;
+    private final List<String> alias;
+    private final IResource[] resourcesToLock;
+
+    private ArchiveContent(List<IFile> files, List<String> alias, IResource[] resourcesToLock) {
+      this.files = files;
+      this.alias = alias;
+      this.resourcesToLock = resourcesToLock;
+    }
+  }
 }
@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -28,6 +29,7 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
   private static final Logger LOG = Logger.getLogger(CreateArchiveTask.class);
 
   private final File archive;
+  private final OutputStream out;
   private final List<IFile> files;
   private final List<String> alias;
   private final IProgressMonitor monitor;
@@ -38,6 +40,29 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
       final List<String> alias,
       final IProgressMonitor monitor) {
     this.archive = archive;
+    this.out = null;
+    this.files = files;
+    this.alias = alias;
+    this.monitor = monitor;
+  }
+
+  /**
+   * Creates a task that writes the archive to the given stream instead of a file. The stream is
+   * closed when the task finishes, regardless of its outcome.
+   *
+   * @param out the stream to write the archive to
+   * @param files the files to compress
+   * @param alias the entry names of the files or <code>null</code> to use their full paths
+   * @param monitor monitor that is used for progress report and cancellation or <code>null</code>
+   *     to use the monitor provided by the {@link #run(IProgressMonitor)} method
+   */
+  public CreateArchiveTask(
+      final OutputStream out,
+      final List<IFile> files,
+      final List<String> alias,
+      final IProgressMonitor monitor) {
+    this.archive = null;
+    this.out = out;
     this.files = files;
     this.alias = alias;
     this.monitor = monitor;
@@ -71,7 +96,9 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
 
     try {
       zipStream =
-          new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archive), BUFFER_SIZE));
+          new ZipOutputStream(
+              new BufferedOutputStream(
+                  archive != null ? new FileOutputStream(archive) : out, BUFFER_SIZE));
 
       while (fileIt.hasNext()) {
 
@@ -121,6 +148,7 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
       cleanup = false;
     } finally {
       IOUtils.closeQuietly(zipStream);
+      IOUtils.closeQuietly(out);
       if (cleanup && archive != null && archive.exists() && !archive.delete())
         LOG.warn("could not delete archive file: " + archive);
 
@@ -129,6 +157,13 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
 
     stopWatch.stop();
 
+    if (archive == null) {
+      LOG.debug(
+          String.format(
+              "streamed archive I/O: [%s]", CoreUtils.throughput(totalRead, stopWatch.getTime())));
+      return;
+    }
+
     LOG.debug(
         String.format(
             "created archive %s I/O: [%s]",
@@ -1,31 +1,54 @@
 package saros.negotiation;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.log4j.Logger;
 import saros.exceptions.OperationCanceledException;
 import saros.filesystem.FileSystem;
+import saros.filesystem.IContainer;
 import saros.filesystem.IFile;
 import saros.filesystem.IProject;
+import saros.filesystem.IResource;
 import saros.filesystem.IWorkspace;
 import saros.filesystem.IWorkspaceRunnable;
 import saros.monitoring.CancelableInputStream;
 import saros.monitoring.IProgressMonitor;
 import saros.session.ISarosSession;
+import saros.util.NamedThreadFactory;
 
 public class DecompressArchiveTask implements IWorkspaceRunnable {
 
   private static final Logger LOG = Logger.getLogger(DecompressArchiveTask.class);
 
   private final File file;
+  private final InputStream in;
+  private final int entryCount;
   private final IProgressMonitor monitor;
   private final Map<String, IProject> idToProjectMapping;
   private final String delimiter;
+  private final int threads;
 
   /**
    * Creates a decompress task for an archive file that can be executed by {@link IWorkspace#run}.
@@ -43,9 +66,58 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
       final Map<String, IProject> idToProjectMapping,
       final String delimiter,
       final IProgressMonitor monitor) {
+    this(file, idToProjectMapping, delimiter, 1, monitor);
+  }
+
+  /**
+   * Creates a decompress task for an archive file whose entries are written by the given number of
+   * threads.
+   *
+   * @param threads number of threads that write the entries to the workspace, values greater than
+   *     <code>1</code> must only be used with workspace implementations that allow other threads to
+   *     modify the resources locked by {@link IWorkspace#run(IWorkspaceRunnable, IResource[])}, e.g
+   *     the Eclipse workspace binds these locks to the calling thread and would deadlock
+   * @see #DecompressArchiveTask(File, Map, String, IProgressMonitor)
+   */
+  public DecompressArchiveTask(
+      final File file,
+      final Map<String, IProject> idToProjectMapping,
+      final String delimiter,
+      final int threads,
+      final IProgressMonitor monitor) {
     this.file = file;
+    this.in = null;
+    this.entryCount = 0;
     this.idToProjectMapping = idToProjectMapping;
     this.delimiter = delimiter;
+    this.threads = threads;
+    this.monitor = monitor;
+  }
+
+  /**
+   * Creates a decompress task for an archive that is read from the given stream, e.g while it is
+   * still being received. The stream is read until its end and closed when the task finishes.
+   *
+   * @param in stream containing the zip data
+   * @param entryCount the expected number of entries, a stream that ends before this number of
+   *     entries was read is treated as a failed transfer
+   * @param idToProjectMapping map containing the id to project mapping (see also {@link
+   *     ISarosSession#getProjectID(saros.filesystem.IProject)}
+   * @param monitor monitor that is used for progress report and cancellation or <code>null</code>
+   *     to use the monitor provided by the {@link #run(IProgressMonitor)} method
+   */
+  public DecompressArchiveTask(
+      final InputStream in,
+      final int entryCount,
+      final Map<String, IProject> idToProjectMapping,
+      final String delimiter,
+      final IProgressMonitor monitor) {
+    this.file = null;
+    this.in = in;
+    this.entryCount = entryCount;
+    this.idToProjectMapping = idToProjectMapping;
+    this.delimiter = delimiter;
+    this.threads = 1;
     this.monitor = monitor;
   }
 
@@ -58,6 +130,11 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
   public void run(IProgressMonitor monitor) throws IOException, OperationCanceledException {
     if (this.monitor != null) monitor = this.monitor;
 
+    if (file == null) {
+      decompressStream(monitor);
+      return;
+    }
+
     ZipFile zipFile = null;
 
     try {
@@ -66,71 +143,220 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
 
       monitor.beginTask("Unpacking archive file to workspace", zipFile.size());
 
+      if (threads > 1 && zipFile.size() > 1) {
+        decompressConcurrently(zipFile, monitor);
+        return;
+      }
+
       for (Enumeration<? extends ZipEntry> entries = zipFile.entries();
           entries.hasMoreElements(); ) {
 
         final ZipEntry entry = entries.nextElement();
 
-        final String entryName = entry.getName();
+        if (monitor.isCanceled()) throw new OperationCanceledException();
+
+        decompressEntry(entry.getName(), zipFile.getInputStream(entry), monitor);
+      }
+    } finally {
+      if (monitor != null) monitor.done();
 
+      try {
+        if (zipFile != null) zipFile.close();
+      } catch (IOException e) {
+        LOG.warn("failed to close zip file " + zipFile.getName() + " : " + e.getMessage());
+      }
+    }
+  }
+
+  private void decompressStream(final IProgressMonitor monitor)
+      throws IOException, OperationCanceledException {
+
+    final ZipInputStream zipStream = new ZipInputStream(in);
+
+    try {
+      monitor.beginTask("Unpacking archive stream to workspace", entryCount);
+
+      ZipEntry entry;
+
+      int entriesRead = 0;
+
+      while ((entry = zipStream.getNextEntry()) != null) {
         if (monitor.isCanceled()) throw new OperationCanceledException();
 
-        final int delimiterIdx = entry.getName().indexOf(delimiter);
+        // the workspace implementation may close the stream after the content was written
+        decompressEntry(entry.getName(), new CloseShieldInputStream(zipStream), monitor);
 
-        if (delimiterIdx == -1) {
-          LOG.warn("skipping zip entry " + entryName + ", entry is not valid");
+        zipStream.closeEntry();
+        entriesRead++;
+      }
 
-          monitor.worked(1);
-          continue;
-        }
+      if (entriesRead < entryCount)
+        throw new EOFException(
+            "archive stream ended after " + entriesRead + " of " + entryCount + " entries");
+
+      /*
+       * the central directory is still pending, consume it so that the
+       * sender does not block on a full stream
+       */
+      IOUtils.skip(in, Long.MAX_VALUE);
+    } finally {
+      monitor.done();
+      IOUtils.closeQuietly(zipStream);
+    }
+  }
 
-        final String id = entryName.substring(0, delimiterIdx);
+  /**
+   * Writes the entries of the archive file with the configured number of threads. All folders are
+   * created upfront by the calling thread, the progress is reported by the calling thread as well.
+   */
+  private void decompressConcurrently(final ZipFile zipFile, final IProgressMonitor monitor)
+      throws IOException, OperationCanceledException {
 
-        final String path = entryName.substring(delimiterIdx + 1, entryName.length());
+    final Map<ZipEntry, IFile> files = new LinkedHashMap<ZipEntry, IFile>();
 
-        final IProject project = idToProjectMapping.get(id);
+    final Set<IContainer> createdFolders = new HashSet<IContainer>();
 
-        if (project == null) {
-          LOG.warn("skipping zip entry " + entryName + ", unknown project id: " + id);
+    for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
 
-          monitor.worked(1);
-          continue;
-        }
+      final ZipEntry entry = entries.nextElement();
+
+      if (monitor.isCanceled()) throw new OperationCanceledException();
+
+      final IFile file = resolveEntry(entry.getName(), monitor);
+
+      if (file == null) continue;
 
-        final IFile decompressedFile = project.getFile(path);
+      if (createdFolders.add(file.getParent())) FileSystem.createFolder(file);
 
-        FileSystem.createFolder(decompressedFile);
+      files.put(entry, file);
+    }
+
+    final int poolSize = Math.min(threads, files.size());
 
-        monitor.subTask("decompressing: " + path);
+    if (poolSize == 0) return;
 
-        final InputStream inZip = zipFile.getInputStream(entry);
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(poolSize, new NamedThreadFactory("dpp-decompress-"));
 
-        CancelableInputStream in;
-        in = new CancelableInputStream(inZip, monitor);
+    final CompletionService<IFile> completionService =
+        new ExecutorCompletionService<IFile>(executor);
+
+    try {
+      for (final Entry<ZipEntry, IFile> entry : files.entrySet()) {
+        completionService.submit(
+            new Callable<IFile>() {
+              @Override
+              public IFile call() throws IOException, OperationCanceledException {
+                writeEntry(entry.getValue(), zipFile.getInputStream(entry.getKey()), monitor);
+                return entry.getValue();
+              }
+            });
+      }
+
+      int remaining = files.size();
+
+      while (remaining > 0) {
+        if (monitor.isCanceled()) throw new OperationCanceledException();
+
+        final Future<IFile> future = completionService.poll(100, TimeUnit.MILLISECONDS);
+
+        if (future == null) continue;
+
+        final IFile file;
 
         try {
-          if (!decompressedFile.exists()) decompressedFile.create(in, false);
-          else decompressedFile.setContents(in, false, true);
-        } catch (IOException e) {
-          /* if triggered by check in CancelableInputStream */
-          if (monitor.isCanceled()) {
-            throw new OperationCanceledException();
-          } else {
-            throw e;
-          }
+          file = future.get();
+        } catch (ExecutionException e) {
+          if (monitor.isCanceled()) throw new OperationCanceledException();
+
+          if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+
+          throw new IOException("failed to decompress archive", e.getCause());
         }
 
+        monitor.subTask("decompressed: " + file.getProjectRelativePath());
         monitor.worked(1);
+        remaining--;
 
-        if (LOG.isTraceEnabled()) LOG.trace("file written to disk: " + path);
+        if (LOG.isTraceEnabled())
+          LOG.trace("file written to disk: " + file.getProjectRelativePath());
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while decompressing archive");
     } finally {
-      if (monitor != null) monitor.done();
+      executor.shutdownNow();
+    }
+  }
 
-      try {
-        if (zipFile != null) zipFile.close();
-      } catch (IOException e) {
-        LOG.warn("failed to close zip file " + zipFile.getName() + " : " + e.getMessage());
+  private void decompressEntry(
+      final String entryName, final InputStream inZip, final IProgressMonitor monitor)
+      throws IOException, OperationCanceledException {
+
+    final IFile decompressedFile = resolveEntry(entryName, monitor);
+
+    if (decompressedFile == null) return;
+
+    FileSystem.createFolder(decompressedFile);
+
+    monitor.subTask("decompressing: " + decompressedFile.getProjectRelativePath());
+
+    writeEntry(decompressedFile, inZip, monitor);
+
+    monitor.worked(1);
+
+    if (LOG.isTraceEnabled())
+      LOG.trace("file written to disk: " + decompressedFile.getProjectRelativePath());
+  }
+
+  /**
+   * Returns the file the given entry must be written to.
+   *
+   * @return the file or <code>null</code> if the entry has to be skipped, in this case the monitor
+   *     has already been updated
+   */
+  private IFile resolveEntry(final String entryName, final IProgressMonitor monitor) {
+    final int delimiterIdx = entryName.indexOf(delimiter);
+
+    if (delimiterIdx == -1) {
+      LOG.warn("skipping zip entry " + entryName + ", entry is not valid");
+
+      monitor.worked(1);
+      return null;
+    }
+
+    final String id = entryName.substring(0, delimiterIdx);
+
+    final String path = entryName.substring(delimiterIdx + 1, entryName.length());
+
+    final IProject project = idToProjectMapping.get(id);
+
+    if (project == null) {
+      LOG.warn("skipping zip entry " + entryName + ", unknown project id: " + id);
+
+      monitor.worked(1);
+      return null;
+    }
+
+    return project.getFile(path);
+  }
+
+  private static void writeEntry(
+      final IFile decompressedFile, final InputStream inZip, final IProgressMonitor monitor)
+      throws IOException, OperationCanceledException {
+
+    CancelableInputStream in;
+    in = new CancelableInputStream(inZip, monitor);
+
+    try {
+      if (!decompressedFile.exists()) decompressedFile.create(in, false);
+      else decompressedFile.setContents(in, false, true);
+    } catch (IOException e) {
+      /* if triggered by check in CancelableInputStream */
+      if (monitor.isCanceled()) {
+        throw new OperationCanceledException();
+      } else {
+        throw e;
       }
     }
   }
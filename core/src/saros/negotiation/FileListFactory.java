@@ -1,10 +1,19 @@
 package saros.negotiation;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Arrays;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
 import saros.filesystem.FileSystem;
 import saros.filesystem.IChecksumCache;
@@ -15,6 +24,7 @@ import saros.filesystem.IResource;
 import saros.monitoring.IProgressMonitor;
 import saros.monitoring.NullProgressMonitor;
 import saros.negotiation.FileList.MetaData;
+import saros.util.NamedThreadFactory;
 
 /**
  * Offers two ways to create {@link FileList file lists}.
@@ -29,6 +39,16 @@ public class FileListFactory {
 
   private static final Logger LOG = Logger.getLogger(FileListFactory.class);
 
+  /**
+   * Number of threads used to calculate checksums, a value of <code>1</code> or less disables it
+   */
+  private static final int CHECKSUM_THREADS =
+      Integer.getInteger(
+          "saros.negotiation.CHECKSUM_THREADS",
+          Math.min(Runtime.getRuntime().availableProcessors(), 8));
+
+  private static final int CHECKSUM_BUFFER_SIZE = 32 * 1024;
+
   private IChecksumCache checksumCache;
   private IProgressMonitor monitor;
 
@@ -124,30 +144,111 @@ public class FileListFactory {
 
     monitor.beginTask("Calculating checksums...", files.size());
 
-    for (IFile file : files) {
-      try {
+    if (CHECKSUM_THREADS <= 1 || files.size() < 2) {
+      final byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+
+      for (IFile file : files) {
+        if (monitor.isCanceled()) throw new IOException("checksum calculation was canceled");
+
         monitor.subTask(file.getProject().getName() + ": " + file.getProjectRelativePath());
+        calculateChecksum(list, file, buffer);
+        monitor.worked(1);
+      }
 
-        MetaData data = list.getMetaData(file.getProjectRelativePath().toPortableString());
+      return;
+    }
 
-        Long checksum = null;
+    calculateChecksumsConcurrently(list, files);
+  }
+
+  /**
+   * Calculates the checksums of the given files with a bounded thread pool. The progress is still
+   * reported on the calling thread which also checks for cancellation.
+   */
+  private void calculateChecksumsConcurrently(final FileList list, final List<IFile> files)
+      throws IOException {
+
+    final int threads = Math.min(CHECKSUM_THREADS, files.size());
+
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(threads, new NamedThreadFactory("dpp-checksum-"));
+
+    final CompletionService<IFile> completionService =
+        new ExecutorCompletionService<IFile>(executor);
+
+    // one buffer per pool thread
+    final ThreadLocal<byte[]> buffers =
+        new ThreadLocal<byte[]>() {
+          @Override
+          protected byte[] initialValue() {
+            return new byte[CHECKSUM_BUFFER_SIZE];
+          }
+        };
+
+    try {
+      for (final IFile file : files) {
+        completionService.submit(
+            new Callable<IFile>() {
+              @Override
+              public IFile call() {
+                calculateChecksum(list, file, buffers.get());
+                return file;
+              }
+            });
+      }
 
-        if (checksumCache != null) checksum = checksumCache.getChecksum(file);
+      int remaining = files.size();
 
-        data.checksum = checksum == null ? FileSystem.checksum(file) : checksum;
+      while (remaining > 0) {
+        if (monitor.isCanceled()) throw new IOException("checksum calculation was canceled");
 
-        if (checksumCache != null) {
-          boolean isInvalid = checksumCache.addChecksum(file, data.checksum);
+        final Future<IFile> future = completionService.poll(100, TimeUnit.MILLISECONDS);
 
-          if (isInvalid && checksum != null)
-            LOG.warn("calculated checksum on dirty data: " + file.getFullPath());
+        if (future == null) continue;
+
+        final IFile file;
+
+        try {
+          file = future.get();
+        } catch (ExecutionException e) {
+          throw new IOException("failed to calculate checksum", e.getCause());
         }
 
-      } catch (IOException e) {
-        LOG.error(e);
+        monitor.subTask(file.getProject().getName() + ": " + file.getProjectRelativePath());
+        monitor.worked(1);
+        remaining--;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while calculating checksums");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Calculates the checksum of the given file, preferably by using the checksum cache, and stores
+   * it in the meta data of the file list. Can be called concurrently for different files.
+   */
+  private void calculateChecksum(FileList list, IFile file, byte[] buffer) {
+    try {
+      MetaData data = list.getMetaData(file.getProjectRelativePath().toPortableString());
+
+      Long checksum = null;
+
+      if (checksumCache != null) checksum = checksumCache.getChecksum(file);
+
+      data.checksum = checksum == null ? FileSystem.checksum(file, buffer) : checksum;
+
+      if (checksumCache != null) {
+        boolean isInvalid = checksumCache.addChecksum(file, data.checksum);
+
+        if (isInvalid && checksum != null)
+          LOG.warn("calculated checksum on dirty data: " + file.getFullPath());
       }
 
-      monitor.worked(1);
+    } catch (IOException e) {
+      LOG.error(e);
     }
   }
 }
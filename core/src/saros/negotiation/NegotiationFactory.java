@@ -148,7 +148,8 @@ public final class NegotiationFactory {
             checksumCache,
             connectionService,
             transmitter,
-            receiver);
+            receiver,
+            versionManager);
       case INSTANT:
         return new InstantOutgoingProjectNegotiation(
             remoteAddress,
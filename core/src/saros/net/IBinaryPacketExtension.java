@@ -0,0 +1,22 @@
+package saros.net;
+
+import org.jivesoftware.smack.packet.PacketExtension;
+
+/**
+ * A {@link PacketExtension} that already carries its own compact binary representation. When such
+ * an extension is sent over a direct stream connection the binary representation is used as payload
+ * instead of the UTF-8 encoded result of {@link #toXML()}.
+ *
+ * <p>The receiving side must have an {@link IBinaryPacketExtensionProvider} installed for the
+ * element name and namespace of this extension.
+ */
+public interface IBinaryPacketExtension extends PacketExtension {
+
+  /**
+   * Returns the binary representation of this extension. <b>Note:</b> The returned byte array
+   * <b>must not</b> be modified.
+   *
+   * @return the binary representation of this extension
+   */
+  public byte[] toBinary();
+}
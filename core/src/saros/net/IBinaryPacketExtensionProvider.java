@@ -0,0 +1,22 @@
+package saros.net;
+
+import java.io.IOException;
+import org.jivesoftware.smack.packet.PacketExtension;
+import org.jivesoftware.smack.provider.ProviderManager;
+
+/**
+ * Provider that is able to restore a {@link PacketExtension} from the payload of an {@link
+ * IBinaryPacketExtension}. Implementations must be registered at the {@link ProviderManager} under
+ * the element name and namespace of the extensions they are able to decode.
+ */
+public interface IBinaryPacketExtensionProvider {
+
+  /**
+   * Restores the packet extension from the given binary data.
+   *
+   * @param data the binary representation of the extension, must not be modified
+   * @return the restored packet extension
+   * @throws IOException if the data is malformed or cannot be decoded
+   */
+  public PacketExtension parseBinaryExtension(byte[] data) throws IOException;
+}
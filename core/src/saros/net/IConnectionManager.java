@@ -13,6 +13,8 @@ public interface IConnectionManager {
 
   public static final int SOCKS5_SERVICE = 2;
 
+  public static final int TCP_SERVICE = 4;
+
   /**
    * Sets the services that should be used to establish direct connections.
    *
@@ -19,6 +19,7 @@
 package saros.net;
 
 import java.io.IOException;
+import java.util.Collection;
 import org.jivesoftware.smack.packet.Packet;
 import org.jivesoftware.smack.packet.PacketExtension;
 import saros.annotations.Component;
@@ -73,4 +74,19 @@ public interface ITransmitter {
    */
   public void send(String connectionID, JID recipient, PacketExtension extension)
       throws IOException;
+
+  /**
+   * Sends the given {@link PacketExtension} to all given recipients using direct stream
+   * connections. The extension is serialized and compressed only once, the resulting data is then
+   * written to the connection of each recipient. An error on one connection does not prevent the
+   * extension from being sent to the remaining recipients.
+   *
+   * @param connectionID the id of the connections or <code>null</code> to use the default
+   *     connections which are established on demand
+   * @param recipients the recipients of the extension
+   * @param extension the extension to send
+   * @throws MulticastException if the extension could not be sent to some of the recipients
+   */
+  public void send(String connectionID, Collection<JID> recipients, PacketExtension extension)
+      throws MulticastException;
 }
@@ -0,0 +1,28 @@
+package saros.net;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import saros.net.xmpp.JID;
+
+/**
+ * Thrown if a packet extension that was sent to multiple recipients could not be delivered to some
+ * of them. The extension was sent to all other recipients.
+ */
+public class MulticastException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Map<JID, IOException> failures;
+
+  /** @param failures the recipients the extension could not be sent to and the reason for it */
+  public MulticastException(Map<JID, IOException> failures) {
+    super("could not send to " + failures.keySet());
+    this.failures = Collections.unmodifiableMap(failures);
+  }
+
+  /** Returns the recipients the extension could not be sent to and the reason for it. */
+  public Map<JID, IOException> getFailures() {
+    return failures;
+  }
+}
@@ -2,7 +2,6 @@ package saros.net.internal;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
@@ -10,8 +9,13 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.ProtocolException;
 import java.net.SocketException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import org.apache.log4j.Logger;
 import saros.net.stream.ByteStream;
 import saros.net.stream.StreamMode;
@@ -26,6 +30,12 @@ import saros.net.xmpp.JID;
  * <p>send() is a reentrant method for sending data. Any number of threads can call it in parallel.
  * <b>Note:</b> The maximum number of concurrent threads is 32 !
  *
+ * <p>Data that fits into a single chunk, e.g text edits and selections, is treated as interactive
+ * and pre-empts data that has to be split into multiple chunks, e.g file contents. The chunks of
+ * such bulk transfers are only written if no interactive data is waiting to be sent, but are
+ * delayed by at most {@link #MAX_BULK_DELAY} milliseconds per chunk. Chunks of concurrent bulk
+ * transfers are interleaved.
+ *
  * @author sszuecs
  * @author coezbek
  * @author srossbach
@@ -49,6 +59,9 @@ public class BinaryChannelConnection implements IByteStreamConnection {
   /** Max size of data chunks */
   private static final int CHUNKSIZE = 32 * 1024 - 1;
 
+  /** Max time in milliseconds a chunk of a bulk transfer waits for interactive data to be sent */
+  private static final long MAX_BULK_DELAY = 100L;
+
   private IByteStreamConnectionListener listener;
   private ReceiverThread receiveThread;
 
@@ -62,14 +75,24 @@ public class BinaryChannelConnection implements IByteStreamConnection {
   private boolean connected;
   private boolean initialized;
 
-  private Map<Integer, ByteArrayOutputStream> pendingFragmentedPackets =
-      new HashMap<Integer, ByteArrayOutputStream>();
+  private Map<Integer, FragmentBuffer> pendingFragmentedPackets =
+      new HashMap<Integer, FragmentBuffer>();
   private Map<Integer, BinaryXMPPExtension> pendingXMPPExtensions =
       new HashMap<Integer, BinaryXMPPExtension>();
 
   private DataInputStream inputStream;
   private DataOutputStream outputStream;
 
+  /*
+   * guards all writes to the output stream, fair so that the chunks of
+   * concurrent bulk transfers are interleaved
+   */
+  private final ReentrantLock writeLock = new ReentrantLock(true);
+
+  private final Condition interactiveDataSent = writeLock.newCondition();
+
+  private final AtomicInteger pendingInteractiveSends = new AtomicInteger();
+
   private ByteStream stream;
   private StreamMode mode;
 
@@ -207,7 +230,9 @@ public class BinaryChannelConnection implements IByteStreamConnection {
       Integer namespaceId;
       Integer elementNameId;
 
-      synchronized (this) {
+      writeLock.lock();
+
+      try {
         boolean sendUpdate = false;
 
         final String namespace = data.getNamespace();
@@ -255,16 +280,22 @@ public class BinaryChannelConnection implements IByteStreamConnection {
         }
 
         if (sendUpdate) outputStream.flush();
+      } finally {
+        writeLock.unlock();
       }
 
       assert content.length > 0;
 
       int chunks = ((content.length - 1) / CHUNKSIZE) + 1;
 
-      sendTransferDescription(
-          fragmentId, chunks, namespaceId, elementNameId, data.compressContent());
+      if (chunks == 1)
+        sendInteractive(fragmentId, namespaceId, elementNameId, data.compressContent(), content);
+      else {
+        sendTransferDescription(
+            fragmentId, chunks, namespaceId, elementNameId, data.compressContent());
 
-      splitAndSend(content, chunks, fragmentId);
+        splitAndSend(content, chunks, fragmentId);
+      }
     } catch (IOException e) {
       close();
       throw e;
@@ -330,6 +361,8 @@ public class BinaryChannelConnection implements IByteStreamConnection {
 
           if (oldTransferObject != null)
             throw new IOException("replaced a XMPP extension that is still transmitted");
+
+          pendingFragmentedPackets.put(fragmentId, new FragmentBuffer(chunks));
           break;
 
         case Opcode.DATA:
@@ -354,18 +387,12 @@ public class BinaryChannelConnection implements IByteStreamConnection {
                     + " <= "
                     + CHUNKSIZE);
 
-          byte[] payload = new byte[payloadLength];
-          inputStream.readFully(payload);
-
-          ByteArrayOutputStream out = pendingFragmentedPackets.get(fragmentId);
+          final FragmentBuffer buffer = pendingFragmentedPackets.get(fragmentId);
 
-          if (out == null) {
-            out = new ByteArrayOutputStream(payloadLength * 2);
-            pendingFragmentedPackets.put(fragmentId, out);
-          }
+          if (buffer == null)
+            throw new ProtocolException("received data for unknown fragment id: " + fragmentId);
 
-          out.write(payload);
-          out.flush();
+          buffer.read(inputStream, payloadLength);
 
           if (!pendingXMPPExtensions.get(fragmentId).isLastChunk()) break;
 
@@ -374,8 +401,7 @@ public class BinaryChannelConnection implements IByteStreamConnection {
           BinaryXMPPExtension fullyReceivedTransferObject =
               pendingXMPPExtensions.remove(fragmentId);
 
-          payload = out.toByteArray();
-          out = null; // help GC
+          final byte[] payload = buffer.getData();
 
           fullyReceivedTransferObject.setPayload(payload.length, payload);
 
@@ -424,9 +450,82 @@ public class BinaryChannelConnection implements IByteStreamConnection {
     throw new InterruptedIOException("interrupted while reading stream data");
   }
 
-  private synchronized void sendData(int fragmentId, byte[] data, int offset, int length)
+  /** Sends the transfer description and the data of a single chunk transfer at once. */
+  private void sendInteractive(
+      int fragmentId, int namespaceId, int elementNameId, boolean compress, byte[] data)
+      throws IOException {
+
+    pendingInteractiveSends.incrementAndGet();
+
+    writeLock.lock();
+
+    try {
+      writeTransferDescription(fragmentId, 1, namespaceId, elementNameId, compress);
+      writeData(fragmentId, data, 0, data.length);
+      outputStream.flush();
+    } finally {
+      pendingInteractiveSends.decrementAndGet();
+      interactiveDataSent.signalAll();
+      writeLock.unlock();
+    }
+  }
+
+  private void sendTransferDescription(
+      int fragmentId, int chunks, int namespaceId, int elementNameId, boolean compress)
       throws IOException {
 
+    writeLock.lock();
+
+    try {
+      writeTransferDescription(fragmentId, chunks, namespaceId, elementNameId, compress);
+      outputStream.flush();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /** Splits the given data into chunks of CHUNKSIZE to send the BinaryPackets. */
+  private void splitAndSend(byte[] data, int chunks, int fragmentId) throws IOException {
+
+    int offset = 0;
+    int length = 0;
+
+    while (chunks-- > 0) {
+
+      length = Math.min(data.length - offset, CHUNKSIZE);
+
+      writeLock.lock();
+
+      try {
+        awaitInteractiveSends();
+        writeData(fragmentId, data, offset, length);
+        outputStream.flush();
+      } finally {
+        writeLock.unlock();
+      }
+
+      offset += length;
+    }
+  }
+
+  /**
+   * Waits until no interactive data is pending, but at most {@link #MAX_BULK_DELAY} milliseconds.
+   * Must be called while holding the write lock.
+   */
+  private void awaitInteractiveSends() {
+    long remaining = TimeUnit.MILLISECONDS.toNanos(MAX_BULK_DELAY);
+
+    try {
+      while (pendingInteractiveSends.get() > 0 && remaining > 0)
+        remaining = interactiveDataSent.awaitNanos(remaining);
+    } catch (InterruptedException e) {
+      // just send the chunk, the caller has to handle the interruption
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeData(int fragmentId, byte[] data, int offset, int length) throws IOException {
+
     if (LOG.isTraceEnabled()) {
       LOG.trace("sending data: id=" + fragmentId + ", len=" + length + " bytes");
     }
@@ -435,10 +534,9 @@ public class BinaryChannelConnection implements IByteStreamConnection {
     outputStream.writeShort(fragmentId);
     outputStream.writeInt(length);
     outputStream.write(data, offset, length);
-    outputStream.flush();
   }
 
-  private synchronized void sendTransferDescription(
+  private void writeTransferDescription(
       int fragmentId, int chunks, int namespaceId, int elementNameId, boolean compress)
       throws IOException {
 
@@ -452,28 +550,58 @@ public class BinaryChannelConnection implements IByteStreamConnection {
     outputStream.write(namespaceId);
     outputStream.writeShort(elementNameId);
     outputStream.write(compress ? 1 : 0);
-    outputStream.flush();
   }
 
-  /** Splits the given data into chunks of CHUNKSIZE to send the BinaryPackets. */
-  private void splitAndSend(byte[] data, int chunks, int fragmentId) throws IOException {
+  @Override
+  public String toString() {
+    return "[mode=" + getMode() + ", id=" + connectionID + "]" + " " + remoteAddress;
+  }
 
-    int offset = 0;
-    int length = 0;
+  /**
+   * Reassembles the chunks of a fragmented packet. The chunks are read directly into the array that
+   * becomes the payload, so the data of a packet that consists of a single chunk is never copied.
+   */
+  private static final class FragmentBuffer {
 
-    while (chunks-- > 0) {
+    /* the chunk count is sent by the remote side, do not trust it blindly */
+    private static final int MAX_INITIAL_CAPACITY = 1024 * 1024;
 
-      length = Math.min(data.length - offset, CHUNKSIZE);
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
 
-      sendData(fragmentId, data, offset, length);
+    private final long maxLength;
 
-      offset += length;
+    private byte[] buffer;
+    private int length;
+
+    private FragmentBuffer(int chunks) {
+      maxLength = Math.min((long) Math.max(chunks, 1) * CHUNKSIZE, MAX_CAPACITY);
     }
-  }
 
-  @Override
-  public String toString() {
-    return "[mode=" + getMode() + ", id=" + connectionID + "]" + " " + remoteAddress;
+    private void read(DataInputStream in, int chunkLength) throws IOException {
+      final long requiredLength = (long) length + chunkLength;
+
+      if (requiredLength > maxLength)
+        throw new ProtocolException("received more data than announced: " + requiredLength);
+
+      if (buffer == null) {
+        buffer =
+            new byte
+                [maxLength == CHUNKSIZE
+                    ? chunkLength
+                    : (int) Math.min(maxLength, Math.max(chunkLength, MAX_INITIAL_CAPACITY))];
+      } else if (requiredLength > buffer.length) {
+        buffer =
+            Arrays.copyOf(
+                buffer, (int) Math.min(maxLength, Math.max(requiredLength, buffer.length * 2L)));
+      }
+
+      in.readFully(buffer, length, chunkLength);
+      length += chunkLength;
+    }
+
+    private byte[] getData() {
+      return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
   }
 
   static class IDPool {
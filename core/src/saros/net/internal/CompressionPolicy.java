@@ -0,0 +1,151 @@
+package saros.net.internal;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import saros.net.ITransferListener;
+import saros.net.stream.StreamMode;
+
+/**
+ * Decides if and how strong a payload should be compressed before it is sent. The decision is based
+ * on the size and content of the payload as well as on the throughput that was measured for the
+ * stream mode of the connection the payload is sent over.
+ *
+ * <p>Small packets are usually interactive (e.g text edits) and are not compressed on fast links
+ * because deflating them adds more latency than it saves. Content that is already compressed (e.g
+ * images or jar files) is never compressed again.
+ */
+final class CompressionPolicy implements ITransferListener {
+
+  /** Return value of {@link #getCompressionLevel} if the payload should not be compressed */
+  static final int SKIP = Deflater.NO_COMPRESSION;
+
+  /** Packets up to this size are considered interactive */
+  static final int INTERACTIVE_PACKET_SIZE = 16 * 1024;
+
+  /** Packets below this size are never compressed */
+  private static final int MIN_PACKET_SIZE = 64;
+
+  /** Transfers below this size say nothing about the throughput of a link */
+  private static final long MIN_SAMPLE_SIZE = 16 * 1024;
+
+  // throughput in bytes per millisecond
+  private static final double FAST_LINK_THROUGHPUT = 5 * 1024;
+
+  private static final double LOCAL_LINK_THROUGHPUT = 50 * 1024;
+
+  private static final double SLOW_LINK_THROUGHPUT = 100;
+
+  // weight of a new throughput sample
+  private static final double SAMPLE_WEIGHT = 0.25;
+
+  /** Number of bytes that are sampled to estimate the entropy of a payload */
+  private static final int ENTROPY_SAMPLE_SIZE = 4 * 1024;
+
+  private static final int MIN_ENTROPY_SAMPLE_SIZE = 1024;
+
+  /** Payloads with more bits per byte are treated as already compressed */
+  private static final double MAX_ENTROPY = 7.5;
+
+  private final Map<StreamMode, Double> throughputs =
+      new EnumMap<StreamMode, Double>(StreamMode.class);
+
+  /**
+   * Returns the level the given payload should be deflated with.
+   *
+   * @param mode the mode of the connection the payload is sent over
+   * @param payload the payload to send
+   * @return the compression level or {@link #SKIP} if the payload should not be compressed
+   */
+  int getCompressionLevel(final StreamMode mode, final byte[] payload) {
+    if (payload.length < MIN_PACKET_SIZE) return SKIP;
+
+    final double throughput = getThroughput(mode);
+
+    if (throughput >= LOCAL_LINK_THROUGHPUT) return SKIP;
+
+    final boolean isInteractive = payload.length <= INTERACTIVE_PACKET_SIZE;
+
+    if (isInteractive && throughput >= FAST_LINK_THROUGHPUT) return SKIP;
+
+    if (isCompressed(payload)) return SKIP;
+
+    if (throughput >= FAST_LINK_THROUGHPUT) return Deflater.BEST_SPEED;
+
+    if (throughput <= SLOW_LINK_THROUGHPUT) return Deflater.BEST_COMPRESSION;
+
+    return Deflater.DEFAULT_COMPRESSION;
+  }
+
+  @Override
+  public void sent(StreamMode mode, long sizeCompressed, long sizeUncompressed, long duration) {
+    addSample(mode, sizeCompressed, duration);
+  }
+
+  @Override
+  public void received(StreamMode mode, long sizeCompressed, long sizeUncompressed, long duration) {
+    addSample(mode, sizeCompressed, duration);
+  }
+
+  /**
+   * Returns the measured throughput of the given mode in bytes per millisecond. If no throughput
+   * was measured yet an estimate based on the mode itself is returned.
+   */
+  synchronized double getThroughput(final StreamMode mode) {
+    final Double throughput = throughputs.get(mode);
+
+    if (throughput != null) return throughput;
+
+    switch (mode) {
+      case TCP:
+        return LOCAL_LINK_THROUGHPUT;
+      case IBB:
+        return SLOW_LINK_THROUGHPUT;
+      default:
+        return (FAST_LINK_THROUGHPUT + SLOW_LINK_THROUGHPUT) / 2;
+    }
+  }
+
+  private synchronized void addSample(final StreamMode mode, final long size, final long duration) {
+    if (mode == null || size < MIN_SAMPLE_SIZE) return;
+
+    final double sample = (double) size / Math.max(duration, 1);
+
+    final Double throughput = throughputs.get(mode);
+
+    throughputs.put(
+        mode, throughput == null ? sample : throughput + SAMPLE_WEIGHT * (sample - throughput));
+  }
+
+  /**
+   * Estimates the entropy of the given data by sampling its beginning, middle and end. Compressed
+   * data is nearly random and so has an entropy of nearly 8 bits per byte, whereas text and XML
+   * content is far below that.
+   */
+  static boolean isCompressed(final byte[] data) {
+    // smaller samples do not contain enough bytes to be reliable
+    if (data.length < MIN_ENTROPY_SAMPLE_SIZE) return false;
+
+    final int[] counts = new int[256];
+
+    final int sampleLength = Math.min(data.length, ENTROPY_SAMPLE_SIZE) / 3;
+
+    final int[] offsets = {0, (data.length - sampleLength) / 2, data.length - sampleLength};
+
+    for (final int offset : offsets)
+      for (int i = offset; i < offset + sampleLength; i++) counts[data[i] & 0xFF]++;
+
+    final double total = sampleLength * offsets.length;
+
+    double entropy = 0;
+
+    for (final int count : counts) {
+      if (count == 0) continue;
+
+      final double p = count / total;
+      entropy -= p * Math.log(p);
+    }
+
+    return entropy / Math.log(2) >= MAX_ENTROPY;
+  }
+}
@@ -5,8 +5,11 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
@@ -21,11 +24,13 @@ import org.picocontainer.annotations.Nullable;
 import saros.annotations.Component;
 import saros.context.IContextKeyBindings.IBBStreamService;
 import saros.context.IContextKeyBindings.Socks5StreamService;
+import saros.context.IContextKeyBindings.TCPStreamService;
 import saros.net.ConnectionState;
 import saros.net.IConnectionManager;
 import saros.net.IPacketInterceptor;
 import saros.net.IReceiver;
 import saros.net.ITransferListener;
+import saros.net.MulticastException;
 import saros.net.stream.IStreamService;
 import saros.net.stream.StreamMode;
 import saros.net.xmpp.IConnectionListener;
@@ -47,12 +52,20 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
 
   private static final int CHUNKSIZE = 16 * 1024;
 
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
   private static final String DEFAULT_CONNECTION_ID = "default";
 
   private static final String IN = "in";
 
   private static final String OUT = "out";
 
+  /**
+   * Enables the experimental direct TCP transport that is preferred over all other transports if
+   * both peers are in the same LAN or on the same host.
+   */
+  private static final boolean TCP_TRANSPORT = Boolean.getBoolean("saros.net.ENABLE_TCP_TRANSPORT");
+
   private final CopyOnWriteArrayList<IPacketInterceptor> packetInterceptors =
       new CopyOnWriteArrayList<IPacketInterceptor>();
 
@@ -71,6 +84,8 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
 
   private final IStreamService fallbackService;
 
+  private final IStreamService tcpService;
+
   private final Lock connectLock = new ReentrantLock();
 
   private final ConnectionPool connectionPool = new ConnectionPool();
@@ -79,6 +94,8 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
 
   private final List<IStreamService> streamServices = new CopyOnWriteArrayList<IStreamService>();
 
+  private final CompressionPolicy compressionPolicy = new CompressionPolicy();
+
   private final IByteStreamConnectionListener byteStreamConnectionListener =
       new IByteStreamConnectionListener() {
 
@@ -190,13 +207,17 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
       XMPPConnectionService connectionService,
       IReceiver receiver,
       @Nullable @Socks5StreamService IStreamService mainService,
-      @Nullable @IBBStreamService IStreamService fallbackService) {
+      @Nullable @IBBStreamService IStreamService fallbackService,
+      @Nullable @TCPStreamService IStreamService tcpService) {
 
     this.receiver = receiver;
+    this.tcpService = tcpService;
     this.fallbackService = fallbackService;
     this.mainService = mainService;
     this.setStreamServices();
 
+    addTransferListener(compressionPolicy);
+
     connectionService.addListener(this);
   }
 
@@ -270,11 +291,83 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
         payload);
   }
 
+  /**
+   * Sends the same data to multiple recipients. The data is compressed at most once per compression
+   * level no matter how many recipients it is sent to.
+   *
+   * @param connectionID the id of the connections or <code>null</code> to use the default
+   *     connections which are established on demand
+   * @param description the description of the data, the recipient is set for each recipient
+   * @param recipients the recipients of the data
+   * @param data the data to send, it must not be modified while this method is running
+   * @throws MulticastException if the data could not be sent to some of the recipients
+   */
+  public void sendData(
+      final String connectionID,
+      final TransferDescription description,
+      final Collection<JID> recipients,
+      final byte[] data)
+      throws MulticastException {
+
+    final Map<JID, IOException> failures = new HashMap<JID, IOException>();
+
+    // compression level -> compressed data
+    final Map<Integer, byte[]> compressedPayloads = new HashMap<Integer, byte[]>();
+
+    final JID connectionJID = currentLocalJID;
+
+    for (final JID recipient : recipients) {
+
+      final TransferDescription recipientDescription =
+          TransferDescription.newDescription()
+              .setElementName(description.getElementName())
+              .setNamespace(description.getNamespace())
+              .setCompressContent(description.compressContent())
+              .setRecipient(recipient)
+              .setSender(connectionJID);
+
+      try {
+        if (connectionJID == null) throw new IOException("not connected to a XMPP server");
+
+        final String id = connectionID == null ? DEFAULT_CONNECTION_ID : connectionID;
+
+        final IByteStreamConnection connection =
+            connectionID == null
+                ? connectInternal(id, recipient)
+                : getCurrentConnection(connectionID, recipient);
+
+        if (connection == null)
+          throw new IOException(
+              "not connected to " + recipient + " [connection identifier=" + connectionID + "]");
+
+        sendInternal(id, connection, recipientDescription, data, compressedPayloads);
+      } catch (IOException e) {
+        failures.put(recipient, e);
+      }
+    }
+
+    if (!failures.isEmpty()) throw new MulticastException(failures);
+  }
+
   private void sendInternal(
       final String connectionID,
       final IByteStreamConnection connection,
       final TransferDescription description,
-      byte[] payload)
+      final byte[] payload)
+      throws IOException {
+    sendInternal(connectionID, connection, description, payload, null);
+  }
+
+  /**
+   * @param compressedPayloads cache for the compressed payload per compression level if the payload
+   *     is sent to multiple recipients, may be <code>null</code>
+   */
+  private void sendInternal(
+      final String connectionID,
+      final IByteStreamConnection connection,
+      TransferDescription description,
+      byte[] payload,
+      final Map<Integer, byte[]> compressedPayloads)
       throws IOException {
 
     boolean sendPacket = true;
@@ -286,7 +379,27 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
 
     long sizeUncompressed = payload.length;
 
-    if (description.compressContent()) payload = deflate(payload);
+    /*
+     * the flag only states that the content may be compressed, the policy
+     * decides if it is worth it for the given content and connection
+     */
+    if (description.compressContent()) {
+      final int level = compressionPolicy.getCompressionLevel(connection.getMode(), payload);
+
+      byte[] compressed = null;
+
+      if (level != CompressionPolicy.SKIP) {
+        compressed = compressedPayloads == null ? null : compressedPayloads.get(level);
+
+        if (compressed == null) compressed = deflate(payload, level);
+
+        if (compressedPayloads != null) compressedPayloads.put(level, compressed);
+      }
+
+      // the description belongs to the caller, so send a copy if the payload is not compressed
+      if (compressed != null && compressed.length < payload.length) payload = compressed;
+      else description = copyUncompressed(description);
+    }
 
     final long transferStartTime = System.currentTimeMillis();
 
@@ -467,14 +580,18 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
   private void setStreamServices() {
     boolean useIBB;
     boolean useSocks5;
+    boolean useTCP;
 
     synchronized (this) {
       useIBB = (serviceMask & IBB_SERVICE) != 0;
       useSocks5 = (serviceMask & SOCKS5_SERVICE) != 0;
+      useTCP = (serviceMask & TCP_SERVICE) != 0;
     }
 
     streamServices.clear();
 
+    if (TCP_TRANSPORT && useTCP && tcpService != null) streamServices.add(tcpService);
+
     if (useSocks5 && mainService != null) streamServices.add(mainService);
 
     if (useIBB && fallbackService != null) streamServices.add(fallbackService);
@@ -604,42 +721,78 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
     }
   }
 
-  private static byte[] deflate(byte[] input) {
+  private static TransferDescription copyUncompressed(final TransferDescription description) {
+    return TransferDescription.newDescription()
+        .setElementName(description.getElementName())
+        .setNamespace(description.getNamespace())
+        .setRecipient(description.getRecipient())
+        .setSender(description.getSender())
+        .setCompressContent(false);
+  }
+
+  /** Deflates the given data with the given level. */
+  static byte[] deflate(byte[] input, int level) {
+
+    final Deflater compressor = new Deflater(level);
 
-    Deflater compressor = new Deflater(Deflater.DEFLATED);
-    compressor.setInput(input);
-    compressor.finish();
+    try {
+      compressor.setInput(input);
+      compressor.finish();
 
-    ByteArrayOutputStream bos = new ByteArrayOutputStream(input.length);
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(input.length);
 
-    byte[] buf = new byte[CHUNKSIZE];
+      byte[] buf = new byte[CHUNKSIZE];
 
-    while (!compressor.finished()) {
-      int count = compressor.deflate(buf);
-      bos.write(buf, 0, count);
-    }
+      while (!compressor.finished()) {
+        int count = compressor.deflate(buf);
+        bos.write(buf, 0, count);
+      }
 
-    return bos.toByteArray();
+      return bos.toByteArray();
+    } finally {
+      compressor.end();
+    }
   }
 
-  private static byte[] inflate(byte[] input) throws IOException {
+  /**
+   * Inflates the given data. The data is inflated directly into the returned array which is only
+   * copied once at the end if its capacity does not match the inflated size.
+   */
+  static byte[] inflate(byte[] input) throws IOException {
 
-    ByteArrayOutputStream bos;
-    Inflater decompressor = new Inflater();
+    final Inflater decompressor = new Inflater();
 
     decompressor.setInput(input, 0, input.length);
-    bos = new ByteArrayOutputStream(input.length);
 
-    byte[] buf = new byte[CHUNKSIZE];
+    // text content usually compresses by a factor of 4 and more
+    byte[] output =
+        new byte[(int) Math.min(Math.max(input.length * 4L, CHUNKSIZE), MAX_ARRAY_SIZE)];
+
+    int length = 0;
 
     try {
       while (!decompressor.finished()) {
-        int count = decompressor.inflate(buf);
-        bos.write(buf, 0, count);
+        if (length == output.length) {
+          if (output.length == MAX_ARRAY_SIZE) throw new IOException("inflated data is too large");
+
+          output = Arrays.copyOf(output, (int) Math.min(output.length * 2L, MAX_ARRAY_SIZE));
+        }
+
+        final int count = decompressor.inflate(output, length, output.length - length);
+
+        if (count == 0
+            && !decompressor.finished()
+            && (decompressor.needsInput() || decompressor.needsDictionary()))
+          throw new IOException("failed to inflate data, input is truncated");
+
+        length += count;
       }
-      return bos.toByteArray();
     } catch (DataFormatException e) {
       throw new IOException("failed to inflate data", e);
+    } finally {
+      decompressor.end();
     }
+
+    return length == output.length ? output : Arrays.copyOf(output, length);
   }
 }
@@ -22,6 +22,20 @@ public class TCPServer {
 
   private volatile boolean running;
 
+  private volatile ISocketHandler socketHandler;
+
+  /** Handler for the sockets accepted by a {@link TCPServer}. */
+  public interface ISocketHandler {
+
+    /**
+     * Called for each accepted socket. The handler is responsible for closing the socket. This
+     * method is called by the accepting thread, so it must not block.
+     *
+     * @param socket the accepted socket
+     */
+    public void handle(Socket socket);
+  }
+
   private final Runnable acceptRunnable =
       new Runnable() {
 
@@ -42,7 +56,17 @@ public class TCPServer {
 
             LOG.debug("accept request from: " + client.getRemoteSocketAddress());
 
-            // TODO pass to logic
+            final ISocketHandler handler = socketHandler;
+
+            if (handler != null) {
+              try {
+                handler.handle(client);
+                continue;
+              } catch (RuntimeException e) {
+                LOG.error("internal error while handling socket: " + client, e);
+              }
+            }
+
             try {
               client.close();
             } catch (Exception e) {
@@ -52,6 +76,16 @@ public class TCPServer {
         }
       };
 
+  /**
+   * Sets the handler for accepted sockets. If no handler is set, accepted sockets are closed
+   * immediately.
+   *
+   * @param handler the handler or <code>null</code>
+   */
+  public void setSocketHandler(ISocketHandler handler) {
+    socketHandler = handler;
+  }
+
   /**
    * Starts a server on the given address and port.
    *
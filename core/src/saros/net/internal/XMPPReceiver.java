@@ -19,6 +19,7 @@ import org.xmlpull.v1.XmlPullParser;
 import saros.annotations.Component;
 import saros.net.ConnectionState;
 import saros.net.DispatchThreadContext;
+import saros.net.IBinaryPacketExtensionProvider;
 import saros.net.IReceiver;
 import saros.net.PacketCollector;
 import saros.net.PacketCollector.CancelHook;
@@ -162,9 +163,7 @@ public class XMPPReceiver implements IReceiver {
     String namespace = description.getNamespace();
     // IQ provider?
 
-    PacketExtensionProvider provider =
-        (PacketExtensionProvider)
-            ProviderManager.getInstance().getExtensionProvider(name, namespace);
+    Object provider = ProviderManager.getInstance().getExtensionProvider(name, namespace);
 
     if (provider == null) {
       LOG.warn(
@@ -178,6 +177,19 @@ public class XMPPReceiver implements IReceiver {
 
     PacketExtension extension = null;
 
+    if (provider instanceof IBinaryPacketExtensionProvider) {
+      try {
+        extension =
+            ((IBinaryPacketExtensionProvider) provider)
+                .parseBinaryExtension(transferObject.getPayload());
+      } catch (Exception e) {
+        LOG.error("could not decode binary transfer object payload: " + e.getMessage(), e);
+        return null;
+      }
+
+      return createPacket(description, extension);
+    }
+
     try {
       parser.setInput(new ByteArrayInputStream(transferObject.getPayload()), "UTF-8");
       /*
@@ -185,7 +197,7 @@ public class XMPPReceiver implements IReceiver {
        * parser that already has started parsing.
        */
       parser.next();
-      extension = provider.parseExtension(parser);
+      extension = ((PacketExtensionProvider) provider).parseExtension(parser);
     } catch (Exception e) {
       LOG.error("could not deserialize transfer object payload: " + e.getMessage(), e);
 
@@ -194,6 +206,10 @@ public class XMPPReceiver implements IReceiver {
       return null;
     }
 
+    return createPacket(description, extension);
+  }
+
+  private static Packet createPacket(TransferDescription description, PacketExtension extension) {
     Packet packet = new Message();
     packet.setPacketID(Packet.ID_NOT_AVAILABLE);
     packet.setFrom(description.getSender().toString());
@@ -20,6 +20,9 @@
 package saros.net.internal;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.Connection;
 import org.jivesoftware.smack.packet.Message;
@@ -27,7 +30,9 @@ import org.jivesoftware.smack.packet.Packet;
 import org.jivesoftware.smack.packet.PacketExtension;
 import saros.annotations.Component;
 import saros.net.ConnectionState;
+import saros.net.IBinaryPacketExtension;
 import saros.net.ITransmitter;
+import saros.net.MulticastException;
 import saros.net.xmpp.IConnectionListener;
 import saros.net.xmpp.JID;
 import saros.net.xmpp.XMPPConnectionService;
@@ -62,28 +67,58 @@ public class XMPPTransmitter implements ITransmitter, IConnectionListener {
   @Override
   public void send(String connectionID, JID recipient, PacketExtension extension)
       throws IOException {
-    /*
-     * The TransferDescription can be created out of the session, the name
-     * and namespace of the packet extension and standard values and thus
-     * transparent to users of this method.
-     */
-    TransferDescription transferDescription =
-        TransferDescription.newDescription()
-            .setRecipient(recipient)
-            // .setSender(set by DataTransferManager)
-            .setElementName(extension.getElementName())
-            .setNamespace(extension.getNamespace());
-
-    byte[] data = extension.toXML().getBytes("UTF-8");
-
-    if (data.length > PACKET_EXTENSION_COMPRESS_THRESHOLD)
-      transferDescription.setCompressContent(true);
+    final byte[] data = serialize(extension);
+
+    final TransferDescription transferDescription =
+        createDescription(extension, data).setRecipient(recipient);
 
     // recipient is included in the transfer description
     if (connectionID == null) dataManager.sendData(transferDescription, data);
     else dataManager.sendData(connectionID, transferDescription, data);
   }
 
+  @Override
+  public void send(String connectionID, Collection<JID> recipients, PacketExtension extension)
+      throws MulticastException {
+
+    final byte[] data;
+
+    try {
+      data = serialize(extension);
+    } catch (IOException e) {
+      final Map<JID, IOException> failures = new HashMap<JID, IOException>();
+
+      for (final JID recipient : recipients) failures.put(recipient, e);
+
+      throw new MulticastException(failures);
+    }
+
+    dataManager.sendData(connectionID, createDescription(extension, data), recipients, data);
+  }
+
+  /*
+   * The TransferDescription can be created out of the session, the name
+   * and namespace of the packet extension and standard values and thus
+   * transparent to users of the send methods.
+   */
+  private static TransferDescription createDescription(
+      final PacketExtension extension, final byte[] data) {
+
+    return TransferDescription.newDescription()
+        // .setRecipient(set by the send methods)
+        // .setSender(set by DataTransferManager)
+        .setElementName(extension.getElementName())
+        .setNamespace(extension.getNamespace())
+        .setCompressContent(data.length > PACKET_EXTENSION_COMPRESS_THRESHOLD);
+  }
+
+  private static byte[] serialize(final PacketExtension extension) throws IOException {
+    if (extension instanceof IBinaryPacketExtension)
+      return ((IBinaryPacketExtension) extension).toBinary();
+
+    return extension.toXML().getBytes("UTF-8");
+  }
+
   @Override
   public void sendPacketExtension(JID recipient, PacketExtension extension) {
     Message message = new Message();
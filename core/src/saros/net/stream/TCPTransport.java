@@ -1,59 +1,531 @@
 package saros.net.stream;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
 import org.jivesoftware.smack.Connection;
+import org.jivesoftware.smack.PacketCollector;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.Roster;
+import org.jivesoftware.smack.filter.AndFilter;
+import org.jivesoftware.smack.filter.PacketFilter;
+import org.jivesoftware.smack.filter.PacketTypeFilter;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smack.packet.XMPPError;
+import saros.communication.extensions.TCPEndpointExtension;
+import saros.context.IContainerContext;
 import saros.net.internal.BinaryChannelConnection;
 import saros.net.internal.IByteStreamConnection;
 import saros.net.internal.IByteStreamConnectionListener;
+import saros.net.internal.TCPServer;
+import saros.net.util.NetworkingUtils;
 import saros.net.xmpp.JID;
+import saros.session.ISarosSession;
+import saros.session.ISarosSessionManager;
+import saros.util.ThreadUtils;
 
-// TODO rewrite IStreamService interface
-
+/**
+ * Stream service that establishes direct TCP connections to peers on the same host or in the same
+ * LAN.
+ *
+ * <p>On initialization a {@link TCPServer} is started that listens on all interfaces. A peer that
+ * wants to connect queries the endpoints of the server via an IQ request over the XMPP connection.
+ * The response contains the local addresses of the server and a one-time token. The peer then
+ * connects to the first reachable endpoint and presents the token, connections presenting an
+ * unknown or expired token are rejected.
+ *
+ * <p>The endpoints are only revealed to contacts of the local user and to users of the current
+ * session, all other peers receive an error reply.
+ */
 public class TCPTransport implements IStreamService {
 
+  private static final Logger LOG = Logger.getLogger(TCPTransport.class);
+
+  /** Port the server tries to bind to first, the next free port is used if it is already taken */
+  private static final int SERVER_PORT = Integer.getInteger("saros.net.TCP_TRANSPORT_PORT", 7778);
+
+  private static final long ENDPOINT_QUERY_TIMEOUT = 5000L;
+
+  private static final int CONNECT_TIMEOUT = 3000;
+
+  private static final int HANDSHAKE_TIMEOUT = 10000;
+
+  private static final long TOKEN_EXPIRATION_TIME = 30000L;
+
+  private static final String HANDSHAKE_MAGIC = "DPP-TCP-1";
+
+  private static final int HANDSHAKE_ACCEPTED = 1;
+
+  private static final SecureRandom TOKEN_GENERATOR = new SecureRandom();
+
+  private final TCPServer server = new TCPServer();
+
+  private final IContainerContext context;
+
+  private final Map<String, PendingConnection> pendingConnections =
+      new HashMap<String, PendingConnection>();
+
+  private volatile Connection xmppConnection;
   private volatile IByteStreamConnectionListener currentListener;
+  private volatile JID localAddress;
+  private volatile int serverPort = -1;
+
+  private static class PendingConnection {
+    private final JID peer;
+    private final String connectionID;
+    private final long creationTime;
+
+    private PendingConnection(JID peer, String connectionID) {
+      this.peer = peer;
+      this.connectionID = connectionID;
+      this.creationTime = System.currentTimeMillis();
+    }
+  }
+
+  private final PacketListener endpointRequestListener =
+      new PacketListener() {
+
+        @Override
+        public void processPacket(Packet packet) {
+          final TCPEndpointExtension request = TCPEndpointExtension.PROVIDER.getPayload(packet);
+
+          if (request == null || request.getConnectionID() == null) return;
+
+          final Connection connection = xmppConnection;
+
+          if (connection == null) return;
+
+          final JID peer = new JID(packet.getFrom());
+
+          if (!isKnownPeer(connection, peer)) {
+            LOG.warn("rejecting TCP endpoint request from unknown peer: " + peer);
+            sendReply(
+                connection,
+                IQ.createErrorResponse((IQ) packet, new XMPPError(XMPPError.Condition.forbidden)));
+            return;
+          }
+
+          final List<String> endpoints = getEndpoints();
+
+          final String token =
+              endpoints.isEmpty() ? null : createToken(peer, request.getConnectionID());
+
+          final IQ reply =
+              TCPEndpointExtension.PROVIDER.createIQ(
+                  new TCPEndpointExtension(
+                      request.getRequestID(), request.getConnectionID(), token, endpoints));
+
+          reply.setType(IQ.Type.RESULT);
+          reply.setTo(packet.getFrom());
+
+          sendReply(connection, reply);
+        }
+
+        private void sendReply(final Connection connection, final IQ reply) {
+          try {
+            connection.sendPacket(reply);
+          } catch (RuntimeException e) {
+            LOG.error("could not send TCP endpoints to " + reply.getTo(), e);
+          }
+        }
+      };
+
+  private final TCPServer.ISocketHandler socketHandler =
+      new TCPServer.ISocketHandler() {
+        @Override
+        public void handle(final Socket socket) {
+          ThreadUtils.runSafeAsync(
+              "dpp-tcp-handshake",
+              LOG,
+              new Runnable() {
+                @Override
+                public void run() {
+                  acceptConnection(socket);
+                }
+              });
+        }
+      };
+
+  public TCPTransport(IContainerContext context) {
+    this.context = context;
+  }
+
+  /** Creates a transport that answers endpoint requests of contacts only. */
+  TCPTransport() {
+    this(null);
+  }
 
   @Override
   public IByteStreamConnection connect(String connectionID, JID peer)
       throws IOException, InterruptedException {
 
-    if (true) throw new RuntimeException("NYI");
+    if (connectionID == null) throw new NullPointerException("connectionID is null");
+
+    if (peer == null) throw new NullPointerException("peer is null");
+
+    if (connectionID.isEmpty())
+      throw new IllegalArgumentException("connectionID must not be empty");
+
+    if (connectionID.contains(String.valueOf(IStreamService.SESSION_ID_DELIMITER)))
+      throw new IllegalArgumentException(
+          "connectionID must not contain '" + IStreamService.SESSION_ID_DELIMITER + "'");
+
+    final Connection connection = xmppConnection;
+
+    if (connection == null) throw new IOException(this + " transport is not initialized");
+
+    LOG.debug("querying TCP endpoints of: " + peer);
+
+    return connect(connectionID, peer, queryEndpoints(connection, connectionID, peer));
+  }
+
+  @Override
+  public synchronized void initialize(
+      Connection connection, IByteStreamConnectionListener listener) {
+
+    startServer(new JID(connection.getUser()), listener);
+
+    xmppConnection = connection;
+
+    connection.addPacketListener(
+        endpointRequestListener,
+        new AndFilter(
+            TCPEndpointExtension.PROVIDER.getIQFilter(),
+            new PacketFilter() {
+              @Override
+              public boolean accept(Packet packet) {
+                return ((IQ) packet).getType() == IQ.Type.GET;
+              }
+            }));
+  }
+
+  @Override
+  public synchronized void uninitialize() {
+    final Connection connection = xmppConnection;
+
+    if (connection != null) connection.removePacketListener(endpointRequestListener);
+
+    xmppConnection = null;
+
+    stopServer();
+  }
+
+  /**
+   * Starts the server that accepts the incoming connections.
+   *
+   * @param localAddress the address of the local user
+   * @param listener the listener that is notified about accepted connections
+   */
+  synchronized void startServer(JID localAddress, IByteStreamConnectionListener listener) {
+    this.localAddress = localAddress;
+    this.currentListener = listener;
+
+    server.setSocketHandler(socketHandler);
+
+    try {
+      serverPort = server.start(null, -SERVER_PORT);
+    } catch (IOException e) {
+      LOG.error("failed to start TCP server, incoming TCP connections are not possible", e);
+      serverPort = -1;
+    }
+  }
+
+  /** Stops the server and invalidates all tokens. */
+  synchronized void stopServer() {
+    if (serverPort != -1) server.stop();
+
+    serverPort = -1;
+    currentListener = null;
+
+    synchronized (pendingConnections) {
+      pendingConnections.clear();
+    }
+  }
+
+  /**
+   * Returns the endpoints the server is listening on. Loopback addresses are returned last as they
+   * are only useful if both peers are running on the same host.
+   *
+   * @return the endpoints in the form <code>host:port</code>, empty if the server is not running
+   */
+  List<String> getEndpoints() {
+    final int port = serverPort;
+
+    final List<String> endpoints = new ArrayList<String>();
+
+    if (port == -1) return endpoints;
+
+    for (InetAddress address : NetworkingUtils.getAllNonLoopbackLocalIPAddresses(false))
+      endpoints.add(address.getHostAddress() + ":" + port);
+
+    endpoints.add(InetAddress.getLoopbackAddress().getHostAddress() + ":" + port);
 
-    // TODO this should be configurable;
+    return endpoints;
+  }
+
+  /**
+   * Creates a one-time token that allows the given peer to establish a connection with the given
+   * id.
+   */
+  String createToken(JID peer, String connectionID) {
+    final String token = new BigInteger(130, TOKEN_GENERATOR).toString(Character.MAX_RADIX);
+
+    synchronized (pendingConnections) {
+      removeExpiredTokens();
+      pendingConnections.put(token, new PendingConnection(peer, connectionID));
+    }
+
+    return token;
+  }
+
+  /**
+   * Returns whether the given peer is allowed to query the endpoints of the server, i.e. it is
+   * either a contact of the local user or a user of the current session.
+   */
+  private boolean isKnownPeer(final Connection connection, final JID peer) {
+    final Roster roster = connection.getRoster();
+
+    if (roster != null && roster.getEntry(peer.getBase()) != null) return true;
+
+    if (context == null || !peer.isResourceQualifiedJID()) return false;
+
+    /*
+     * the session manager cannot be injected as it depends on the
+     * transmitter which in turn depends on this transport
+     */
+    final ISarosSessionManager sessionManager = context.getComponent(ISarosSessionManager.class);
+
+    final ISarosSession session = sessionManager == null ? null : sessionManager.getSession();
+
+    return session != null && session.getUser(peer) != null;
+  }
+
+  /**
+   * Connects to the first reachable endpoint of the given endpoint response.
+   *
+   * @throws IOException if no connection to any of the endpoints could be established
+   */
+  IByteStreamConnection connect(String connectionID, JID peer, TCPEndpointExtension response)
+      throws IOException {
+
+    final IByteStreamConnectionListener listener = currentListener;
+
+    if (listener == null) throw new IOException(this + " transport is not initialized");
+
+    if (response.getToken() == null || response.getEndpoints().isEmpty())
+      throw new IOException(peer + " does not accept TCP connections");
+
+    IOException lastError = null;
+
+    for (final String endpoint : response.getEndpoints()) {
+      final Socket socket;
+
+      try {
+        socket = connect(endpoint, response.getToken());
+      } catch (IOException e) {
+        LOG.debug("failed to connect to TCP endpoint " + endpoint + " of " + peer, e);
+        lastError = e;
+        continue;
+      }
+
+      LOG.debug("established TCP connection to " + peer + " via " + endpoint);
+
+      try {
+        return new BinaryChannelConnection(
+            localAddress, peer, connectionID, new TCPByteStream(socket), StreamMode.TCP, listener);
+      } catch (IOException e) {
+        closeSocket(socket);
+        throw e;
+      }
+    }
+
+    throw new IOException("could not connect to any TCP endpoint of " + peer, lastError);
+  }
+
+  private TCPEndpointExtension queryEndpoints(
+      final Connection connection, final String connectionID, final JID peer) throws IOException {
+
+    final String requestID = new BigInteger(64, TOKEN_GENERATOR).toString(Character.MAX_RADIX);
+
+    final IQ request =
+        TCPEndpointExtension.PROVIDER.createIQ(
+            new TCPEndpointExtension(requestID, connectionID, null, null));
+
+    request.setType(IQ.Type.GET);
+    request.setTo(peer.toString());
+
+    final PacketCollector collector =
+        connection.createPacketCollector(
+            new AndFilter(
+                new PacketTypeFilter(IQ.class),
+                new PacketFilter() {
+                  @Override
+                  public boolean accept(Packet packet) {
+                    if (!peer.toString().equals(packet.getFrom())) return false;
+
+                    /*
+                     * e.g feature-not-implemented if the peer does not offer
+                     * TCP connections, error replies may not contain the request
+                     */
+                    if (((IQ) packet).getType() == IQ.Type.ERROR)
+                      return request.getPacketID().equals(packet.getPacketID());
+
+                    final TCPEndpointExtension response =
+                        TCPEndpointExtension.PROVIDER.getPayload(packet);
+
+                    return response != null
+                        && ((IQ) packet).getType() == IQ.Type.RESULT
+                        && requestID.equals(response.getRequestID());
+                  }
+                }));
+
+    final Packet reply;
+
+    try {
+      connection.sendPacket(request);
+      reply = collector.nextResult(ENDPOINT_QUERY_TIMEOUT);
+    } finally {
+      collector.cancel();
+    }
+
+    if (reply == null) throw new IOException(peer + " did not respond with its TCP endpoints");
+
+    if (((IQ) reply).getType() == IQ.Type.ERROR)
+      throw new IOException(peer + " did not send its TCP endpoints: " + reply.getError());
+
+    return TCPEndpointExtension.PROVIDER.getPayload(reply);
+  }
+
+  private static Socket connect(final String endpoint, final String token) throws IOException {
+    final int delimiterIdx = endpoint.lastIndexOf(':');
+
+    if (delimiterIdx == -1) throw new IOException("malformed endpoint: " + endpoint);
+
+    final int port;
+
+    try {
+      port = Integer.parseInt(endpoint.substring(delimiterIdx + 1));
+    } catch (NumberFormatException e) {
+      throw new IOException("malformed endpoint: " + endpoint, e);
+    }
 
     final Socket socket = new Socket(Proxy.NO_PROXY);
 
-    final InetSocketAddress address = new InetSocketAddress("localhost", 4711);
+    try {
+      socket.connect(
+          new InetSocketAddress(endpoint.substring(0, delimiterIdx), port), CONNECT_TIMEOUT);
+
+      socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+
+      final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+
+      out.writeUTF(HANDSHAKE_MAGIC);
+      out.writeUTF(token);
+      out.flush();
+
+      if (socket.getInputStream().read() != HANDSHAKE_ACCEPTED)
+        throw new IOException("connection was rejected by " + endpoint);
+
+      socket.setSoTimeout(0);
+      socket.setTcpNoDelay(true);
+
+      return socket;
+    } catch (IOException e) {
+      closeSocket(socket);
+      throw e;
+    }
+  }
 
-    socket.connect(address, 30000);
-    socket.setTcpNoDelay(true);
+  private void acceptConnection(final Socket socket) {
+    final PendingConnection pending;
+
+    try {
+      socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+
+      final DataInputStream in = new DataInputStream(socket.getInputStream());
+
+      final String magic = in.readUTF();
+      final String token = in.readUTF();
+
+      synchronized (pendingConnections) {
+        removeExpiredTokens();
+        pending = HANDSHAKE_MAGIC.equals(magic) ? pendingConnections.remove(token) : null;
+      }
+
+      if (pending == null) {
+        LOG.warn("rejecting TCP connection from " + socket.getRemoteSocketAddress());
+        closeSocket(socket);
+        return;
+      }
+
+      socket.getOutputStream().write(HANDSHAKE_ACCEPTED);
+      socket.getOutputStream().flush();
+
+      socket.setSoTimeout(0);
+      socket.setTcpNoDelay(true);
+    } catch (IOException e) {
+      LOG.warn("TCP handshake with " + socket.getRemoteSocketAddress() + " failed", e);
+      closeSocket(socket);
+      return;
+    }
 
     final IByteStreamConnectionListener listener = currentListener;
 
     if (listener == null) {
-      socket.close();
-      throw new IOException(this + " transport is not initialized");
+      LOG.warn(this + " is not initialized, rejecting connection...");
+      closeSocket(socket);
+      return;
     }
 
-    final IByteStreamConnection connection =
-        new BinaryChannelConnection(
-            null, peer, connectionID, new TCPByteStream(socket), StreamMode.TCP, listener);
+    LOG.debug("accepted TCP connection from " + pending.peer + " [" + pending.connectionID + "]");
 
-    return connection;
+    final IByteStreamConnection connection;
+
+    try {
+      connection =
+          new BinaryChannelConnection(
+              localAddress,
+              pending.peer,
+              pending.connectionID,
+              new TCPByteStream(socket),
+              StreamMode.TCP,
+              listener);
+    } catch (IOException e) {
+      LOG.error("failed to initialize connection for TCP stream", e);
+      closeSocket(socket);
+      return;
+    }
+
+    listener.connectionChanged(pending.connectionID, connection, true);
   }
 
-  @Override
-  public void initialize(Connection connection, IByteStreamConnectionListener listener) {
+  // must be called while holding the pendingConnections lock
+  private void removeExpiredTokens() {
+    final long now = System.currentTimeMillis();
 
-    currentListener = listener;
+    for (Iterator<PendingConnection> it = pendingConnections.values().iterator(); it.hasNext(); )
+      if (now - it.next().creationTime > TOKEN_EXPIRATION_TIME) it.remove();
   }
 
-  @Override
-  public void uninitialize() {
-    currentListener = null;
+  private static void closeSocket(final Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // ignore
+    }
   }
 
   @Override
@@ -21,6 +21,16 @@ public interface IActivityHandlerCallback {
    */
   public void send(List<User> recipients, IActivity activity);
 
+  /**
+   * Gets called when several activities should be send to one session user. The activities must be
+   * sent in the given order.
+   *
+   * @param recipient the user that should receive the activities
+   * @param activities a list containing the activities to send, the list may be reused by the
+   *     caller after this method returned
+   */
+  public void send(User recipient, List<IActivity> activities);
+
   /**
    * Gets called when an activity should be executed.
    *
@@ -19,6 +19,7 @@
  */
 package saros.session;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -408,6 +409,17 @@ public interface ISarosSession {
    */
   public void disableQueuing(IProject project);
 
+  /**
+   * FOR INTERNAL USE ONLY !
+   *
+   * <p>Reads the queued activities for the given project that were written to disk back into
+   * memory. Must be called before {@link #disableQueuing} if the queued activities are required to
+   * be complete.
+   *
+   * @throws IOException if the queued activities could not be read
+   */
+  public void restoreQueuedActivities(IProject project) throws IOException;
+
   /**
    * Returns the id of the current session.
    *
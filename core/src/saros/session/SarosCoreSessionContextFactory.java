@@ -1,6 +1,7 @@
 package saros.session;
 
 import org.picocontainer.MutablePicoContainer;
+import saros.communication.extensions.ActivitiesExtensionCodec;
 import saros.concurrent.management.ConcurrentDocumentClient;
 import saros.concurrent.management.ConcurrentDocumentServer;
 import saros.concurrent.watchdog.ConsistencyWatchdogClient;
@@ -56,6 +57,9 @@ public class SarosCoreSessionContextFactory implements ISarosSessionContextFacto
     container.addComponent(SPathConverter.class);
     container.addComponent(UserConverter.class);
 
+    // Session-dependent binary activity codec
+    container.addComponent(ActivitiesExtensionCodec.class);
+
     // Other
     container.addComponent(ActivityHandler.class);
     container.addComponent(ActivitySequencer.class);
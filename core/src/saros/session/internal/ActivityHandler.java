@@ -2,17 +2,29 @@ package saros.session.internal;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
 import org.picocontainer.Startable;
 import saros.activities.ActivityOptimizer;
 import saros.activities.ChecksumActivity;
+import saros.activities.FileActivity;
 import saros.activities.IActivity;
+import saros.activities.IFileSystemModificationActivity;
 import saros.activities.IResourceActivity;
 import saros.activities.ITargetedActivity;
 import saros.activities.JupiterActivity;
 import saros.activities.QueueItem;
+import saros.activities.SPath;
 import saros.concurrent.management.ConcurrentDocumentClient;
 import saros.concurrent.management.ConcurrentDocumentServer;
 import saros.concurrent.management.TransformationResult;
@@ -20,6 +32,7 @@ import saros.session.IActivityHandlerCallback;
 import saros.session.ISarosSession;
 import saros.session.User;
 import saros.synchronize.UISynchronizer;
+import saros.util.NamedThreadFactory;
 import saros.util.ThreadUtils;
 
 /**
@@ -52,6 +65,39 @@ public final class ActivityHandler implements Startable {
     DISPATCH_MODE = dispatchModeToUse;
   }
 
+  private static final int MAX_DEFAULT_SERVER_TRANSFORMATION_THREADS = 4;
+
+  /**
+   * Number of threads the host uses to transform incoming activities. Activities of the same path
+   * are always transformed by the same thread. A value less than <code>1</code> disables the
+   * parallel transformation and all activities are transformed by the thread that received them.
+   * Defaults to the number of available processors, at most {@link
+   * #MAX_DEFAULT_SERVER_TRANSFORMATION_THREADS}, if there is more than one.
+   */
+  private static final int SERVER_TRANSFORMATION_THREADS =
+      Integer.getInteger(
+          "saros.session.SERVER_TRANSFORMATION_THREADS", getDefaultServerTransformationThreads());
+
+  private static int getDefaultServerTransformationThreads() {
+    final int processors = Runtime.getRuntime().availableProcessors();
+
+    // a single lane would only add a thread hand-off
+    if (processors < 2) return 0;
+
+    return Math.min(processors, MAX_DEFAULT_SERVER_TRANSFORMATION_THREADS);
+  }
+
+  /** Lock that ensures that incoming activities are routed in the order they were received. */
+  private final Object serverTransformationLock = new Object();
+
+  /*
+   * Single threaded executors, one for each lane. A path is always mapped to
+   * the same lane so transformations of a path are still performed in order.
+   */
+  private ExecutorService[] serverTransformers;
+
+  private final int serverTransformationThreads;
+
   private final LinkedBlockingQueue<List<IActivity>> dispatchQueue =
       new LinkedBlockingQueue<List<IActivity>>();
 
@@ -110,11 +156,28 @@ public final class ActivityHandler implements Startable {
       ConcurrentDocumentServer documentServer,
       ConcurrentDocumentClient documentClient,
       UISynchronizer synchronizer) {
+    this(
+        session,
+        callback,
+        documentServer,
+        documentClient,
+        synchronizer,
+        SERVER_TRANSFORMATION_THREADS);
+  }
+
+  ActivityHandler(
+      ISarosSession session,
+      IActivityHandlerCallback callback,
+      ConcurrentDocumentServer documentServer,
+      ConcurrentDocumentClient documentClient,
+      UISynchronizer synchronizer,
+      int serverTransformationThreads) {
     this.session = session;
     this.callback = callback;
     this.documentServer = documentServer;
     this.documentClient = documentClient;
     this.synchronizer = synchronizer;
+    this.serverTransformationThreads = serverTransformationThreads;
   }
 
   /**
@@ -123,7 +186,7 @@ public final class ActivityHandler implements Startable {
    *
    * @param activities an <b>immutable</b> list containing the activities
    */
-  public synchronized void handleIncomingActivities(List<IActivity> activities) {
+  public void handleIncomingActivities(List<IActivity> activities) {
 
     if (session.isHost()) {
       /**
@@ -133,15 +196,18 @@ public final class ActivityHandler implements Startable {
        * may transform activities again if necessary and afterward sends them to the correct
        * clients. (Note that the callback.send() methods get an actual list of recipients.)
        */
-      TransformationResult result = directServerActivities(activities);
-      for (QueueItem item : result.getSendToPeers()) {
-        List<User> recipients = getRecipientsForQueueItem(item);
-        callback.send(recipients, item.activity);
+      synchronized (serverTransformationLock) {
+        if (serverTransformers == null) transformAndDispatchServerActivities(activities);
+        else scheduleServerActivities(activities);
       }
 
-      activities = result.getLocalActivities();
+      return;
     }
 
+    executeLocally(activities);
+  }
+
+  private void executeLocally(final List<IActivity> activities) {
     /**
      * @JTourBusStop 9, Activity sending, Client Receiver:
      *
@@ -155,6 +221,208 @@ public final class ActivityHandler implements Startable {
     else dispatchQueue.add(activities);
   }
 
+  /**
+   * Transforms the given activities with the {@link ConcurrentDocumentServer}, sends the results to
+   * the remote users and queues the activities that must be executed by the local user. Must be
+   * called either with the {@link #serverTransformationLock} held or from the lane that owns the
+   * paths of the given activities.
+   */
+  private void transformAndDispatchServerActivities(final List<IActivity> activities) {
+    final List<IActivity> localActivities = new ArrayList<IActivity>();
+
+    // output buffers of the Jupiter transformation, reused for each run
+    final Map<User, List<IActivity>> transformedActivities = new HashMap<User, List<IActivity>>();
+
+    /*
+     * consecutive Jupiter and checksum activities are transformed together
+     * and sent as one batch per recipient, the order of the runs is kept
+     */
+    int start = 0;
+
+    while (start < activities.size()) {
+      final boolean transformable = isTransformable(activities.get(start));
+
+      int end = start + 1;
+
+      while (end < activities.size() && isTransformable(activities.get(end)) == transformable)
+        end++;
+
+      final List<IActivity> run = activities.subList(start, end);
+
+      if (transformable)
+        transformAndDispatchServerActivities(run, transformedActivities, localActivities);
+      else dispatchServerActivities(run, localActivities);
+
+      start = end;
+    }
+
+    executeLocally(localActivities);
+  }
+
+  /**
+   * Transforms the given Jupiter and checksum activities with the {@link ConcurrentDocumentServer}
+   * and sends the results as one batch to each remote user.
+   */
+  private void transformAndDispatchServerActivities(
+      final List<IActivity> activities,
+      final Map<User, List<IActivity>> transformedActivities,
+      final List<IActivity> localActivities) {
+
+    documentServer.transformIncoming(activities, transformedActivities);
+
+    for (final Entry<User, List<IActivity>> entry : transformedActivities.entrySet()) {
+      final User user = entry.getKey();
+      final List<IActivity> batch = entry.getValue();
+
+      if (batch.isEmpty()) continue;
+
+      if (user.isLocal()) {
+        localActivities.addAll(batch);
+      } else {
+        // the user may not have the project of every document
+        for (final Iterator<IActivity> it = batch.iterator(); it.hasNext(); ) {
+          final SPath path = ((IResourceActivity) it.next()).getPath();
+
+          if (!session.userHasProject(user, path.getProject())) it.remove();
+        }
+
+        if (!batch.isEmpty()) callback.send(user, batch);
+      }
+
+      batch.clear();
+    }
+  }
+
+  /**
+   * Sends the given activities, which do not need to be transformed, to the remote users and queues
+   * the activities that must be executed by the local user.
+   */
+  private void dispatchServerActivities(
+      final List<IActivity> activities, final List<IActivity> localActivities) {
+
+    final TransformationResult result = directServerActivities(activities);
+
+    for (QueueItem item : result.getSendToPeers()) {
+      List<User> recipients = getRecipientsForQueueItem(item);
+
+      if (!hasMoveChecksum(item.activity)) {
+        callback.send(recipients, item.activity);
+        continue;
+      }
+
+      // the checksum of a move is timestamped for each recipient
+      for (final User user : recipients) {
+        callback.send(
+            Collections.singletonList(user),
+            documentServer.withTimestamp((FileActivity) item.activity, user));
+      }
+    }
+
+    localActivities.addAll(result.getLocalActivities());
+  }
+
+  private static boolean hasMoveChecksum(final IActivity activity) {
+    return activity instanceof FileActivity && ((FileActivity) activity).getChecksum() != null;
+  }
+
+  private static boolean isTransformable(final IActivity activity) {
+    return activity instanceof JupiterActivity || activity instanceof ChecksumActivity;
+  }
+
+  /**
+   * Distributes the activities to the transformation lanes. Activities that are not bound to a
+   * single document act as barrier, i.e they are transformed by the current thread after all
+   * previously scheduled activities are transformed.
+   */
+  private void scheduleServerActivities(final List<IActivity> activities) {
+
+    final List<List<IActivity>> lanes = new ArrayList<List<IActivity>>(serverTransformers.length);
+
+    for (int i = 0; i < serverTransformers.length; i++) lanes.add(new ArrayList<IActivity>());
+
+    for (final IActivity activity : activities) {
+      final SPath path = getTransformationPath(activity);
+
+      if (path != null) {
+        lanes.get(getLane(path)).add(activity);
+        continue;
+      }
+
+      submitToLanes(lanes);
+      awaitLanes();
+      transformAndDispatchServerActivities(Collections.singletonList(activity));
+    }
+
+    submitToLanes(lanes);
+  }
+
+  private void submitToLanes(final List<List<IActivity>> lanes) {
+    for (int i = 0; i < lanes.size(); i++) {
+      final List<IActivity> activities = lanes.get(i);
+
+      if (activities.isEmpty()) continue;
+
+      final List<IActivity> activitiesToTransform = new ArrayList<IActivity>(activities);
+      activities.clear();
+
+      serverTransformers[i].execute(
+          ThreadUtils.wrapSafe(
+              LOG,
+              new Runnable() {
+                @Override
+                public void run() {
+                  transformAndDispatchServerActivities(activitiesToTransform);
+                }
+              }));
+    }
+  }
+
+  /** Waits until all activities that were submitted to the lanes so far are transformed. */
+  private void awaitLanes() {
+    final List<Future<?>> barriers = new ArrayList<Future<?>>(serverTransformers.length);
+
+    for (final ExecutorService transformer : serverTransformers)
+      barriers.add(
+          transformer.submit(
+              new Runnable() {
+                @Override
+                public void run() {
+                  // NOP
+                }
+              }));
+
+    for (final Future<?> barrier : barriers) {
+      try {
+        barrier.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        LOG.error("unexpected error while waiting for the transformation lanes", e);
+      }
+    }
+  }
+
+  private int getLane(final SPath path) {
+    return (path.hashCode() & Integer.MAX_VALUE) % serverTransformers.length;
+  }
+
+  /**
+   * Returns the path of the document the given activity belongs to or <code>null</code> if the
+   * activity is not bound to a single document and so must be ordered with all other activities.
+   */
+  private static SPath getTransformationPath(final IActivity activity) {
+    if (!(activity instanceof IResourceActivity)) return null;
+
+    /*
+     * file system modifications are altering the document servers (e.g
+     * deletion) and may affect more than one path
+     */
+    if (activity instanceof IFileSystemModificationActivity) return null;
+
+    return ((IResourceActivity) activity).getPath();
+  }
+
   /**
    * Determines the recipients for a given QueueItem
    *
@@ -199,10 +467,12 @@ public final class ActivityHandler implements Startable {
    * @param activities an <b>immutable</b> list containing the activities
    */
   /*
-   * Note: transformation and executing has to be performed together in the
-   * SWT thread. Else, it would be possible that local activities are executed
-   * between transformation and application of remote operations. In other
-   * words, the transformation would be applied to an out-dated state.
+   * Note: generating the Jupiter activities has to be performed in the SWT
+   * thread like the execution of remote operations. Else, it would be
+   * possible that remote operations are executed between the local change and
+   * the generation of its Jupiter activity. Remote operations that are already
+   * transformed but not yet executed are taken into account by the
+   * ConcurrentDocumentClient.
    */
   public void handleOutgoingActivities(final List<IActivity> activities) {
     /**
@@ -236,6 +506,17 @@ public final class ActivityHandler implements Startable {
 
   @Override
   public void start() {
+    if (serverTransformationThreads > 0 && session.isHost()) {
+      final NamedThreadFactory threadFactory = new NamedThreadFactory("dpp-server-transformer-");
+
+      synchronized (serverTransformationLock) {
+        serverTransformers = new ExecutorService[serverTransformationThreads];
+
+        for (int i = 0; i < serverTransformers.length; i++)
+          serverTransformers[i] = Executors.newSingleThreadExecutor(threadFactory);
+      }
+    }
+
     if (DISPATCH_MODE == DISPATCH_MODE_ASYNC) return;
 
     dispatchThread =
@@ -244,6 +525,8 @@ public final class ActivityHandler implements Startable {
 
   @Override
   public void stop() {
+    stopServerTransformers();
+
     if (DISPATCH_MODE == DISPATCH_MODE_ASYNC) return;
 
     dispatchThread.interrupt();
@@ -259,6 +542,29 @@ public final class ActivityHandler implements Startable {
     if (dispatchThread.isAlive()) LOG.error(dispatchThread.getName() + " thread is still running");
   }
 
+  private void stopServerTransformers() {
+    final ExecutorService[] transformers;
+
+    synchronized (serverTransformationLock) {
+      transformers = serverTransformers;
+      serverTransformers = null;
+    }
+
+    if (transformers == null) return;
+
+    for (final ExecutorService transformer : transformers) transformer.shutdown();
+
+    try {
+      for (final ExecutorService transformer : transformers) {
+        if (!transformer.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS))
+          LOG.error("server transformer is still running");
+      }
+    } catch (InterruptedException e) {
+      LOG.warn("interrupted while waiting for the server transformers to terminate");
+      Thread.currentThread().interrupt();
+    }
+  }
+
   /**
    * Executes the current activities by dispatching the received activities to the SWT EDT.
    *
@@ -295,14 +601,48 @@ public final class ActivityHandler implements Startable {
    * @param activities the activities to execute
    */
   /*
-   * Note: transformation and executing has to be performed together in the
-   * SWT thread. Else, it would be possible that local activities are executed
-   * between transformation and application of remote operations. In other
-   * words, the transformation would be applied to an out-dated state.
+   * Note: the Jupiter transformation is performed ahead in the calling thread
+   * in synchronous mode, only the executing has to be performed in the SWT
+   * thread. Local activities that are created between the transformation and
+   * the execution are transformed against the pending remote operations by the
+   * ConcurrentDocumentClient, so they still refer to the state of the local
+   * document.
    */
   private void dispatchAndExecuteActivities(final List<IActivity> activities) {
 
-    final List<IActivity> optimizedActivities = ActivityOptimizer.optimize(activities);
+    final List<IActivity> optimizedActivities = new ArrayList<IActivity>();
+
+    for (IActivity activity : ActivityOptimizer.optimize(activities)) {
+
+      User source = activity.getSource();
+
+      /*
+       * Ensure that we do not execute activities after all listeners were
+       * notified (See SarosSession#removeUser). It is still possible that a
+       * user may left during activity execution but this is likely no to
+       * produce any errors.
+       *
+       * TODO: as the notification for users who left the session is send in
+       * parallel with the activities there will be race conditions were one
+       * user may execute a given activity but another user will not which
+       * may lead to unwanted inconsistencies if that activity was a resource
+       * activity.
+       */
+      if (!source.isInSession()) {
+        LOG.warn("dropping activity for user that is no longer in session: " + activity);
+        continue;
+      }
+
+      optimizedActivities.add(activity);
+    }
+
+    /*
+     * Perform the Jupiter transformation on the dispatch thread, so the SWT
+     * thread only has to apply the results. The dispatch thread waits for
+     * the execution, so the prepared activities are always executed before
+     * the next ones are prepared.
+     */
+    if (DISPATCH_MODE == DISPATCH_MODE_SYNC) documentClient.prepareIncoming(optimizedActivities);
 
     final Runnable transformingRunnable =
         new Runnable() {
@@ -311,26 +651,6 @@ public final class ActivityHandler implements Startable {
 
             for (IActivity activity : optimizedActivities) {
 
-              User source = activity.getSource();
-
-              /*
-               * Ensure that we do not execute activities after all
-               * listeners were notified (See SarosSession#removeUser). It
-               * is still possible that a user may left during activity
-               * execution but this is likely no to produce any errors.
-               *
-               * TODO: as the notification for users who left the session
-               * is send in parallel with the activities there will be
-               * race conditions were one user may execute a given
-               * activity but another user will not which may lead to
-               * unwanted inconsistencies if that activity was a resource
-               * activity.
-               */
-              if (!source.isInSession()) {
-                LOG.warn("dropping activity for user that is no longer in session: " + activity);
-                continue;
-              }
-
               List<IActivity> transformedActivities = documentClient.transformFromJupiter(activity);
 
               for (IActivity transformedActivity : transformedActivities) {
@@ -341,6 +661,9 @@ public final class ActivityHandler implements Startable {
                 }
               }
             }
+
+            for (IActivity acknowledgement : documentClient.getAcknowledgements())
+              callback.send(Collections.singletonList(session.getHost()), acknowledgement);
           }
         };
 
@@ -366,7 +689,7 @@ public final class ActivityHandler implements Startable {
 
   /**
    * This method is responsible for directing activities received at the server to the various
-   * clients.
+   * clients. Jupiter and checksum activities must be transformed beforehand.
    *
    * @param activities A list of incoming activities
    * @return A number of targeted activities.
@@ -381,10 +704,7 @@ public final class ActivityHandler implements Startable {
     for (IActivity activity : activities) {
       documentServer.checkFileDeleted(activity);
 
-      if (activity instanceof JupiterActivity || activity instanceof ChecksumActivity) {
-
-        result.addAll(documentServer.transformIncoming(activity));
-      } else if (activity instanceof ITargetedActivity) {
+      if (activity instanceof ITargetedActivity) {
         ITargetedActivity target = (ITargetedActivity) activity;
         result.add(new QueueItem(target.getTarget(), activity));
 
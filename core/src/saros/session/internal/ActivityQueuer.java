@@ -1,26 +1,66 @@
 package saros.session.internal;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import org.apache.log4j.Logger;
 import saros.activities.EditorActivity;
 import saros.activities.EditorActivity.Type;
+import saros.activities.FileActivity;
 import saros.activities.IActivity;
 import saros.activities.IResourceActivity;
 import saros.activities.JupiterActivity;
 import saros.activities.SPath;
+import saros.activities.TargetedFileActivity;
+import saros.activities.TextSelectionActivity;
+import saros.activities.ViewportActivity;
 import saros.filesystem.IProject;
 import saros.session.User;
 
-/** This class enables the queuing of {@linkplain IActivity activities} for given projects. */
+/**
+ * This class enables the queuing of {@linkplain IActivity activities} for given projects.
+ *
+ * <p>Queues are compacted while activities are added: a selection or viewport activity replaces the
+ * previously queued one of the same user for the same path. File contents exceeding {@link
+ * #DEFAULT_MAX_CONTENT_SIZE} per queue are written to a temporary file and read back by {@link
+ * #restoreQueuedActivities} before the queue is flushed. This keeps the memory usage bounded during
+ * long project negotiations.
+ */
 public class ActivityQueuer {
 
+  private static final Logger LOG = Logger.getLogger(ActivityQueuer.class);
+
+  /** Number of bytes of file contents a queue keeps in memory before writing them to disk */
+  static final long DEFAULT_MAX_CONTENT_SIZE =
+      Long.getLong("saros.session.MAX_QUEUED_CONTENT_SIZE", 16L * 1024 * 1024);
+
   private static class ProjectQueue {
     private final IProject project;
     private final List<IResourceActivity> buffer;
     private int readyToFlush;
 
+    /** Index of the last selection or viewport activity per type, path and user */
+    private final Map<List<Object>, Integer> stateActivities = new HashMap<List<Object>, Integer>();
+
+    /** Queued file activities whose content was written to disk, keyed by their buffer index */
+    private final Map<Integer, SpilledFile> spilledFiles = new HashMap<Integer, SpilledFile>();
+
+    private long contentSize;
+
+    /** Whether file contents are kept in memory regardless of their size */
+    private boolean restored;
+
+    private File spillFile;
+
+    private RandomAccessFile spill;
+
     private ProjectQueue(IProject project) {
       this.project = project;
       buffer = new ArrayList<IResourceActivity>();
@@ -28,10 +68,82 @@ public class ActivityQueuer {
     }
   }
 
+  /**
+   * Describes a queued {@link FileActivity} whose content was written to the spill file of its
+   * queue. The activity is recreated from it by {@link #restoreQueuedActivities}.
+   */
+  private static final class SpilledFile {
+
+    private final User source;
+    private final SPath path;
+
+    private final FileActivity.Type type;
+    private final FileActivity.Purpose purpose;
+    private final User target;
+    private final SPath oldPath;
+    private final String encoding;
+
+    private final long offset;
+    private final int length;
+
+    private SpilledFile(final FileActivity activity, final long offset) {
+      this.source = activity.getSource();
+      this.path = activity.getPath();
+      this.type = activity.getType();
+      this.purpose =
+          activity.isRecovery() ? FileActivity.Purpose.RECOVERY : FileActivity.Purpose.ACTIVITY;
+      this.target =
+          activity instanceof TargetedFileActivity
+              ? ((TargetedFileActivity) activity).getTarget()
+              : null;
+      this.oldPath = activity.getOldPath();
+      this.encoding = activity.getEncoding();
+      this.offset = offset;
+      this.length = activity.getContent().length;
+    }
+
+    private FileActivity restore(final RandomAccessFile spill) throws IOException {
+      final byte[] content = new byte[length];
+
+      spill.seek(offset);
+      spill.readFully(content);
+
+      if (target != null)
+        return new TargetedFileActivity(
+            source, target, type, path, oldPath, content, encoding, purpose);
+
+      return new FileActivity(source, type, purpose, path, oldPath, content, encoding);
+    }
+  }
+
   private final List<ProjectQueue> projectQueues;
 
+  private final long maxContentSize;
+
+  private final File spillDirectory;
+
   public ActivityQueuer() {
+    this(DEFAULT_MAX_CONTENT_SIZE);
+  }
+
+  /**
+   * @param maxContentSize the number of bytes of file contents a queue keeps in memory before
+   *     writing them to disk
+   */
+  ActivityQueuer(final long maxContentSize) {
+    this(maxContentSize, null);
+  }
+
+  /**
+   * @param maxContentSize the number of bytes of file contents a queue keeps in memory before
+   *     writing them to disk
+   * @param spillDirectory the directory for the temporary files or <code>null</code> to use the
+   *     default temporary directory
+   */
+  ActivityQueuer(final long maxContentSize, final File spillDirectory) {
     projectQueues = new ArrayList<ProjectQueue>();
+    this.maxContentSize = maxContentSize;
+    this.spillDirectory = spillDirectory;
   }
 
   /**
@@ -106,6 +218,23 @@ public class ActivityQueuer {
     }
   }
 
+  /**
+   * Reads the file contents of the queued activities related to the given project that were written
+   * to disk back into memory. File contents that are queued afterwards are kept in memory until the
+   * queue is flushed.
+   *
+   * <p>This method should be called at the end of an invitation process before {@link
+   * #disableQueuing} so the invitation can fail if the queued activities are incomplete.
+   *
+   * @param project
+   * @throws IOException if a file content could not be read
+   */
+  public synchronized void restoreQueuedActivities(final IProject project) throws IOException {
+    final ProjectQueue projectQueue = getProjectQueue(project);
+
+    if (projectQueue != null) restore(projectQueue);
+  }
+
   private boolean alreadyRememberedEditorActivity(
       final Map<SPath, List<User>> editorActivities, final SPath spath, final User user) {
 
@@ -147,7 +276,7 @@ public class ActivityQueuer {
           }
 
           if (projectQueue != null) {
-            projectQueue.buffer.add(resourceActivity);
+            enqueue(projectQueue, resourceActivity);
             continue;
           }
         }
@@ -157,6 +286,91 @@ public class ActivityQueuer {
     }
   }
 
+  private void enqueue(final ProjectQueue projectQueue, IResourceActivity activity) {
+
+    final List<IResourceActivity> buffer = projectQueue.buffer;
+
+    if (activity instanceof TextSelectionActivity || activity instanceof ViewportActivity) {
+      final Integer superseded =
+          projectQueue.stateActivities.put(
+              Arrays.<Object>asList(activity.getClass(), activity.getPath(), activity.getSource()),
+              buffer.size());
+
+      if (superseded != null) buffer.set(superseded, null);
+
+    } else if (activity instanceof FileActivity) {
+      final byte[] content = ((FileActivity) activity).getContent();
+
+      if (content != null
+          && !projectQueue.restored
+          && projectQueue.contentSize + content.length > maxContentSize
+          && spill(projectQueue, (FileActivity) activity)) activity = null;
+      else if (content != null) projectQueue.contentSize += content.length;
+    }
+
+    buffer.add(activity);
+  }
+
+  /**
+   * Writes the content of the given activity to the spill file of the queue. The activity must be
+   * added to the buffer of the queue right after a successful call.
+   *
+   * @return <code>true</code> if the content was written, <code>false</code> if it must be kept in
+   *     memory
+   */
+  private boolean spill(final ProjectQueue projectQueue, final FileActivity activity) {
+    try {
+      if (projectQueue.spill == null) {
+        projectQueue.spillFile = File.createTempFile("saros_queue_", ".tmp", spillDirectory);
+        projectQueue.spillFile.deleteOnExit();
+        projectQueue.spill = new RandomAccessFile(projectQueue.spillFile, "rw");
+      }
+
+      final long offset = projectQueue.spill.length();
+
+      projectQueue.spill.seek(offset);
+      projectQueue.spill.write(activity.getContent());
+
+      projectQueue.spilledFiles.put(projectQueue.buffer.size(), new SpilledFile(activity, offset));
+
+      return true;
+    } catch (IOException e) {
+      LOG.warn("could not write queued file content to disk, keeping it in memory", e);
+      return false;
+    }
+  }
+
+  private static void restore(final ProjectQueue projectQueue) throws IOException {
+    projectQueue.restored = true;
+
+    final Iterator<Entry<Integer, SpilledFile>> it =
+        projectQueue.spilledFiles.entrySet().iterator();
+
+    while (it.hasNext()) {
+      final Entry<Integer, SpilledFile> entry = it.next();
+
+      projectQueue.buffer.set(entry.getKey(), entry.getValue().restore(projectQueue.spill));
+      it.remove();
+    }
+
+    releaseSpillFile(projectQueue);
+  }
+
+  private static void releaseSpillFile(final ProjectQueue projectQueue) {
+    if (projectQueue.spill == null) return;
+
+    try {
+      projectQueue.spill.close();
+    } catch (IOException e) {
+      LOG.warn("could not close spill file " + projectQueue.spillFile, e);
+    }
+
+    if (!projectQueue.spillFile.delete())
+      LOG.warn("could not delete spill file " + projectQueue.spillFile);
+
+    projectQueue.spill = null;
+  }
+
   private void flushQueues(final List<IActivity> activities) {
     final List<ProjectQueue> projectQueuesToRemove = new ArrayList<ProjectQueue>();
 
@@ -164,6 +378,20 @@ public class ActivityQueuer {
 
       if (projectQueue.readyToFlush > 0) continue;
 
+      try {
+        restore(projectQueue);
+      } catch (IOException e) {
+        LOG.error(
+            "could not read queued file contents of "
+                + projectQueue.project
+                + " from disk, dropping "
+                + projectQueue.spilledFiles.size()
+                + " file activities",
+            e);
+
+        releaseSpillFile(projectQueue);
+      }
+
       /*
        * HACK: ensure that an editor activated activity is included for
        * all queued JupiterActivities and EditorActivities. Otherwise we
@@ -178,6 +406,9 @@ public class ActivityQueuer {
 
       for (final IResourceActivity resourceActivity : projectQueue.buffer) {
 
+        // superseded or not restored
+        if (resourceActivity == null) continue;
+
         // path cannot be null, see for-loop below
         final SPath path = resourceActivity.getPath();
         final User source = resourceActivity.getSource();
@@ -21,14 +21,19 @@ package saros.session.internal;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.PacketListener;
 import org.jivesoftware.smack.packet.Packet;
@@ -36,7 +41,12 @@ import org.jivesoftware.smack.packet.PacketExtension;
 import org.picocontainer.Startable;
 import saros.activities.ActivityOptimizer;
 import saros.activities.FileActivity;
+import saros.activities.FileDeltaActivity;
 import saros.activities.IActivity;
+import saros.activities.IResourceActivity;
+import saros.activities.SPath;
+import saros.activities.TextSelectionActivity;
+import saros.activities.ViewportActivity;
 import saros.communication.extensions.ActivitiesExtension;
 import saros.net.DispatchThreadContext;
 import saros.net.IReceiver;
@@ -45,6 +55,7 @@ import saros.net.xmpp.JID;
 import saros.session.ISarosSession;
 import saros.session.User;
 import saros.util.ThreadUtils;
+import saros.versioning.VersionManager;
 
 /**
  * The ActivitySequencer is responsible for making sure that transformed {@linkplain IActivity
@@ -64,104 +75,80 @@ public class ActivitySequencer implements Startable {
   /** Sequence numbers for outgoing and incoming activities start with this value. */
   private static final int FIRST_SEQUENCE_NUMBER = 0;
 
-  private static class SequencedActivities {
-    private final int sequenceNumber;
-    private final List<IActivity> activites;
+  /**
+   * Whether the content of file activities is sent as delta to the content that was sent before for
+   * the same file. Deltas are only sent to users that support the current binary activity codec.
+   */
+  private static final boolean FILE_CONTENT_DELTAS =
+      Boolean.parseBoolean(
+          System.getProperty("saros.session.FILE_CONTENT_DELTAS", Boolean.TRUE.toString()));
 
-    private SequencedActivities(List<IActivity> activites, int sequenceNumber) {
-      this.activites = activites;
-      this.sequenceNumber = sequenceNumber;
-    }
-  }
+  /**
+   * Number of activities that may be pending for a recipient before selection and viewport
+   * activities are throttled, i.e only the latest one per user and path is sent once the recipient
+   * caught up again.
+   */
+  private static final int MAX_PENDING_ACTIVITIES =
+      Integer.getInteger("saros.session.MAX_PENDING_ACTIVITIES", 256);
 
   private static class ActivityBuffer<T> {
-    /**
-     * Helper flag to signal that there pending data is still send even if the buffer is already
-     * empty.
-     */
-    private boolean isInTransmission;
-
     private int nextSequenceNumber;
-    private final Deque<T> activities = new LinkedList<T>();
 
     private ActivityBuffer(int firstSequenceNumber) {
       nextSequenceNumber = firstSequenceNumber;
     }
   }
 
-  private final PacketListener activitiesPacketListener =
-      new PacketListener() {
-
-        @Override
-        public void processPacket(Packet packet) {
-          receiveActivities(packet);
-        }
-      };
-
-  private final Runnable activitySender =
-      new Runnable() {
-
-        @Override
-        public void run() {
-
-          Map<JID, SequencedActivities> activitiesToSend = new HashMap<JID, SequencedActivities>();
-
-          send:
-          while (true) {
-            activitiesToSend.clear();
-
-            synchronized (bufferedOutgoingActivities) {
-              if (stopSending) return;
-
-              for (Entry<JID, ActivityBuffer<IActivity>> entry :
-                  bufferedOutgoingActivities.entrySet()) {
-
-                ActivityBuffer<IActivity> buffer = entry.getValue();
-
-                if (buffer == null || buffer.activities.isEmpty()) continue;
+  /**
+   * Outgoing activities of one recipient. Any thread may add activities, only the sender thread of
+   * the recipient removes them. Adding only locks the held back activities briefly. Its monitor is
+   * only used to wait for a {@linkplain #flush flush}.
+   */
+  private static class OutgoingQueue {
+    private final JID recipient;
 
-                List<IActivity> optimizedActivities = ActivityOptimizer.optimize(buffer.activities);
+    private final Queue<IActivity> activities = new ConcurrentLinkedQueue<IActivity>();
 
-                buffer.activities.clear();
-                buffer.isInTransmission = true;
+    /**
+     * Latest selection and viewport activities per type, user and path that were held back while
+     * the recipient was congested. Guarded by its own monitor, which must be held while deciding
+     * whether an activity is held back and while the held back activities are added to the queue.
+     */
+    private final Map<List<Object>, IActivity> throttledActivities =
+        new LinkedHashMap<List<Object>, IActivity>();
 
-                int currentSequenceNumber = buffer.nextSequenceNumber;
-                buffer.nextSequenceNumber += optimizedActivities.size();
+    /** Number of activities that were added to the queue */
+    private final AtomicLong added = new AtomicLong();
 
-                activitiesToSend.put(
-                    entry.getKey(),
-                    new SequencedActivities(optimizedActivities, currentSequenceNumber));
-              }
+    /** Number of activities that were sent or dropped, only written by the sender thread */
+    private volatile long processed;
 
-              if (activitiesToSend.isEmpty()) {
-                try {
-                  bufferedOutgoingActivities.wait();
-                  continue send;
-                } catch (InterruptedException e) {
-                  return;
-                }
-              }
-            }
+    /** Only accessed by the sender thread */
+    private int nextSequenceNumber = FIRST_SEQUENCE_NUMBER;
 
-            for (Entry<JID, SequencedActivities> e : activitiesToSend.entrySet()) {
-              sendActivities(e.getKey(), e.getValue().activites, e.getValue().sequenceNumber);
-            }
+    private volatile Thread sender;
 
-            synchronized (bufferedOutgoingActivities) {
-              for (Entry<JID, ActivityBuffer<IActivity>> entry :
-                  bufferedOutgoingActivities.entrySet()) {
+    private OutgoingQueue(JID recipient) {
+      this.recipient = recipient;
+    }
 
-                ActivityBuffer<IActivity> buffer = entry.getValue();
+    /** Returns the number of activities that were added but not sent yet. */
+    private long getPendingCount() {
+      return added.get() - processed;
+    }
 
-                if (buffer == null) continue;
+    private void add(IActivity activity) {
+      added.incrementAndGet();
+      activities.add(activity);
+    }
+  }
 
-                buffer.isInTransmission = false;
-              }
+  private final PacketListener activitiesPacketListener =
+      new PacketListener() {
 
-              // notify waiting threads in flush method that we are done
-              bufferedOutgoingActivities.notifyAll();
-            }
-          }
+        @Override
+        public void processPacket(Packet packet) {
+          receiveActivities(packet);
         }
       };
 
@@ -170,11 +157,9 @@ public class ActivitySequencer implements Startable {
   private boolean started = false;
   private boolean stopped = false;
 
-  private boolean stopSending = false;
+  private volatile boolean stopSending = false;
   private final String currentSessionID;
 
-  private Thread activitySendThread;
-
   private final ISarosSession sarosSession;
 
   private final ITransmitter transmitter;
@@ -183,24 +168,60 @@ public class ActivitySequencer implements Startable {
 
   private final DispatchThreadContext dispatchThread;
 
+  private final VersionManager versionManager;
+
+  private final int maxPendingActivities;
+
   private final Map<JID, ActivityBuffer<IActivity>> bufferedIncomingActivities;
 
-  private final Map<JID, ActivityBuffer<IActivity>> bufferedOutgoingActivities;
+  /*
+   * only registering and unregistering users synchronizes on this map, see
+   * OutgoingQueue for the synchronization of the queues
+   */
+  private final Map<JID, OutgoingQueue> outgoingQueues =
+      new ConcurrentHashMap<JID, OutgoingQueue>();
+
+  /*
+   * the caches must be reset together with the sequence numbers as both
+   * sides must perform the same cache updates
+   */
+  private final Map<JID, FileContentCache> outgoingFileContents =
+      new ConcurrentHashMap<JID, FileContentCache>();
+
+  private final Map<JID, FileContentCache> incomingFileContents =
+      new ConcurrentHashMap<JID, FileContentCache>();
 
   public ActivitySequencer(
       final ISarosSession sarosSession,
       final ITransmitter transmitter,
       final IReceiver receiver,
-      final DispatchThreadContext threadContext) {
+      final DispatchThreadContext threadContext,
+      final VersionManager versionManager) {
+    this(
+        sarosSession, transmitter, receiver, threadContext, versionManager, MAX_PENDING_ACTIVITIES);
+  }
 
+  /**
+   * @param maxPendingActivities number of activities that may be pending for a recipient before
+   *     selection and viewport activities are throttled
+   */
+  ActivitySequencer(
+      final ISarosSession sarosSession,
+      final ITransmitter transmitter,
+      final IReceiver receiver,
+      final DispatchThreadContext threadContext,
+      final VersionManager versionManager,
+      final int maxPendingActivities) {
+
+    this.maxPendingActivities = maxPendingActivities;
     this.dispatchThread = threadContext;
+    this.versionManager = versionManager;
     this.sarosSession = sarosSession;
     this.transmitter = transmitter;
     this.receiver = receiver;
     this.currentSessionID = sarosSession.getID();
 
     this.bufferedIncomingActivities = new HashMap<JID, ActivityBuffer<IActivity>>();
-    this.bufferedOutgoingActivities = new HashMap<JID, ActivityBuffer<IActivity>>();
   }
 
   /**
@@ -249,7 +270,9 @@ public class ActivitySequencer implements Startable {
     receiver.addPacketListener(
         activitiesPacketListener, ActivitiesExtension.PROVIDER.getPacketFilter(currentSessionID));
 
-    activitySendThread = ThreadUtils.runSafeAsync("dpp-activity-sender", LOG, activitySender);
+    synchronized (outgoingQueues) {
+      for (final OutgoingQueue queue : outgoingQueues.values()) startSender(queue);
+    }
   }
 
   /**
@@ -272,35 +295,52 @@ public class ActivitySequencer implements Startable {
 
     receiver.removePacketListener(activitiesPacketListener);
 
-    synchronized (bufferedOutgoingActivities) {
+    final List<Thread> senders = new ArrayList<Thread>();
+
+    synchronized (outgoingQueues) {
       stopSending = true;
-      bufferedOutgoingActivities.notifyAll();
+
+      for (final OutgoingQueue queue : outgoingQueues.values()) {
+        if (queue.sender == null) continue;
+
+        senders.add(queue.sender);
+        LockSupport.unpark(queue.sender);
+      }
     }
 
     boolean isStoppingInterrupted = false;
 
-    try {
-      activitySendThread.join(TIMEOUT);
-    } catch (InterruptedException e) {
-      LOG.warn(
-          "interrupted while waiting for " + activitySendThread.getName() + " thread to terminate");
+    final long timeout = System.currentTimeMillis() + TIMEOUT;
+
+    for (final Thread sender : senders) {
+      try {
+        sender.join(Math.max(1, timeout - System.currentTimeMillis()));
+      } catch (InterruptedException e) {
+        LOG.warn("interrupted while waiting for " + sender.getName() + " thread to terminate");
+
+        isStoppingInterrupted = true;
+        break;
+      }
 
-      isStoppingInterrupted = true;
+      if (sender.isAlive()) LOG.error(sender.getName() + " thread is still running");
     }
 
-    if (activitySendThread.isAlive())
-      LOG.error(activitySendThread.getName() + " thread is still running");
+    synchronized (outgoingQueues) {
+      for (final OutgoingQueue queue : outgoingQueues.values()) {
+        synchronized (queue) {
+          queue.notifyAll();
+        }
+      }
 
-    synchronized (bufferedOutgoingActivities) {
-      bufferedOutgoingActivities.clear();
-      bufferedOutgoingActivities.notifyAll();
+      outgoingQueues.clear();
     }
 
     synchronized (bufferedIncomingActivities) {
       bufferedIncomingActivities.clear();
     }
 
-    activitySendThread = null;
+    outgoingFileContents.clear();
+    incomingFileContents.clear();
 
     if (isStoppingInterrupted) Thread.currentThread().interrupt();
   }
@@ -339,7 +379,26 @@ public class ActivitySequencer implements Startable {
       return;
     }
 
-    sarosSession.exec(activities);
+    final FileContentCache fileContents = incomingFileContents.get(sender);
+
+    if (fileContents == null) {
+      sarosSession.exec(activities);
+      return;
+    }
+
+    final List<IActivity> decodedActivities = new ArrayList<IActivity>(activities.size());
+
+    try {
+      for (final IActivity activity : activities)
+        decodedActivities.add(fileContents.decode(activity));
+    } catch (IOException e) {
+      LOG.error("failed to decode activities received from " + sender, e);
+      unregisterUser(sender);
+      notifyTransmissionError(sender);
+      return;
+    }
+
+    sarosSession.exec(decodedActivities);
   }
 
   /** Sends an activity to the given recipients. */
@@ -366,23 +425,195 @@ public class ActivitySequencer implements Startable {
 
     if (remoteRecipients.isEmpty()) return;
 
-    synchronized (bufferedOutgoingActivities) {
-      for (User recipient : remoteRecipients) {
-        ActivityBuffer<IActivity> buffer = bufferedOutgoingActivities.get(recipient.getJID());
-
-        if (buffer == null) {
-          LOG.warn(
-              "cannot send activity to "
-                  + recipient
-                  + " because it is currently not registers, dropped activity: "
-                  + activity);
-          continue;
+    for (User recipient : remoteRecipients) {
+      OutgoingQueue queue = outgoingQueues.get(recipient.getJID());
+
+      if (queue == null) {
+        LOG.warn(
+            "cannot send activity to "
+                + recipient
+                + " because it is currently not registers, dropped activity: "
+                + activity);
+        continue;
+      }
+
+      enqueue(queue, activity);
+      wakeUpSender(queue);
+    }
+  }
+
+  /**
+   * Sends the activities in the given order to the given recipient. The sender thread of the
+   * recipient is only notified once for all activities.
+   *
+   * @param recipient the user that should receive the activities
+   * @param activities the activities to send, the list is not retained
+   */
+  public void sendActivities(final User recipient, final List<IActivity> activities) {
+
+    if (recipient.isLocal()) {
+      LOG.trace("dispatching activities " + activities + " to the local user: " + recipient);
+
+      final List<IActivity> activitiesToExecute = new ArrayList<IActivity>(activities);
+
+      dispatchThread.executeAsDispatch(
+          new Runnable() {
+            @Override
+            public void run() {
+              sarosSession.exec(activitiesToExecute);
+            }
+          });
+
+      return;
+    }
+
+    OutgoingQueue queue = outgoingQueues.get(recipient.getJID());
+
+    if (queue == null) {
+      LOG.warn(
+          "cannot send activities to "
+              + recipient
+              + " because it is currently not registers, dropped activities: "
+              + activities);
+      return;
+    }
+
+    for (final IActivity activity : activities) enqueue(queue, activity);
+
+    wakeUpSender(queue);
+  }
+
+  private void enqueue(final OutgoingQueue queue, final IActivity activity) {
+    synchronized (queue.throttledActivities) {
+
+      /*
+       * keep throttling until the held back activities were sent, otherwise
+       * a newer activity could be sent before an older one
+       */
+      if (isThrottleable(activity)
+          && (!queue.throttledActivities.isEmpty()
+              || queue.getPendingCount() > maxPendingActivities)) {
+        queue.throttledActivities.put(getThrottleKey(activity), activity);
+        return;
+      }
+
+      // held back activities must not be sent after a later activity of the same path
+      if (activity instanceof IResourceActivity)
+        releaseThrottledActivities(queue, ((IResourceActivity) activity).getPath());
+
+      queue.add(activity);
+    }
+  }
+
+  /**
+   * Adds the held back activities of the given path or all held back activities if the path is
+   * <code>null</code> to the queue. The caller must hold the monitor of the held back activities.
+   */
+  private static void releaseThrottledActivities(final OutgoingQueue queue, final SPath path) {
+    final Iterator<Entry<List<Object>, IActivity>> it =
+        queue.throttledActivities.entrySet().iterator();
+
+    while (it.hasNext()) {
+      final IActivity throttled = it.next().getValue();
+
+      if (path != null && !path.equals(((IResourceActivity) throttled).getPath())) continue;
+
+      it.remove();
+      queue.add(throttled);
+    }
+  }
+
+  private static void wakeUpSender(final OutgoingQueue queue) {
+    // the sender thread of the recipient is flushing the queue
+    final Thread sender = queue.sender;
+
+    if (sender != null) LockSupport.unpark(sender);
+  }
+
+  /**
+   * Returns whether the activity only reflects a state that is replaced by the next activity of the
+   * same kind, so that it can be held back for a congested recipient.
+   */
+  private static boolean isThrottleable(IActivity activity) {
+    return activity instanceof TextSelectionActivity || activity instanceof ViewportActivity;
+  }
+
+  private static List<Object> getThrottleKey(IActivity activity) {
+    return Arrays.<Object>asList(
+        activity.getClass(), activity.getSource(), ((IResourceActivity) activity).getPath());
+  }
+
+  /**
+   * Adds all held back activities to the queue if the recipient caught up.
+   *
+   * @return <code>true</code> if activities were added to the queue
+   */
+  private boolean releaseThrottledActivities(final OutgoingQueue queue) {
+    synchronized (queue.throttledActivities) {
+      if (queue.throttledActivities.isEmpty() || queue.getPendingCount() > maxPendingActivities / 2)
+        return false;
+
+      releaseThrottledActivities(queue, null);
+      return true;
+    }
+  }
+
+  private void startSender(final OutgoingQueue queue) {
+    queue.sender =
+        ThreadUtils.runSafeAsync(
+            "dpp-activity-sender-" + queue.recipient.getBase(),
+            LOG,
+            new Runnable() {
+              @Override
+              public void run() {
+                runSender(queue);
+              }
+            });
+  }
+
+  /**
+   * Sends the activities of one recipient until the sequencer is stopped or the recipient is
+   * unregistered. Each recipient has its own sender thread so that a slow connection only delays
+   * the activities for its own recipient.
+   */
+  private void runSender(final OutgoingQueue queue) {
+
+    final List<IActivity> activities = new ArrayList<IActivity>();
+
+    while (!stopSending && outgoingQueues.get(queue.recipient) == queue) {
+
+      activities.clear();
+
+      IActivity activity;
+
+      while ((activity = queue.activities.poll()) != null) activities.add(activity);
+
+      if (!activities.isEmpty()) {
+        final List<IActivity> optimizedActivities = ActivityOptimizer.optimize(activities);
+
+        final int currentSequenceNumber = queue.nextSequenceNumber;
+        queue.nextSequenceNumber += optimizedActivities.size();
+
+        sendActivities(queue.recipient, optimizedActivities, currentSequenceNumber);
+
+        queue.processed += activities.size();
+
+        // notify waiting threads in flush method that we are done
+        synchronized (queue) {
+          queue.notifyAll();
         }
-        buffer.activities.add(activity);
       }
 
-      // ActivitySender thread is flushing the buffers
-      bufferedOutgoingActivities.notifyAll();
+      // the recipient caught up, send the latest of the held back activities
+      if (releaseThrottledActivities(queue)) continue;
+
+      if (Thread.interrupted()) return;
+
+      /*
+       * the permit of a producer that added an activity after the queue
+       * was drained lets park return immediately
+       */
+      if (activities.isEmpty()) LockSupport.park(this);
     }
   }
 
@@ -394,16 +625,23 @@ public class ActivitySequencer implements Startable {
    * @param user
    */
   public void registerUser(User user) {
-    synchronized (bufferedOutgoingActivities) {
-      if (bufferedOutgoingActivities.get(user.getJID()) == null)
-        bufferedOutgoingActivities.put(
-            user.getJID(), new ActivityBuffer<IActivity>(FIRST_SEQUENCE_NUMBER));
+    synchronized (outgoingQueues) {
+      if (outgoingQueues.get(user.getJID()) == null) {
+        final OutgoingQueue queue = new OutgoingQueue(user.getJID());
+
+        outgoingFileContents.put(user.getJID(), new FileContentCache());
+        outgoingQueues.put(user.getJID(), queue);
+
+        if (started && !stopSending) startSender(queue);
+      }
     }
 
     synchronized (bufferedIncomingActivities) {
-      if (bufferedIncomingActivities.get(user.getJID()) == null)
+      if (bufferedIncomingActivities.get(user.getJID()) == null) {
         bufferedIncomingActivities.put(
             user.getJID(), new ActivityBuffer<IActivity>(FIRST_SEQUENCE_NUMBER));
+        incomingFileContents.put(user.getJID(), new FileContentCache());
+      }
     }
   }
 
@@ -425,14 +663,19 @@ public class ActivitySequencer implements Startable {
    */
   public void flush(User user) {
 
-    synchronized (bufferedOutgoingActivities) {
-      while (true) {
-        ActivityBuffer<IActivity> buffer = bufferedOutgoingActivities.get(user.getJID());
+    final OutgoingQueue queue = outgoingQueues.get(user.getJID());
+
+    if (queue == null) return;
+
+    final long added = queue.added.get();
 
-        if (buffer == null || (buffer.activities.size() == 0 && !buffer.isInTransmission)) break;
+    synchronized (queue) {
+      while (queue.processed < added
+          && !stopSending
+          && outgoingQueues.get(user.getJID()) == queue) {
 
         try {
-          bufferedOutgoingActivities.wait();
+          queue.wait();
         } catch (InterruptedException e) {
           return;
         }
@@ -448,13 +691,24 @@ public class ActivitySequencer implements Startable {
      * the user is not present.
      */
 
-    synchronized (bufferedOutgoingActivities) {
-      bufferedOutgoingActivities.put(jid, null);
-      bufferedOutgoingActivities.notifyAll();
+    final OutgoingQueue queue;
+
+    synchronized (outgoingQueues) {
+      queue = outgoingQueues.remove(jid);
+      outgoingFileContents.remove(jid);
+    }
+
+    if (queue != null) {
+      if (queue.sender != null) LockSupport.unpark(queue.sender);
+
+      synchronized (queue) {
+        queue.notifyAll();
+      }
     }
 
     synchronized (bufferedIncomingActivities) {
       bufferedIncomingActivities.put(jid, null);
+      incomingFileContents.remove(jid);
     }
   }
 
@@ -483,14 +737,24 @@ public class ActivitySequencer implements Startable {
     final List<IActivity> activitiesToMarshall = new ArrayList<IActivity>();
     final Iterator<IActivity> it = activities.iterator();
 
+    final boolean useBinaryCodec = versionManager.isBinaryActivityCodecSupported(recipient);
+
+    final FileContentCache fileContents = outgoingFileContents.get(recipient);
+
+    final boolean useFileContentDeltas = FILE_CONTENT_DELTAS && useBinaryCodec;
+
     while (it.hasNext()) {
 
-      final IActivity activity = it.next();
+      IActivity activity = it.next();
+
+      if (fileContents != null) activity = fileContents.encode(activity, useFileContentDeltas);
 
       if (activity instanceof FileActivity) {
         final byte[] fileContent = ((FileActivity) (activity)).getContent();
 
         if (fileContent != null) currentFileActivitySize += fileContent.length;
+      } else if (activity instanceof FileDeltaActivity) {
+        currentFileActivitySize += ((FileDeltaActivity) activity).getDelta().length;
       }
 
       currentFileActivitySize += minActivitySize;
@@ -499,9 +763,13 @@ public class ActivitySequencer implements Startable {
 
       if (it.hasNext() && currentFileActivitySize < maxFileActivitySize) continue;
 
+      final ActivitiesExtension extension =
+          new ActivitiesExtension(currentSessionID, activitiesToMarshall, sequenceNumber);
+
       final PacketExtension activityPacketExtension =
-          ActivitiesExtension.PROVIDER.create(
-              new ActivitiesExtension(currentSessionID, activitiesToMarshall, sequenceNumber));
+          useBinaryCodec
+              ? ActivitiesExtension.BINARY_PROVIDER.create(extension)
+              : ActivitiesExtension.PROVIDER.create(extension);
 
       if (LOG.isTraceEnabled()) {
         LOG.trace(
@@ -584,9 +852,7 @@ public class ActivitySequencer implements Startable {
    * @return
    */
   boolean isUserRegistered(User user) {
-    synchronized (bufferedOutgoingActivities) {
-      return bufferedOutgoingActivities.get(user.getJID()) != null;
-    }
+    return outgoingQueues.get(user.getJID()) != null;
   }
 
   private void notifyTransmissionError(final JID user) {
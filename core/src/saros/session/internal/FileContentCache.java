@@ -0,0 +1,193 @@
+package saros.session.internal;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import saros.activities.FileActivity;
+import saros.activities.FileDeltaActivity;
+import saros.activities.IActivity;
+import saros.activities.SPath;
+import saros.activities.TargetedFileActivity;
+import saros.session.User;
+import saros.util.BinaryDelta;
+
+/**
+ * Caches the file contents that were transmitted in one direction of the connection to a remote
+ * user, i.e either the contents that were sent to or the contents that were received from that
+ * user. Contents of file activities can then be replaced by a delta to the content that was
+ * transmitted before for the same path.
+ *
+ * <p>As the sender and the receiver perform the same updates in the same order both caches always
+ * contain the same contents. This is the only requirement for the delta to be applicable. It does
+ * not matter if the content of the file was changed otherwise in the meantime, in that case the
+ * delta just gets larger.
+ *
+ * <p>This class is not thread safe.
+ */
+final class FileContentCache {
+
+  /** Smaller contents are always sent as is */
+  static final int MIN_CONTENT_SIZE = 32 * 1024;
+
+  private static final int MAX_CONTENT_SIZE = 16 * 1024 * 1024;
+
+  private static final long MAX_CACHE_SIZE = 32 * 1024 * 1024;
+
+  // insertion order, used to evict the least recently transmitted contents
+  private final Map<SPath, byte[]> contents = new LinkedHashMap<SPath, byte[]>();
+
+  private long size;
+
+  /**
+   * Returns the activity that should be sent instead of the given one. If the given activity is a
+   * {@link FileActivity} with content, a {@link FileDeltaActivity} is returned if the delta to the
+   * cached content is significantly smaller than the content.
+   *
+   * @param activity the activity to send
+   * @param useDelta if <code>false</code> the cache is only updated
+   * @return the activity to send
+   */
+  IActivity encode(final IActivity activity, final boolean useDelta) {
+    if (!(activity instanceof FileActivity)) return activity;
+
+    final FileActivity fileActivity = (FileActivity) activity;
+
+    final byte[] base = contents.get(fileActivity.getPath());
+
+    update(fileActivity);
+
+    final byte[] content = fileActivity.getContent();
+
+    if (!useDelta
+        || base == null
+        || content == null
+        || content.length < MIN_CONTENT_SIZE
+        || fileActivity.getType() != FileActivity.Type.CREATED) return activity;
+
+    final byte[] delta = BinaryDelta.create(base, content);
+
+    if (delta.length > content.length / 2) return activity;
+
+    return new FileDeltaActivity(
+        fileActivity.getSource(),
+        fileActivity instanceof TargetedFileActivity
+            ? ((TargetedFileActivity) fileActivity).getTarget()
+            : null,
+        fileActivity.isRecovery() ? FileActivity.Purpose.RECOVERY : FileActivity.Purpose.ACTIVITY,
+        fileActivity.getPath(),
+        fileActivity.getEncoding(),
+        checksum(base),
+        checksum(content),
+        delta);
+  }
+
+  /**
+   * Returns the activity that should be executed for the given received activity. A {@link
+   * FileDeltaActivity} is converted back into the original {@link FileActivity}.
+   *
+   * @param activity the received activity
+   * @return the activity to execute
+   * @throws IOException if a delta cannot be applied
+   */
+  IActivity decode(final IActivity activity) throws IOException {
+    if (activity instanceof FileActivity) {
+      update((FileActivity) activity);
+      return activity;
+    }
+
+    if (!(activity instanceof FileDeltaActivity)) return activity;
+
+    final FileDeltaActivity deltaActivity = (FileDeltaActivity) activity;
+
+    final byte[] base = contents.get(deltaActivity.getPath());
+
+    if (base == null)
+      throw new IOException("no base content available for delta: " + deltaActivity);
+
+    if (checksum(base) != deltaActivity.getBaseChecksum())
+      throw new IOException("base content does not match delta: " + deltaActivity);
+
+    final byte[] content = BinaryDelta.apply(base, deltaActivity.getDelta());
+
+    if (checksum(content) != deltaActivity.getChecksum())
+      throw new IOException("checksum mismatch after applying delta: " + deltaActivity);
+
+    final User target = deltaActivity.getTarget();
+
+    final FileActivity fileActivity;
+
+    if (target == null)
+      fileActivity =
+          new FileActivity(
+              deltaActivity.getSource(),
+              FileActivity.Type.CREATED,
+              deltaActivity.getPurpose(),
+              deltaActivity.getPath(),
+              null,
+              content,
+              deltaActivity.getEncoding());
+    else
+      fileActivity =
+          new TargetedFileActivity(
+              deltaActivity.getSource(),
+              target,
+              FileActivity.Type.CREATED,
+              deltaActivity.getPath(),
+              null,
+              content,
+              deltaActivity.getEncoding(),
+              deltaActivity.getPurpose());
+
+    update(fileActivity);
+
+    return fileActivity;
+  }
+
+  private void update(final FileActivity activity) {
+    switch (activity.getType()) {
+      case CREATED:
+        put(activity.getPath(), activity.getContent());
+        break;
+      case REMOVED:
+        remove(activity.getPath());
+        break;
+      case MOVED:
+        final byte[] oldContent = remove(activity.getOldPath());
+        put(activity.getPath(), activity.getContent() != null ? activity.getContent() : oldContent);
+        break;
+    }
+  }
+
+  private void put(final SPath path, final byte[] content) {
+    remove(path);
+
+    if (content == null || content.length < MIN_CONTENT_SIZE || content.length > MAX_CONTENT_SIZE)
+      return;
+
+    contents.put(path, content);
+    size += content.length;
+
+    final Iterator<byte[]> it = contents.values().iterator();
+
+    while (size > MAX_CACHE_SIZE) {
+      size -= it.next().length;
+      it.remove();
+    }
+  }
+
+  private byte[] remove(final SPath path) {
+    final byte[] content = contents.remove(path);
+
+    if (content != null) size -= content.length;
+
+    return content;
+  }
+
+  private static long checksum(final byte[] data) {
+    final CRC32 crc = new CRC32();
+    crc.update(data, 0, data.length);
+    return crc.getValue();
+  }
+}
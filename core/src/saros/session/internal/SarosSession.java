@@ -51,6 +51,7 @@ import saros.filesystem.IProject;
 import saros.filesystem.IResource;
 import saros.net.IConnectionManager;
 import saros.net.ITransmitter;
+import saros.net.MulticastException;
 import saros.net.xmpp.JID;
 import saros.net.xmpp.XMPPConnectionService;
 import saros.preferences.IPreferenceStore;
@@ -166,6 +167,11 @@ public final class SarosSession implements ISarosSession {
           sendActivity(recipients, activity);
         }
 
+        @Override
+        public void send(User recipient, List<IActivity> activities) {
+          sendActivities(recipient, activities);
+        }
+
         @Override
         public void execute(IActivity activity) {
           /**
@@ -638,15 +644,20 @@ public final class SarosSession implements ISarosSession {
     if (isHost()) usersToNotify = getRemoteUsers();
     else usersToNotify = Collections.singletonList(getHost());
 
-    for (User user : usersToNotify) {
-      try {
-        transmitter.send(
-            SESSION_CONNECTION_ID,
-            user.getJID(),
-            LeaveSessionExtension.PROVIDER.create(new LeaveSessionExtension(getID())));
-      } catch (IOException e) {
-        log.warn("failed to notify user " + user + " about local session stop", e);
-      }
+    final List<JID> recipients = new ArrayList<JID>();
+
+    for (User user : usersToNotify) recipients.add(user.getJID());
+
+    try {
+      transmitter.send(
+          SESSION_CONNECTION_ID,
+          recipients,
+          LeaveSessionExtension.PROVIDER.create(new LeaveSessionExtension(getID())));
+    } catch (MulticastException e) {
+      for (Map.Entry<JID, IOException> failure : e.getFailures().entrySet())
+        log.warn(
+            "failed to notify user " + failure.getKey() + " about local session stop",
+            failure.getValue());
     }
   }
 
@@ -760,6 +771,34 @@ public final class SarosSession implements ISarosSession {
     }
   }
 
+  private void sendActivities(final User recipient, final List<IActivity> activities) {
+
+    if (recipient == null) throw new IllegalArgumentException();
+
+    if (activities == null) throw new IllegalArgumentException();
+
+    /*
+     * the checks of sendActivity are only needed for resource activities
+     * without shared projects and for file system modifications
+     */
+    boolean checkEachActivity = projectMapper.size() == 0;
+
+    for (final IActivity activity : activities) {
+      if (activity == null) throw new IllegalArgumentException();
+
+      if (activity instanceof IFileSystemModificationActivity) checkEachActivity = true;
+    }
+
+    if (checkEachActivity) {
+      for (final IActivity activity : activities)
+        sendActivity(Collections.singletonList(recipient), activity);
+
+      return;
+    }
+
+    activitySequencer.sendActivities(recipient, activities);
+  }
+
   /**
    * Must be called to update the project mapper when changes on shared files or shared folders
    * happened.
@@ -1048,6 +1087,11 @@ public final class SarosSession implements ISarosSession {
     activityQueuer.enableQueuing(project);
   }
 
+  @Override
+  public void restoreQueuedActivities(IProject project) throws IOException {
+    activityQueuer.restoreQueuedActivities(project);
+  }
+
   @Override
   public void disableQueuing(IProject project) {
     activityQueuer.disableQueuing(project);
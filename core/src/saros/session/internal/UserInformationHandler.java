@@ -6,6 +6,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.PacketListener;
 import org.jivesoftware.smack.packet.Packet;
@@ -19,6 +20,7 @@ import saros.communication.extensions.UserListExtension.UserListEntry;
 import saros.communication.extensions.UserListReceivedExtension;
 import saros.net.IReceiver;
 import saros.net.ITransmitter;
+import saros.net.MulticastException;
 import saros.net.PacketCollector;
 import saros.net.xmpp.JID;
 import saros.preferences.PreferenceStore;
@@ -142,14 +144,18 @@ public class UserInformationHandler implements Startable {
             UserListReceivedExtension.PROVIDER.getPacketFilter(currentSessionID));
 
     try {
-      for (User user : remoteUsers) {
-        try {
-          transmitter.send(
-              ISarosSession.SESSION_CONNECTION_ID,
-              user.getJID(),
-              UserListExtension.PROVIDER.create(extension));
-        } catch (IOException e) {
-          log.error("failed to send user list to user: " + user, e);
+      try {
+        transmitter.send(
+            ISarosSession.SESSION_CONNECTION_ID,
+            getJIDs(remoteUsers),
+            UserListExtension.PROVIDER.create(extension));
+      } catch (MulticastException e) {
+        for (User user : remoteUsers) {
+          final IOException failure = e.getFailures().get(user.getJID());
+
+          if (failure == null) continue;
+
+          log.error("failed to send user list to user: " + user, failure);
           notReplied.add(user);
           awaitReply.remove(user);
         }
@@ -213,13 +219,14 @@ public class UserInformationHandler implements Startable {
         UserFinishedProjectNegotiationExtension.PROVIDER.create(
             new UserFinishedProjectNegotiationExtension(currentSessionID, jid));
 
-    for (User user : remoteUsers) {
-      try {
-        transmitter.send(ISarosSession.SESSION_CONNECTION_ID, user.getJID(), packet);
-      } catch (IOException e) {
-        log.error("failed to send userFinishedProjectNegotiation-message: " + user, e);
-        // TODO remove user from session
-      }
+    try {
+      transmitter.send(ISarosSession.SESSION_CONNECTION_ID, getJIDs(remoteUsers), packet);
+    } catch (MulticastException e) {
+      for (Map.Entry<JID, IOException> failure : e.getFailures().entrySet())
+        log.error(
+            "failed to send userFinishedProjectNegotiation-message: " + failure.getKey(),
+            failure.getValue());
+      // TODO remove users from session
     }
   }
 
@@ -326,6 +333,14 @@ public class UserInformationHandler implements Startable {
     }
   }
 
+  private static List<JID> getJIDs(Collection<User> users) {
+    final List<JID> jids = new ArrayList<JID>(users.size());
+
+    for (User user : users) jids.add(user.getJID());
+
+    return jids;
+  }
+
   private boolean remove(Collection<User> users, JID jid) {
     for (Iterator<User> it = users.iterator(); it.hasNext(); ) {
       User user = it.next();
@@ -0,0 +1,250 @@
+package saros.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates and applies binary deltas in the style of rsync. The base content is split into blocks
+ * whose weak rolling checksums are indexed. The target content is then scanned with a rolling
+ * checksum and every region that matches a block of the base is encoded as a copy instruction,
+ * everything else as literal data.
+ *
+ * <p>Unlike rsync both contents must be available when creating a delta. This allows matches to be
+ * verified by comparing the actual bytes and to extend them beyond block boundaries.
+ */
+public final class BinaryDelta {
+
+  private static final int COPY = 0;
+
+  private static final int LITERAL = 1;
+
+  private static final int MIN_BLOCK_SIZE = 256;
+
+  private static final int MAX_BLOCK_SIZE = 16 * 1024;
+
+  private BinaryDelta() {
+    // NOP
+  }
+
+  /**
+   * Creates a delta that transforms the given base content into the given target content.
+   *
+   * @param base the content the receiver of the delta already has
+   * @param target the content that should be transmitted
+   * @return the delta
+   */
+  public static byte[] create(final byte[] base, final byte[] target) {
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+    final DataOutputStream out = new DataOutputStream(bos);
+
+    try {
+      writeVarInt(out, target.length);
+
+      final int blockSize = getBlockSize(base.length);
+
+      final Map<Integer, Integer> blocks = new HashMap<Integer, Integer>();
+
+      for (int offset = base.length - blockSize; offset >= 0; offset -= blockSize)
+        blocks.put(new RollingChecksum(base, offset, blockSize).getValue(), offset);
+
+      int literalStart = 0;
+      int position = 0;
+
+      RollingChecksum checksum =
+          target.length >= blockSize ? new RollingChecksum(target, 0, blockSize) : null;
+
+      while (checksum != null) {
+        final Integer blockOffset = blocks.get(checksum.getValue());
+
+        if (blockOffset != null && regionMatches(base, blockOffset, target, position, blockSize)) {
+
+          int baseStart = blockOffset;
+          int targetStart = position;
+
+          // extend the match into the pending literal data
+          while (targetStart > literalStart
+              && baseStart > 0
+              && base[baseStart - 1] == target[targetStart - 1]) {
+            baseStart--;
+            targetStart--;
+          }
+
+          int length = position - targetStart + blockSize;
+
+          while (targetStart + length < target.length
+              && baseStart + length < base.length
+              && base[baseStart + length] == target[targetStart + length]) length++;
+
+          writeLiteral(out, target, literalStart, targetStart - literalStart);
+
+          out.writeByte(COPY);
+          writeVarInt(out, baseStart);
+          writeVarInt(out, length);
+
+          position = literalStart = targetStart + length;
+
+          checksum =
+              position + blockSize <= target.length
+                  ? new RollingChecksum(target, position, blockSize)
+                  : null;
+
+          continue;
+        }
+
+        if (position + blockSize >= target.length) break;
+
+        checksum.roll(target[position], target[position + blockSize]);
+        position++;
+      }
+
+      writeLiteral(out, target, literalStart, target.length - literalStart);
+
+      out.flush();
+    } catch (IOException e) {
+      // cannot happen
+      throw new IllegalStateException(e);
+    }
+
+    return bos.toByteArray();
+  }
+
+  /**
+   * Applies the given delta to the given base content.
+   *
+   * @param base the content the delta was created for
+   * @param delta the delta
+   * @return the target content
+   * @throws IOException if the delta is malformed or does not belong to the base content
+   */
+  public static byte[] apply(final byte[] base, final byte[] delta) throws IOException {
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+
+    final int targetLength = readVarInt(in);
+
+    final byte[] target = new byte[targetLength];
+
+    int position = 0;
+
+    while (position < targetLength) {
+      final int opcode = in.readUnsignedByte();
+
+      switch (opcode) {
+        case COPY:
+          final int offset = readVarInt(in);
+          final int length = readVarInt(in);
+
+          if (offset + length > base.length || offset + length < 0)
+            throw new IOException("copy range exceeds the base content");
+
+          if (position + length > targetLength)
+            throw new IOException("copy range exceeds the target content");
+
+          System.arraycopy(base, offset, target, position, length);
+          position += length;
+          break;
+
+        case LITERAL:
+          final int literalLength = readVarInt(in);
+
+          if (position + literalLength > targetLength)
+            throw new IOException("literal data exceeds the target content");
+
+          in.readFully(target, position, literalLength);
+          position += literalLength;
+          break;
+
+        default:
+          throw new IOException("unknown opcode: " + opcode);
+      }
+    }
+
+    if (in.available() > 0) throw new IOException("delta contains trailing data");
+
+    return target;
+  }
+
+  /** Returns a block size that keeps the number of blocks near the square root of the length. */
+  private static int getBlockSize(final int length) {
+    final int blockSize = Integer.highestOneBit((int) Math.sqrt(length));
+
+    return Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, blockSize));
+  }
+
+  private static boolean regionMatches(
+      final byte[] a, final int aOffset, final byte[] b, final int bOffset, final int length) {
+
+    for (int i = 0; i < length; i++) if (a[aOffset + i] != b[bOffset + i]) return false;
+
+    return true;
+  }
+
+  private static void writeLiteral(
+      final DataOutputStream out, final byte[] data, final int offset, final int length)
+      throws IOException {
+
+    if (length == 0) return;
+
+    out.writeByte(LITERAL);
+    writeVarInt(out, length);
+    out.write(data, offset, length);
+  }
+
+  private static void writeVarInt(final DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(final DataInputStream in) throws IOException {
+    int value = 0;
+
+    for (int shift = 0; shift < 32; shift += 7) {
+      final int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+
+      if ((b & 0x80) == 0) {
+        if (value < 0) throw new IOException("malformed variable length integer");
+
+        return value;
+      }
+    }
+
+    throw new EOFException("malformed variable length integer");
+  }
+
+  /** The weak checksum of rsync that can be updated in constant time when the window moves. */
+  private static final class RollingChecksum {
+
+    private final int length;
+
+    private int a;
+    private int b;
+
+    private RollingChecksum(final byte[] data, final int offset, final int length) {
+      this.length = length;
+
+      for (int i = 0; i < length; i++) {
+        a += data[offset + i] & 0xFF;
+        b += (length - i) * (data[offset + i] & 0xFF);
+      }
+    }
+
+    private void roll(final byte out, final byte in) {
+      a += (in & 0xFF) - (out & 0xFF);
+      b += a - length * (out & 0xFF);
+    }
+
+    private int getValue() {
+      return (a & 0xFFFF) | (b << 16);
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package saros.versioning;
+
+/**
+ * Optional protocol features a Saros instance announces during the version exchange. A feature must
+ * only be used towards a peer that announced it, see {@link VersionManager#isFeatureSupported}.
+ *
+ * <p>The identifiers are part of the version exchange and must never be changed.
+ */
+public enum Feature {
+
+  /** The project archive can be received as stream of unknown length. */
+  ARCHIVE_STREAM("archiveStream"),
+
+  /**
+   * Concurrent Jupiter operations can be transformed as {@link
+   * saros.concurrent.jupiter.internal.text.CompositeOperation}s. Both sides of a document must
+   * agree on this as composite operations order some concurrent insertions differently.
+   */
+  COMPOSITE_OPERATION("compositeOperation"),
+
+  /** The host accepts Jupiter activities that only acknowledge received operations. */
+  JUPITER_ACKNOWLEDGEMENT("jupiterAcknowledgement");
+
+  private final String id;
+
+  Feature(final String id) {
+    this.id = id;
+  }
+
+  /** @return the identifier of the feature used in the version exchange */
+  public String getID() {
+    return id;
+  }
+}
@@ -2,19 +2,26 @@ package saros.versioning;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.PacketListener;
 import org.jivesoftware.smack.filter.AndFilter;
 import org.jivesoftware.smack.filter.PacketFilter;
+import org.jivesoftware.smack.filter.PacketTypeFilter;
 import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smack.packet.Presence;
 import saros.annotations.Component;
+import saros.communication.extensions.ActivitiesExtensionCodec;
 import saros.communication.extensions.VersionExchangeExtension;
 import saros.context.IContextKeyBindings.SarosVersion;
 import saros.net.IReceiver;
@@ -36,6 +43,8 @@ public class VersionManager {
   private static final String VERSION_KEY = "version";
   private static final String COMPATIBILITY_KEY = "compatibility";
   private static final String ID_KEY = "id";
+  private static final String ACTIVITY_CODEC_KEY = "codec";
+  private static final String FEATURES_KEY = "features";
 
   private static final Random ID_GENERATOR = new Random();
 
@@ -54,6 +63,13 @@ public class VersionManager {
   private final ITransmitter transmitter;
   private final IReceiver receiver;
 
+  /** Activity codec versions announced by remote peers, keyed by their resource qualified JID */
+  private final Map<String, String> remoteActivityCodecs = new ConcurrentHashMap<String, String>();
+
+  /** Features announced by remote peers, keyed by their resource qualified JID */
+  private final Map<String, Set<String>> remoteFeatures =
+      new ConcurrentHashMap<String, Set<String>>();
+
   private final PacketListener versionRequestListener =
       new PacketListener() {
         /*
@@ -73,6 +89,9 @@ public class VersionManager {
             return;
           }
 
+          updateRemoteActivityCodec(new JID(packet.getFrom()), versionExchangeRequest);
+          updateRemoteFeatures(new JID(packet.getFrom()), versionExchangeRequest);
+
           VersionExchangeExtension versionExchangeResponse = new VersionExchangeExtension();
 
           createResponseData:
@@ -81,6 +100,9 @@ public class VersionManager {
             versionExchangeResponse.set(
                 COMPATIBILITY_KEY, String.valueOf(Compatibility.UNKNOWN.getCode()));
 
+            setLocalActivityCodec(versionExchangeResponse);
+            setLocalFeatures(versionExchangeResponse);
+
             String remoteVersionString = versionExchangeRequest.get(VERSION_KEY);
 
             if (remoteVersionString == null) {
@@ -116,6 +138,20 @@ public class VersionManager {
         }
       };
 
+  /**
+   * Forgets the announced codec and features of peers that went offline as they may come back with
+   * a different Saros version.
+   */
+  private final PacketListener unavailablePresenceListener =
+      new PacketListener() {
+        @Override
+        public void processPacket(Packet packet) {
+          if (packet.getFrom() == null) return;
+
+          removeRemoteVersionDetails(new JID(packet.getFrom()));
+        }
+      };
+
   public VersionManager(
       @SarosVersion String version, final IReceiver receiver, final ITransmitter transmitter) {
 
@@ -139,6 +175,17 @@ public class VersionManager {
                 return ((IQ) packet).getType() == IQ.Type.GET;
               }
             }));
+
+    receiver.addPacketListener(
+        unavailablePresenceListener,
+        new AndFilter(
+            new PacketTypeFilter(Presence.class),
+            new PacketFilter() {
+              @Override
+              public boolean accept(Packet packet) {
+                return ((Presence) packet).getType() == Presence.Type.unavailable;
+              }
+            }));
   }
 
   /**
@@ -159,7 +206,13 @@ public class VersionManager {
 
     VersionExchangeExtension versionExchangeResponse = queryRemoteVersionDetails(rqJID, 10000);
 
-    if (versionExchangeResponse == null) return null;
+    if (versionExchangeResponse == null) {
+      removeRemoteVersionDetails(rqJID);
+      return null;
+    }
+
+    updateRemoteActivityCodec(rqJID, versionExchangeResponse);
+    updateRemoteFeatures(rqJID, versionExchangeResponse);
 
     Compatibility remoteCompatibility = Compatibility.UNKNOWN;
     Compatibility compatibility = Compatibility.UNKNOWN;
@@ -204,6 +257,39 @@ public class VersionManager {
     return new VersionCompatibilityResult(compatibility, localVersion, remoteVersion);
   }
 
+  /**
+   * Returns whether the given peer announced support for the same binary {@linkplain
+   * ActivitiesExtensionCodec activity codec} during the last version exchange with the local side.
+   * The version exchange is either initiated by the local side via {@link
+   * #determineVersionCompatibility(JID)} or by the remote side.
+   *
+   * @param rqJID the resource qualified JID of the peer
+   * @return <code>true</code> if activities can be sent to the peer in their binary representation,
+   *     <code>false</code> otherwise
+   */
+  public boolean isBinaryActivityCodecSupported(final JID rqJID) {
+    if (!ActivitiesExtensionCodec.ENABLED) return false;
+
+    return String.valueOf(ActivitiesExtensionCodec.VERSION)
+        .equals(remoteActivityCodecs.get(rqJID.getRAW()));
+  }
+
+  /**
+   * Returns whether the given peer announced support for the given feature during the last version
+   * exchange with the local side. Peers running an older Saros version do not announce any
+   * features.
+   *
+   * @param rqJID the resource qualified JID of the peer
+   * @param feature the feature to check
+   * @return <code>true</code> if the feature can be used with the peer, <code>false</code>
+   *     otherwise
+   */
+  public boolean isFeatureSupported(final JID rqJID, final Feature feature) {
+    final Set<String> features = remoteFeatures.get(rqJID.getRAW());
+
+    return features != null && features.contains(feature.getID());
+  }
+
   /**
    * Sets an compatibility char that contains additional version information. The chart should be
    * loaded from a property file which must use the following syntax:
@@ -267,6 +353,8 @@ public class VersionManager {
 
     versionExchangeRequest.set(VERSION_KEY, localVersion.toString());
     versionExchangeRequest.set(ID_KEY, String.valueOf(exchangeID));
+    setLocalActivityCodec(versionExchangeRequest);
+    setLocalFeatures(versionExchangeRequest);
 
     IQ request = VersionExchangeExtension.PROVIDER.createIQ(versionExchangeRequest);
 
@@ -303,6 +391,54 @@ public class VersionManager {
     }
   }
 
+  private void removeRemoteVersionDetails(final JID rqJID) {
+    remoteActivityCodecs.remove(rqJID.getRAW());
+    remoteFeatures.remove(rqJID.getRAW());
+  }
+
+  private static void setLocalActivityCodec(final VersionExchangeExtension versionExchange) {
+    if (ActivitiesExtensionCodec.ENABLED)
+      versionExchange.set(ACTIVITY_CODEC_KEY, String.valueOf(ActivitiesExtensionCodec.VERSION));
+  }
+
+  private void updateRemoteActivityCodec(
+      final JID rqJID, final VersionExchangeExtension versionExchange) {
+
+    final String codec = versionExchange.get(ACTIVITY_CODEC_KEY);
+
+    if (codec == null) remoteActivityCodecs.remove(rqJID.getRAW());
+    else remoteActivityCodecs.put(rqJID.getRAW(), codec);
+  }
+
+  private static void setLocalFeatures(final VersionExchangeExtension versionExchange) {
+    final StringBuilder features = new StringBuilder();
+
+    for (final Feature feature : Feature.values()) {
+      if (features.length() > 0) features.append(',');
+
+      features.append(feature.getID());
+    }
+
+    versionExchange.set(FEATURES_KEY, features.toString());
+  }
+
+  private void updateRemoteFeatures(
+      final JID rqJID, final VersionExchangeExtension versionExchange) {
+
+    final String features = versionExchange.get(FEATURES_KEY);
+
+    if (features == null) {
+      remoteFeatures.remove(rqJID.getRAW());
+      return;
+    }
+
+    final Set<String> announcedFeatures = new HashSet<String>();
+
+    for (final String feature : features.split(",")) announcedFeatures.add(feature.trim());
+
+    remoteFeatures.put(rqJID.getRAW(), Collections.unmodifiableSet(announcedFeatures));
+  }
+
   /**
    * Compares the two given versions for compatibility. The result indicates whether the local
    * version is compatible with the remote version.
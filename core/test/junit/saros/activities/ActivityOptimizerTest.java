@@ -144,6 +144,64 @@ public class ActivityOptimizerTest {
     assertRange(23, 23, optimized, nop);
   }
 
+  @Test
+  public void testDropSupersededFileChanges() {
+    SPath path = new SPath(fooProject, fooPath);
+    SPath otherPath = new SPath(fooProject, barPath);
+
+    FileActivity created = created(alice, path);
+    FileActivity modified = created(alice, path);
+    FileActivity removed =
+        new FileActivity(
+            alice,
+            FileActivity.Type.REMOVED,
+            FileActivity.Purpose.ACTIVITY,
+            path,
+            null,
+            null,
+            null);
+
+    FileActivity otherCreated = created(alice, otherPath);
+    EditorActivity otherOpened =
+        new EditorActivity(alice, EditorActivity.Type.ACTIVATED, otherPath);
+    FileActivity otherModified = created(alice, otherPath);
+
+    FileActivity createdByAlice = created(alice, path);
+    FileActivity modifiedByBob = created(bob, path);
+
+    List<IActivity> activities = new ArrayList<IActivity>();
+
+    activities.add(created);
+    activities.add(otherCreated);
+    activities.add(modified);
+    activities.add(otherOpened);
+    activities.add(otherModified);
+    activities.add(removed);
+    activities.add(createdByAlice);
+    activities.add(modifiedByBob);
+
+    List<IActivity> optimized = ActivityOptimizer.optimize(activities);
+
+    assertEquals(6, optimized.size());
+    assertSame(otherCreated, optimized.get(0));
+    assertSame(otherOpened, optimized.get(1));
+    assertSame(otherModified, optimized.get(2));
+    assertSame(removed, optimized.get(3));
+    assertSame(createdByAlice, optimized.get(4));
+    assertSame(modifiedByBob, optimized.get(5));
+  }
+
+  private FileActivity created(User source, SPath path) {
+    return new FileActivity(
+        source,
+        FileActivity.Type.CREATED,
+        FileActivity.Purpose.ACTIVITY,
+        path,
+        null,
+        new byte[] {1},
+        null);
+  }
+
   private void assertRange(int l, int h, List<IActivity> activities, IActivity activity) {
     for (int i = l; i <= h; i++)
       assertSame("optimization resulted in wrong activity order", activity, activities.get(i));
@@ -0,0 +1,228 @@
+package saros.communication.extensions;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.easymock.EasyMock;
+import org.jivesoftware.smack.packet.PacketExtension;
+import org.junit.Before;
+import org.junit.Test;
+import saros.activities.ChecksumActivity;
+import saros.activities.ChecksumErrorActivity;
+import saros.activities.EditorActivity;
+import saros.activities.FileActivity;
+import saros.activities.FileDeltaActivity;
+import saros.activities.IActivity;
+import saros.activities.JupiterActivity;
+import saros.activities.NOPActivity;
+import saros.activities.SPath;
+import saros.activities.TextEditActivity;
+import saros.activities.TextRecoveryActivity;
+import saros.activities.TextSelectionActivity;
+import saros.activities.ViewportActivity;
+import saros.concurrent.jupiter.internal.JupiterVectorTime;
+import saros.concurrent.jupiter.internal.text.DeleteOperation;
+import saros.concurrent.jupiter.internal.text.InsertOperation;
+import saros.concurrent.jupiter.internal.text.NoOperation;
+import saros.concurrent.jupiter.internal.text.SplitOperation;
+import saros.filesystem.IPath;
+import saros.filesystem.IPathFactory;
+import saros.filesystem.IProject;
+import saros.net.IBinaryPacketExtension;
+import saros.net.xmpp.JID;
+import saros.session.ISarosSession;
+import saros.session.User;
+
+public class ActivitiesExtensionCodecTest {
+
+  private static final JID ALICE_JID = new JID("alice@test/Saros");
+  private static final JID BOB_JID = new JID("bob@test/Saros");
+
+  private User alice;
+  private User bob;
+
+  private SPath spath;
+
+  private ActivitiesExtensionCodec codec;
+
+  @Before
+  public void setUp() {
+    alice = new User(ALICE_JID, true, true, 0, 0);
+    bob = new User(BOB_JID, false, false, 1, 1);
+
+    IPath path = EasyMock.createMock(IPath.class);
+    expect(path.isAbsolute()).andStubReturn(false);
+
+    IProject project = EasyMock.createNiceMock(IProject.class);
+
+    IPathFactory pathFactory = EasyMock.createMock(IPathFactory.class);
+    expect(pathFactory.fromPath(path)).andStubReturn("src/Main.java");
+    expect(pathFactory.fromString("src/Main.java")).andStubReturn(path);
+
+    ISarosSession session = EasyMock.createMock(ISarosSession.class);
+    expect(session.getProjectID(project)).andStubReturn("ABC");
+    expect(session.getProject("ABC")).andStubReturn(project);
+    expect(session.getUser(ALICE_JID)).andStubReturn(alice);
+    expect(session.getUser(BOB_JID)).andStubReturn(bob);
+    expect(session.getUser(EasyMock.anyObject(JID.class))).andStubReturn(null);
+
+    EasyMock.replay(path, project, pathFactory, session);
+
+    spath = new SPath(project, path);
+    codec = new ActivitiesExtensionCodec(session, pathFactory);
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    List<IActivity> activities = new ArrayList<IActivity>();
+
+    activities.add(new EditorActivity(alice, EditorActivity.Type.ACTIVATED, spath));
+    activities.add(new EditorActivity(alice, EditorActivity.Type.ACTIVATED, null));
+    activities.add(new TextEditActivity(alice, 5, "fooä€", "bar", spath));
+    activities.add(new TextSelectionActivity(alice, 10, 3, spath));
+    activities.add(new ViewportActivity(alice, 0, 42, spath));
+    activities.add(
+        new ChecksumActivity(
+            alice, spath, -1234567890123L, -1, new JupiterVectorTime(Integer.MAX_VALUE, 0)));
+    activities.add(
+        new JupiterActivity(
+            new JupiterVectorTime(3, 7),
+            new SplitOperation(
+                new DeleteOperation(4, "abc"),
+                new SplitOperation(new InsertOperation(4, "xyz", 2), new NoOperation())),
+            alice,
+            spath));
+    activities.add(
+        new ChecksumErrorActivity(
+            bob, alice, Arrays.asList(spath, spath), Arrays.asList("a:1,b:-2", ""), "42"));
+    activities.add(new ChecksumErrorActivity(alice, bob, Arrays.asList(spath), "43"));
+    activities.add(new ChecksumErrorActivity(alice, bob, null, "44"));
+    activities.add(new TextRecoveryActivity(alice, bob, spath, 7, 3, "foo\nbar", 42));
+    activities.add(
+        new FileDeltaActivity(
+            alice,
+            bob,
+            FileActivity.Purpose.RECOVERY,
+            spath,
+            "UTF-8",
+            0xFFFFFFFFL,
+            42L,
+            new byte[] {1, 2, 3}));
+    activities.add(
+        new FileDeltaActivity(
+            alice, null, FileActivity.Purpose.ACTIVITY, spath, null, 0L, 0L, new byte[0]));
+    activities.add(
+        new FileActivity(
+            alice,
+            FileActivity.Type.MOVED,
+            FileActivity.Purpose.ACTIVITY,
+            spath,
+            spath,
+            null,
+            "UTF-8",
+            Long.MIN_VALUE,
+            new JupiterVectorTime(3, 4)));
+    activities.add(
+        new FileActivity(
+            alice,
+            FileActivity.Type.CREATED,
+            FileActivity.Purpose.RECOVERY,
+            spath,
+            null,
+            new byte[] {0, 1, 2, (byte) 0xFF},
+            "UTF-8"));
+
+    ActivitiesExtension decoded =
+        codec.decode(codec.encode(new ActivitiesExtension("4711", activities, 815)));
+
+    assertEquals("4711", decoded.getSessionID());
+    assertEquals(815, decoded.getSequenceNumber());
+    assertEquals(activities, decoded.getActivities());
+
+    FileActivity file = (FileActivity) decoded.getActivities().get(activities.size() - 1);
+    assertArrayEquals(new byte[] {0, 1, 2, (byte) 0xFF}, file.getContent());
+    assertEquals("UTF-8", file.getEncoding());
+    assertTrue(file.isRecovery());
+  }
+
+  @Test
+  public void testRepeatedSymbolsAreWrittenOnce() throws Exception {
+    IActivity activity = new TextSelectionActivity(alice, 1, 1, spath);
+
+    int single = codec.encode(new ActivitiesExtension("0", Arrays.asList(activity), 0)).length;
+
+    int multiple =
+        codec.encode(new ActivitiesExtension("0", Arrays.asList(activity, activity, activity), 0))
+            .length;
+
+    assertTrue(
+        "user and path are not referenced: single=" + single + ", multiple=" + multiple,
+        multiple - single < single);
+  }
+
+  @Test
+  public void testUnknownUserKeepsActivityCount() throws Exception {
+    User carl = new User(new JID("carl@test/Saros"), false, false, 2, 2);
+
+    List<IActivity> activities = new ArrayList<IActivity>();
+    activities.add(new NOPActivity(alice, carl, 1));
+    activities.add(new NOPActivity(carl, alice, 2));
+    activities.add(new NOPActivity(alice, bob, 3));
+
+    ActivitiesExtension decoded =
+        codec.decode(codec.encode(new ActivitiesExtension("0", activities, 0)));
+
+    assertEquals(3, decoded.getActivities().size());
+    assertFalse(decoded.getActivities().get(0).isValid());
+    assertFalse(decoded.getActivities().get(1).isValid());
+    assertTrue(decoded.getActivities().get(2).isValid());
+    assertEquals(3, ((NOPActivity) decoded.getActivities().get(2)).getID());
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnsupportedVersion() throws Exception {
+    byte[] data = codec.encode(new ActivitiesExtension("0", new ArrayList<IActivity>(), 0));
+
+    data[0] = (byte) (ActivitiesExtensionCodec.VERSION + 1);
+
+    codec.decode(data);
+  }
+
+  @Test
+  public void testBinaryProvider() throws Exception {
+    IActivity activity = new TextSelectionActivity(alice, 10, 3, spath);
+    ActivitiesExtension extension =
+        new ActivitiesExtension("0", new ArrayList<IActivity>(Arrays.asList(activity)), 0);
+
+    assertFalse(
+        "binary extension created without a codec",
+        ActivitiesExtension.BINARY_PROVIDER.create(extension) instanceof IBinaryPacketExtension);
+
+    codec.start();
+
+    try {
+      PacketExtension packetExtension = ActivitiesExtension.BINARY_PROVIDER.create(extension);
+
+      assertTrue(packetExtension instanceof IBinaryPacketExtension);
+
+      PacketExtension received =
+          ActivitiesExtension.BINARY_PROVIDER.parseBinaryExtension(
+              ((IBinaryPacketExtension) packetExtension).toBinary());
+
+      ActivitiesExtension payload = ActivitiesExtension.PROVIDER.getPayload(received);
+
+      assertNotNull(payload);
+      assertEquals(extension.getActivities(), payload.getActivities());
+    } finally {
+      codec.stop();
+    }
+  }
+}
@@ -0,0 +1,267 @@
+package saros.concurrent;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import saros.activities.JupiterActivity;
+import saros.activities.SPath;
+import saros.activities.TextEditActivity;
+import saros.concurrent.jupiter.Operation;
+import saros.concurrent.jupiter.TransformationException;
+import saros.concurrent.jupiter.internal.Jupiter;
+import saros.concurrent.jupiter.internal.text.CompositeOperation;
+import saros.concurrent.jupiter.internal.text.DeleteOperation;
+import saros.concurrent.jupiter.internal.text.GOTOInclusionTransformation;
+import saros.concurrent.jupiter.internal.text.InsertOperation;
+import saros.concurrent.jupiter.internal.text.SplitOperation;
+import saros.concurrent.jupiter.test.util.JupiterTestCase;
+import saros.concurrent.jupiter.test.util.PathFake;
+import saros.filesystem.IProject;
+import saros.session.User;
+
+public class CompositeOperationTest {
+
+  private static final Random RANDOM = new Random(4711);
+
+  private SPath path;
+
+  private User source = JupiterTestCase.createUser("source");
+
+  @Before
+  public void setUp() {
+    IProject project = createMock(IProject.class);
+    replay(project);
+    path = new SPath(project, new PathFake("path"));
+  }
+
+  @Test
+  public void testConversion() {
+    Operation split =
+        new SplitOperation(
+            new SplitOperation(new DeleteOperation(1, "bcd"), new InsertOperation(0, "xyz")),
+            new SplitOperation(new InsertOperation(7, "!"), new DeleteOperation(4, "e")));
+
+    CompositeOperation composite = CompositeOperation.of(split);
+
+    assertEquals(3, composite.size());
+    assertEquals("xyzafg!", apply("abcdefg", composite));
+    assertEquals(apply("abcdefg", split), apply("abcdefg", composite));
+
+    assertEquals(composite, CompositeOperation.of(composite.toOperation()));
+
+    assertEquals("abcdefg", apply("xyzafg!", composite.invert()));
+  }
+
+  @Test
+  public void testDeeplyNestedSplitOperation() {
+    StringBuilder document = new StringBuilder();
+
+    for (int i = 0; i < 20000; i++) document.append((char) ('a' + i % 26));
+
+    Operation split = new DeleteOperation(0, document.substring(0, 1));
+
+    // deletes every second character, starting at the end
+    for (int i = 2; i < document.length(); i += 2)
+      split = new SplitOperation(new DeleteOperation(i, document.substring(i, i + 1)), split);
+
+    CompositeOperation composite = CompositeOperation.of(split);
+
+    assertEquals(document.length() / 2, composite.size());
+
+    StringBuilder expected = new StringBuilder();
+
+    for (int i = 1; i < document.length(); i += 2) expected.append(document.charAt(i));
+
+    assertEquals(expected.toString(), apply(document.toString(), composite));
+  }
+
+  @Test
+  public void testComposeRandomOperations() {
+    for (int run = 0; run < 500; run++) {
+      String document = randomText(1 + RANDOM.nextInt(30));
+
+      List<Operation> operations = randomOperations(document, 1 + RANDOM.nextInt(6));
+
+      String expected = document;
+
+      for (Operation operation : operations) expected = apply(expected, operation);
+
+      CompositeOperation composite = CompositeOperation.of(operations.get(0));
+
+      for (int i = 1; i < operations.size(); i++)
+        composite = composite.compose(CompositeOperation.of(operations.get(i)));
+
+      assertEquals(expected, apply(document, composite));
+    }
+  }
+
+  @Test
+  public void testTransformRandomOperationsConverge() {
+    for (int run = 0; run < 2000; run++) {
+      String document = randomText(1 + RANDOM.nextInt(30));
+
+      CompositeOperation a = randomComposite(document);
+      CompositeOperation b = randomComposite(document);
+
+      boolean privileged = RANDOM.nextBoolean();
+
+      String ab = apply(apply(document, a), b.transform(a, !privileged));
+      String ba = apply(apply(document, b), a.transform(b, privileged));
+
+      assertEquals("a=" + a + ", b=" + b + ", document=" + document, ab, ba);
+    }
+  }
+
+  @Test
+  public void testTransformMatchesGOTO() {
+    GOTOInclusionTransformation inclusion = new GOTOInclusionTransformation();
+
+    // the deleting server operation wins the tie with the inserted text
+    Operation client =
+        new SplitOperation(new DeleteOperation(1, "bcd"), new InsertOperation(0, "xyz"));
+    Operation server =
+        new SplitOperation(new DeleteOperation(0, "abc"), new InsertOperation(0, "uvw"));
+
+    Operation transformed = inclusion.transform(CompositeOperation.of(client), server, false);
+
+    assertEquals("uvwxyzefg", apply(apply("abcdefg", server), transformed));
+
+    // primitive operations are transformed the same way
+    for (int run = 0; run < 2000; run++) {
+      String document = randomText(1 + RANDOM.nextInt(30));
+
+      Operation a = randomOperations(document, 1).get(0);
+      Operation b = randomOperations(document, 1).get(0);
+
+      boolean privileged = RANDOM.nextBoolean();
+
+      assertEquals(
+          apply(apply(document, b), inclusion.transform(a, b, privileged)),
+          apply(
+              apply(document, b),
+              CompositeOperation.of(a).transform(CompositeOperation.of(b), privileged)));
+    }
+  }
+
+  @Test
+  public void testJupiterConvergesWithAndWithoutCompositeOperations() throws Exception {
+    // both insertions of the server operation end up at the position of the client insertion
+    Operation server =
+        new SplitOperation(new InsertOperation(0, "X"), new InsertOperation(1, "Xac"));
+    Operation client = new InsertOperation(0, "Ygr");
+
+    GOTOInclusionTransformation inclusion = new GOTOInclusionTransformation();
+
+    String expected = apply(apply("", client), inclusion.transform(server, client, true));
+
+    assertEquals("XYgrXac", expected);
+    assertEquals(expected, transformConcurrently(server, client, false));
+
+    // composite operations order the insertions differently but converge as well
+    assertEquals("XXacYgr", transformConcurrently(server, client, true));
+  }
+
+  @Test
+  public void testTransformIndex() {
+    CompositeOperation composite =
+        CompositeOperation.of(
+            new SplitOperation(new DeleteOperation(2, "cd"), new InsertOperation(6, "xyz")));
+
+    // abcdefghi -> abefghxyzi
+    assertEquals(1, composite.transformIndex(1));
+    assertEquals(2, composite.transformIndex(2));
+    assertEquals(2, composite.transformIndex(3));
+    assertEquals(2, composite.transformIndex(4));
+    assertEquals(3, composite.transformIndex(5));
+    assertEquals(5, composite.transformIndex(7));
+    assertEquals(9, composite.transformIndex(8));
+    assertEquals(10, composite.transformIndex(9));
+  }
+
+  /**
+   * Executes the given operations concurrently on a client and a server Jupiter instance starting
+   * with an empty document and returns the document, which must be the same on both sides.
+   */
+  private String transformConcurrently(
+      Operation serverOperation, Operation clientOperation, boolean compositeOperations)
+      throws TransformationException {
+
+    Jupiter server = new Jupiter(false, compositeOperations);
+    Jupiter client = new Jupiter(true, compositeOperations);
+
+    JupiterActivity fromServer = server.generateJupiterActivity(serverOperation, source, path);
+    JupiterActivity fromClient = client.generateJupiterActivity(clientOperation, source, path);
+
+    String serverDocument =
+        apply(apply("", serverOperation), server.receiveJupiterActivity(fromClient));
+    String clientDocument =
+        apply(apply("", clientOperation), client.receiveJupiterActivity(fromServer));
+
+    assertEquals(serverDocument, clientDocument);
+
+    return serverDocument;
+  }
+
+  private CompositeOperation randomComposite(String document) {
+    List<Operation> operations = randomOperations(document, 1 + RANDOM.nextInt(4));
+
+    CompositeOperation composite = CompositeOperation.of(operations.get(0));
+
+    for (int i = 1; i < operations.size(); i++)
+      composite = composite.compose(CompositeOperation.of(operations.get(i)));
+
+    return composite;
+  }
+
+  /** Creates a sequence of operations that can be applied one after another to the document. */
+  private List<Operation> randomOperations(String document, int count) {
+    List<Operation> operations = new ArrayList<Operation>();
+
+    for (int i = 0; i < count; i++) {
+      int position = RANDOM.nextInt(document.length() + 1);
+
+      Operation operation;
+
+      if (RANDOM.nextBoolean() || position == document.length()) {
+        operation = new InsertOperation(position, randomText(1 + RANDOM.nextInt(3)));
+      } else {
+        int end = position + 1 + RANDOM.nextInt(document.length() - position);
+        operation = new DeleteOperation(position, document.substring(position, end));
+      }
+
+      operations.add(operation);
+      document = apply(document, operation);
+    }
+
+    return operations;
+  }
+
+  private static String randomText(int length) {
+    StringBuilder text = new StringBuilder();
+
+    for (int i = 0; i < length; i++) text.append((char) ('a' + RANDOM.nextInt(26)));
+
+    return text.toString();
+  }
+
+  private String apply(String document, Operation operation) {
+    StringBuilder result = new StringBuilder(document);
+
+    for (TextEditActivity activity : operation.toTextEdit(path, source)) {
+      int start = activity.getOffset();
+      int end = start + activity.getReplacedText().length();
+
+      assertEquals(activity.getReplacedText(), result.substring(start, end));
+
+      result.replace(start, end, activity.getText());
+    }
+
+    return result.toString();
+  }
+}
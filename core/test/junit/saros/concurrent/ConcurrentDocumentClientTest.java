@@ -0,0 +1,97 @@
+package saros.concurrent;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import saros.activities.IActivity;
+import saros.activities.JupiterActivity;
+import saros.activities.SPath;
+import saros.concurrent.jupiter.internal.Jupiter;
+import saros.concurrent.jupiter.internal.text.InsertOperation;
+import saros.concurrent.jupiter.internal.text.TimestampOperation;
+import saros.concurrent.jupiter.test.util.JupiterTestCase;
+import saros.concurrent.jupiter.test.util.PathFake;
+import saros.concurrent.management.ConcurrentDocumentClient;
+import saros.editor.IEditorManager;
+import saros.filesystem.IProject;
+import saros.session.ISarosSession;
+import saros.session.User;
+import saros.versioning.Feature;
+import saros.versioning.VersionManager;
+
+public class ConcurrentDocumentClientTest {
+
+  /** Default of saros.concurrent.ACKNOWLEDGE_INTERVAL */
+  private static final int ACKNOWLEDGE_INTERVAL = 32;
+
+  private final User alice = JupiterTestCase.createUser("alice");
+  private final User bob = JupiterTestCase.createUser("bob");
+
+  private SPath path;
+
+  @Before
+  public void setUp() {
+    IProject project = createMock(IProject.class);
+    replay(project);
+    path = new SPath(project, new PathFake("path"));
+  }
+
+  @Test
+  public void testAcknowledgementsAreSentIfTheHostSupportsThem() {
+    ConcurrentDocumentClient client = createClient(true);
+
+    receiveOperations(client, ACKNOWLEDGE_INTERVAL);
+
+    List<IActivity> acknowledgements = client.getAcknowledgements();
+
+    assertEquals(1, acknowledgements.size());
+
+    JupiterActivity acknowledgement = (JupiterActivity) acknowledgements.get(0);
+
+    assertTrue(acknowledgement.getOperation() instanceof TimestampOperation);
+    assertEquals(bob, acknowledgement.getSource());
+  }
+
+  @Test
+  public void testNoAcknowledgementsWithoutHostSupport() {
+    ConcurrentDocumentClient client = createClient(false);
+
+    receiveOperations(client, ACKNOWLEDGE_INTERVAL);
+
+    assertTrue(client.getAcknowledgements().isEmpty());
+  }
+
+  private ConcurrentDocumentClient createClient(boolean hostSupportsAcknowledgements) {
+    ISarosSession session = createNiceMock(ISarosSession.class);
+    expect(session.getLocalUser()).andStubReturn(bob);
+    expect(session.isHost()).andStubReturn(false);
+    expect(session.getHost()).andStubReturn(alice);
+    replay(session);
+
+    VersionManager versionManager = createNiceMock(VersionManager.class);
+    expect(versionManager.isFeatureSupported(alice.getJID(), Feature.JUPITER_ACKNOWLEDGEMENT))
+        .andStubReturn(hostSupportsAcknowledgements);
+    replay(versionManager);
+
+    IEditorManager editorManager = createNiceMock(IEditorManager.class);
+    replay(editorManager);
+
+    return new ConcurrentDocumentClient(session, editorManager, versionManager);
+  }
+
+  /** Lets the client receive the given number of operations from the proxy on the host. */
+  private void receiveOperations(ConcurrentDocumentClient client, int count) {
+    Jupiter proxy = new Jupiter(false);
+
+    for (int i = 0; i < count; i++)
+      client.transformFromJupiter(
+          proxy.generateJupiterActivity(new InsertOperation(i, "x"), alice, path));
+  }
+}
@@ -0,0 +1,211 @@
+package saros.concurrent;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import saros.activities.FileActivity;
+import saros.activities.JupiterActivity;
+import saros.activities.SPath;
+import saros.activities.TextEditActivity;
+import saros.concurrent.jupiter.Operation;
+import saros.concurrent.jupiter.Timestamp;
+import saros.concurrent.jupiter.internal.Jupiter;
+import saros.concurrent.jupiter.internal.JupiterDocumentServer;
+import saros.concurrent.jupiter.internal.text.DeleteOperation;
+import saros.concurrent.jupiter.internal.text.InsertOperation;
+import saros.concurrent.jupiter.test.util.JupiterTestCase;
+import saros.concurrent.jupiter.test.util.PathFake;
+import saros.concurrent.management.JupiterClient;
+import saros.filesystem.IProject;
+import saros.session.ISarosSession;
+import saros.session.User;
+import saros.versioning.VersionManager;
+
+public class JupiterClientTest {
+
+  private static final Random RANDOM = new Random(1234);
+
+  private final User alice = JupiterTestCase.createUser("alice");
+  private final User bob = JupiterTestCase.createUser("bob");
+
+  private IProject project;
+
+  private SPath path;
+
+  private JupiterDocumentServer server;
+
+  private Jupiter aliceJupiter;
+  private JupiterClient bobClient;
+
+  private String aliceDocument;
+  private String bobDocument;
+
+  @Before
+  public void setUp() {
+    project = createMock(IProject.class);
+    replay(project);
+    path = new SPath(project, new PathFake("path"));
+
+    ISarosSession session = createMock(ISarosSession.class);
+    expect(session.getLocalUser()).andStubReturn(bob);
+    expect(session.isHost()).andStubReturn(false);
+    expect(session.getHost()).andStubReturn(alice);
+    replay(session);
+
+    VersionManager versionManager = createNiceMock(VersionManager.class);
+    replay(versionManager);
+
+    server = new JupiterDocumentServer(path);
+    server.addProxyClient(alice);
+    server.addProxyClient(bob);
+
+    aliceJupiter = new Jupiter(true);
+    bobClient = new JupiterClient(session, versionManager);
+  }
+
+  @Test
+  public void testLocalEditBeforePreparedActivityIsExecuted() throws Exception {
+    aliceDocument = bobDocument = "abc";
+
+    JupiterActivity fromAlice = sendFromAlice(new InsertOperation(0, "x"));
+
+    bobClient.prepare(fromAlice);
+
+    // bob edits the document before the prepared activity is executed
+    JupiterActivity fromBob = sendFromBob(new InsertOperation(3, "y"));
+    JupiterActivity fromBob2 = sendFromBob(new DeleteOperation(0, "a"));
+
+    bobDocument = apply(bobDocument, bobClient.receive(fromAlice));
+
+    aliceDocument = apply(aliceDocument, aliceJupiter.receiveJupiterActivity(fromBob));
+    aliceDocument = apply(aliceDocument, aliceJupiter.receiveJupiterActivity(fromBob2));
+
+    assertEquals("xbcy", bobDocument);
+    assertEquals(bobDocument, aliceDocument);
+  }
+
+  @Test
+  public void testRandomLocalEditsBetweenPreparationAndExecution() throws Exception {
+    aliceDocument = bobDocument = "abcdefghij";
+
+    for (int round = 0; round < 200; round++) {
+      JupiterActivity[] fromAlice = new JupiterActivity[1 + RANDOM.nextInt(3)];
+
+      for (int i = 0; i < fromAlice.length; i++)
+        fromAlice[i] = sendFromAlice(randomOperation(aliceDocument));
+
+      for (JupiterActivity activity : fromAlice) bobClient.prepare(activity);
+
+      JupiterActivity[] fromBob = new JupiterActivity[RANDOM.nextInt(3)];
+
+      for (int i = 0; i < fromBob.length; i++)
+        fromBob[i] = sendFromBob(randomOperation(bobDocument));
+
+      for (JupiterActivity activity : fromAlice)
+        bobDocument = apply(bobDocument, bobClient.receive(activity));
+
+      for (JupiterActivity activity : fromBob)
+        aliceDocument = apply(aliceDocument, aliceJupiter.receiveJupiterActivity(activity));
+
+      assertEquals("round " + round, aliceDocument, bobDocument);
+    }
+  }
+
+  @Test
+  public void testMoveChecksumIsNotCurrentAfterConcurrentEdit() throws Exception {
+    aliceDocument = bobDocument = "abc";
+
+    bobDocument = apply(bobDocument, bobClient.receive(sendFromAlice(new InsertOperation(0, "x"))));
+
+    assertTrue(bobClient.isCurrent(move(server.getTimestamp(bob))));
+
+    // bob edits the document before the host knows about it
+    JupiterActivity fromBob = bobClient.generate(new TextEditActivity(bob, 4, "y", "", path));
+
+    FileActivity concurrentMove = move(server.getTimestamp(bob));
+
+    assertFalse(bobClient.isCurrent(concurrentMove));
+
+    server.transformJupiterActivity(fromBob);
+
+    assertTrue(bobClient.isCurrent(move(server.getTimestamp(bob))));
+  }
+
+  private FileActivity move(Timestamp timestamp) {
+    return new FileActivity(
+        alice,
+        FileActivity.Type.MOVED,
+        FileActivity.Purpose.ACTIVITY,
+        new SPath(project, new PathFake("moved")),
+        path,
+        null,
+        null,
+        42L,
+        timestamp);
+  }
+
+  /** Applies the operation to the document of alice and returns the activity bob receives. */
+  private JupiterActivity sendFromAlice(Operation op) throws Exception {
+    aliceDocument = apply(aliceDocument, op);
+
+    Map<User, JupiterActivity> outgoing =
+        server.transformJupiterActivity(aliceJupiter.generateJupiterActivity(op, alice, path));
+
+    return outgoing.get(bob);
+  }
+
+  /** Applies the operation to the document of bob and returns the activity alice receives. */
+  private JupiterActivity sendFromBob(Operation op) throws Exception {
+    String before = bobDocument;
+
+    bobDocument = apply(bobDocument, op);
+
+    TextEditActivity textEdit = op.toTextEdit(path, bob).get(0);
+
+    // the text edit refers to the document before the edit
+    assertEquals(
+        textEdit.getReplacedText(),
+        before.substring(
+            textEdit.getOffset(), textEdit.getOffset() + textEdit.getReplacedText().length()));
+
+    Map<User, JupiterActivity> outgoing =
+        server.transformJupiterActivity(bobClient.generate(textEdit));
+
+    return outgoing.get(alice);
+  }
+
+  private Operation randomOperation(String document) {
+    int position = RANDOM.nextInt(document.length() + 1);
+
+    if (RANDOM.nextBoolean() || position == document.length() || document.length() < 5)
+      return new InsertOperation(position, String.valueOf((char) ('a' + RANDOM.nextInt(26))));
+
+    int end = position + 1 + RANDOM.nextInt(Math.min(3, document.length() - position));
+
+    return new DeleteOperation(position, document.substring(position, end));
+  }
+
+  private String apply(String document, Operation operation) {
+    StringBuilder result = new StringBuilder(document);
+
+    for (TextEditActivity activity : operation.toTextEdit(path, alice)) {
+      int start = activity.getOffset();
+      int end = start + activity.getReplacedText().length();
+
+      assertEquals(activity.getReplacedText(), result.substring(start, end));
+
+      result.replace(start, end, activity.getText());
+    }
+
+    return result.toString();
+  }
+}
@@ -0,0 +1,105 @@
+package saros.concurrent.jupiter.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import saros.activities.JupiterActivity;
+import saros.activities.SPath;
+import saros.concurrent.jupiter.Operation;
+import saros.concurrent.jupiter.internal.text.InsertOperation;
+import saros.concurrent.jupiter.internal.text.NoOperation;
+import saros.concurrent.jupiter.test.util.JupiterTestCase;
+import saros.concurrent.jupiter.test.util.PathFake;
+import saros.filesystem.IProject;
+import saros.session.User;
+
+public class JupiterAcknowledgementTest {
+
+  private final User alice = JupiterTestCase.createUser("alice");
+  private final User bob = JupiterTestCase.createUser("bob");
+
+  private SPath path;
+
+  private JupiterDocumentServer server;
+
+  private Jupiter aliceClient;
+  private Jupiter bobClient;
+
+  @Before
+  public void setUp() {
+    IProject project = createMock(IProject.class);
+    replay(project);
+    path = new SPath(project, new PathFake("path"));
+
+    server = new JupiterDocumentServer(path);
+    server.addProxyClient(alice);
+    server.addProxyClient(bob);
+
+    aliceClient = new Jupiter(true);
+    bobClient = new Jupiter(true);
+  }
+
+  @Test
+  public void testAcknowledgementDiscardsOperations() throws Exception {
+    Jupiter proxy = new Jupiter(false);
+    Jupiter client = new Jupiter(true);
+
+    for (int i = 0; i < 10; i++)
+      client.receiveJupiterActivity(
+          proxy.generateJupiterActivity(new InsertOperation(i, "a"), alice, path));
+
+    assertEquals(10, proxy.ackJupiterActivityList.size());
+
+    JupiterActivity acknowledgement = client.generateAcknowledgement(bob, path);
+
+    assertEquals(client.getTimestamp(), acknowledgement.getTimestamp());
+
+    Operation op = proxy.receiveJupiterActivity(acknowledgement);
+
+    assertTrue(op instanceof NoOperation);
+    assertEquals(0, proxy.ackJupiterActivityList.size());
+
+    // acknowledgements are not counted as operations
+    assertEquals(new JupiterVectorTime(10, 0), proxy.getTimestamp());
+    assertEquals(new JupiterVectorTime(0, 10), client.getTimestamp());
+
+    assertEquals(
+        new InsertOperation(10, "b"),
+        proxy.receiveJupiterActivity(
+            client.generateJupiterActivity(new InsertOperation(10, "b"), bob, path)));
+  }
+
+  @Test
+  public void testAcknowledgementIsNotForwarded() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      Map<User, JupiterActivity> outgoing =
+          server.transformJupiterActivity(
+              aliceClient.generateJupiterActivity(new InsertOperation(i, "a"), alice, path));
+
+      assertEquals(1, outgoing.size());
+      bobClient.receiveJupiterActivity(outgoing.get(bob));
+    }
+
+    assertTrue(
+        server.transformJupiterActivity(bobClient.generateAcknowledgement(bob, path)).isEmpty());
+
+    // both clients are still able to exchange operations
+    Map<User, JupiterActivity> outgoing =
+        server.transformJupiterActivity(
+            bobClient.generateJupiterActivity(new InsertOperation(0, "b"), bob, path));
+
+    assertEquals(
+        new InsertOperation(0, "b"), aliceClient.receiveJupiterActivity(outgoing.get(alice)));
+
+    outgoing =
+        server.transformJupiterActivity(
+            aliceClient.generateJupiterActivity(new InsertOperation(6, "c"), alice, path));
+
+    assertEquals(new InsertOperation(6, "c"), bobClient.receiveJupiterActivity(outgoing.get(bob)));
+  }
+}
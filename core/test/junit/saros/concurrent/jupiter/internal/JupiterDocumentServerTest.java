@@ -0,0 +1,89 @@
+package saros.concurrent.jupiter.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import saros.activities.IActivity;
+import saros.activities.JupiterActivity;
+import saros.activities.SPath;
+import saros.concurrent.jupiter.internal.text.InsertOperation;
+import saros.concurrent.jupiter.test.util.JupiterTestCase;
+import saros.concurrent.jupiter.test.util.PathFake;
+import saros.filesystem.IProject;
+import saros.session.User;
+
+public class JupiterDocumentServerTest {
+
+  private final User alice = JupiterTestCase.createUser("alice");
+  private final User bob = JupiterTestCase.createUser("bob");
+  private final User carl = JupiterTestCase.createUser("carl");
+
+  private SPath path;
+
+  @Before
+  public void setUp() {
+    IProject project = createMock(IProject.class);
+    replay(project);
+    path = new SPath(project, new PathFake("path"));
+  }
+
+  @Test
+  public void testBatchTransformationMatchesSingleTransformation() throws Exception {
+    JupiterDocumentServer batchServer = createServer();
+    JupiterDocumentServer singleServer = createServer();
+
+    Jupiter aliceClient = new Jupiter(true);
+    Jupiter bobClient = new Jupiter(true);
+
+    List<IActivity> activities = new ArrayList<IActivity>();
+
+    // concurrent operations of alice and bob
+    for (int i = 0; i < 5; i++) {
+      activities.add(aliceClient.generateJupiterActivity(new InsertOperation(i, "a"), alice, path));
+      activities.add(bobClient.generateJupiterActivity(new InsertOperation(0, "b"), bob, path));
+    }
+
+    activities.add(bobClient.generateAcknowledgement(bob, path));
+
+    Map<User, List<IActivity>> result = new HashMap<User, List<IActivity>>();
+
+    // reused buffers are appended to
+    List<IActivity> carlBuffer = new ArrayList<IActivity>();
+    result.put(carl, carlBuffer);
+
+    batchServer.transform(activities, result);
+
+    Map<User, List<IActivity>> expected = new HashMap<User, List<IActivity>>();
+
+    for (IActivity activity : activities) {
+      for (Map.Entry<User, JupiterActivity> entry :
+          singleServer.transformJupiterActivity((JupiterActivity) activity).entrySet()) {
+
+        if (!expected.containsKey(entry.getKey()))
+          expected.put(entry.getKey(), new ArrayList<IActivity>());
+
+        expected.get(entry.getKey()).add(entry.getValue());
+      }
+    }
+
+    assertEquals(expected, result);
+    assertEquals(10, carlBuffer.size());
+    assertEquals(5, result.get(alice).size());
+    assertEquals(5, result.get(bob).size());
+  }
+
+  private JupiterDocumentServer createServer() {
+    JupiterDocumentServer server = new JupiterDocumentServer(path);
+    server.addProxyClient(alice);
+    server.addProxyClient(bob);
+    server.addProxyClient(carl);
+    return server;
+  }
+}
@@ -0,0 +1,113 @@
+package saros.concurrent.watchdog;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import saros.activities.SPath;
+import saros.activities.TextEditActivity;
+import saros.filesystem.IPath;
+import saros.filesystem.IProject;
+import saros.net.xmpp.JID;
+import saros.session.User;
+
+public class DocumentChecksumTest {
+
+  private User alice;
+  private SPath path;
+
+  @Before
+  public void setUp() {
+    alice = new User(new JID("alice@test/Saros"), true, true, 0, 0);
+
+    IPath relativePath = EasyMock.createMock(IPath.class);
+    expect(relativePath.isAbsolute()).andStubReturn(false);
+
+    IProject project = EasyMock.createNiceMock(IProject.class);
+
+    EasyMock.replay(relativePath, project);
+
+    path = new SPath(project, relativePath);
+  }
+
+  @Test
+  public void testIncrementalUpdate() {
+    DocumentChecksum checksum = new DocumentChecksum(path, true);
+
+    checksum.update("Hello World");
+
+    assertTrue(checksum.applyTextEdit(edit(5, ",", "")));
+    assertTrue(checksum.applyTextEdit(edit(7, "w", "W")));
+    assertTrue(checksum.applyTextEdit(edit(12, "!\n", "")));
+
+    assertFalse(checksum.isDirty());
+    assertChecksum("Hello, world!\n", checksum);
+  }
+
+  @Test
+  public void testMismatchingEditMarksDirty() {
+    DocumentChecksum checksum = new DocumentChecksum(path, true);
+
+    checksum.update("Hello World");
+
+    assertFalse(checksum.applyTextEdit(edit(0, "J", "X")));
+    assertTrue(checksum.isDirty());
+
+    // further edits must not be applied until the checksum is recalculated
+    assertFalse(checksum.applyTextEdit(edit(0, "J", "H")));
+    assertTrue(checksum.isDirty());
+
+    checksum.update("Jello World");
+
+    assertFalse(checksum.isDirty());
+    assertChecksum("Jello World", checksum);
+  }
+
+  @Test
+  public void testEditOutOfBoundsMarksDirty() {
+    DocumentChecksum checksum = new DocumentChecksum(path, true);
+
+    checksum.update("foo");
+
+    assertFalse(checksum.applyTextEdit(edit(2, "", "oo")));
+    assertTrue(checksum.isDirty());
+  }
+
+  @Test
+  public void testNonIncrementalChecksumIsMarkedDirty() {
+    DocumentChecksum checksum = new DocumentChecksum(path);
+
+    checksum.update("foo");
+
+    assertFalse(checksum.applyTextEdit(edit(0, "b", "f")));
+    assertTrue(checksum.isDirty());
+
+    checksum.update("boo");
+    assertChecksum("boo", checksum);
+  }
+
+  private TextEditActivity edit(int offset, String text, String replacedText) {
+    return new TextEditActivity(alice, offset, text, replacedText, path);
+  }
+
+  @Test
+  public void testCalculate() {
+    assertEquals(
+        DocumentChecksum.calculate("Hello World"), DocumentChecksum.calculate("Hello World"));
+
+    // same hash code, different length
+    assertTrue(DocumentChecksum.calculate("") != DocumentChecksum.calculate("\0"));
+
+    // same length, different hash code
+    assertTrue(DocumentChecksum.calculate("Hello") != DocumentChecksum.calculate("World"));
+  }
+
+  private static void assertChecksum(String expectedContent, DocumentChecksum checksum) {
+    assertEquals(expectedContent.length(), checksum.getLength());
+    assertEquals(expectedContent.hashCode(), checksum.getHash());
+  }
+}
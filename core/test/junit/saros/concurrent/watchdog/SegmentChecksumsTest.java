@@ -0,0 +1,116 @@
+package saros.concurrent.watchdog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class SegmentChecksumsTest {
+
+  private static final Random RANDOM = new Random(4711);
+
+  @Test
+  public void testParseRestoresChecksums() {
+    String content = createContent(1000);
+
+    SegmentChecksums checksums = SegmentChecksums.calculate(content);
+    SegmentChecksums parsed = SegmentChecksums.parse(checksums.toString());
+
+    assertNotNull(parsed);
+    assertTrue(checksums.getSegmentCount() > 1);
+    assertEquals(checksums.getSegmentCount(), parsed.getSegmentCount());
+    assertEquals(content.length(), parsed.getLength());
+    assertNull(SegmentChecksums.calculate(content).getDifference(content, parsed));
+  }
+
+  @Test
+  public void testParseMalformed() {
+    assertNull(SegmentChecksums.parse(null));
+    assertNull(SegmentChecksums.parse("foo"));
+    assertNull(SegmentChecksums.parse("1:x,!:2"));
+    assertNull(SegmentChecksums.parse("0:1"));
+    assertEquals(0, SegmentChecksums.parse("").getSegmentCount());
+  }
+
+  @Test
+  public void testInsertedLineOnlyAffectsItsSegment() {
+    String remote = createContent(2000);
+
+    int offset = nthLine(remote, 1000);
+    String local = remote.substring(0, offset) + "inserted line\n" + remote.substring(offset);
+
+    SegmentChecksums.Range range = assertRecovers(local, remote);
+
+    assertTrue("range is too large: " + range.getText().length(), range.getText().length() < 4000);
+  }
+
+  @Test
+  public void testModifiedCharacters() {
+    String remote = createContent(2000);
+
+    StringBuilder local = new StringBuilder(remote);
+    local.setCharAt(nthLine(remote, 100) + 3, '#');
+    local.setCharAt(nthLine(remote, 1900) + 1, '#');
+
+    assertRecovers(local.toString(), remote);
+  }
+
+  @Test
+  public void testDeletedAndAppendedContent() {
+    String remote = createContent(500);
+
+    assertRecovers(remote.substring(0, nthLine(remote, 250)), remote);
+    assertRecovers(remote + "appended", remote);
+    assertRecovers("prepended\n" + remote, remote);
+    assertRecovers("", remote);
+    assertRecovers(remote, "");
+  }
+
+  private static SegmentChecksums.Range assertRecovers(String local, String remote) {
+    SegmentChecksums.Range range =
+        SegmentChecksums.calculate(local)
+            .getDifference(
+                local, SegmentChecksums.parse(SegmentChecksums.calculate(remote).toString()));
+
+    assertNotNull(range);
+
+    String recovered =
+        remote.substring(0, range.getOffset())
+            + range.getText()
+            + remote.substring(range.getOffset() + range.getLength());
+
+    assertEquals(local, recovered);
+
+    return range;
+  }
+
+  private static int nthLine(String content, int line) {
+    int offset = 0;
+
+    for (int i = 0; i < line; i++) offset = content.indexOf('\n', offset) + 1;
+
+    return offset;
+  }
+
+  private static String createContent(int lines) {
+    StringBuilder builder = new StringBuilder();
+
+    for (int i = 0; i < lines; i++) {
+      if (i % 7 == 0) {
+        builder.append("  }\n");
+        continue;
+      }
+
+      int length = RANDOM.nextInt(60);
+
+      for (int j = 0; j < length; j++) builder.append((char) ('a' + RANDOM.nextInt(26)));
+
+      builder.append('\n');
+    }
+
+    return builder.toString();
+  }
+}
@@ -0,0 +1,125 @@
+package saros.editor.text;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class TextBufferTest {
+
+  @Test
+  public void emptyBuffer() {
+    TextBuffer buffer = new TextBuffer("");
+
+    assertEquals(0, buffer.length());
+    assertEquals("", buffer.toString());
+    assertEquals("".hashCode(), buffer.getHash());
+    assertEquals(1, buffer.getLineCount());
+    assertEquals(0, buffer.getLineOffset(0));
+    assertEquals(0, buffer.getLineOfOffset(0));
+  }
+
+  @Test
+  public void insertAndDelete() {
+    TextBuffer buffer = new TextBuffer("Hello World");
+
+    buffer.insert(5, ",");
+    buffer.insert(12, "!");
+    buffer.delete(0, 1);
+    buffer.insert(0, "h");
+
+    assertContent("hello, World!", buffer);
+  }
+
+  @Test
+  public void lines() {
+    TextBuffer buffer = new TextBuffer("first\r\nsecond\n\nfourth");
+
+    assertEquals(4, buffer.getLineCount());
+    assertEquals(0, buffer.getLineOffset(0));
+    assertEquals(7, buffer.getLineOffset(1));
+    assertEquals(14, buffer.getLineOffset(2));
+    assertEquals(15, buffer.getLineOffset(3));
+
+    assertEquals(0, buffer.getLineOfOffset(6));
+    assertEquals(1, buffer.getLineOfOffset(7));
+    assertEquals(2, buffer.getLineOfOffset(14));
+    assertEquals(3, buffer.getLineOfOffset(buffer.length()));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void deleteOutOfBounds() {
+    new TextBuffer("foo").delete(2, 2);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void invalidLine() {
+    new TextBuffer("foo\nbar").getLineOffset(2);
+  }
+
+  @Test
+  public void randomEditsOnLargeText() {
+    Random random = new Random(4711);
+
+    StringBuilder expected = new StringBuilder();
+
+    for (int i = 0; i < 5 * TextBuffer.MAX_CHUNK_LENGTH; i++) expected.append(randomChar(random));
+
+    TextBuffer buffer = new TextBuffer(expected.toString());
+
+    for (int i = 0; i < 2000; i++) {
+      int offset = random.nextInt(expected.length() + 1);
+
+      if (random.nextBoolean()) {
+        // mostly typing, sometimes large pastes
+        int length = random.nextInt(10) == 0 ? random.nextInt(3 * TextBuffer.MAX_CHUNK_LENGTH) : 1;
+
+        StringBuilder text = new StringBuilder();
+        for (int j = 0; j < length; j++) text.append(randomChar(random));
+
+        expected.insert(offset, text);
+        buffer.insert(offset, text.toString());
+      } else {
+        int maxLength = expected.length() - offset;
+        int length =
+            random.nextInt(10) == 0 ? random.nextInt(maxLength + 1) : Math.min(1, maxLength);
+
+        expected.delete(offset, offset + length);
+        buffer.delete(offset, length);
+      }
+
+      assertEquals(expected.length(), buffer.length());
+      assertEquals(expected.toString().hashCode(), buffer.getHash());
+    }
+
+    assertContent(expected.toString(), buffer);
+
+    int start = expected.length() / 3;
+    int length = expected.length() / 3;
+
+    assertEquals(expected.substring(start, start + length), buffer.getText(start, length));
+  }
+
+  private static char randomChar(Random random) {
+    return random.nextInt(40) == 0 ? '\n' : (char) ('a' + random.nextInt(26));
+  }
+
+  private static void assertContent(String expected, TextBuffer buffer) {
+    assertEquals(expected, buffer.toString());
+    assertEquals(expected.length(), buffer.length());
+    assertEquals(expected.hashCode(), buffer.getHash());
+
+    String[] lines = expected.split("\n", -1);
+
+    assertEquals(lines.length, buffer.getLineCount());
+
+    int offset = 0;
+
+    for (int line = 0; line < lines.length; line++) {
+      assertEquals(offset, buffer.getLineOffset(line));
+      assertEquals(line, buffer.getLineOfOffset(offset));
+
+      offset += lines[line].length() + 1;
+    }
+  }
+}
@@ -4,9 +4,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import org.apache.commons.io.FileUtils;
 import org.easymock.EasyMock;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class FileSystemChecksumCacheTest {
 
@@ -20,6 +25,8 @@ public class FileSystemChecksumCacheTest {
 
   private IFileContentChangedListener listener;
 
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
   private IFileContentChangedNotifier notifier =
       new IFileContentChangedNotifier() {
 
@@ -139,6 +146,82 @@ public class FileSystemChecksumCacheTest {
     assertEquals(Long.valueOf(1), cache.getChecksum(collidingA1));
   }
 
+  @Test
+  public void testChecksumsSurviveRestart() throws IOException {
+    File storage = new File(folder.getRoot(), "checksums.dat");
+
+    File unchangedFile = createLocalFile("unchanged", "foo");
+    File modifiedFile = createLocalFile("modified", "foo");
+    File changedFile = createLocalFile("changed", "foo");
+
+    IFile unchanged = createFileMock("unchanged", unchangedFile);
+    IFile modified = createFileMock("modified", modifiedFile);
+    IFile changed = createFileMock("changed", changedFile);
+
+    FileSystemChecksumCache cache = new FileSystemChecksumCache(notifier, storage);
+    cache.start();
+    cache.addChecksum(unchanged, 1L);
+    cache.addChecksum(modified, 2L);
+    cache.addChecksum(changed, 3L);
+    listener.fileContentChanged(changed);
+    cache.stop();
+
+    FileUtils.writeStringToFile(modifiedFile, "foobar", "UTF-8");
+
+    cache = new FileSystemChecksumCache(notifier, storage);
+    cache.start();
+
+    assertEquals(Long.valueOf(1), cache.getChecksum(unchanged));
+    assertEquals(null, cache.getChecksum(modified));
+    assertEquals(null, cache.getChecksum(changed));
+    assertEquals(null, cache.getChecksum(nonColliding));
+
+    assertTrue(cache.addChecksum(modified, 4L));
+    assertEquals(Long.valueOf(4), cache.getChecksum(modified));
+  }
+
+  @Test
+  public void testCorruptStorageIsIgnored() throws IOException {
+    File storage = new File(folder.getRoot(), "checksums.dat");
+    FileUtils.writeStringToFile(storage, "garbage", "UTF-8");
+
+    IFile file = createFileMock("file", createLocalFile("file", "foo"));
+
+    FileSystemChecksumCache cache = new FileSystemChecksumCache(notifier, storage);
+    cache.start();
+
+    assertEquals(null, cache.getChecksum(file));
+    assertFalse(cache.addChecksum(file, 1L));
+
+    cache.stop();
+
+    cache = new FileSystemChecksumCache(notifier, storage);
+    cache.start();
+
+    assertEquals(Long.valueOf(1), cache.getChecksum(file));
+  }
+
+  private File createLocalFile(String name, String content) throws IOException {
+    File file = folder.newFile(name);
+    FileUtils.writeStringToFile(file, content, "UTF-8");
+    return file;
+  }
+
+  private static IFile createFileMock(final String path, final File localFile) {
+    IFile fileMock = EasyMock.createMock(IFile.class);
+    IPath pathMock = EasyMock.createMock(IPath.class);
+    IPath locationMock = EasyMock.createMock(IPath.class);
+
+    EasyMock.expect(pathMock.toOSString()).andStubReturn(path);
+    EasyMock.expect(locationMock.toOSString()).andStubReturn(localFile.getAbsolutePath());
+    EasyMock.expect(fileMock.getFullPath()).andStubReturn(pathMock);
+    EasyMock.expect(fileMock.getLocation()).andStubReturn(locationMock);
+
+    EasyMock.replay(fileMock, pathMock, locationMock);
+
+    return fileMock;
+  }
+
   private static IFile createFileMock(final String path) {
     IFile fileMock = EasyMock.createMock(IFile.class);
     IPath pathMock = EasyMock.createMock(IPath.class);
@@ -0,0 +1,326 @@
+package saros.negotiation;
+
+import static org.easymock.EasyMock.anyBoolean;
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.easymock.IAnswer;
+import org.jivesoftware.smackx.filetransfer.FileTransfer;
+import org.jivesoftware.smackx.filetransfer.FileTransferNegotiator;
+import org.jivesoftware.smackx.filetransfer.OutgoingFileTransfer;
+import org.jivesoftware.smackx.filetransfer.StreamNegotiator;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import saros.filesystem.IFile;
+import saros.filesystem.IPath;
+import saros.filesystem.IProject;
+import saros.filesystem.IResource;
+import saros.monitoring.NullProgressMonitor;
+
+public class ArchiveTaskTest {
+
+  private static final String PROJECT_ID = "0";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  // files may be written concurrently
+  private final Map<String, byte[]> decompressed = new ConcurrentHashMap<String, byte[]>();
+
+  private final Map<String, String> writingThreads = new ConcurrentHashMap<String, String>();
+
+  private volatile String failingPath;
+
+  private IProject project;
+
+  @Before
+  public void setUp() {
+    project = createMock(IProject.class);
+
+    expect(project.getFile(anyObject(String.class)))
+        .andStubAnswer(
+            new IAnswer<IFile>() {
+              @Override
+              public IFile answer() throws Throwable {
+                return createTargetFile((String) getCurrentArguments()[0]);
+              }
+            });
+
+    replay(project);
+  }
+
+  @Test
+  public void testStreamRoundTrip() throws Exception {
+    Map<String, byte[]> contents = createContents(5);
+
+    byte[] archive = createArchive(contents);
+
+    new DecompressArchiveTask(
+            new ByteArrayInputStream(archive),
+            contents.size(),
+            Collections.singletonMap(PROJECT_ID, project),
+            ProjectNegotiation.PATH_DELIMITER,
+            null)
+        .run(new NullProgressMonitor());
+
+    assertEquals(contents.keySet(), decompressed.keySet());
+
+    for (String path : contents.keySet())
+      assertArrayEquals(path, contents.get(path), decompressed.get(path));
+  }
+
+  @Test
+  public void testFileRoundTrip() throws Exception {
+    Map<String, byte[]> contents = createContents(50);
+
+    File archive = folder.newFile("archive.zip");
+
+    FileUtils.writeByteArrayToFile(archive, createArchive(contents));
+
+    new DecompressArchiveTask(
+            archive,
+            Collections.singletonMap(PROJECT_ID, project),
+            ProjectNegotiation.PATH_DELIMITER,
+            null)
+        .run(new NullProgressMonitor());
+
+    assertEquals(contents.keySet(), decompressed.keySet());
+
+    for (String path : contents.keySet())
+      assertArrayEquals(path, contents.get(path), decompressed.get(path));
+  }
+
+  @Test
+  public void testConcurrentFileRoundTrip() throws Exception {
+    Map<String, byte[]> contents = createContents(50);
+
+    File archive = folder.newFile("archive.zip");
+
+    FileUtils.writeByteArrayToFile(archive, createArchive(contents));
+
+    new DecompressArchiveTask(
+            archive,
+            Collections.singletonMap(PROJECT_ID, project),
+            ProjectNegotiation.PATH_DELIMITER,
+            4,
+            null)
+        .run(new NullProgressMonitor());
+
+    assertEquals(contents.keySet(), decompressed.keySet());
+
+    for (String path : contents.keySet()) {
+      assertArrayEquals(path, contents.get(path), decompressed.get(path));
+      assertTrue(writingThreads.get(path).startsWith("dpp-decompress-"));
+    }
+  }
+
+  @Test
+  public void testConcurrentFailingEntry() throws Exception {
+    Map<String, byte[]> contents = createContents(50);
+
+    File archive = folder.newFile("archive.zip");
+
+    FileUtils.writeByteArrayToFile(archive, createArchive(contents));
+
+    failingPath = "src/File23.java";
+
+    try {
+      new DecompressArchiveTask(
+              archive,
+              Collections.singletonMap(PROJECT_ID, project),
+              ProjectNegotiation.PATH_DELIMITER,
+              4,
+              null)
+          .run(new NullProgressMonitor());
+
+      fail("failed entry was not reported");
+    } catch (IOException e) {
+      assertEquals("cannot write " + failingPath, e.getMessage());
+    }
+
+    assertFalse(decompressed.containsKey(failingPath));
+  }
+
+  @Test(expected = EOFException.class)
+  public void testTruncatedStream() throws Exception {
+    Map<String, byte[]> contents = createContents(5);
+
+    byte[] archive = createArchive(contents);
+
+    new DecompressArchiveTask(
+            new ByteArrayInputStream(archive),
+            contents.size() + 1,
+            Collections.singletonMap(PROJECT_ID, project),
+            ProjectNegotiation.PATH_DELIMITER,
+            null)
+        .run(new NullProgressMonitor());
+  }
+
+  @Test
+  public void testStreamTransferStatus() throws Exception {
+    Map<String, byte[]> contents = createContents(5);
+
+    ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+    StreamNegotiator streamNegotiator = createMock(StreamNegotiator.class);
+    expect(streamNegotiator.createOutgoingStream("stream", "alice@foo/Saros", "bob@foo/Saros"))
+        .andReturn(sent);
+    replay(streamNegotiator);
+
+    FileTransferNegotiator negotiator = createMock(FileTransferNegotiator.class);
+    expect(
+            negotiator.negotiateOutgoingTransfer(
+                eq("bob@foo/Saros"),
+                eq("stream"),
+                eq("saros-test" + ArchiveOutgoingProjectNegotiation.ARCHIVE_STREAM_SUFFIX),
+                eq(0L),
+                eq("saros-test"),
+                anyInt()))
+        .andReturn(streamNegotiator);
+    replay(negotiator);
+
+    OutgoingFileTransfer transfer =
+        new OutgoingFileTransfer("alice@foo/Saros", "bob@foo/Saros", "stream", negotiator) {
+          // the constructor is protected
+        };
+
+    OutputStream out = ArchiveOutgoingProjectNegotiation.openArchiveStream(transfer, "saros-test");
+
+    writeArchive(contents, out);
+
+    // the size of the archive differs from the announced size
+    assertFalse(transfer.getStatus() == FileTransfer.Status.error);
+    assertEquals(null, transfer.getError());
+
+    new DecompressArchiveTask(
+            new ByteArrayInputStream(sent.toByteArray()),
+            contents.size(),
+            Collections.singletonMap(PROJECT_ID, project),
+            ProjectNegotiation.PATH_DELIMITER,
+            null)
+        .run(new NullProgressMonitor());
+
+    assertEquals(contents.keySet(), decompressed.keySet());
+  }
+
+  private byte[] createArchive(Map<String, byte[]> contents) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    writeArchive(contents, out);
+
+    return out.toByteArray();
+  }
+
+  private static void writeArchive(Map<String, byte[]> contents, OutputStream out)
+      throws Exception {
+    List<IFile> files = new ArrayList<IFile>();
+    List<String> alias = new ArrayList<String>();
+
+    for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+      files.add(createSourceFile(entry.getValue()));
+      alias.add(PROJECT_ID + ProjectNegotiation.PATH_DELIMITER + entry.getKey());
+    }
+
+    new CreateArchiveTask(out, files, alias, null).run(new NullProgressMonitor());
+  }
+
+  private static Map<String, byte[]> createContents(int count) {
+    Random random = new Random(42);
+
+    Map<String, byte[]> contents = new HashMap<String, byte[]>();
+
+    for (int i = 0; i < count; i++) {
+      byte[] content = new byte[random.nextInt(64 * 1024)];
+
+      // compressible content
+      for (int j = 0; j < content.length; j++) content[j] = (byte) ('a' + random.nextInt(4));
+
+      contents.put("src/File" + i + ".java", content);
+    }
+
+    return contents;
+  }
+
+  private static IFile createSourceFile(final byte[] content) throws IOException {
+    IPath path = createMock(IPath.class);
+    replay(path);
+
+    IFile file = createMock(IFile.class);
+
+    expect(file.getFullPath()).andStubReturn(path);
+    expect(file.getSize()).andStubReturn((long) content.length);
+    expect(file.getContents())
+        .andStubAnswer(
+            new IAnswer<InputStream>() {
+              @Override
+              public InputStream answer() throws Throwable {
+                return new ByteArrayInputStream(content);
+              }
+            });
+
+    replay(file);
+
+    return file;
+  }
+
+  private IFile createTargetFile(final String path) throws IOException {
+    IPath relativePath = createMock(IPath.class);
+    replay(relativePath);
+
+    IFile file = createMock(IFile.class);
+
+    expect(file.getType()).andStubReturn(IResource.FILE);
+    expect(file.getParent()).andStubReturn(null);
+    expect(file.getProjectRelativePath()).andStubReturn(relativePath);
+    expect(file.exists()).andStubReturn(false);
+
+    file.create(anyObject(InputStream.class), anyBoolean());
+    expectLastCall()
+        .andStubAnswer(
+            new IAnswer<Object>() {
+              @Override
+              public Object answer() throws Throwable {
+                InputStream in = (InputStream) getCurrentArguments()[0];
+
+                if (path.equals(failingPath)) throw new IOException("cannot write " + path);
+
+                writingThreads.put(path, Thread.currentThread().getName());
+                decompressed.put(path, IOUtils.toByteArray(in));
+                in.close();
+                return null;
+              }
+            });
+
+    replay(file);
+
+    return file;
+  }
+}
@@ -18,6 +18,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.zip.Adler32;
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
 import org.junit.Before;
@@ -27,6 +28,7 @@ import saros.filesystem.IFolder;
 import saros.filesystem.IPath;
 import saros.filesystem.IProject;
 import saros.filesystem.IResource;
+import saros.monitoring.NullProgressMonitor;
 
 /*
  *Project Layout for test
@@ -82,6 +84,51 @@ public class FileListTest {
     assertEquals("not all encodings were fetched", expectedEncodings, fileList.getEncodings());
   }
 
+  @Test
+  public void testChecksumsOfManyFiles() throws IOException {
+    final IProject project = EasyMock.createMock(IProject.class);
+
+    final Random random = new Random(4711);
+
+    final List<String> contents = new ArrayList<String>();
+    final IResource[] members = new IResource[100];
+
+    for (int i = 0; i < members.length; i++) {
+      final StringBuilder builder = new StringBuilder();
+
+      for (int j = random.nextInt(100000); j > 0; j--)
+        builder.append((char) (random.nextInt(26) + 65));
+
+      contents.add(builder.toString());
+      members[i] = createFileMock(project, "file" + i, builder.toString(), "UTF-8");
+    }
+
+    EasyMock.expect(project.getName()).andStubReturn("foo");
+    EasyMock.expect(project.getDefaultCharset()).andStubReturn("UTF-8");
+    EasyMock.expect(project.members()).andStubReturn(members);
+    EasyMock.replay(project);
+
+    final FileList fileList = FileListFactory.createFileList(project, null, null, null);
+
+    for (int i = 0; i < members.length; i++) {
+      final Adler32 adler = new Adler32();
+      adler.update(contents.get(i).getBytes());
+
+      assertEquals(
+          "wrong checksum for file" + i,
+          adler.getValue(),
+          fileList.getMetaData("file" + i).checksum);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testCanceledChecksumCalculation() throws IOException {
+    final NullProgressMonitor monitor = new NullProgressMonitor();
+    monitor.setCanceled(true);
+
+    FileListFactory.createFileList(project, null, null, monitor);
+  }
+
   @Test
   public void testToXmlAndBack() throws Exception {
     List<String> files = new ArrayList<String>();
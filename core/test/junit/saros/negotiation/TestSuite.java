@@ -4,7 +4,12 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses({FileListTest.class, FileListDiffTest.class, SessionNegotiationTest.class})
+@Suite.SuiteClasses({
+  FileListTest.class,
+  FileListDiffTest.class,
+  SessionNegotiationTest.class,
+  ArchiveTaskTest.class
+})
 public class TestSuite {
   // the class remains completely empty,
   // being used only as a holder for the above annotations
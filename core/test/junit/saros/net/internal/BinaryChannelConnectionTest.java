@@ -11,6 +11,7 @@ import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import org.junit.Before;
@@ -248,6 +249,161 @@ public class BinaryChannelConnectionTest {
     assertArrayEquals("fragmentation error", bytesToSend, receivedBytes);
   }
 
+  @Test
+  public void testReassemblyAtChunkBoundaries() throws Exception {
+    final int chunkSize = 32 * 1024 - 1;
+
+    final int[] sizes = {1, chunkSize - 1, chunkSize, chunkSize + 1, 3 * chunkSize, 40 * chunkSize};
+
+    final List<byte[]> receivedPayloads = new CopyOnWriteArrayList<byte[]>();
+
+    final CountDownLatch received = new CountDownLatch(sizes.length);
+
+    BinaryChannelConnection alice =
+        new BinaryChannelConnection(
+            aliceJID,
+            bobJID,
+            "junit",
+            aliceStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener() {
+              @Override
+              public void receive(final BinaryXMPPExtension extension) {
+                // NOP
+              }
+            });
+
+    BinaryChannelConnection bob =
+        new BinaryChannelConnection(
+            bobJID,
+            aliceJID,
+            "junit",
+            bobStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener() {
+              @Override
+              public void receive(final BinaryXMPPExtension extension) {
+                receivedPayloads.add(extension.getPayload());
+                received.countDown();
+              }
+            });
+
+    alice.initialize();
+    bob.initialize();
+
+    TransferDescription description = TransferDescription.newDescription();
+
+    description.setNamespace("foo-namespace");
+    description.setElementName("bar");
+
+    List<byte[]> sentPayloads = new ArrayList<byte[]>();
+
+    try {
+      for (int size : sizes) {
+        byte[] bytesToSend = new byte[size];
+
+        for (int i = 0; i < bytesToSend.length; i++) bytesToSend[i] = (byte) (i * 31 + size);
+
+        sentPayloads.add(bytesToSend);
+        alice.send(description, bytesToSend);
+      }
+
+      received.await(10000, TimeUnit.MILLISECONDS);
+    } finally {
+      alice.close();
+      bob.close();
+    }
+
+    assertEquals("not all packets were received", sizes.length, receivedPayloads.size());
+
+    for (int i = 0; i < sizes.length; i++)
+      assertArrayEquals(
+          "reassembly error for size " + sizes[i], sentPayloads.get(i), receivedPayloads.get(i));
+  }
+
+  @Test
+  public void testInteractiveDataPreemptsBulkTransfer() throws Exception {
+    final List<byte[]> receivedPayloads = new CopyOnWriteArrayList<byte[]>();
+
+    final CountDownLatch received = new CountDownLatch(2);
+
+    final BinaryChannelConnection alice =
+        new BinaryChannelConnection(
+            aliceJID,
+            bobJID,
+            "junit",
+            aliceStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener() {
+              @Override
+              public void receive(final BinaryXMPPExtension extension) {
+                // NOP
+              }
+            });
+
+    BinaryChannelConnection bob =
+        new BinaryChannelConnection(
+            bobJID,
+            aliceJID,
+            "junit",
+            bobStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener() {
+              @Override
+              public void receive(final BinaryXMPPExtension extension) {
+                receivedPayloads.add(extension.getPayload());
+                received.countDown();
+              }
+            });
+
+    alice.initialize();
+    bob.initialize();
+
+    final TransferDescription description = TransferDescription.newDescription();
+
+    description.setNamespace("foo-namespace");
+    description.setElementName("bar");
+
+    final byte[] bulkData = new byte[16 * 1024 * 1024];
+    final byte[] interactiveData = new byte[] {1, 2, 3};
+
+    for (int i = 0; i < bulkData.length; i++) bulkData[i] = (byte) i;
+
+    final CountDownLatch bulkStarted = new CountDownLatch(1);
+
+    Thread bulkSender =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                bulkStarted.countDown();
+                try {
+                  alice.send(description, bulkData);
+                } catch (IOException e) {
+                  // the assertions below will fail
+                }
+              }
+            });
+
+    try {
+      bulkSender.start();
+      bulkStarted.await(10000, TimeUnit.MILLISECONDS);
+
+      alice.send(description, interactiveData);
+
+      received.await(30000, TimeUnit.MILLISECONDS);
+      bulkSender.join(10000);
+    } finally {
+      alice.close();
+      bob.close();
+    }
+
+    assertEquals("not all packets were received", 2, receivedPayloads.size());
+    assertArrayEquals(
+        "interactive data was not sent first", interactiveData, receivedPayloads.get(0));
+    assertArrayEquals("bulk data is corrupted", bulkData, receivedPayloads.get(1));
+  }
+
   @Test
   @Ignore(
       "this test consumes much CPU resources and should only executed manually when making changes")
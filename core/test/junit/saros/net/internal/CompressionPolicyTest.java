@@ -0,0 +1,99 @@
+package saros.net.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import saros.net.stream.StreamMode;
+
+public class CompressionPolicyTest {
+
+  private static final Random RANDOM = new Random(4711);
+
+  @Test
+  public void testSmallPacketsAreNotCompressedOnLocalLinks() {
+    CompressionPolicy policy = new CompressionPolicy();
+
+    assertEquals(CompressionPolicy.SKIP, policy.getCompressionLevel(StreamMode.TCP, text(512)));
+
+    assertEquals(Deflater.BEST_COMPRESSION, policy.getCompressionLevel(StreamMode.IBB, text(512)));
+  }
+
+  @Test
+  public void testCompressedContentIsSkipped() {
+    CompressionPolicy policy = new CompressionPolicy();
+
+    byte[] random = new byte[64 * 1024];
+    RANDOM.nextBytes(random);
+
+    assertTrue(CompressionPolicy.isCompressed(random));
+    assertFalse(CompressionPolicy.isCompressed(text(64 * 1024)));
+
+    assertEquals(CompressionPolicy.SKIP, policy.getCompressionLevel(StreamMode.IBB, random));
+  }
+
+  @Test
+  public void testLevelFollowsMeasuredThroughput() {
+    CompressionPolicy policy = new CompressionPolicy();
+
+    byte[] bulk = text(CompressionPolicy.INTERACTIVE_PACKET_SIZE * 4);
+
+    // 1 MB in 100 seconds
+    for (int i = 0; i < 10; i++) policy.sent(StreamMode.SOCKS5_DIRECT, 1024 * 1024, 0, 100000);
+
+    assertEquals(
+        Deflater.BEST_COMPRESSION, policy.getCompressionLevel(StreamMode.SOCKS5_DIRECT, bulk));
+
+    // 100 MB in 10 seconds
+    for (int i = 0; i < 10; i++)
+      policy.received(StreamMode.SOCKS5_DIRECT, 100 * 1024 * 1024, 0, 10000);
+
+    assertEquals(Deflater.BEST_SPEED, policy.getCompressionLevel(StreamMode.SOCKS5_DIRECT, bulk));
+
+    assertEquals(
+        CompressionPolicy.SKIP, policy.getCompressionLevel(StreamMode.SOCKS5_DIRECT, text(512)));
+
+    // small transfers must not affect the measurement
+    for (int i = 0; i < 10; i++) policy.sent(StreamMode.SOCKS5_DIRECT, 100, 0, 1000);
+
+    assertEquals(Deflater.BEST_SPEED, policy.getCompressionLevel(StreamMode.SOCKS5_DIRECT, bulk));
+  }
+
+  @Test
+  public void testDeflateRoundTrip() throws Exception {
+    byte[] packet =
+        ("<ADOS xmlns=\"saros\" v=\"1\" sid=\"42\" seq=\"7\"><jupiterActivity source=\"alice\">"
+                + "<p i=\"0\" p=\"src/Foo.java\"/><t><vectorTime local=\"3\" remote=\"4\"/></t>"
+                + "<o class=\"insertOp\" position=\"120\" origin=\"120\"><text>a</text></o>"
+                + "</jupiterActivity></ADOS>")
+            .getBytes("UTF-8");
+
+    byte[] compressed = DataTransferManager.deflate(packet, Deflater.BEST_COMPRESSION);
+
+    assertArrayEquals(packet, DataTransferManager.inflate(compressed));
+
+    // peers running an older version inflate without any preset dictionary
+    assertArrayEquals(
+        packet, IOUtils.toByteArray(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+
+    byte[] bulk = text(1024 * 1024);
+
+    assertArrayEquals(
+        bulk, DataTransferManager.inflate(DataTransferManager.deflate(bulk, Deflater.BEST_SPEED)));
+  }
+
+  private static byte[] text(int length) {
+    byte[] text = new byte[length];
+
+    for (int i = 0; i < length; i++) text[i] = (byte) (RANDOM.nextInt(8) == 0 ? ' ' : 'a' + i % 7);
+
+    return text;
+  }
+}
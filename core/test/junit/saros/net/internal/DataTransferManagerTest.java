@@ -3,10 +3,14 @@ package saros.net.internal;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -19,6 +23,7 @@ import org.junit.Before;
 import org.junit.Test;
 import saros.net.ConnectionState;
 import saros.net.IConnectionManager;
+import saros.net.MulticastException;
 import saros.net.stream.IStreamService;
 import saros.net.stream.StreamMode;
 import saros.net.xmpp.IConnectionListener;
@@ -124,6 +129,8 @@ public class DataTransferManagerTest {
     private IByteStreamConnectionListener listener;
     private volatile boolean closed;
     private volatile int sendPackets;
+    private volatile byte[] lastContent;
+    private volatile TransferDescription lastDescription;
 
     public ChannelConnection(JID to, StreamMode mode, IByteStreamConnectionListener listener) {
       this.to = to;
@@ -150,6 +157,8 @@ public class DataTransferManagerTest {
     @Override
     public void send(TransferDescription data, byte[] content) throws IOException {
       sendPackets++;
+      lastContent = content;
+      lastDescription = data;
     }
 
     @Override
@@ -161,6 +170,14 @@ public class DataTransferManagerTest {
       return sendPackets;
     }
 
+    public byte[] getLastContent() {
+      return lastContent;
+    }
+
+    public TransferDescription getLastDescription() {
+      return lastDescription;
+    }
+
     @Override
     public String getConnectionID() {
       return null;
@@ -203,7 +220,7 @@ public class DataTransferManagerTest {
   @Test(expected = NullPointerException.class)
   public void testEstablishConnectionWithNullPeer() throws Exception {
 
-    IConnectionManager dtm = new DataTransferManager(connectionServiceStub, null, null, null);
+    IConnectionManager dtm = new DataTransferManager(connectionServiceStub, null, null, null, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
@@ -213,7 +230,7 @@ public class DataTransferManagerTest {
   @Test(expected = NullPointerException.class)
   public void testEstablishConnectionWithNullConnectionID() throws Exception {
 
-    IConnectionManager dtm = new DataTransferManager(connectionServiceStub, null, null, null);
+    IConnectionManager dtm = new DataTransferManager(connectionServiceStub, null, null, null, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
@@ -223,7 +240,7 @@ public class DataTransferManagerTest {
   @Test(expected = IOException.class)
   public void testEstablishConnectionWithNoTransports() throws Exception {
 
-    IConnectionManager dtm = new DataTransferManager(connectionServiceStub, null, null, null);
+    IConnectionManager dtm = new DataTransferManager(connectionServiceStub, null, null, null, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
@@ -237,7 +254,8 @@ public class DataTransferManagerTest {
     IStreamService fallbackTransport = new Transport(StreamMode.IBB);
 
     IConnectionManager dtm =
-        new DataTransferManager(connectionServiceStub, null, mainTransport, fallbackTransport);
+        new DataTransferManager(
+            connectionServiceStub, null, mainTransport, fallbackTransport, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
@@ -265,7 +283,8 @@ public class DataTransferManagerTest {
     EasyMock.replay(mainTransport);
 
     IConnectionManager dtm =
-        new DataTransferManager(connectionServiceStub, null, mainTransport, fallbackTransport);
+        new DataTransferManager(
+            connectionServiceStub, null, mainTransport, fallbackTransport, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
@@ -284,7 +303,8 @@ public class DataTransferManagerTest {
     IStreamService fallbackTransport = new Transport(StreamMode.IBB);
 
     DataTransferManager dtm =
-        new DataTransferManager(connectionServiceStub, null, mainTransport, fallbackTransport);
+        new DataTransferManager(
+            connectionServiceStub, null, mainTransport, fallbackTransport, null);
 
     dtm.setServices(IConnectionManager.IBB_SERVICE);
 
@@ -304,7 +324,7 @@ public class DataTransferManagerTest {
     Transport mainTransport = new Transport(StreamMode.SOCKS5_DIRECT);
 
     IConnectionManager dtm =
-        new DataTransferManager(connectionServiceStub, null, mainTransport, null);
+        new DataTransferManager(connectionServiceStub, null, mainTransport, null, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
@@ -325,7 +345,7 @@ public class DataTransferManagerTest {
     IStreamService mainTransport = new Transport(StreamMode.SOCKS5_DIRECT);
 
     IConnectionManager dtm =
-        new DataTransferManager(connectionServiceStub, null, mainTransport, null);
+        new DataTransferManager(connectionServiceStub, null, mainTransport, null, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
@@ -347,7 +367,7 @@ public class DataTransferManagerTest {
     IStreamService mainTransport = new Transport(StreamMode.SOCKS5_DIRECT);
 
     DataTransferManager dtm =
-        new DataTransferManager(connectionServiceStub, null, mainTransport, null);
+        new DataTransferManager(connectionServiceStub, null, mainTransport, null, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
@@ -363,7 +383,7 @@ public class DataTransferManagerTest {
     IStreamService mainTransport = new Transport(StreamMode.SOCKS5_DIRECT);
 
     DataTransferManager dtm =
-        new DataTransferManager(connectionServiceStub, null, mainTransport, null);
+        new DataTransferManager(connectionServiceStub, null, mainTransport, null, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
@@ -381,7 +401,7 @@ public class DataTransferManagerTest {
     Transport mainTransport = new Transport(StreamMode.SOCKS5_DIRECT);
 
     DataTransferManager dtm =
-        new DataTransferManager(connectionServiceStub, null, mainTransport, null);
+        new DataTransferManager(connectionServiceStub, null, mainTransport, null, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
@@ -394,6 +414,78 @@ public class DataTransferManagerTest {
     dtm.sendData("foo", description, new byte[0]);
   }
 
+  @Test
+  public void testMulticastCompressesOnce() throws Exception {
+    Transport mainTransport = new Transport(StreamMode.SOCKS5_DIRECT);
+
+    DataTransferManager dtm =
+        new DataTransferManager(connectionServiceStub, null, mainTransport, null, null);
+
+    connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
+
+    JID alice = new JID("alice@bar.com");
+    JID bob = new JID("bob@bar.com");
+    JID carl = new JID("carl@bar.com");
+
+    dtm.connect("foo", alice);
+    dtm.connect("foo", bob);
+
+    byte[] data = new byte[4096];
+
+    for (int i = 0; i < data.length; i++) data[i] = (byte) ('a' + i % 7);
+
+    TransferDescription description = TransferDescription.newDescription();
+
+    description.setCompressContent(true);
+
+    try {
+      dtm.sendData("foo", description, Arrays.asList(alice, carl, bob), data);
+      fail("sending to a recipient without connection must fail");
+    } catch (MulticastException e) {
+      assertEquals(Collections.singleton(carl), e.getFailures().keySet());
+    }
+
+    List<ChannelConnection> connections = mainTransport.getEstablishedConnections();
+
+    assertEquals(1, connections.get(0).getSendPacketsCount());
+    assertEquals(1, connections.get(1).getSendPacketsCount());
+
+    assertTrue("data was not compressed", connections.get(0).getLastContent().length < data.length);
+
+    assertSame(
+        "data was compressed for each recipient",
+        connections.get(0).getLastContent(),
+        connections.get(1).getLastContent());
+  }
+
+  @Test
+  public void testSendUncompressedDoesNotModifyDescription() throws Exception {
+    Transport mainTransport = new Transport(StreamMode.SOCKS5_DIRECT);
+
+    DataTransferManager dtm =
+        new DataTransferManager(connectionServiceStub, null, mainTransport, null, null);
+
+    connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
+
+    JID alice = new JID("alice@bar.com");
+
+    dtm.connect("foo", alice);
+
+    TransferDescription description = TransferDescription.newDescription();
+
+    description.setRecipient(alice);
+    description.setCompressContent(true);
+
+    // too small to be compressed
+    dtm.sendData("foo", description, new byte[16]);
+
+    ChannelConnection connection = mainTransport.getEstablishedConnections().get(0);
+
+    assertTrue(description.compressContent());
+    assertFalse(connection.getLastDescription().compressContent());
+    assertEquals(alice, connection.getLastDescription().getRecipient());
+  }
+
   @Test(timeout = 30000)
   public void testConcurrentConnections() throws Exception {
 
@@ -411,7 +503,8 @@ public class DataTransferManagerTest {
     Transport fallbackTransport = new Transport(StreamMode.IBB);
 
     final IConnectionManager dtm =
-        new DataTransferManager(connectionServiceStub, null, mainTransport, fallbackTransport);
+        new DataTransferManager(
+            connectionServiceStub, null, mainTransport, fallbackTransport, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
@@ -499,7 +592,7 @@ public class DataTransferManagerTest {
     Transport mainTransport = new Transport(StreamMode.SOCKS5_DIRECT);
 
     IConnectionManager dtm =
-        new DataTransferManager(connectionServiceStub, null, mainTransport, null);
+        new DataTransferManager(connectionServiceStub, null, mainTransport, null, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
@@ -525,7 +618,8 @@ public class DataTransferManagerTest {
     Transport fallbackTransport = new Transport(StreamMode.IBB);
 
     final DataTransferManager dtm =
-        new DataTransferManager(connectionServiceStub, null, mainTransport, fallbackTransport);
+        new DataTransferManager(
+            connectionServiceStub, null, mainTransport, fallbackTransport, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
@@ -573,7 +667,7 @@ public class DataTransferManagerTest {
     Transport mainTransport = new Transport(StreamMode.SOCKS5_DIRECT);
 
     IConnectionManager dtm =
-        new DataTransferManager(connectionServiceStub, null, mainTransport, null);
+        new DataTransferManager(connectionServiceStub, null, mainTransport, null, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
@@ -598,7 +692,7 @@ public class DataTransferManagerTest {
     Transport mainTransport = new Transport(StreamMode.SOCKS5_DIRECT);
 
     IConnectionManager dtm =
-        new DataTransferManager(connectionServiceStub, null, mainTransport, null);
+        new DataTransferManager(connectionServiceStub, null, mainTransport, null, null);
 
     connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
 
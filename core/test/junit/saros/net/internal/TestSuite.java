@@ -7,6 +7,7 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
   BinaryChannelConnectionTest.class,
   ConnectionPoolTest.class,
+  CompressionPolicyTest.class,
   DataTransferManagerTest.class
 })
 public class TestSuite {
@@ -0,0 +1,138 @@
+package saros.net.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import saros.communication.extensions.TCPEndpointExtension;
+import saros.net.internal.BinaryXMPPExtension;
+import saros.net.internal.IByteStreamConnection;
+import saros.net.internal.IByteStreamConnectionListener;
+import saros.net.xmpp.JID;
+
+public class TCPTransportTest {
+
+  private final JID aliceJID = new JID("alice@baumeister.de/Saros");
+
+  private final JID bobJID = new JID("bob@baumeister.de/Saros");
+
+  private final CountDownLatch bobConnected = new CountDownLatch(1);
+
+  private final AtomicReference<IByteStreamConnection> bobConnection =
+      new AtomicReference<IByteStreamConnection>();
+
+  private TCPTransport alice;
+  private TCPTransport bob;
+
+  private static class StreamConnectionListener implements IByteStreamConnectionListener {
+
+    @Override
+    public void receive(BinaryXMPPExtension extension) {
+      // NOP
+    }
+
+    @Override
+    public void connectionClosed(String connectionIdentifier, IByteStreamConnection connection) {
+      // NOP
+    }
+
+    @Override
+    public void connectionChanged(
+        String connectionIdentifier, IByteStreamConnection connection, boolean incomingRequest) {
+      // NOP
+    }
+  }
+
+  @Before
+  public void setUp() {
+    alice = new TCPTransport();
+    bob = new TCPTransport();
+
+    alice.startServer(aliceJID, new StreamConnectionListener());
+
+    bob.startServer(
+        bobJID,
+        new StreamConnectionListener() {
+          @Override
+          public void connectionChanged(
+              String connectionIdentifier,
+              IByteStreamConnection connection,
+              boolean incomingRequest) {
+            bobConnection.set(connection);
+            bobConnected.countDown();
+          }
+        });
+  }
+
+  @After
+  public void tearDown() {
+    alice.stopServer();
+    bob.stopServer();
+
+    final IByteStreamConnection connection = bobConnection.get();
+
+    if (connection != null) connection.close();
+  }
+
+  @Test
+  public void testConnectWithValidToken() throws Exception {
+    final String token = bob.createToken(aliceJID, "junit");
+
+    final IByteStreamConnection connection =
+        alice.connect(
+            "junit", bobJID, new TCPEndpointExtension("0", "junit", token, bob.getEndpoints()));
+
+    try {
+      connection.initialize();
+
+      assertEquals(StreamMode.TCP, connection.getMode());
+      assertTrue(bobConnected.await(10000, TimeUnit.MILLISECONDS));
+
+      final IByteStreamConnection incoming = bobConnection.get();
+
+      assertEquals(aliceJID, incoming.getRemoteAddress());
+      assertEquals("junit", incoming.getConnectionID());
+
+      incoming.initialize();
+
+      assertTrue(connection.isConnected());
+      assertTrue(incoming.isConnected());
+    } finally {
+      connection.close();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testConnectWithInvalidToken() throws Exception {
+    bob.createToken(aliceJID, "junit");
+
+    alice.connect(
+        "junit", bobJID, new TCPEndpointExtension("0", "junit", "invalid", bob.getEndpoints()));
+  }
+
+  @Test(expected = IOException.class)
+  public void testTokenCanOnlyBeUsedOnce() throws Exception {
+    final String token = bob.createToken(aliceJID, "junit");
+
+    final TCPEndpointExtension response =
+        new TCPEndpointExtension("0", "junit", token, bob.getEndpoints());
+
+    alice.connect("junit", bobJID, response).close();
+    alice.connect("junit", bobJID, response);
+  }
+
+  @Test(expected = IOException.class)
+  public void testConnectWithoutEndpoints() throws Exception {
+    alice.connect(
+        "junit",
+        bobJID,
+        new TCPEndpointExtension("0", "junit", "token", Collections.<String>emptyList()));
+  }
+}
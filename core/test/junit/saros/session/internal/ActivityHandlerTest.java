@@ -6,8 +6,10 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import org.easymock.EasyMock;
@@ -29,7 +31,6 @@ import saros.activities.ITargetedActivity;
 import saros.activities.JupiterActivity;
 import saros.activities.PermissionActivity;
 import saros.activities.ProgressActivity;
-import saros.activities.QueueItem;
 import saros.activities.SPath;
 import saros.activities.StartFollowingActivity;
 import saros.activities.StopActivity;
@@ -51,6 +52,11 @@ public class ActivityHandlerTest {
   private ActivityHandler handler;
   private NonUISynchronizer synchronizer;
 
+  // Collaborators of the SUT
+  private ISarosSession sessionMock;
+  private ConcurrentDocumentServer server;
+  private ConcurrentDocumentClient client;
+
   // Results from Callback
   private IActivity transformedActivity;
   private IActivity localActivity;
@@ -78,6 +84,16 @@ public class ActivityHandlerTest {
   private User source;
   private boolean host;
 
+  // Sizes of the batches sent to single recipients
+  private final List<Integer> batchSizes = new ArrayList<Integer>();
+
+  // All activities sent in the order the callback was called
+  private final List<IActivity> sentActivities =
+      Collections.synchronizedList(new ArrayList<IActivity>());
+
+  // Needed to wait for activities that are sent by another Thread
+  private volatile CountDownLatch sendGate;
+
   // Callback that is called from the ActivityHandler
   public IActivityHandlerCallback callback =
       new IActivityHandlerCallback() {
@@ -88,6 +104,26 @@ public class ActivityHandlerTest {
           willBeSent = true;
           targets = recipients;
           transformedActivity = activity;
+          sent(Collections.singletonList(activity));
+        }
+
+        @Override
+        public void send(User recipient, List<IActivity> activities) {
+          // a batch is sent to each recipient separately
+          if (!willBeSent) targets = new ArrayList<User>();
+
+          willBeSent = true;
+          targets.add(recipient);
+          transformedActivity = activities.get(activities.size() - 1);
+          batchSizes.add(activities.size());
+          sent(activities);
+        }
+
+        private void sent(List<IActivity> activities) {
+          sentActivities.addAll(activities);
+          CountDownLatch gateToCountdown = sendGate;
+
+          if (gateToCountdown != null) gateToCountdown.countDown();
         }
 
         @Override
@@ -196,6 +232,75 @@ public class ActivityHandlerTest {
     }
   }
 
+  /**
+   * This tests if consecutive Jupiter activities received by the host are sent as one batch to each
+   * remote user.
+   */
+  @Test
+  public void ServerSendBatchTest() {
+
+    setParameters(bob, alice, true);
+
+    IActivity jupiterActivity = null;
+
+    for (IActivity activity : activities)
+      if (activity instanceof JupiterActivity) jupiterActivity = activity;
+
+    batchSizes.clear();
+
+    // SUT-CALL
+    handler.handleIncomingActivities(
+        Arrays.asList(jupiterActivity, jupiterActivity, jupiterActivity));
+
+    assertEquals("Wrong number of batches", remoteUsersWithProjects.size(), batchSizes.size());
+
+    for (int batchSize : batchSizes) assertEquals("Wrong batch size", 3, batchSize);
+
+    assertTrue("Wrong targets", targets.containsAll(remoteUsersWithProjects));
+    assertFalse("User without Project received batch", targets.contains(dave));
+  }
+
+  /**
+   * This tests if the host still sends the activities of one document in order if they are
+   * transformed by the parallel transformation lanes.
+   */
+  @Test
+  public void ServerSendParallelTest() throws InterruptedException {
+
+    handler.stop();
+    handler = new ActivityHandler(sessionMock, callback, server, client, synchronizer, 2);
+    handler.start();
+
+    setParameters(bob, alice, true);
+
+    List<IActivity> documentActivities = new ArrayList<IActivity>();
+
+    for (IActivity activity : activities)
+      if (activity instanceof ViewportActivity
+          || activity instanceof TextSelectionActivity
+          || activity instanceof JupiterActivity) documentActivities.add(activity);
+
+    // one send per activity and one batch for each remote user with the project
+    sendGate = new CountDownLatch(documentActivities.size() - 1 + remoteUsersWithProjects.size());
+
+    // SUT-CALL
+    handler.handleIncomingActivities(documentActivities);
+
+    if (!sendGate.await(10, TimeUnit.SECONDS)) fail("activities were not sent");
+
+    List<IActivity> expectedActivities = new ArrayList<IActivity>();
+
+    for (IActivity activity : documentActivities) {
+      if (activity instanceof JupiterActivity) {
+        for (int i = 0; i < remoteUsersWithProjects.size(); i++) expectedActivities.add(activity);
+      } else {
+        expectedActivities.add(activity);
+      }
+    }
+
+    assertEquals("Wrong order of sent activities", expectedActivities, sentActivities);
+  }
+
   /**
    * This tests if the handleIncomingActivities-method at the host produces the right activities for
    * the localUser.
@@ -322,7 +427,7 @@ public class ActivityHandlerTest {
     synchronizer = new NonUISynchronizer();
 
     // Create SessionMock
-    ISarosSession sessionMock = EasyMock.createMock(ISarosSession.class);
+    sessionMock = EasyMock.createMock(ISarosSession.class);
     EasyMock.expect(sessionMock.getLocalUser()).andStubReturn(alice);
     EasyMock.expect(sessionMock.getHost()).andStubReturn(alice);
     // read host-Variable at runtime.
@@ -404,7 +509,7 @@ public class ActivityHandlerTest {
     }
 
     // create CDC-Mock
-    ConcurrentDocumentClient client = EasyMock.createNiceMock(ConcurrentDocumentClient.class);
+    client = EasyMock.createNiceMock(ConcurrentDocumentClient.class);
 
     // Mock transformToJupiter-method and transformFromJupiter-method
     for (IActivity activity : activities) {
@@ -428,20 +533,39 @@ public class ActivityHandlerTest {
             .andReturn(Collections.singletonList(activity));
       }
     }
+    EasyMock.expect(client.getAcknowledgements()).andStubReturn(Collections.<IActivity>emptyList());
     EasyMock.replay(client);
 
     // create CDS-Mock
-    ConcurrentDocumentServer server = EasyMock.createNiceMock(ConcurrentDocumentServer.class);
-    for (IActivity activity : activities) {
-      // just return activities as the server doesn't change the type of
-      // activities
-      EasyMock.expect(server.transformIncoming(activity))
-          .andReturn(Collections.singletonList(new QueueItem(participants, activity)));
-    }
+    server = EasyMock.createNiceMock(ConcurrentDocumentServer.class);
+    // just return activities as the server doesn't change the type of
+    // activities
+    server.transformIncoming(
+        EasyMock.<List<IActivity>>anyObject(), EasyMock.<Map<User, List<IActivity>>>anyObject());
+    EasyMock.expectLastCall()
+        .andAnswer(
+            new IAnswer<Object>() {
+              @SuppressWarnings("unchecked")
+              @Override
+              public Object answer() throws Throwable {
+                List<IActivity> incoming = (List<IActivity>) EasyMock.getCurrentArguments()[0];
+                Map<User, List<IActivity>> result =
+                    (Map<User, List<IActivity>>) EasyMock.getCurrentArguments()[1];
+
+                for (User user : participants) {
+                  if (!result.containsKey(user)) result.put(user, new ArrayList<IActivity>());
+
+                  result.get(user).addAll(incoming);
+                }
+                return null;
+              }
+            })
+        .anyTimes();
 
     EasyMock.replay(server);
 
     // create SUT
-    handler = new ActivityHandler(sessionMock, callback, server, client, synchronizer);
+    // transform all activities by the thread that received them
+    handler = new ActivityHandler(sessionMock, callback, server, client, synchronizer, 0);
   }
 }
@@ -4,7 +4,11 @@ import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -12,8 +16,11 @@ import java.util.List;
 import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import saros.activities.EditorActivity;
+import saros.activities.FileActivity;
 import saros.activities.FolderCreatedActivity;
 import saros.activities.FolderDeletedActivity;
 import saros.activities.IActivity;
@@ -21,6 +28,9 @@ import saros.activities.JupiterActivity;
 import saros.activities.NOPActivity;
 import saros.activities.SPath;
 import saros.activities.StartFollowingActivity;
+import saros.activities.TargetedFileActivity;
+import saros.activities.TextSelectionActivity;
+import saros.activities.ViewportActivity;
 import saros.concurrent.jupiter.internal.JupiterVectorTime;
 import saros.concurrent.jupiter.internal.text.NoOperation;
 import saros.filesystem.IPath;
@@ -40,6 +50,8 @@ public class ActivityQueuerTest {
   private static SPath BAR_PATH_SHARED_PROJECT;
   private static SPath PATH_TO_NOT_SHARED_PROJECT;
 
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
   private ActivityQueuer activityQueuer;
 
   @BeforeClass
@@ -319,6 +331,185 @@ public class ActivityQueuerTest {
     assertEquals("wrong (Editor)ADO was inserted", bobExpectedEditorADO, activities.get(2));
   }
 
+  @Test
+  public void testSupersededSelectionsAndViewportsAreDropped() {
+    final IActivity aliceSelection =
+        new TextSelectionActivity(ALICE, 0, 1, FOO_PATH_SHARED_PROJECT);
+    final IActivity bobSelection = new TextSelectionActivity(BOB, 0, 2, FOO_PATH_SHARED_PROJECT);
+    final IActivity aliceBarSelection =
+        new TextSelectionActivity(ALICE, 0, 3, BAR_PATH_SHARED_PROJECT);
+    final IActivity aliceViewport = new ViewportActivity(ALICE, 0, 10, FOO_PATH_SHARED_PROJECT);
+    final IActivity latestAliceSelection =
+        new TextSelectionActivity(ALICE, 5, 0, FOO_PATH_SHARED_PROJECT);
+    final IActivity latestAliceViewport =
+        new ViewportActivity(ALICE, 5, 10, FOO_PATH_SHARED_PROJECT);
+
+    activityQueuer.enableQueuing(SHARED_PROJECT);
+
+    activityQueuer.process(
+        Arrays.asList(
+            aliceSelection,
+            bobSelection,
+            aliceBarSelection,
+            aliceViewport,
+            latestAliceSelection,
+            latestAliceViewport));
+
+    activityQueuer.disableQueuing(SHARED_PROJECT);
+
+    assertListsAreEqual(
+        Arrays.asList(bobSelection, aliceBarSelection, latestAliceSelection, latestAliceViewport),
+        activityQueuer.process(Collections.<IActivity>emptyList()));
+  }
+
+  @Test
+  public void testFileContentsAreSpilledToDisk() {
+    activityQueuer = new ActivityQueuer(16);
+
+    final List<IActivity> activities = new ArrayList<IActivity>();
+
+    activities.add(
+        new FileActivity(
+            ALICE,
+            FileActivity.Type.CREATED,
+            FileActivity.Purpose.ACTIVITY,
+            FOO_PATH_SHARED_PROJECT,
+            null,
+            new byte[] {1, 2, 3, 4, 5, 6, 7, 8},
+            "UTF-8"));
+
+    activities.add(
+        new FileActivity(
+            ALICE,
+            FileActivity.Type.CREATED,
+            FileActivity.Purpose.ACTIVITY,
+            BAR_PATH_SHARED_PROJECT,
+            null,
+            new byte[] {9, 10, 11, 12, 13, 14, 15, 16, 17, 18},
+            null));
+
+    activities.add(
+        new TargetedFileActivity(
+            ALICE,
+            BOB,
+            FileActivity.Type.CREATED,
+            FOO_PATH_SHARED_PROJECT,
+            null,
+            new byte[] {19, 20, 21},
+            "ISO-8859-1",
+            FileActivity.Purpose.RECOVERY));
+
+    activityQueuer.enableQueuing(SHARED_PROJECT);
+
+    assertTrue(activityQueuer.process(activities).isEmpty());
+
+    activityQueuer.disableQueuing(SHARED_PROJECT);
+
+    final List<IActivity> flushed = activityQueuer.process(Collections.<IActivity>emptyList());
+
+    assertListsAreEqual(activities, flushed);
+
+    for (int i = 0; i < activities.size(); i++) {
+      final FileActivity expected = (FileActivity) activities.get(i);
+      final FileActivity actual = (FileActivity) flushed.get(i);
+
+      assertSame(expected.getClass(), actual.getClass());
+      assertEquals(expected.getEncoding(), actual.getEncoding());
+      assertTrue(Arrays.equals(expected.getContent(), actual.getContent()));
+    }
+
+    // the spilled activities were restored
+    assertFalse(activities.get(1) == flushed.get(1));
+  }
+
+  @Test
+  public void testUnreadableSpillFileFailsRestore() throws IOException {
+    final File spillDirectory = tmpFolder.newFolder();
+
+    activityQueuer = new ActivityQueuer(4, spillDirectory);
+
+    final IActivity spilled =
+        new FileActivity(
+            ALICE,
+            FileActivity.Type.CREATED,
+            FileActivity.Purpose.ACTIVITY,
+            FOO_PATH_SHARED_PROJECT,
+            null,
+            new byte[] {1, 2, 3, 4, 5, 6, 7, 8},
+            "UTF-8");
+
+    activityQueuer.enableQueuing(SHARED_PROJECT);
+    activityQueuer.process(Collections.singletonList(spilled));
+
+    final File[] spillFiles = spillDirectory.listFiles();
+
+    assertEquals(1, spillFiles.length);
+
+    final RandomAccessFile spillFile = new RandomAccessFile(spillFiles[0], "rw");
+
+    try {
+      spillFile.setLength(0);
+    } finally {
+      spillFile.close();
+    }
+
+    try {
+      activityQueuer.restoreQueuedActivities(SHARED_PROJECT);
+      fail("restoring a truncated spill file must fail");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testRestoredQueueKeepsFileContentsInMemory() throws IOException {
+    final File spillDirectory = tmpFolder.newFolder();
+
+    activityQueuer = new ActivityQueuer(4, spillDirectory);
+
+    final IActivity spilled =
+        new FileActivity(
+            ALICE,
+            FileActivity.Type.CREATED,
+            FileActivity.Purpose.ACTIVITY,
+            FOO_PATH_SHARED_PROJECT,
+            null,
+            new byte[] {1, 2, 3, 4, 5, 6, 7, 8},
+            "UTF-8");
+
+    final IActivity queuedAfterRestore =
+        new FileActivity(
+            ALICE,
+            FileActivity.Type.CREATED,
+            FileActivity.Purpose.ACTIVITY,
+            BAR_PATH_SHARED_PROJECT,
+            null,
+            new byte[] {9, 10, 11, 12, 13, 14, 15, 16},
+            "UTF-8");
+
+    activityQueuer.enableQueuing(SHARED_PROJECT);
+    activityQueuer.process(Collections.singletonList(spilled));
+    activityQueuer.restoreQueuedActivities(SHARED_PROJECT);
+
+    assertEquals("spill file was not deleted", 0, spillDirectory.listFiles().length);
+
+    activityQueuer.process(Collections.singletonList(queuedAfterRestore));
+
+    assertEquals("file content was written to disk", 0, spillDirectory.listFiles().length);
+
+    activityQueuer.disableQueuing(SHARED_PROJECT);
+
+    final List<IActivity> flushed = activityQueuer.process(Collections.<IActivity>emptyList());
+
+    assertListsAreEqual(Arrays.asList(spilled, queuedAfterRestore), flushed);
+
+    assertTrue(
+        Arrays.equals(
+            ((FileActivity) spilled).getContent(), ((FileActivity) flushed.get(0)).getContent()));
+
+    assertSame(queuedAfterRestore, flushed.get(1));
+  }
+
   private List<IActivity> createSomeActivities() {
     IActivity startFollowingActivity = new StartFollowingActivity(ALICE, BOB);
 
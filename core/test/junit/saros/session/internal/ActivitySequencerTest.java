@@ -7,19 +7,30 @@ import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
 import org.easymock.EasyMock;
+import org.jivesoftware.smack.packet.Packet;
 import org.jivesoftware.smack.packet.PacketExtension;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import saros.activities.IActivity;
 import saros.activities.NOPActivity;
+import saros.activities.SPath;
+import saros.activities.TextSelectionActivity;
+import saros.communication.extensions.ActivitiesExtension;
+import saros.filesystem.IPath;
+import saros.filesystem.IProject;
 import saros.net.IReceiver;
 import saros.net.ITransmitter;
+import saros.net.MulticastException;
 import saros.net.xmpp.JID;
 import saros.preferences.IPreferenceStore;
 import saros.preferences.PreferenceStore;
@@ -27,6 +38,7 @@ import saros.session.User;
 import saros.test.fakes.net.FakeConnectionFactory;
 import saros.test.fakes.net.FakeConnectionFactory.FakeConnectionFactoryResult;
 import saros.test.stubs.SarosSessionStub;
+import saros.versioning.VersionManager;
 
 public class ActivitySequencerTest {
 
@@ -103,8 +115,13 @@ public class ActivitySequencerTest {
   private ActivitySequencer aliceSequencer;
   private ActivitySequencer bobSequencer;
 
+  private VersionManager versionManager;
+
   @Before
   public void setUp() {
+    versionManager = EasyMock.createNiceMock(VersionManager.class);
+    EasyMock.replay(versionManager);
+
     sessionStubAlice = new SequencerSessionStub();
     sessionStubBob = new SequencerSessionStub();
 
@@ -138,7 +155,8 @@ public class ActivitySequencerTest {
   @Test(timeout = 30000)
   public void testStartAndStop() {
     ActivitySequencer sequencer =
-        new ActivitySequencer(sessionStubAlice, aliceTransmitter, aliceReceiver, null);
+        new ActivitySequencer(
+            sessionStubAlice, aliceTransmitter, aliceReceiver, null, versionManager);
 
     sequencer.start();
     sequencer.stop();
@@ -147,7 +165,8 @@ public class ActivitySequencerTest {
   @Test(timeout = 30000, expected = IllegalStateException.class)
   public void testMultipleStarts() {
     ActivitySequencer sequencer =
-        new ActivitySequencer(sessionStubAlice, aliceTransmitter, aliceReceiver, null);
+        new ActivitySequencer(
+            sessionStubAlice, aliceTransmitter, aliceReceiver, null, versionManager);
 
     for (int i = 0; i < Integer.MAX_VALUE; i++) sequencer.start();
   }
@@ -155,7 +174,8 @@ public class ActivitySequencerTest {
   @Test(timeout = 30000, expected = IllegalStateException.class)
   public void testStopWithoutStart() {
     ActivitySequencer sequencer =
-        new ActivitySequencer(sessionStubAlice, aliceTransmitter, aliceReceiver, null);
+        new ActivitySequencer(
+            sessionStubAlice, aliceTransmitter, aliceReceiver, null, versionManager);
 
     sequencer.stop();
   }
@@ -163,7 +183,8 @@ public class ActivitySequencerTest {
   @Test(timeout = 30000)
   public void testMultipleStops() {
     ActivitySequencer sequencer =
-        new ActivitySequencer(sessionStubAlice, aliceTransmitter, aliceReceiver, null);
+        new ActivitySequencer(
+            sessionStubAlice, aliceTransmitter, aliceReceiver, null, versionManager);
 
     sequencer.start();
     try {
@@ -194,7 +215,8 @@ public class ActivitySequencerTest {
     EasyMock.replay(brokenTransmitter);
 
     aliceSequencer =
-        new ActivitySequencer(sessionStubAlice, brokenTransmitter, aliceReceiver, null);
+        new ActivitySequencer(
+            sessionStubAlice, brokenTransmitter, aliceReceiver, null, versionManager);
 
     aliceSequencer.start();
 
@@ -218,9 +240,12 @@ public class ActivitySequencerTest {
 
     int activityCount = 1000;
 
-    aliceSequencer = new ActivitySequencer(sessionStubAlice, aliceTransmitter, aliceReceiver, null);
+    aliceSequencer =
+        new ActivitySequencer(
+            sessionStubAlice, aliceTransmitter, aliceReceiver, null, versionManager);
 
-    bobSequencer = new ActivitySequencer(sessionStubBob, bobTransmitter, bobReceiver, null);
+    bobSequencer =
+        new ActivitySequencer(sessionStubBob, bobTransmitter, bobReceiver, null, versionManager);
 
     aliceSequencer.start();
     bobSequencer.start();
@@ -251,12 +276,274 @@ public class ActivitySequencerTest {
     }
   }
 
+  @Test(timeout = 30000)
+  public void testConcurrentSendersKeepTheirOrder() throws Exception {
+
+    final int senderCount = 4;
+    final int activityCount = 500;
+
+    aliceSequencer =
+        new ActivitySequencer(
+            sessionStubAlice, aliceTransmitter, aliceReceiver, null, versionManager);
+
+    bobSequencer =
+        new ActivitySequencer(sessionStubBob, bobTransmitter, bobReceiver, null, versionManager);
+
+    aliceSequencer.start();
+    bobSequencer.start();
+
+    final User bobUserInAliceSession = new User(BOB_JID, false, false, 0, 0);
+    User aliceUserInBobSession = new User(ALICE_JID, true, false, 0, 0);
+
+    sessionStubAlice.addUser(bobUserInAliceSession, new PreferenceStore());
+    sessionStubBob.addUser(aliceUserInBobSession, new PreferenceStore());
+
+    aliceSequencer.registerUser(bobUserInAliceSession);
+    bobSequencer.registerUser(aliceUserInBobSession);
+
+    List<Thread> senders = new ArrayList<Thread>();
+
+    for (int s = 0; s < senderCount; s++) {
+      final int sender = s;
+
+      senders.add(
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  for (int i = 0; i < activityCount; i++)
+                    aliceSequencer.sendActivity(
+                        Collections.singletonList(bobUserInAliceSession),
+                        new NOPActivity(aliceUser, bobUserInAliceSession, sender * 10000 + i));
+                }
+              }));
+    }
+
+    for (Thread sender : senders) sender.start();
+
+    for (Thread sender : senders) sender.join();
+
+    aliceSequencer.flush(bobUserInAliceSession);
+
+    List<IActivity> receivedActivities = sessionStubBob.getReceivedActivities();
+
+    assertEquals(
+        "not all activies received", senderCount * activityCount, receivedActivities.size());
+
+    int[] next = new int[senderCount];
+
+    for (IActivity activity : receivedActivities) {
+      int id = ((NOPActivity) activity).getID();
+
+      assertEquals("activity is out of order", next[id / 10000]++, id % 10000);
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testBlockedRecipientDoesNotDelayOtherRecipients() throws Exception {
+
+    final JID carlJID = new JID("carl@test/Saros");
+    final CountDownLatch sendToCarl = new CountDownLatch(1);
+
+    final ITransmitter blockingTransmitter =
+        new ITransmitter() {
+          @Override
+          public void sendPacket(Packet packet) throws IOException {
+            aliceTransmitter.sendPacket(packet);
+          }
+
+          @Override
+          public void sendPacketExtension(JID jid, PacketExtension extension) {
+            aliceTransmitter.sendPacketExtension(jid, extension);
+          }
+
+          @Override
+          public void send(JID recipient, PacketExtension extension) throws IOException {
+            send(null, recipient, extension);
+          }
+
+          @Override
+          public void send(
+              String connectionID, Collection<JID> recipients, PacketExtension extension)
+              throws MulticastException {
+            aliceTransmitter.send(connectionID, recipients, extension);
+          }
+
+          @Override
+          public void send(String connectionID, JID recipient, PacketExtension extension)
+              throws IOException {
+
+            if (recipient.equals(carlJID)) {
+              try {
+                sendToCarl.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+
+              throw new IOException("carl is not connected");
+            }
+
+            aliceTransmitter.send(connectionID, recipient, extension);
+          }
+        };
+
+    aliceSequencer =
+        new ActivitySequencer(
+            sessionStubAlice, blockingTransmitter, aliceReceiver, null, versionManager);
+
+    bobSequencer =
+        new ActivitySequencer(sessionStubBob, bobTransmitter, bobReceiver, null, versionManager);
+
+    aliceSequencer.start();
+    bobSequencer.start();
+
+    User bobUserInAliceSession = new User(BOB_JID, false, false, 0, 0);
+    User carlUserInAliceSession = new User(carlJID, false, false, 0, 0);
+    User aliceUserInBobSession = new User(ALICE_JID, true, false, 0, 0);
+
+    sessionStubAlice.addUser(bobUserInAliceSession, new PreferenceStore());
+    sessionStubAlice.addUser(carlUserInAliceSession, new PreferenceStore());
+    sessionStubBob.addUser(aliceUserInBobSession, new PreferenceStore());
+
+    aliceSequencer.registerUser(bobUserInAliceSession);
+    aliceSequencer.registerUser(carlUserInAliceSession);
+    bobSequencer.registerUser(aliceUserInBobSession);
+
+    try {
+      for (int i = 0; i < 10; i++)
+        aliceSequencer.sendActivity(
+            Arrays.asList(carlUserInAliceSession, bobUserInAliceSession),
+            new NOPActivity(aliceUser, bobUserInAliceSession, i));
+
+      aliceSequencer.flush(bobUserInAliceSession);
+
+      assertEquals(
+          "activities for bob were delayed by carl",
+          10,
+          sessionStubBob.getReceivedActivities().size());
+
+    } finally {
+      sendToCarl.countDown();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testThrottledSelectionIsNotSentAfterNewerOne() throws Exception {
+
+    final Semaphore sendPermits = new Semaphore(0);
+    final Semaphore sendsEntered = new Semaphore(0);
+    final List<IActivity> sentActivities = Collections.synchronizedList(new ArrayList<IActivity>());
+
+    final ITransmitter recordingTransmitter =
+        new ITransmitter() {
+          @Override
+          public void sendPacket(Packet packet) {
+            // NOP
+          }
+
+          @Override
+          public void sendPacketExtension(JID jid, PacketExtension extension) {
+            // NOP
+          }
+
+          @Override
+          public void send(JID recipient, PacketExtension extension) throws IOException {
+            send(null, recipient, extension);
+          }
+
+          @Override
+          public void send(
+              String connectionID, Collection<JID> recipients, PacketExtension extension) {
+            // NOP
+          }
+
+          @Override
+          public void send(String connectionID, JID recipient, PacketExtension extension)
+              throws IOException {
+
+            // the list of the extension is cleared after sending
+            sentActivities.addAll(
+                ActivitiesExtension.PROVIDER.getPayload(extension).getActivities());
+
+            sendsEntered.release();
+            sendPermits.acquireUninterruptibly();
+          }
+        };
+
+    aliceSequencer =
+        new ActivitySequencer(
+            sessionStubAlice, recordingTransmitter, aliceReceiver, null, versionManager, 4);
+
+    aliceSequencer.start();
+
+    User bobUserInAliceSession = new User(BOB_JID, false, false, 0, 0);
+    sessionStubAlice.addUser(bobUserInAliceSession, new PreferenceStore());
+    aliceSequencer.registerUser(bobUserInAliceSession);
+
+    List<User> bob = Collections.singletonList(bobUserInAliceSession);
+
+    IProject project = EasyMock.createNiceMock(IProject.class);
+    IPath path = EasyMock.createNiceMock(IPath.class);
+    EasyMock.replay(project, path);
+
+    SPath editor = new SPath(project, path);
+
+    IActivity oldSelection = new TextSelectionActivity(aliceUser, 0, 1, editor);
+    IActivity newSelection = new TextSelectionActivity(aliceUser, 5, 1, editor);
+
+    try {
+      aliceSequencer.sendActivity(bob, new NOPActivity(aliceUser, bobUserInAliceSession, 0));
+      sendsEntered.acquire();
+
+      // 5 pending activities exceed the limit of 4, the selection is held back
+      for (int i = 1; i <= 4; i++)
+        aliceSequencer.sendActivity(bob, new NOPActivity(aliceUser, bobUserInAliceSession, i));
+
+      aliceSequencer.sendActivity(bob, oldSelection);
+
+      // 4 pending activities are between both thresholds
+      sendPermits.release();
+      sendsEntered.acquire();
+
+      aliceSequencer.sendActivity(bob, newSelection);
+
+      sendPermits.release(Integer.MAX_VALUE / 2);
+
+      while (!containsSelection(sentActivities)) Thread.sleep(10);
+
+      aliceSequencer.flush(bobUserInAliceSession);
+
+      List<IActivity> sentSelections = new ArrayList<IActivity>();
+
+      synchronized (sentActivities) {
+        for (IActivity activity : sentActivities)
+          if (activity instanceof TextSelectionActivity) sentSelections.add(activity);
+      }
+
+      assertEquals(Collections.singletonList(newSelection), sentSelections);
+    } finally {
+      sendPermits.release(Integer.MAX_VALUE / 2);
+    }
+  }
+
+  private static boolean containsSelection(List<IActivity> activities) {
+    synchronized (activities) {
+      for (IActivity activity : activities)
+        if (activity instanceof TextSelectionActivity) return true;
+    }
+
+    return false;
+  }
+
   @Test(timeout = 30000)
   public void testSendWithoutRegisteredUser() {
 
-    aliceSequencer = new ActivitySequencer(sessionStubAlice, aliceTransmitter, aliceReceiver, null);
+    aliceSequencer =
+        new ActivitySequencer(
+            sessionStubAlice, aliceTransmitter, aliceReceiver, null, versionManager);
 
-    bobSequencer = new ActivitySequencer(sessionStubBob, bobTransmitter, bobReceiver, null);
+    bobSequencer =
+        new ActivitySequencer(sessionStubBob, bobTransmitter, bobReceiver, null, versionManager);
 
     aliceSequencer.start();
     bobSequencer.start();
@@ -286,9 +573,12 @@ public class ActivitySequencerTest {
   @Test(timeout = 30000)
   public void testReceiveWithoutRegisteredUser() {
 
-    aliceSequencer = new ActivitySequencer(sessionStubAlice, aliceTransmitter, aliceReceiver, null);
+    aliceSequencer =
+        new ActivitySequencer(
+            sessionStubAlice, aliceTransmitter, aliceReceiver, null, versionManager);
 
-    bobSequencer = new ActivitySequencer(sessionStubBob, bobTransmitter, bobReceiver, null);
+    bobSequencer =
+        new ActivitySequencer(sessionStubBob, bobTransmitter, bobReceiver, null, versionManager);
 
     aliceSequencer.start();
     bobSequencer.start();
@@ -318,10 +608,13 @@ public class ActivitySequencerTest {
   @Test(timeout = 30000)
   public void testSendAndReceiveWithDifferendSessionIDs() {
 
-    aliceSequencer = new ActivitySequencer(sessionStubAlice, aliceTransmitter, aliceReceiver, null);
+    aliceSequencer =
+        new ActivitySequencer(
+            sessionStubAlice, aliceTransmitter, aliceReceiver, null, versionManager);
 
     sessionStubBob.setID("4711");
-    bobSequencer = new ActivitySequencer(sessionStubBob, bobTransmitter, bobReceiver, null);
+    bobSequencer =
+        new ActivitySequencer(sessionStubBob, bobTransmitter, bobReceiver, null, versionManager);
 
     aliceSequencer.start();
     bobSequencer.start();
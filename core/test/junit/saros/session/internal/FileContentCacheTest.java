@@ -0,0 +1,142 @@
+package saros.session.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import saros.activities.FileActivity;
+import saros.activities.FileActivity.Purpose;
+import saros.activities.FileActivity.Type;
+import saros.activities.FileDeltaActivity;
+import saros.activities.IActivity;
+import saros.activities.SPath;
+import saros.activities.TargetedFileActivity;
+import saros.filesystem.IPath;
+import saros.filesystem.IProject;
+import saros.net.xmpp.JID;
+import saros.session.User;
+
+public class FileContentCacheTest {
+
+  private static final Random RANDOM = new Random(4711);
+
+  private final User alice = new User(new JID("alice@junit/Saros"), true, true, 0, 0);
+  private final User bob = new User(new JID("bob@junit/Saros"), false, false, 0, 0);
+
+  private FileContentCache sender;
+  private FileContentCache receiver;
+
+  private SPath path;
+  private SPath otherPath;
+
+  @Before
+  public void setUp() {
+    IProject project = EasyMock.createNiceMock(IProject.class);
+    IPath a = EasyMock.createNiceMock(IPath.class);
+    IPath b = EasyMock.createNiceMock(IPath.class);
+
+    EasyMock.replay(project, a, b);
+
+    path = new SPath(project, a);
+    otherPath = new SPath(project, b);
+
+    sender = new FileContentCache();
+    receiver = new FileContentCache();
+  }
+
+  @Test
+  public void testSecondTransmissionIsSentAsDelta() throws Exception {
+    byte[] content = createContent(512 * 1024);
+
+    assertTransmitted(created(path, content), FileActivity.class);
+
+    content = content.clone();
+    content[4711] ^= 0x55;
+
+    FileDeltaActivity delta =
+        (FileDeltaActivity) assertTransmitted(created(path, content), FileDeltaActivity.class);
+
+    assertTrue(delta.getDelta().length < 4 * 1024);
+  }
+
+  @Test
+  public void testTargetedRecoveryIsRestored() throws Exception {
+    byte[] content = createContent(64 * 1024);
+
+    assertTransmitted(created(path, content), FileActivity.class);
+
+    content = content.clone();
+    content[0] ^= 0x55;
+
+    assertTransmitted(
+        new TargetedFileActivity(
+            alice, bob, Type.CREATED, path, null, content, "UTF-8", Purpose.RECOVERY),
+        FileDeltaActivity.class);
+  }
+
+  @Test
+  public void testMovedAndRemovedFiles() throws Exception {
+    byte[] content = createContent(64 * 1024);
+
+    assertTransmitted(created(path, content), FileActivity.class);
+    assertTransmitted(
+        new FileActivity(alice, Type.MOVED, Purpose.ACTIVITY, otherPath, path, null, null),
+        FileActivity.class);
+
+    // the content was moved along with the file
+    assertTransmitted(created(path, content), FileActivity.class);
+    assertTransmitted(created(otherPath, content), FileDeltaActivity.class);
+
+    assertTransmitted(
+        new FileActivity(alice, Type.REMOVED, Purpose.ACTIVITY, otherPath, null, null, null),
+        FileActivity.class);
+
+    assertTransmitted(created(otherPath, content), FileActivity.class);
+  }
+
+  @Test
+  public void testUnrelatedContentIsSentAsIs() throws Exception {
+    assertTransmitted(created(path, createContent(64 * 1024)), FileActivity.class);
+    assertTransmitted(created(path, createContent(64 * 1024)), FileActivity.class);
+  }
+
+  @Test(expected = IOException.class)
+  public void testDeltaWithoutBase() throws Exception {
+    byte[] content = createContent(64 * 1024);
+
+    sender.encode(created(path, content), true);
+
+    receiver.decode(sender.encode(created(path, content), true));
+  }
+
+  private IActivity assertTransmitted(FileActivity activity, Class<?> expectedType)
+      throws IOException {
+
+    IActivity encoded = sender.encode(activity, true);
+
+    assertSame(expectedType, encoded.getClass());
+
+    IActivity decoded = receiver.decode(encoded);
+
+    assertEquals(activity, decoded);
+    assertArrayEquals(activity.getContent(), ((FileActivity) decoded).getContent());
+
+    return encoded;
+  }
+
+  private FileActivity created(SPath path, byte[] content) {
+    return new FileActivity(alice, Type.CREATED, Purpose.ACTIVITY, path, null, content, "UTF-8");
+  }
+
+  private static byte[] createContent(int length) {
+    byte[] content = new byte[length];
+    RANDOM.nextBytes(content);
+    return content;
+  }
+}
@@ -1,6 +1,7 @@
 package saros.test.fakes.net;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import org.jivesoftware.smack.packet.Message;
@@ -8,6 +9,7 @@ import org.jivesoftware.smack.packet.Packet;
 import org.jivesoftware.smack.packet.PacketExtension;
 import saros.net.IReceiver;
 import saros.net.ITransmitter;
+import saros.net.MulticastException;
 import saros.net.xmpp.JID;
 
 class FakePacketTransmitter implements ITransmitter {
@@ -48,6 +50,23 @@ class FakePacketTransmitter implements ITransmitter {
     sendPacketExtension(recipient, extension);
   }
 
+  @Override
+  public void send(String connectionID, Collection<JID> recipients, PacketExtension extension)
+      throws MulticastException {
+
+    final Map<JID, IOException> failures = new HashMap<JID, IOException>();
+
+    for (JID recipient : recipients) {
+      try {
+        sendPacketExtension(recipient, extension);
+      } catch (RuntimeException e) {
+        failures.put(recipient, new IOException(e));
+      }
+    }
+
+    if (!failures.isEmpty()) throw new MulticastException(failures);
+  }
+
   @Override
   public void send(JID recipient, PacketExtension extension) throws IOException {
     sendPacketExtension(recipient, extension);
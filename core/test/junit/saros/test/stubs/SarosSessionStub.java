@@ -200,6 +200,11 @@ public class SarosSessionStub implements ISarosSession {
     throw new RuntimeException("Unexpected call to Stub");
   }
 
+  @Override
+  public void restoreQueuedActivities(IProject project) {
+    throw new RuntimeException("Unexpected call to Stub");
+  }
+
   @Override
   public void disableQueuing(IProject project) {
     throw new RuntimeException("Unexpected call to Stub");
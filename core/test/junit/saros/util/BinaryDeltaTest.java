@@ -0,0 +1,77 @@
+package saros.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class BinaryDeltaTest {
+
+  private static final Random RANDOM = new Random(4711);
+
+  @Test
+  public void testSmallChangeProducesSmallDelta() throws Exception {
+    byte[] base = createContent(2 * 1024 * 1024);
+    byte[] target = base.clone();
+
+    target[1000000] ^= 0x55;
+
+    byte[] delta = assertRoundTrip(base, target);
+
+    assertTrue("delta is too large: " + delta.length, delta.length < 4 * 1024);
+  }
+
+  @Test
+  public void testInsertedAndDeletedRanges() throws Exception {
+    byte[] base = createContent(256 * 1024);
+
+    byte[] inserted = createContent(777);
+    byte[] target = new byte[base.length + inserted.length - 5000];
+
+    // insert in the middle and delete from the end
+    System.arraycopy(base, 0, target, 0, 100000);
+    System.arraycopy(inserted, 0, target, 100000, inserted.length);
+    System.arraycopy(base, 100000, target, 100000 + inserted.length, base.length - 105000);
+
+    byte[] delta = assertRoundTrip(base, target);
+
+    assertTrue("delta is too large: " + delta.length, delta.length < 4 * 1024);
+  }
+
+  @Test
+  public void testUnrelatedAndEmptyContents() throws Exception {
+    byte[] content = createContent(64 * 1024);
+
+    assertRoundTrip(createContent(64 * 1024), content);
+    assertRoundTrip(new byte[0], content);
+    assertRoundTrip(content, new byte[0]);
+    assertRoundTrip(new byte[0], new byte[0]);
+    assertRoundTrip(content, Arrays.copyOf(content, 100));
+  }
+
+  @Test(expected = IOException.class)
+  public void testApplyToWrongBase() throws Exception {
+    byte[] base = createContent(64 * 1024);
+
+    byte[] delta = BinaryDelta.create(base, base);
+
+    BinaryDelta.apply(Arrays.copyOf(base, 1024), delta);
+  }
+
+  private static byte[] assertRoundTrip(byte[] base, byte[] target) throws IOException {
+    byte[] delta = BinaryDelta.create(base, target);
+
+    assertArrayEquals(target, BinaryDelta.apply(base, delta));
+
+    return delta;
+  }
+
+  private static byte[] createContent(int length) {
+    byte[] content = new byte[length];
+    RANDOM.nextBytes(content);
+    return content;
+  }
+}
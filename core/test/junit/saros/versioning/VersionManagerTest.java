@@ -22,8 +22,11 @@
 package saros.versioning;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Properties;
+import org.jivesoftware.smack.packet.Presence;
 import org.junit.Before;
 import org.junit.Test;
 import saros.net.IReceiver;
@@ -171,4 +174,43 @@ public class VersionManagerTest {
 
     assertEquals(resultLocal.getCompatibility(), resultRemote.getCompatibility());
   }
+
+  @Test
+  public void testFeaturesAreExchanged() {
+    Version version = Version.parseVersion("1.1.1.r1");
+
+    init(version, version);
+
+    for (Feature feature : Feature.values()) {
+      assertFalse(versionManagerLocal.isFeatureSupported(bobJID, feature));
+      assertFalse(versionManagerRemote.isFeatureSupported(aliceJID, feature));
+    }
+
+    versionManagerLocal.determineVersionCompatibility(bobJID);
+
+    for (Feature feature : Feature.values()) {
+      assertTrue(versionManagerLocal.isFeatureSupported(bobJID, feature));
+      assertTrue(versionManagerRemote.isFeatureSupported(aliceJID, feature));
+      assertFalse(versionManagerLocal.isFeatureSupported(new JID("carl@carl.com/Saros"), feature));
+    }
+  }
+
+  @Test
+  public void testFeaturesAreRemovedIfPeerGoesOffline() {
+    Version version = Version.parseVersion("1.1.1.r1");
+
+    init(version, version);
+
+    versionManagerLocal.determineVersionCompatibility(bobJID);
+
+    Presence presence = new Presence(Presence.Type.unavailable);
+    presence.setFrom(bobJID.toString());
+    aliceReceiver.processPacket(presence);
+
+    for (Feature feature : Feature.values())
+      assertFalse(versionManagerLocal.isFeatureSupported(bobJID, feature));
+
+    assertFalse(versionManagerLocal.isBinaryActivityCodecSupported(bobJID));
+    assertTrue(versionManagerRemote.isFeatureSupported(aliceJID, Feature.ARCHIVE_STREAM));
+  }
 }
@@ -1,5 +1,6 @@
 package saros;
 
+import java.io.File;
 import java.util.Arrays;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.Platform;
@@ -53,6 +54,14 @@ import saros.ui.eventhandler.XMPPAuthorizationHandler;
  */
 public class SarosEclipseContextFactory extends AbstractContextFactory {
 
+  /** Whether checksums are kept across restarts, see {@link FileSystemChecksumCache} */
+  private static final boolean PERSISTENT_CHECKSUM_CACHE =
+      Boolean.parseBoolean(
+          System.getProperty(
+              "saros.filesystem.PERSISTENT_CHECKSUM_CACHE", Boolean.TRUE.toString()));
+
+  private static final String CHECKSUM_CACHE_FILE = "checksums.dat";
+
   private final Saros saros;
 
   /**
@@ -86,7 +95,8 @@ public class SarosEclipseContextFactory extends AbstractContextFactory {
        * available after we added all our context stuff or vice versa
        */
       Component.create(
-          IChecksumCache.class, new FileSystemChecksumCache(new FileContentNotifierBridge())),
+          IChecksumCache.class,
+          new FileSystemChecksumCache(new FileContentNotifierBridge(), getChecksumCacheStorage())),
       Component.create(IWorkspace.class, new EclipseWorkspaceImpl(ResourcesPlugin.getWorkspace())),
       Component.create(
           IWorkspaceRoot.class,
@@ -110,6 +120,16 @@ public class SarosEclipseContextFactory extends AbstractContextFactory {
     };
   }
 
+  /**
+   * Returns the file the checksum cache is persisted in so that checksums of unchanged files do not
+   * have to be recalculated after a restart, or <code>null</code> if persisting is disabled.
+   */
+  private File getChecksumCacheStorage() {
+    if (!PERSISTENT_CHECKSUM_CACHE) return null;
+
+    return new File(saros.getStateLocation().toFile(), CHECKSUM_CACHE_FILE);
+  }
+
   public SarosEclipseContextFactory(Saros saros) {
     this.saros = saros;
   }
@@ -4,19 +4,25 @@ import java.io.IOException;
 import java.io.InputStream;
 import org.apache.commons.io.IOUtils;
 import saros.activities.TextEditActivity;
+import saros.editor.text.TextBuffer;
 import saros.filesystem.IFile;
 
 /** Representation of an open file on the server. Used by {@link ServerEditorManager}. */
 public class Editor {
 
   private IFile file;
-  private GapBuffer content;
+  private TextBuffer content;
+
+  private boolean dirty;
+  private boolean discarded;
+  private long dirtySince;
+  private long lastModification;
 
   public Editor(IFile file) throws IOException {
     this.file = file;
 
     try (InputStream input = file.getContents()) {
-      content = new GapBuffer(IOUtils.toString(input));
+      content = new TextBuffer(IOUtils.toString(input));
     }
   }
 
@@ -25,20 +31,92 @@ public class Editor {
    *
    * @return associated file
    */
-  public IFile getFile() {
+  public synchronized IFile getFile() {
     return file;
   }
 
+  /**
+   * Associates this editor with another file, e.g because the file was moved. The content of the
+   * editor is not changed.
+   *
+   * @param file the new file of this editor
+   */
+  synchronized void setFile(IFile file) {
+    this.file = file;
+  }
+
   /**
    * Returns the editor's text content. Depending on whether any text edits have been applied, the
    * content may differ from that of the associated file on disk.
    *
    * @return editor's content
    */
-  public String getContent() {
+  public synchronized String getContent() {
     return content.toString();
   }
 
+  /**
+   * Returns the given range of the editor's text content.
+   *
+   * @param offset the offset of the first character
+   * @param length the number of characters
+   * @return the text of the range
+   * @throws IndexOutOfBoundsException if the range is not within the editor's content
+   */
+  public synchronized String getContent(int offset, int length) {
+    return content.getText(offset, length);
+  }
+
+  /**
+   * Returns the length of the editor's text content.
+   *
+   * @return length of the content
+   */
+  public synchronized int getContentLength() {
+    return content.length();
+  }
+
+  /**
+   * Returns the hash code of the editor's text content without copying it, i.e the same value as
+   * <code>getContent().hashCode()</code>.
+   *
+   * @return hash code of the content
+   */
+  public synchronized int getContentHash() {
+    return content.getHash();
+  }
+
+  /**
+   * Returns the number of lines of the editor's text content.
+   *
+   * @return number of lines
+   */
+  public synchronized int getLineCount() {
+    return content.getLineCount();
+  }
+
+  /**
+   * Returns the offset of the first character of the given line.
+   *
+   * @param line the zero based line number
+   * @return the offset of the line
+   * @throws IndexOutOfBoundsException if the line does not exist
+   */
+  public synchronized int getLineOffset(int line) {
+    return content.getLineOffset(line);
+  }
+
+  /**
+   * Returns the line containing the given offset.
+   *
+   * @param offset the offset
+   * @return the zero based line number
+   * @throws IndexOutOfBoundsException if the offset is not within the editor's content
+   */
+  public synchronized int getLineOfOffset(int offset) {
+    return content.getLineOfOffset(offset);
+  }
+
   /**
    * Applies an editing operation to the editor's content. For performance reasons, the change is
    * not automatically saved to disk; this allows multiple edits to be collected and then written in
@@ -46,23 +124,70 @@ public class Editor {
    *
    * @param edit the text edit operation to apply
    */
-  public void applyTextEdit(TextEditActivity edit) {
+  public synchronized void applyTextEdit(TextEditActivity edit) {
     if (edit.getReplacedText().length() > 0) {
       content.delete(edit.getOffset(), edit.getReplacedText().length());
     }
     if (edit.getText().length() > 0) {
       content.insert(edit.getOffset(), edit.getText());
     }
+
+    lastModification = System.currentTimeMillis();
+
+    if (!dirty) {
+      dirty = true;
+      dirtySince = lastModification;
+    }
+  }
+
+  /**
+   * Returns whether the editor's content contains changes that are not saved yet.
+   *
+   * @return <code>true</code> if the editor is dirty, <code>false</code> otherwise
+   */
+  public synchronized boolean isDirty() {
+    return dirty;
+  }
+
+  /**
+   * Returns the time the editor became dirty.
+   *
+   * @return the time in milliseconds or <code>0</code> if the editor is not dirty
+   */
+  public synchronized long getDirtySince() {
+    return dirty ? dirtySince : 0;
+  }
+
+  /**
+   * Returns the time the last text edit was applied.
+   *
+   * @return the time in milliseconds or <code>0</code> if no text edit was applied yet
+   */
+  public synchronized long getLastModification() {
+    return lastModification;
   }
 
   /**
    * Writes the editor's current content to the associated file on disk. This operation is
    * guaranteed to be atomic - it either succeeds completely or doesn't change the workspace at all
-   * (in case an exception is thrown).
+   * (in case an exception is thrown). The editor is no longer dirty afterwards. A {@linkplain
+   * #discard() discarded} editor is not written.
    *
    * @throws IOException if writing the file fails
    */
-  public void save() throws IOException {
+  public synchronized void save() throws IOException {
+    if (discarded) return;
+
     getFile().setContents(IOUtils.toInputStream(content.toString()), true, true);
+    dirty = false;
+  }
+
+  /**
+   * Marks the editor as discarded, e.g because its file was deleted or its content was replaced.
+   * The editor is never saved afterwards, even if a save was already scheduled.
+   */
+  synchronized void discard() {
+    discarded = true;
+    dirty = false;
   }
 }
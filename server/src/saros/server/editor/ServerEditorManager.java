@@ -3,13 +3,19 @@ package saros.server.editor;
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.collections4.map.LRUMap;
 import org.apache.log4j.Logger;
+import org.picocontainer.Startable;
 import saros.activities.SPath;
 import saros.activities.TextEditActivity;
 import saros.editor.IEditorManager;
@@ -20,14 +26,102 @@ import saros.filesystem.IFile;
 import saros.filesystem.IProject;
 import saros.filesystem.IResource;
 import saros.session.User;
+import saros.util.NamedThreadFactory;
+import saros.util.ThreadUtils;
 
-/** Server implementation of the {@link IEditorManager} interface */
-public class ServerEditorManager implements IEditorManager {
+/**
+ * Server implementation of the {@link IEditorManager} interface.
+ *
+ * <p>Text edits are not written to disk immediately. Dirty editors are saved once they were idle
+ * for {@link #SAVE_IDLE_DELAY} milliseconds, at the latest {@link #SAVE_INTERVAL} milliseconds
+ * after they became dirty, before they are evicted from the cache of open editors, when {@link
+ * #saveEditors(IProject)} is called, and when the session ends.
+ */
+public class ServerEditorManager implements IEditorManager, Startable {
 
   private static final Logger LOG = Logger.getLogger(ServerEditorManager.class);
 
-  private Map<SPath, Editor> openEditors = Collections.synchronizedMap(new LRUMap(10));
-  private List<ISharedEditorListener> listeners = new CopyOnWriteArrayList<>();
+  /**
+   * Maximum time in milliseconds an editor may stay dirty. A value less than <code>1</code> saves
+   * every text edit immediately.
+   */
+  private static final long SAVE_INTERVAL =
+      Long.getLong("saros.server.editor.SAVE_INTERVAL", 5000L);
+
+  /** Time in milliseconds without text edits after which a dirty editor is saved. */
+  private static final long SAVE_IDLE_DELAY =
+      Long.getLong("saros.server.editor.SAVE_IDLE_DELAY", 1000L);
+
+  private static final int MAX_CACHED_EDITORS = 10;
+
+  private final Map<SPath, Editor> openEditors =
+      Collections.synchronizedMap(new EditorCache(MAX_CACHED_EDITORS));
+
+  private final List<ISharedEditorListener> listeners = new CopyOnWriteArrayList<>();
+
+  private ScheduledExecutorService saveExecutor;
+
+  /**
+   * LRU cache of the open editors. Dirty editors are saved before they are evicted. If saving fails
+   * the editor is kept and the cache grows beyond its maximum size rather than losing content.
+   */
+  private static final class EditorCache extends LRUMap<SPath, Editor> {
+
+    private static final long serialVersionUID = 1L;
+
+    private EditorCache(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected boolean removeLRU(LinkEntry<SPath, Editor> entry) {
+      return save(entry.getKey(), entry.getValue());
+    }
+  }
+
+  @Override
+  public void start() {
+    if (SAVE_INTERVAL <= 0) return;
+
+    final long period = Math.max(1, Math.min(SAVE_INTERVAL, SAVE_IDLE_DELAY));
+
+    saveExecutor =
+        Executors.newSingleThreadScheduledExecutor(
+            new NamedThreadFactory("dpp-server-editor-saver", false));
+
+    saveExecutor.scheduleWithFixedDelay(
+        ThreadUtils.wrapSafe(
+            LOG,
+            new Runnable() {
+              @Override
+              public void run() {
+                saveExpiredEditors();
+              }
+            }),
+        period,
+        period,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() {
+    if (saveExecutor != null) {
+      saveExecutor.shutdown();
+
+      try {
+        if (!saveExecutor.awaitTermination(10, TimeUnit.SECONDS))
+          LOG.warn("editor saver is still running");
+      } catch (InterruptedException e) {
+        LOG.warn("interrupted while waiting for the editor saver to terminate");
+        Thread.currentThread().interrupt();
+      }
+
+      saveExecutor = null;
+    }
+
+    for (Entry<SPath, Editor> entry : getOpenEditorEntries())
+      save(entry.getKey(), entry.getValue());
+  }
 
   @Override
   public void openEditor(SPath path, boolean activate) {
@@ -54,9 +148,21 @@ public class ServerEditorManager implements IEditorManager {
 
   @Override
   public void saveEditors(IProject project) {
-    // do nothing?
-    // we do not keep dirty editors,
-    // because the LRUMap might close Editors at any time
+    for (Entry<SPath, Editor> entry : getOpenEditorEntries()) {
+      if (project == null || project.equals(entry.getKey().getProject()))
+        save(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Saves the editor of the given path if it is open and dirty.
+   *
+   * @param path the path of the editor to save
+   */
+  public void saveEditor(SPath path) {
+    Editor editor = openEditors.get(path);
+
+    if (editor != null) save(path, editor);
   }
 
   @Override
@@ -116,7 +222,9 @@ public class ServerEditorManager implements IEditorManager {
     try {
       Editor editor = getOrCreateEditor(path);
       editor.applyTextEdit(activity);
-      editor.save();
+
+      if (SAVE_INTERVAL <= 0) editor.save();
+
       for (ISharedEditorListener listener : listeners) {
         listener.textEdited(activity);
       }
@@ -133,16 +241,44 @@ public class ServerEditorManager implements IEditorManager {
    */
   public void updateMapping(SPath oldPath, SPath newPath) {
     Editor oldEditor = openEditors.remove(oldPath);
+
+    if (oldEditor == null) return;
+
+    oldEditor.setFile(newPath.getFile());
     openEditors.put(newPath, oldEditor);
   }
 
+  /**
+   * Closes the editor of the given path. Unsaved changes are saved before.
+   *
+   * @param path the path of the editor to close
+   */
   @Override
   public void closeEditor(SPath path) {
+    Editor editor = openEditors.get(path);
+
+    if (editor == null) return;
+
+    save(path, editor);
     openEditors.remove(path);
   }
 
   /**
-   * Close all editors of files in a specific folder. Helpful if a folder gets deleted.
+   * Closes the editor of the given path <b>without</b> saving it. Should be used if the file on
+   * disk is deleted or its content is replaced.
+   *
+   * @param path the path of the editor to discard
+   */
+  public void discardEditor(SPath path) {
+    Editor editor = openEditors.remove(path);
+
+    // a concurrent save from a copy of the open editors must not write it anymore
+    if (editor != null) editor.discard();
+  }
+
+  /**
+   * Close all editors of files in a specific folder <b>without</b> saving them. Helpful if a folder
+   * gets deleted.
    *
    * @param folder path of the folder
    */
@@ -156,8 +292,56 @@ public class ServerEditorManager implements IEditorManager {
         }
       }
       for (SPath path : invalidKeys) {
-        closeEditor(path);
+        discardEditor(path);
       }
     }
   }
+
+  /** Saves all dirty editors that are either idle or dirty for too long. */
+  private void saveExpiredEditors() {
+    saveExpiredEditors(getOpenEditorEntries(), System.currentTimeMillis());
+  }
+
+  /**
+   * Saves the given editors if they are dirty and at the given time either idle or dirty for too
+   * long.
+   */
+  void saveExpiredEditors(Set<Entry<SPath, Editor>> entries, long now) {
+    for (Entry<SPath, Editor> entry : entries) {
+      Editor editor = entry.getValue();
+
+      if (!editor.isDirty()) continue;
+
+      if (now - editor.getLastModification() >= SAVE_IDLE_DELAY
+          || now - editor.getDirtySince() >= SAVE_INTERVAL) save(entry.getKey(), editor);
+    }
+  }
+
+  /*
+   * the entries of a LRUMap are reused on eviction, so they must not be
+   * accessed outside of the map lock
+   */
+  Set<Entry<SPath, Editor>> getOpenEditorEntries() {
+    synchronized (openEditors) {
+      return new HashMap<>(openEditors).entrySet();
+    }
+  }
+
+  /**
+   * Saves the given editor if it is dirty.
+   *
+   * @return <code>true</code> if the editor contains no unsaved changes anymore, <code>false</code>
+   *     otherwise
+   */
+  private static boolean save(SPath path, Editor editor) {
+    if (!editor.isDirty()) return true;
+
+    try {
+      editor.save();
+      return true;
+    } catch (IOException e) {
+      LOG.error("Could not save editor for " + path, e);
+      return false;
+    }
+  }
 }
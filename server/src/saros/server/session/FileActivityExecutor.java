@@ -24,7 +24,7 @@ public class FileActivityExecutor extends AbstractActivityConsumer implements St
    * Creates a FileActivityExecutor.
    *
    * @param session the current session
-   * @param editorManager the editor manager to update the file mapping on a file move
+   * @param editorManager the editor manager to update the open editors on file operations
    */
   public FileActivityExecutor(ISarosSession session, ServerEditorManager editorManager) {
 
@@ -65,6 +65,9 @@ public class FileActivityExecutor extends AbstractActivityConsumer implements St
   }
 
   private void executeFileCreation(FileActivity activity) throws IOException {
+    // an open editor would overwrite the new content on its next save
+    editorManager.discardEditor(activity.getPath());
+
     IFile file = activity.getPath().getFile();
     file.create(new ByteArrayInputStream(activity.getContent()), true);
   }
@@ -74,10 +77,13 @@ public class FileActivityExecutor extends AbstractActivityConsumer implements St
     IFile oldFile = oldPath.getFile();
     SPath newPath = activity.getPath();
     IFile newFile = newPath.getFile();
+    editorManager.saveEditor(oldPath);
     oldFile.move(activity.getPath().getFullPath(), true);
     byte[] content = activity.getContent();
     if (content != null) {
+      editorManager.discardEditor(oldPath);
       newFile.setContents(new ByteArrayInputStream(content), true, true);
+      return;
     }
     // only update if all previous operations are successful
     editorManager.updateMapping(oldPath, newPath);
@@ -86,7 +92,7 @@ public class FileActivityExecutor extends AbstractActivityConsumer implements St
   private void executeFileRemoval(FileActivity activity) throws IOException {
     SPath path = activity.getPath();
     IFile file = path.getFile();
-    editorManager.closeEditor(path);
+    editorManager.discardEditor(path);
     file.delete(IResource.NONE);
   }
 }
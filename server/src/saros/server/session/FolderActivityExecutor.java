@@ -70,7 +70,8 @@ public class FolderActivityExecutor extends AbstractActivityConsumer implements
 
     SPath path = activity.getPath();
     IFolder folder = path.getFolder();
-    folder.delete(IResource.NONE);
+    // close before deletion, otherwise pending saves would fail
     editorManager.closeEditorsInFolder(path);
+    folder.delete(IResource.NONE);
   }
 }
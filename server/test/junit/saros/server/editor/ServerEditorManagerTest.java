@@ -0,0 +1,164 @@
+package saros.server.editor;
+
+import static org.easymock.EasyMock.anyBoolean;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import org.apache.commons.io.IOUtils;
+import org.easymock.EasyMock;
+import org.easymock.EasyMockSupport;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import saros.activities.SPath;
+import saros.activities.TextEditActivity;
+import saros.filesystem.IFile;
+import saros.filesystem.IPath;
+import saros.filesystem.IProject;
+import saros.net.xmpp.JID;
+import saros.session.User;
+
+public class ServerEditorManagerTest extends EasyMockSupport {
+
+  private ServerEditorManager editorManager;
+  private IProject project;
+  private User user;
+
+  private final List<String> savedContents = new ArrayList<String>();
+
+  @Before
+  public void setUp() {
+    project = createMock(IProject.class);
+    user = new User(new JID("alice@saros.org/Saros"), true, true, 0, 0);
+    editorManager = new ServerEditorManager();
+  }
+
+  @Test
+  public void textEditsAreNotSavedImmediately() throws Exception {
+    SPath path = createFile("Hello");
+
+    replayAll();
+
+    editorManager.applyTextEdit(new TextEditActivity(user, 5, " World", "", path));
+    editorManager.applyTextEdit(new TextEditActivity(user, 11, "!", "", path));
+
+    assertEquals("Hello World!", editorManager.getContent(path));
+    assertTrue(savedContents.isEmpty());
+
+    editorManager.saveEditors(project);
+
+    assertEquals(1, savedContents.size());
+    assertEquals("Hello World!", savedContents.get(0));
+
+    editorManager.saveEditors(project);
+
+    assertEquals("clean editor was saved again", 1, savedContents.size());
+  }
+
+  @Test
+  public void dirtyEditorIsSavedOnEviction() throws Exception {
+    SPath dirtyPath = createFile("foo");
+
+    List<SPath> otherPaths = new ArrayList<SPath>();
+
+    for (int i = 0; i < 10; i++) otherPaths.add(createFile("bar"));
+
+    replayAll();
+
+    editorManager.applyTextEdit(new TextEditActivity(user, 0, "x", "", dirtyPath));
+
+    for (SPath path : otherPaths) editorManager.openEditor(path, false);
+
+    assertEquals(1, savedContents.size());
+    assertEquals("xfoo", savedContents.get(0));
+  }
+
+  @Test
+  public void dirtyEditorsAreSavedOnStop() throws Exception {
+    SPath path = createFile("foo");
+
+    replayAll();
+
+    editorManager.start();
+    editorManager.applyTextEdit(new TextEditActivity(user, 0, "", "f", path));
+    editorManager.stop();
+
+    assertEquals(1, savedContents.size());
+    assertEquals("oo", savedContents.get(0));
+  }
+
+  @Test
+  public void discardedEditorIsNotSaved() throws Exception {
+    SPath path = createFile("foo");
+
+    replayAll();
+
+    editorManager.applyTextEdit(new TextEditActivity(user, 0, "bar", "", path));
+    editorManager.discardEditor(path);
+    editorManager.saveEditors(project);
+
+    assertTrue(savedContents.isEmpty());
+  }
+
+  @Test
+  public void editorDiscardedDuringExpiryPassIsNotSaved() throws Exception {
+    SPath path = createFile("foo");
+
+    replayAll();
+
+    editorManager.applyTextEdit(new TextEditActivity(user, 0, "bar", "", path));
+
+    // the pass works on a copy taken before the file is deleted or replaced
+    Set<Entry<SPath, Editor>> entries = editorManager.getOpenEditorEntries();
+
+    editorManager.discardEditor(path);
+    editorManager.saveExpiredEditors(entries, Long.MAX_VALUE);
+
+    assertTrue(savedContents.isEmpty());
+  }
+
+  private SPath createFile(final String content) throws Exception {
+    // not managed by the support as it must be replayed before creating the SPath
+    IPath path = EasyMock.createMock(IPath.class);
+    expect(path.isAbsolute()).andStubReturn(false);
+    EasyMock.replay(path);
+
+    IFile file = createMock(IFile.class);
+
+    expect(file.getContents())
+        .andStubAnswer(
+            new IAnswer<InputStream>() {
+              @Override
+              public InputStream answer() throws Throwable {
+                return new ByteArrayInputStream(content.getBytes());
+              }
+            });
+
+    file.setContents(anyObject(InputStream.class), anyBoolean(), anyBoolean());
+    expectLastCall()
+        .andStubAnswer(
+            new IAnswer<Object>() {
+              @Override
+              public Object answer() throws Throwable {
+                InputStream input = (InputStream) getCurrentArguments()[0];
+                savedContents.add(IOUtils.toString(input));
+                return null;
+              }
+            });
+
+    expect(file.adaptTo(IFile.class)).andStubReturn(file);
+    expect(project.findMember(path)).andStubReturn(file);
+
+    return new SPath(project, path);
+  }
+}
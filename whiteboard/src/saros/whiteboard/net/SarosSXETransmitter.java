@@ -1,6 +1,7 @@
 package saros.whiteboard.net;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -123,9 +124,11 @@ public class SarosSXETransmitter implements ISXETransmitter {
 
     try {
       if (msg.getTo() == null) {
-        for (User u : sarosSession.getRemoteUsers()) {
-          transmitter.send(u.getJID(), extension);
-        }
+        List<JID> recipients = new ArrayList<JID>();
+
+        for (User u : sarosSession.getRemoteUsers()) recipients.add(u.getJID());
+
+        transmitter.send(null, recipients, extension);
       } else {
         JID jid = new JID(msg.getTo());
         transmitter.send(jid, extension);